@@ -1,10 +1,14 @@
 package io.invertase.firebase;
 
 import android.support.annotation.Nullable;
+import android.util.Base64;
 import android.util.Log;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -14,7 +18,6 @@ import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.bridge.ReadableMap;
 import com.facebook.react.bridge.ReactContext;
 import com.facebook.react.bridge.WritableArray;
-import com.facebook.react.bridge.WritableNativeArray;
 import com.facebook.react.modules.core.DeviceEventManagerModule;
 
 import com.facebook.react.bridge.ReadableType;
@@ -27,6 +30,71 @@ import com.google.firebase.database.MutableData;
 public class Utils {
   private static final String TAG = "Utils";
 
+  /**
+   * Immutable options for converting snapshots and mutable data, each app has its own.
+   */
+  public static class ConversionOptions {
+    public static final int DEFAULT_MAX_DEPTH = 64;
+    public static final ConversionOptions DEFAULT = new ConversionOptions(DEFAULT_MAX_DEPTH, 0);
+
+    private final int maxDepth;
+    private final int packedArrayMinLength;
+
+    /**
+     * @param maxDepth             how many levels deep conversion goes before throwing a
+     *                             MaxDepthExceededException, values less than 1 use the default
+     * @param packedArrayMinLength min length of dense number or boolean arrays that are sent to JS
+     *                             packed into a base64 string rather than as an array, 0 disables packing
+     */
+    public ConversionOptions(int maxDepth, int packedArrayMinLength) {
+      this.maxDepth = maxDepth > 0 ? maxDepth : DEFAULT_MAX_DEPTH;
+      this.packedArrayMinLength = Math.max(0, packedArrayMinLength);
+    }
+
+    public int getMaxDepth() {
+      return maxDepth;
+    }
+
+    public int getPackedArrayMinLength() {
+      return packedArrayMinLength;
+    }
+
+    public ConversionOptions withMaxDepth(int depth) {
+      return new ConversionOptions(depth, packedArrayMinLength);
+    }
+
+    public ConversionOptions withPackedArrayMinLength(int minLength) {
+      return new ConversionOptions(maxDepth, minLength);
+    }
+  }
+
+  /**
+   * Rough estimate of the memory held by converted data, accumulated during
+   * conversion so callers that need a size do not walk the data a second time.
+   */
+  public static class SizeEstimate {
+    private long bytes = 0;
+
+    public long getBytes() {
+      return bytes;
+    }
+
+    /**
+     * @param key key of a converted node
+     */
+    public void addNode(@Nullable String key) {
+      bytes += 16;
+      if (key != null) bytes += key.length() * 2;
+    }
+
+    /**
+     * @param value leaf value of a converted node
+     */
+    public void addValue(@Nullable Object value) {
+      bytes += value instanceof String ? ((String) value).length() * 2 : 8;
+    }
+  }
+
   // TODO NOTE
   public static void todoNote(final String tag, final String name, final Callback callback) {
     Log.e(tag, "The method " + name + " has not yet been implemented.");
@@ -56,23 +124,16 @@ public class Utils {
    * @param map   map
    */
   public static void mapPutValue(String key, Object value, WritableMap map) {
-    String type = value != null ? value.getClass().getName() : "";
-    switch (type) {
-      case "java.lang.Boolean":
-        map.putBoolean(key, (Boolean) value);
-        break;
-      case "java.lang.Long":
-        Long longVal = (Long) value;
-        map.putDouble(key, (double) longVal);
-        break;
-      case "java.lang.Double":
-        map.putDouble(key, (Double) value);
-        break;
-      case "java.lang.String":
-        map.putString(key, (String) value);
-        break;
-      default:
-        map.putString(key, null);
+    if (value instanceof String) {
+      map.putString(key, (String) value);
+    } else if (value instanceof Long) {
+      map.putDouble(key, (double) (Long) value);
+    } else if (value instanceof Double) {
+      map.putDouble(key, (Double) value);
+    } else if (value instanceof Boolean) {
+      map.putBoolean(key, (Boolean) value);
+    } else {
+      map.putString(key, null);
     }
   }
 
@@ -83,8 +144,29 @@ public class Utils {
    * @return
    */
   public static WritableMap snapshotToMap(DataSnapshot dataSnapshot, @Nullable String previousChildName) {
+    return snapshotToMap(dataSnapshot, previousChildName, ConversionOptions.DEFAULT);
+  }
+
+  /**
+   * @param dataSnapshot
+   * @param previousChildName
+   * @param options
+   * @return
+   */
+  public static WritableMap snapshotToMap(DataSnapshot dataSnapshot, @Nullable String previousChildName, ConversionOptions options) {
+    return snapshotToMap(dataSnapshot, previousChildName, options, null);
+  }
+
+  /**
+   * @param dataSnapshot
+   * @param previousChildName
+   * @param options
+   * @param size              optional estimate the size of the snapshot is added to
+   * @return
+   */
+  public static WritableMap snapshotToMap(DataSnapshot dataSnapshot, @Nullable String previousChildName, ConversionOptions options, @Nullable SizeEstimate size) {
     WritableMap result = Arguments.createMap();
-    WritableMap snapshot = Utils.snapshotToMap(dataSnapshot);
+    WritableMap snapshot = Utils.snapshotToMap(dataSnapshot, options, size);
 
     result.putMap("snapshot", snapshot);
     result.putString("previousChildName", previousChildName);
@@ -136,26 +218,53 @@ public class Utils {
    * @return
    */
   public static WritableMap snapshotToMap(DataSnapshot dataSnapshot) {
+    return snapshotToMap(dataSnapshot, ConversionOptions.DEFAULT);
+  }
+
+  /**
+   * @param dataSnapshot
+   * @param options
+   * @return
+   */
+  public static WritableMap snapshotToMap(DataSnapshot dataSnapshot, ConversionOptions options) {
+    return snapshotToMap(dataSnapshot, options, null);
+  }
+
+  /**
+   * @param dataSnapshot
+   * @param options
+   * @param size         optional estimate the size of the snapshot is added to
+   * @return
+   */
+  public static WritableMap snapshotToMap(DataSnapshot dataSnapshot, ConversionOptions options, @Nullable SizeEstimate size) {
     WritableMap snapshot = Arguments.createMap();
 
     snapshot.putString("key", dataSnapshot.getKey());
     snapshot.putBoolean("exists", dataSnapshot.exists());
     snapshot.putBoolean("hasChildren", dataSnapshot.hasChildren());
     snapshot.putDouble("childrenCount", dataSnapshot.getChildrenCount());
-    snapshot.putArray("childKeys", Utils.getChildKeys(dataSnapshot));
     mapPutValue("priority", dataSnapshot.getPriority(), snapshot);
 
+    // child keys are collected during the same pass that converts the value
+    WritableArray childKeys = Arguments.createArray();
+
+    if (size != null) size.addNode(dataSnapshot.getKey());
+
     if (!dataSnapshot.hasChildren()) {
-      mapPutValue("value", dataSnapshot.getValue(), snapshot);
+      Object value = dataSnapshot.getValue();
+      if (size != null) size.addValue(value);
+      mapPutValue("value", value, snapshot);
     } else {
-      Object value = Utils.castValue(dataSnapshot);
-      if (value instanceof WritableNativeArray) {
+      Object value = buildArrayOrMap(dataSnapshot, childKeys, options, size);
+      if (value instanceof WritableArray) {
         snapshot.putArray("value", (WritableArray) value);
       } else {
         snapshot.putMap("value", (WritableMap) value);
       }
     }
 
+    snapshot.putArray("childKeys", childKeys);
+
     return snapshot;
   }
 
@@ -165,28 +274,36 @@ public class Utils {
    * @return
    */
   public static <Any> Any castValue(DataSnapshot snapshot) {
+    return castValue(snapshot, ConversionOptions.DEFAULT);
+  }
+
+  /**
+   * @param snapshot
+   * @param options
+   * @param <Any>
+   * @return
+   */
+  public static <Any> Any castValue(DataSnapshot snapshot, ConversionOptions options) {
+    return castValue(snapshot, options, null);
+  }
+
+  /**
+   * @param snapshot
+   * @param options
+   * @param size     optional estimate the size of the snapshot is added to
+   * @param <Any>
+   * @return
+   */
+  public static <Any> Any castValue(DataSnapshot snapshot, ConversionOptions options, @Nullable SizeEstimate size) {
+    if (size != null) size.addNode(snapshot.getKey());
+
     if (snapshot.hasChildren()) {
-      if (isArray(snapshot)) {
-        return (Any) buildArray(snapshot);
-      } else {
-        return (Any) buildMap(snapshot);
-      }
-    } else {
-      if (snapshot.getValue() != null) {
-        String type = snapshot.getValue().getClass().getName();
-        switch (type) {
-          case "java.lang.Boolean":
-          case "java.lang.Long":
-          case "java.lang.Double":
-          case "java.lang.String":
-            return (Any) (snapshot.getValue());
-          default:
-            Log.w(TAG, "Invalid type: " + type);
-            return null;
-        }
-      }
-      return null;
+      return (Any) buildArrayOrMap(snapshot, null, options, size);
     }
+
+    Object value = snapshot.getValue();
+    if (size != null) size.addValue(value);
+    return (Any) castLeafValue(value);
   }
 
   /**
@@ -195,252 +312,443 @@ public class Utils {
    * @return
    */
   public static <Any> Any castValue(MutableData mutableData) {
+    return castValue(mutableData, ConversionOptions.DEFAULT);
+  }
+
+  /**
+   * @param mutableData
+   * @param options
+   * @param <Any>
+   * @return
+   */
+  public static <Any> Any castValue(MutableData mutableData, ConversionOptions options) {
     if (mutableData.hasChildren()) {
-      if (isArray(mutableData)) {
-        return (Any) buildArray(mutableData);
-      } else {
-        return (Any) buildMap(mutableData);
-      }
-    } else {
-      if (mutableData.getValue() != null) {
-        String type = mutableData.getValue().getClass().getName();
-        switch (type) {
-          case "java.lang.Boolean":
-          case "java.lang.Long":
-          case "java.lang.Double":
-          case "java.lang.String":
-            return (Any) (mutableData.getValue());
-          default:
-            Log.w(TAG, "Invalid type: " + type);
-            return null;
-        }
-      }
-      return null;
+      return (Any) buildArrayOrMap(mutableData, null, options, null);
     }
+
+    return (Any) castLeafValue(mutableData.getValue());
   }
 
   /**
+   * Decides in a single pass over the child keys of a node whether it should be treated
+   * as an array, the keys being added in order as the children are iterated.
+   * <p>
    * Data should be treated as an array if:
    * 1) All the keys are integers
    * 2) More than half the keys between 0 and the maximum key in the object have non-empty values
    * <p>
    * Definition from: https://firebase.googleblog.com/2014/04/best-practices-arrays-in-firebase.html
+   */
+  public static class ArrayShape {
+    private final long maxAllowedKey;
+    private long expectedKey = -1;
+    private boolean isArray = true;
+
+    /**
+     * @param childrenCount number of children of the node
+     */
+    public ArrayShape(long childrenCount) {
+      maxAllowedKey = (childrenCount * 2) - 1;
+    }
+
+    /**
+     * @param key key of the next child
+     * @return the array index of the child, -1 once the node is not an array
+     */
+    public long add(String key) {
+      if (!isArray) return -1;
+
+      long index = parseArrayIndex(key);
+      if (index > expectedKey && index <= maxAllowedKey) {
+        expectedKey = index;
+        return index;
+      }
+
+      isArray = false;
+      return -1;
+    }
+
+    /**
+     * @return whether the keys added so far form an array
+     */
+    public boolean isArray() {
+      return isArray;
+    }
+  }
+
+  /**
+   * Returns the value if it is one of the primitive types supported by the bridge,
+   * otherwise null.
    *
-   * @param snapshot
+   * @param value
    * @return
    */
-  private static boolean isArray(DataSnapshot snapshot) {
-    long expectedKey = -1;
-    long maxAllowedKey = (snapshot.getChildrenCount() * 2) - 1;
-    for (DataSnapshot child : snapshot.getChildren()) {
-      try {
-        long key = Long.parseLong(child.getKey());
-        if (key > expectedKey && key <= maxAllowedKey) {
-          expectedKey = key;
-        } else {
-          return false;
-        }
-      } catch (NumberFormatException ex) {
-        return false;
-      }
+  private static Object castLeafValue(Object value) {
+    if (value == null) {
+      return null;
     }
-    return true;
+
+    if (value instanceof Boolean || value instanceof Long || value instanceof Double || value instanceof String) {
+      return value;
+    }
+
+    Log.w(TAG, "Invalid type: " + value.getClass().getName());
+    return null;
   }
 
   /**
+   * Converts the children of a DataSnapshot or MutableData in a single pass, deciding
+   * whether each node should be an array or a map as its children are visited.
+   * <p>
+   * Uses an explicit stack instead of recursion so deeply nested data can not overflow
+   * the thread stack, nodes nested deeper than the max depth throw a MaxDepthExceededException.
+   * <p>
    * Data should be treated as an array if:
    * 1) All the keys are integers
    * 2) More than half the keys between 0 and the maximum key in the object have non-empty values
    * <p>
    * Definition from: https://firebase.googleblog.com/2014/04/best-practices-arrays-in-firebase.html
    *
-   * @param mutableData
-   * @return
+   * @param root      DataSnapshot or MutableData with children
+   * @param childKeys optional array to collect the root child keys into whilst iterating
+   * @param options
+   * @param size      optional estimate the size of the converted children is added to
+   * @return WritableArray or WritableMap
    */
-  private static boolean isArray(MutableData mutableData) {
-    long expectedKey = -1;
-    long maxAllowedKey = (mutableData.getChildrenCount() * 2) - 1;
-    for (MutableData child : mutableData.getChildren()) {
-      try {
-        long key = Long.parseLong(child.getKey());
-        if (key > expectedKey && key <= maxAllowedKey) {
-          expectedKey++;
+  private static Object buildArrayOrMap(Object root, @Nullable WritableArray childKeys, ConversionOptions options, @Nullable SizeEstimate size) {
+    int depthLimit = options.maxDepth;
+    List<ConversionFrame> stack = new ArrayList<>();
+    stack.add(new ConversionFrame(root));
+
+    while (true) {
+      ConversionFrame frame = stack.get(stack.size() - 1);
+
+      if (frame.children.hasNext()) {
+        Object child = frame.children.next();
+        String key = getNodeKey(child);
+        if (childKeys != null && stack.size() == 1) childKeys.pushString(key);
+        if (frame.size == frame.childrenCount) continue;
+
+        frame.addKey(key);
+        if (size != null) size.addNode(key);
+
+        if (hasNodeChildren(child)) {
+          if (stack.size() >= depthLimit) {
+            throw new MaxDepthExceededException(getStackPath(stack), depthLimit);
+          }
+          stack.add(new ConversionFrame(child));
         } else {
-          return false;
+          Object value = getNodeValue(child);
+          if (size != null) size.addValue(value);
+          frame.values[frame.size++] = castLeafValue(value);
         }
-      } catch (NumberFormatException ex) {
-        return false;
+
+        continue;
       }
+
+      Object result;
+      if (frame.shape.isArray()) {
+        WritableMap packed = toPackedArray(frame.indexes, frame.values, frame.size, options.packedArrayMinLength);
+        result = packed != null ? packed : toWritableArray(frame.indexes, frame.values, frame.size);
+      } else {
+        result = toWritableMap(frame.keys, frame.values, frame.size);
+      }
+
+      stack.remove(stack.size() - 1);
+      if (stack.isEmpty()) return result;
+
+      ConversionFrame parent = stack.get(stack.size() - 1);
+      parent.values[parent.size++] = result;
     }
-    return true;
   }
 
   /**
-   * @param snapshot
-   * @param <Any>
-   * @return
+   * @param stack
+   * @return the '/' separated path of the child currently being converted
    */
-  private static <Any> WritableArray buildArray(DataSnapshot snapshot) {
-    long expectedKey = 0;
-    WritableArray array = Arguments.createArray();
-    for (DataSnapshot child : snapshot.getChildren()) {
-      long key = Long.parseLong(child.getKey());
-      if (key > expectedKey) {
-        for (long i = expectedKey; i < key; i++) {
-          array.pushNull();
-        }
-        expectedKey = key;
-      }
-      Any castedChild = castValue(child);
-      switch (castedChild.getClass().getName()) {
-        case "java.lang.Boolean":
-          array.pushBoolean((Boolean) castedChild);
-          break;
-        case "java.lang.Long":
-          Long longVal = (Long) castedChild;
-          array.pushDouble((double) longVal);
-          break;
-        case "java.lang.Double":
-          array.pushDouble((Double) castedChild);
-          break;
-        case "java.lang.String":
-          array.pushString((String) castedChild);
-          break;
-        case "com.facebook.react.bridge.WritableNativeMap":
-          array.pushMap((WritableMap) castedChild);
-          break;
-        case "com.facebook.react.bridge.WritableNativeArray":
-          array.pushArray((WritableArray) castedChild);
-          break;
-        default:
-          Log.w(TAG, "Invalid type: " + castedChild.getClass().getName());
-          break;
+  private static String getStackPath(List<ConversionFrame> stack) {
+    StringBuilder path = new StringBuilder();
+    for (ConversionFrame frame : stack) {
+      if (path.length() > 0) path.append('/');
+      path.append(frame.keys[frame.size]);
+    }
+    return path.toString();
+  }
+
+  private static String getNodeKey(Object node) {
+    return node instanceof DataSnapshot ? ((DataSnapshot) node).getKey() : ((MutableData) node).getKey();
+  }
+
+  private static boolean hasNodeChildren(Object node) {
+    return node instanceof DataSnapshot ? ((DataSnapshot) node).hasChildren() : ((MutableData) node).hasChildren();
+  }
+
+  private static Object getNodeValue(Object node) {
+    return node instanceof DataSnapshot ? ((DataSnapshot) node).getValue() : ((MutableData) node).getValue();
+  }
+
+  /**
+   * Conversion state of a single node with children.
+   */
+  private static class ConversionFrame {
+    private final Iterator<?> children;
+    private final int childrenCount;
+    private final ArrayShape shape;
+    private final String[] keys;
+    private final Object[] values;
+    private final long[] indexes;
+
+    private int size = 0;
+
+    ConversionFrame(Object node) {
+      if (node instanceof DataSnapshot) {
+        DataSnapshot snapshot = (DataSnapshot) node;
+        children = snapshot.getChildren().iterator();
+        childrenCount = (int) snapshot.getChildrenCount();
+      } else {
+        MutableData mutableData = (MutableData) node;
+        children = mutableData.getChildren().iterator();
+        childrenCount = (int) mutableData.getChildrenCount();
       }
-      expectedKey++;
+
+      shape = new ArrayShape(childrenCount);
+      keys = new String[childrenCount];
+      values = new Object[childrenCount];
+      indexes = new long[childrenCount];
+    }
+
+    /**
+     * Record the key of the next child, its value is set once converted.
+     *
+     * @param key
+     */
+    void addKey(String key) {
+      keys[size] = key;
+      indexes[size] = shape.add(key);
     }
-    return array;
   }
 
   /**
-   * @param mutableData
-   * @param <Any>
+   * Thrown when converting data nested deeper than the max depth.
+   */
+  public static class MaxDepthExceededException extends IllegalStateException {
+    public static final String CODE = "database/max-depth-exceeded";
+
+    private final String path;
+    private final int maxDepth;
+
+    public MaxDepthExceededException(String path, int maxDepth) {
+      super("The data at '" + path + "' is nested more than " + maxDepth + " levels deep and can not be converted.");
+      this.path = path;
+      this.maxDepth = maxDepth;
+    }
+
+    /**
+     * @return the path, relative to the converted snapshot, of the first node too deep to convert
+     */
+    public String getPath() {
+      return path;
+    }
+
+    public int getMaxDepth() {
+      return maxDepth;
+    }
+
+    /**
+     * @return a js like error map with 'code', 'message', 'path' and 'maxDepth'
+     */
+    public WritableMap toMap() {
+      WritableMap error = Arguments.createMap();
+      error.putString("code", CODE);
+      error.putString("message", getMessage());
+      error.putString("path", path);
+      error.putInt("maxDepth", maxDepth);
+      return error;
+    }
+  }
+
+  /**
+   * Parses a child key as a non negative array index without throwing,
+   * returns -1 if the key is not a valid index.
+   * <p>
+   * Accepts the same keys Long.parseLong does, including a leading sign ('+1', '-0').
+   *
+   * @param key
    * @return
    */
-  private static <Any> WritableArray buildArray(MutableData mutableData) {
+  private static long parseArrayIndex(String key) {
+    int length = key.length();
+    int start = length > 1 && (key.charAt(0) == '+' || key.charAt(0) == '-') ? 1 : 0;
+    if (length == 0 || length - start > 18) return -1;
+
+    long index = 0;
+    for (int i = start; i < length; i++) {
+      char c = key.charAt(i);
+      if (c < '0' || c > '9') return -1;
+      index = index * 10 + (c - '0');
+    }
+
+    return key.charAt(0) == '-' && index != 0 ? -1 : index;
+  }
+
+  /**
+   * Builds an array from already converted values, padding any missing indexes with null.
+   *
+   * @param indexes
+   * @param values
+   * @param size
+   * @return
+   */
+  private static WritableArray toWritableArray(long[] indexes, Object[] values, int size) {
     long expectedKey = 0;
     WritableArray array = Arguments.createArray();
-    for (MutableData child : mutableData.getChildren()) {
-      long key = Long.parseLong(child.getKey());
-      if (key > expectedKey) {
-        for (long i = expectedKey; i < key; i++) {
-          array.pushNull();
-        }
-        expectedKey = key;
-      }
-      Any castedChild = castValue(child);
-      switch (castedChild.getClass().getName()) {
-        case "java.lang.Boolean":
-          array.pushBoolean((Boolean) castedChild);
-          break;
-        case "java.lang.Long":
-          Long longVal = (Long) castedChild;
-          array.pushDouble((double) longVal);
-          break;
-        case "java.lang.Double":
-          array.pushDouble((Double) castedChild);
-          break;
-        case "java.lang.String":
-          array.pushString((String) castedChild);
-          break;
-        case "com.facebook.react.bridge.WritableNativeMap":
-          array.pushMap((WritableMap) castedChild);
-          break;
-        case "com.facebook.react.bridge.WritableNativeArray":
-          array.pushArray((WritableArray) castedChild);
-          break;
-        default:
-          Log.w(TAG, "Invalid type: " + castedChild.getClass().getName());
-          break;
+
+    for (int i = 0; i < size; i++) {
+      for (long j = expectedKey; j < indexes[i]; j++) {
+        array.pushNull();
       }
-      expectedKey++;
+
+      arrayPushValue(values[i], array);
+      expectedKey = indexes[i] + 1;
     }
+
     return array;
   }
 
   /**
-   * @param snapshot
-   * @param <Any>
-   * @return
+   * Packs a dense array of only numbers or only booleans into a map of the packed type
+   * and base64 encoded data, avoiding a bridge call per element:
+   * <p>
+   * { '.packed': 'f64', data } - little endian 64 bit floats
+   * { '.packed': 'bool', data } - one byte per element
+   * <p>
+   * '.packed' can not clash with a database key as keys can not contain '.'.
+   *
+   * @param indexes
+   * @param values
+   * @param size
+   * @param minLength min array length to pack, 0 if packing is disabled
+   * @return the packed map, or null if packing is disabled or the array can not be packed
    */
-  private static <Any> WritableMap buildMap(DataSnapshot snapshot) {
-    WritableMap map = Arguments.createMap();
-    for (DataSnapshot child : snapshot.getChildren()) {
-      Any castedChild = castValue(child);
+  @Nullable
+  private static WritableMap toPackedArray(long[] indexes, Object[] values, int size, int minLength) {
+    if (minLength == 0 || size < minLength || indexes[size - 1] != size - 1) return null;
+
+    String type;
+    byte[] data;
+
+    if (values[0] instanceof Boolean) {
+      data = new byte[size];
+      for (int i = 0; i < size; i++) {
+        if (!(values[i] instanceof Boolean)) return null;
+        data[i] = (byte) ((Boolean) values[i] ? 1 : 0);
+      }
+      type = "bool";
+    } else {
+      for (int i = 0; i < size; i++) {
+        if (!(values[i] instanceof Long) && !(values[i] instanceof Double)) return null;
+      }
 
-      switch (castedChild.getClass().getName()) {
-        case "java.lang.Boolean":
-          map.putBoolean(child.getKey(), (Boolean) castedChild);
-          break;
-        case "java.lang.Long":
-          map.putDouble(child.getKey(), (double) ((Long) castedChild));
-          break;
-        case "java.lang.Double":
-          map.putDouble(child.getKey(), (Double) castedChild);
-          break;
-        case "java.lang.String":
-          map.putString(child.getKey(), (String) castedChild);
-          break;
-        case "com.facebook.react.bridge.WritableNativeMap":
-          map.putMap(child.getKey(), (WritableMap) castedChild);
-          break;
-        case "com.facebook.react.bridge.WritableNativeArray":
-          map.putArray(child.getKey(), (WritableArray) castedChild);
-          break;
-        default:
-          Log.w(TAG, "Invalid type: " + castedChild.getClass().getName());
-          break;
+      ByteBuffer buffer = ByteBuffer.allocate(size * 8).order(ByteOrder.LITTLE_ENDIAN);
+      for (int i = 0; i < size; i++) {
+        buffer.putDouble(((Number) values[i]).doubleValue());
       }
+      data = buffer.array();
+      type = "f64";
     }
-    return map;
+
+    WritableMap packed = Arguments.createMap();
+    packed.putString(".packed", type);
+    packed.putString("data", Base64.encodeToString(data, Base64.NO_WRAP));
+    return packed;
   }
 
   /**
-   * @param mutableData
-   * @param <Any>
+   * Builds a map from already converted keys and values.
+   *
+   * @param keys
+   * @param values
+   * @param size
    * @return
    */
-  private static <Any> WritableMap buildMap(MutableData mutableData) {
+  private static WritableMap toWritableMap(String[] keys, Object[] values, int size) {
     WritableMap map = Arguments.createMap();
-    for (MutableData child : mutableData.getChildren()) {
-      Any castedChild = castValue(child);
 
-      switch (castedChild.getClass().getName()) {
-        case "java.lang.Boolean":
-          map.putBoolean(child.getKey(), (Boolean) castedChild);
-          break;
-        case "java.lang.Long":
-          map.putDouble(child.getKey(), (double) ((Long) castedChild));
-          break;
-        case "java.lang.Double":
-          map.putDouble(child.getKey(), (Double) castedChild);
-          break;
-        case "java.lang.String":
-          map.putString(child.getKey(), (String) castedChild);
-          break;
-        case "com.facebook.react.bridge.WritableNativeMap":
-          map.putMap(child.getKey(), (WritableMap) castedChild);
-          break;
-        case "com.facebook.react.bridge.WritableNativeArray":
-          map.putArray(child.getKey(), (WritableArray) castedChild);
-          break;
-        default:
-          Log.w(TAG, "Invalid type: " + castedChild.getClass().getName());
-          break;
-      }
+    for (int i = 0; i < size; i++) {
+      mapPutCastedValue(keys[i], values[i], map);
     }
+
     return map;
   }
 
+  /**
+   * @param value converted value as returned by castValue
+   * @param array
+   */
+  private static void arrayPushValue(Object value, WritableArray array) {
+    if (value == null) {
+      array.pushNull();
+    } else if (value instanceof String) {
+      array.pushString((String) value);
+    } else if (value instanceof Long) {
+      array.pushDouble((double) (Long) value);
+    } else if (value instanceof Double) {
+      array.pushDouble((Double) value);
+    } else if (value instanceof Boolean) {
+      array.pushBoolean((Boolean) value);
+    } else if (value instanceof WritableMap) {
+      array.pushMap((WritableMap) value);
+    } else if (value instanceof WritableArray) {
+      array.pushArray((WritableArray) value);
+    } else {
+      Log.w(TAG, "Invalid type: " + value.getClass().getName());
+    }
+  }
+
+  /**
+   * @param key
+   * @param value converted value as returned by castValue
+   * @param map
+   */
+  public static void mapPutCastedValue(String key, Object value, WritableMap map) {
+    if (value == null) {
+      map.putNull(key);
+    } else if (value instanceof String) {
+      map.putString(key, (String) value);
+    } else if (value instanceof Long) {
+      map.putDouble(key, (double) (Long) value);
+    } else if (value instanceof Double) {
+      map.putDouble(key, (Double) value);
+    } else if (value instanceof Boolean) {
+      map.putBoolean(key, (Boolean) value);
+    } else if (value instanceof WritableMap) {
+      map.putMap(key, (WritableMap) value);
+    } else if (value instanceof WritableArray) {
+      map.putArray(key, (WritableArray) value);
+    } else {
+      Log.w(TAG, "Invalid type: " + value.getClass().getName());
+    }
+  }
+
+  /**
+   * Same as snapshotToMap but without the snapshot value.
+   *
+   * @param dataSnapshot
+   * @return
+   */
+  public static WritableMap snapshotMetadataToMap(DataSnapshot dataSnapshot) {
+    WritableMap snapshot = Arguments.createMap();
+
+    snapshot.putString("key", dataSnapshot.getKey());
+    snapshot.putBoolean("exists", dataSnapshot.exists());
+    snapshot.putBoolean("hasChildren", dataSnapshot.hasChildren());
+    snapshot.putDouble("childrenCount", dataSnapshot.getChildrenCount());
+    snapshot.putArray("childKeys", Utils.getChildKeys(dataSnapshot));
+    mapPutValue("priority", dataSnapshot.getPriority(), snapshot);
+
+    return snapshot;
+  }
+
   /**
    * @param snapshot
    * @return
@@ -1,8 +1,5 @@
 package io.invertase.firebase.database;
 
-import android.os.AsyncTask;
-import android.util.SparseArray;
-
 import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.ReactMethod;
@@ -25,17 +22,26 @@ import com.google.firebase.database.DatabaseReference;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import io.invertase.firebase.Utils;
 
 
 public class RNFirebaseDatabase extends ReactContextBaseJavaModule {
   private static final String TAG = "RNFirebaseDatabase";
-  private HashMap<String, RNFirebaseDatabaseReference> references = new HashMap<>();
-  private SparseArray<RNFirebaseTransactionHandler> transactionHandlers = new SparseArray<>();
+  private static final long MIN_PERSISTENCE_CACHE_SIZE = 1024 * 1024;
+  private static final long MAX_PERSISTENCE_CACHE_SIZE = 100 * 1024 * 1024;
+  private final RNFirebaseDatabaseRegistry registry;
+  private final RNFirebaseDatabaseSnapshotCache snapshotCache = new RNFirebaseDatabaseSnapshotCache();
+  private final RNFirebaseDatabaseKeepSynced keepSynced = new RNFirebaseDatabaseKeepSynced();
+  private final RNFirebaseDatabaseMetrics metrics = new RNFirebaseDatabaseMetrics();
+  private final RNFirebaseDatabaseConversionSettings conversionSettings = new RNFirebaseDatabaseConversionSettings();
+  private ConcurrentHashMap<Integer, RNFirebaseTransactionHandler> transactionHandlers = new ConcurrentHashMap<>();
+  private ConcurrentHashMap<String, Long> transactionTimeouts = new ConcurrentHashMap<>();
 
   RNFirebaseDatabase(ReactApplicationContext reactContext) {
     super(reactContext);
+    registry = new RNFirebaseDatabaseRegistry(reactContext, snapshotCache, metrics, conversionSettings);
   }
 
 
@@ -68,6 +74,19 @@ public class RNFirebaseDatabase extends ReactContextBaseJavaModule {
     getDatabaseForApp(appName).setPersistenceEnabled(state);
   }
 
+  /**
+   * Set the disk cache size used when persistence is enabled, must be called before any other
+   * usage of the database. Clamped to the 1MB - 100MB range supported by firebase.
+   *
+   * @param appName
+   * @param bytes
+   */
+  @ReactMethod
+  public void setPersistenceCacheSizeBytes(String appName, double bytes) {
+    long cacheSize = Math.min(Math.max((long) bytes, MIN_PERSISTENCE_CACHE_SIZE), MAX_PERSISTENCE_CACHE_SIZE);
+    getDatabaseForApp(appName).setPersistenceCacheSizeBytes(cacheSize);
+  }
+
   /**
    * @param appName
    * @param path
@@ -75,7 +94,38 @@ public class RNFirebaseDatabase extends ReactContextBaseJavaModule {
    */
   @ReactMethod
   public void keepSynced(String appName, String key, String path, ReadableArray modifiers, Boolean state) {
-    getInternalReferenceForApp(appName, key, path, modifiers).getQuery().keepSynced(state);
+    RNFirebaseDatabaseQueryModifiers compiledModifiers = RNFirebaseDatabaseQueryModifiers.compile(modifiers);
+    String queryKey = RNFirebaseDatabaseRegistry.buildQueryKey(appName, path, compiledModifiers);
+    keepSynced.keepSynced(appName, path, queryKey, registry.get(appName, path, modifiers).getQuery(), state);
+  }
+
+  /**
+   * Keep many paths synced (or stop) in a single call.
+   *
+   * @param appName
+   * @param paths
+   * @param state
+   */
+  @ReactMethod
+  public void keepSyncedPaths(String appName, ReadableArray paths, Boolean state) {
+    RNFirebaseDatabaseQueryModifiers noModifiers = RNFirebaseDatabaseQueryModifiers.compile(Arguments.createArray());
+
+    for (int i = 0; i < paths.size(); i++) {
+      String path = paths.getString(i);
+      String queryKey = RNFirebaseDatabaseRegistry.buildQueryKey(appName, path, noModifiers);
+      keepSynced.keepSynced(appName, path, queryKey, getReferenceForAppPath(appName, path), state);
+    }
+  }
+
+  /**
+   * Resolves with the queries kept synced for the app and the approximate size of their data.
+   *
+   * @param appName
+   * @param promise
+   */
+  @ReactMethod
+  public void getKeepSyncedReport(String appName, Promise promise) {
+    keepSynced.report(appName, conversionSettings.get(appName).getMaxDepth(), promise);
   }
 
 
@@ -83,6 +133,17 @@ public class RNFirebaseDatabase extends ReactContextBaseJavaModule {
    * TRANSACTIONS
    */
 
+  /**
+   * Set how long a transaction attempt waits for JS to return its updates.
+   *
+   * @param appName
+   * @param milliseconds
+   */
+  @ReactMethod
+  public void setTransactionTimeout(String appName, double milliseconds) {
+    transactionTimeouts.put(appName, (long) milliseconds);
+  }
+
   /**
    * @param transactionId
    * @param updates
@@ -106,54 +167,139 @@ public class RNFirebaseDatabase extends ReactContextBaseJavaModule {
    */
   @ReactMethod
   public void transactionStart(final String appName, final String path, final int transactionId, final Boolean applyLocally) {
-    AsyncTask.execute(new Runnable() {
+    final RNFirebaseTransactionHandler transactionHandler = new RNFirebaseTransactionHandler(transactionId, appName, getTransactionTimeout(appName), conversionSettings.get(appName));
+    transactionHandlers.put(transactionId, transactionHandler);
+
+    // runTransaction only queues the transaction, doTransaction is called on the
+    // firebase run loop thread, so it is started directly on the calling thread
+    DatabaseReference reference = getReferenceForAppPath(appName, path);
+
+    reference.runTransaction(new Transaction.Handler() {
       @Override
-      public void run() {
-        DatabaseReference reference = getReferenceForAppPath(appName, path);
-
-        reference.runTransaction(new Transaction.Handler() {
-          @Override
-          public Transaction.Result doTransaction(MutableData mutableData) {
-            final RNFirebaseTransactionHandler transactionHandler = new RNFirebaseTransactionHandler(transactionId, appName);
-            transactionHandlers.put(transactionId, transactionHandler);
-            final WritableMap updatesMap = transactionHandler.createUpdateMap(mutableData);
-
-            // emit the updates to js using an async task
-            // otherwise it gets blocked by the lock await
-            AsyncTask.execute(new Runnable() {
-              @Override
-              public void run() {
-                Utils.sendEvent(getReactApplicationContext(), "database_transaction_event", updatesMap);
-              }
-            });
-
-            // wait for js to return the updates (js calls transactionTryCommit)
-            try {
-              transactionHandler.await();
-            } catch (InterruptedException e) {
-              transactionHandler.interrupted = true;
-              return Transaction.abort();
-            }
-
-            if (transactionHandler.abort) {
-              return Transaction.abort();
-            }
-
-            mutableData.setValue(transactionHandler.value);
-            return Transaction.success(mutableData);
-          }
-
-          @Override
-          public void onComplete(DatabaseError error, boolean committed, DataSnapshot snapshot) {
-            RNFirebaseTransactionHandler transactionHandler = transactionHandlers.get(transactionId);
-            WritableMap resultMap = transactionHandler.createResultMap(error, committed, snapshot);
-            Utils.sendEvent(getReactApplicationContext(), "database_transaction_event", resultMap);
-            transactionHandlers.delete(transactionId);
-          }
-
-        }, applyLocally);
+      public Transaction.Result doTransaction(MutableData mutableData) {
+        transactionHandler.prepare();
+        WritableMap updatesMap;
+
+        try {
+          updatesMap = transactionHandler.createUpdateMap(mutableData);
+        } catch (Utils.MaxDepthExceededException e) {
+          transactionHandler.conversionError = e;
+          return Transaction.abort();
+        }
+
+        // emitting only queues the event for the js thread so
+        // it will not be blocked by waiting for the updates below
+        Utils.sendEvent(getReactApplicationContext(), "database_transaction_event", updatesMap);
+
+        // wait for js to return the updates (js calls transactionTryCommit)
+        try {
+          transactionHandler.await();
+        } catch (InterruptedException e) {
+          transactionHandler.interrupted = true;
+          return Transaction.abort();
+        }
+
+        if (transactionHandler.timeout || transactionHandler.abort) {
+          return Transaction.abort();
+        }
+
+        mutableData.setValue(transactionHandler.value);
+        return Transaction.success(mutableData);
       }
-    });
+
+      @Override
+      public void onComplete(DatabaseError error, boolean committed, DataSnapshot snapshot) {
+        if (committed) snapshotCache.invalidate(appName, path);
+        WritableMap resultMap = transactionHandler.createResultMap(error, committed, snapshot);
+        Utils.sendEvent(getReactApplicationContext(), "database_transaction_event", resultMap);
+        transactionHandlers.remove(transactionId);
+      }
+
+    }, applyLocally);
+  }
+
+  /**
+   * Run a transaction with a declarative operation (see RNFirebaseDatabaseTransactionOperation),
+   * every attempt is applied natively without waiting on JS.
+   * Resolves with { committed, snapshot }.
+   *
+   * @param appName
+   * @param path
+   * @param op           map of 'type' and 'value'
+   * @param applyLocally
+   * @param promise
+   */
+  @ReactMethod
+  public void transactionApply(final String appName, final String path, ReadableMap op, Boolean applyLocally, final Promise promise) {
+    final RNFirebaseDatabaseTransactionOperation operation;
+
+    try {
+      operation = new RNFirebaseDatabaseTransactionOperation(Utils.recursivelyDeconstructReadableMap(op));
+    } catch (IllegalArgumentException e) {
+      promise.reject("database/invalid-transaction-operation", e.getMessage(), e);
+      return;
+    }
+
+    DatabaseReference reference = getReferenceForAppPath(appName, path);
+
+    reference.runTransaction(new Transaction.Handler() {
+      @Override
+      public Transaction.Result doTransaction(MutableData mutableData) {
+        return operation.apply(mutableData);
+      }
+
+      @Override
+      public void onComplete(DatabaseError error, boolean committed, DataSnapshot snapshot) {
+        if (error != null) {
+          handlePromise(promise, error);
+          return;
+        }
+
+        if (committed) snapshotCache.invalidate(appName, path);
+
+        try {
+          WritableMap resultMap = Arguments.createMap();
+          resultMap.putBoolean("committed", committed);
+          resultMap.putMap("snapshot", Utils.snapshotToMap(snapshot, conversionSettings.get(appName)));
+          promise.resolve(resultMap);
+        } catch (Utils.MaxDepthExceededException e) {
+          promise.reject(Utils.MaxDepthExceededException.CODE, e.getMessage(), e);
+        }
+      }
+    }, applyLocally);
+  }
+
+  /*
+   * METRICS
+   */
+
+  /**
+   * Resolves with write ack and attach-to-first-event latency percentiles (ms), connection
+   * transitions and per registration event rates recorded since the last reset.
+   *
+   * @param appName
+   * @param promise
+   */
+  @ReactMethod
+  public void getMetrics(String appName, Promise promise) {
+    promise.resolve(metrics.toMap(appName));
+  }
+
+  /**
+   * @param appName
+   */
+  @ReactMethod
+  public void resetMetrics(String appName) {
+    metrics.reset(appName);
+  }
+
+  /**
+   * @param appName
+   * @return the transaction timeout for the app in milliseconds
+   */
+  private long getTransactionTimeout(String appName) {
+    Long timeout = transactionTimeouts.get(appName);
+    return timeout != null ? timeout : RNFirebaseTransactionHandler.DEFAULT_TIMEOUT;
   }
 
 
@@ -276,13 +422,16 @@ public class RNFirebaseDatabase extends ReactContextBaseJavaModule {
    * @param promise
    */
   @ReactMethod
-  public void set(String appName, String path, ReadableMap props, final Promise promise) {
+  public void set(final String appName, String path, ReadableMap props, final Promise promise) {
+    snapshotCache.invalidate(appName, path);
+    final long writeStart = metrics.startWrite(appName);
     DatabaseReference ref = getReferenceForAppPath(appName, path);
     Object value = Utils.recursivelyDeconstructReadableMap(props).get("value");
 
     DatabaseReference.CompletionListener listener = new DatabaseReference.CompletionListener() {
       @Override
       public void onComplete(DatabaseError error, DatabaseReference ref) {
+        metrics.recordWriteAck(appName, writeStart);
         handlePromise(promise, error);
       }
     };
@@ -297,13 +446,16 @@ public class RNFirebaseDatabase extends ReactContextBaseJavaModule {
    * @param promise
    */
   @ReactMethod
-  public void setPriority(String appName, String path, ReadableMap priority, final Promise promise) {
+  public void setPriority(final String appName, String path, ReadableMap priority, final Promise promise) {
+    snapshotCache.invalidate(appName, path);
+    final long writeStart = metrics.startWrite(appName);
     DatabaseReference ref = getReferenceForAppPath(appName, path);
     Object priorityValue = Utils.recursivelyDeconstructReadableMap(priority).get("value");
 
     DatabaseReference.CompletionListener listener = new DatabaseReference.CompletionListener() {
       @Override
       public void onComplete(DatabaseError error, DatabaseReference ref) {
+        metrics.recordWriteAck(appName, writeStart);
         handlePromise(promise, error);
       }
     };
@@ -319,7 +471,9 @@ public class RNFirebaseDatabase extends ReactContextBaseJavaModule {
    * @param promise
    */
   @ReactMethod
-  public void setWithPriority(String appName, String path, ReadableMap data, ReadableMap priority, final Promise promise) {
+  public void setWithPriority(final String appName, String path, ReadableMap data, ReadableMap priority, final Promise promise) {
+    snapshotCache.invalidate(appName, path);
+    final long writeStart = metrics.startWrite(appName);
     DatabaseReference ref = getReferenceForAppPath(appName, path);
     Object dataValue = Utils.recursivelyDeconstructReadableMap(data).get("value");
     Object priorityValue = Utils.recursivelyDeconstructReadableMap(priority).get("value");
@@ -327,6 +481,7 @@ public class RNFirebaseDatabase extends ReactContextBaseJavaModule {
     DatabaseReference.CompletionListener listener = new DatabaseReference.CompletionListener() {
       @Override
       public void onComplete(DatabaseError error, DatabaseReference ref) {
+        metrics.recordWriteAck(appName, writeStart);
         handlePromise(promise, error);
       }
     };
@@ -341,13 +496,16 @@ public class RNFirebaseDatabase extends ReactContextBaseJavaModule {
    * @param promise
    */
   @ReactMethod
-  public void update(String appName, String path, ReadableMap props, final Promise promise) {
+  public void update(final String appName, String path, ReadableMap props, final Promise promise) {
+    snapshotCache.invalidate(appName, path);
+    final long writeStart = metrics.startWrite(appName);
     DatabaseReference ref = getReferenceForAppPath(appName, path);
     Map<String, Object> updates = Utils.recursivelyDeconstructReadableMap(props);
 
     DatabaseReference.CompletionListener listener = new DatabaseReference.CompletionListener() {
       @Override
       public void onComplete(DatabaseError error, DatabaseReference ref) {
+        metrics.recordWriteAck(appName, writeStart);
         handlePromise(promise, error);
       }
     };
@@ -355,18 +513,48 @@ public class RNFirebaseDatabase extends ReactContextBaseJavaModule {
     ref.updateChildren(updates, listener);
   }
 
+  /**
+   * Apply an ordered list of { type, path, value } write operations ('set', 'update',
+   * 'remove' or 'setPriority') using as few multi-path updates as possible.
+   * Resolves with an array of null or an error map for each operation.
+   *
+   * @param appName
+   * @param ops
+   * @param promise
+   */
+  @ReactMethod
+  public void writeBatch(String appName, ReadableArray ops, final Promise promise) {
+    RNFirebaseDatabaseWriteBatch batch;
+
+    try {
+      batch = new RNFirebaseDatabaseWriteBatch(getDatabaseForApp(appName).getReference(), Utils.recursivelyDeconstructReadableArray(ops));
+    } catch (IllegalArgumentException | ClassCastException e) {
+      promise.reject("database/invalid-write-batch", e.getMessage(), e);
+      return;
+    }
+
+    for (String path : batch.getPaths()) {
+      snapshotCache.invalidate(appName, path);
+    }
+
+    batch.commit(metrics, appName, promise);
+  }
+
   /**
    * @param appName
    * @param path
    * @param promise
    */
   @ReactMethod
-  public void remove(String appName, String path, final Promise promise) {
+  public void remove(final String appName, String path, final Promise promise) {
+    snapshotCache.invalidate(appName, path);
+    final long writeStart = metrics.startWrite(appName);
     DatabaseReference ref = getReferenceForAppPath(appName, path);
 
     DatabaseReference.CompletionListener listener = new DatabaseReference.CompletionListener() {
       @Override
       public void onComplete(DatabaseError error, DatabaseReference ref) {
+        metrics.recordWriteAck(appName, writeStart);
         handlePromise(promise, error);
       }
     };
@@ -387,39 +575,123 @@ public class RNFirebaseDatabase extends ReactContextBaseJavaModule {
    */
   @ReactMethod
   public void once(String appName, String key, String path, ReadableArray modifiers, String eventType, Promise promise) {
-    getInternalReferenceForApp(appName, key, path, modifiers).once(eventType, promise);
+    registry.get(appName, path, modifiers).once(eventType, promise);
+  }
+
+  /**
+   * Subscribe once to the value of a firebase reference, sending the snapshot in
+   * chunks as 'database_sync_event' events with the stream id before resolving.
+   *
+   * @param appName
+   * @param key
+   * @param path
+   * @param modifiers
+   * @param streamId
+   * @param options   optional map of 'size' (children) and 'bytes' per chunk
+   * @param promise
+   */
+  @ReactMethod
+  public void onceStream(String appName, String key, String path, ReadableArray modifiers, String streamId, ReadableMap options, Promise promise) {
+    registry.get(appName, path, modifiers).onceStream(streamId, options, promise);
+  }
+
+  /**
+   * Set how many levels deep snapshots of the app are converted before failing
+   * with a 'database/max-depth-exceeded' error.
+   *
+   * @param appName
+   * @param depth   values less than 1 restore the default of 64
+   */
+  @ReactMethod
+  public void setMaxDepth(String appName, int depth) {
+    conversionSettings.setMaxDepth(appName, depth);
+  }
+
+  /**
+   * Set the min length of dense number or boolean arrays of the app that are
+   * packed into a base64 string for JS.
+   *
+   * @param appName
+   * @param minLength 0 disables packing
+   */
+  @ReactMethod
+  public void setPackedArrayMinLength(String appName, int minLength) {
+    conversionSettings.setPackedArrayMinLength(appName, minLength);
+  }
+
+  /**
+   * Enable, resize or disable the once('value') snapshot cache, shared by all apps.
+   *
+   * @param config map of 'maxBytes' (0 disables the cache) and 'ttl' (ms), null disables the cache
+   */
+  @ReactMethod
+  public void configureSnapshotCache(ReadableMap config) {
+    snapshotCache.configure(config);
   }
 
   /**
    * Subscribe to real time events for the specified database path + modifiers
+   * <p>
+   * Child events can optionally be batched per registration by providing a 'batch'
+   * map of 'interval' (ms) and 'size' (max events) in props. Value events can
+   * optionally send only patches after the first event by setting 'diff' to true, and
+   * full values can be sent in chunks by providing a 'stream' map of 'size' (children)
+   * and 'bytes' per chunk.
    *
    * @param appName String
    * @param props   ReadableMap
    */
   @ReactMethod
   public void on(String appName, ReadableMap props) {
-    getInternalReferenceForApp(appName, props)
-      .on(
-        props.getString("eventType"),
-        props.getMap("registration")
-      );
+    ReadableMap batch = props.hasKey("batch") && !props.isNull("batch") ? props.getMap("batch") : null;
+    boolean diff = props.hasKey("diff") && props.getBoolean("diff");
+    ReadableMap stream = props.hasKey("stream") && !props.isNull("stream") ? props.getMap("stream") : null;
+
+    registry.attach(
+      appName,
+      props.getString("path"),
+      props.getArray("modifiers"),
+      props.getString("eventType"),
+      props.getMap("registration"),
+      batch,
+      diff,
+      stream
+    );
   }
 
   /**
    * Removes the specified event registration key.
    * If the ref no longer has any listeners the the ref is removed.
+   * Unknown registration keys are ignored.
    *
    * @param key
    * @param eventRegistrationKey
    */
   @ReactMethod
   public void off(String key, String eventRegistrationKey) {
-    RNFirebaseDatabaseReference nativeRef = references.get(key);
-    nativeRef.removeEventListener(eventRegistrationKey);
+    registry.detach(eventRegistrationKey);
+  }
 
-    if (!nativeRef.hasListeners()) {
-      references.remove(key);
-    }
+  /**
+   * JS has handled an event for a registration with a 'drop-oldest' back-pressure policy.
+   *
+   * @param eventRegistrationKey
+   */
+  @ReactMethod
+  public void ackSyncEvent(String eventRegistrationKey) {
+    registry.ack(eventRegistrationKey);
+  }
+
+  /**
+   * JS has received a chunk of a streamed snapshot, the next chunk is only
+   * converted once all but one of the chunks before it are acknowledged.
+   *
+   * @param streamId
+   * @param sequence
+   */
+  @ReactMethod
+  public void ackStreamChunk(String streamId, int sequence) {
+    RNFirebaseDatabaseSnapshotStream.ack(streamId, sequence);
   }
 
   /*
@@ -468,60 +740,6 @@ public class RNFirebaseDatabase extends ReactContextBaseJavaModule {
     return getDatabaseForApp(appName).getReference(path);
   }
 
-  /**
-   * Return an existing or create a new RNFirebaseDatabaseReference instance.
-   *
-   * @param appName
-   * @param key
-   * @param path
-   * @param modifiers
-   * @return
-   */
-  private RNFirebaseDatabaseReference getInternalReferenceForApp(String appName, String key, String path, ReadableArray modifiers) {
-    RNFirebaseDatabaseReference existingRef = references.get(key);
-
-    if (existingRef == null) {
-      existingRef = new RNFirebaseDatabaseReference(
-        getReactApplicationContext(),
-        appName,
-        key,
-        path,
-        modifiers
-      );
-    }
-
-    return existingRef;
-  }
-
-  /**
-   * TODO
-   *
-   * @param appName
-   * @param props
-   * @return
-   */
-  private RNFirebaseDatabaseReference getInternalReferenceForApp(String appName, ReadableMap props) {
-    String key = props.getString("key");
-    String path = props.getString("path");
-    ReadableArray modifiers = props.getArray("modifiers");
-
-    RNFirebaseDatabaseReference existingRef = references.get(key);
-
-    if (existingRef == null) {
-      existingRef = new RNFirebaseDatabaseReference(
-        getReactApplicationContext(),
-        appName,
-        key,
-        path,
-        modifiers
-      );
-
-      references.put(key, existingRef);
-    }
-
-    return existingRef;
-  }
-
   /**
    * Wrap a message string with the specified service name e.g. 'Database'
    *
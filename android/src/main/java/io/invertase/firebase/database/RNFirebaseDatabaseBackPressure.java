@@ -0,0 +1,203 @@
+package io.invertase.firebase.database;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
+
+import com.facebook.react.bridge.ReadableMap;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Limits the rate events for a single registration are sent to JS, configured by
+ * the 'backpressure' map of the registration. Snapshots are only converted once an
+ * event is actually delivered, so dropped events cost no conversion.
+ * <p>
+ * Policies:
+ * - 'throttle' at most one event per child and event type every 'interval' ms, the latest event wins
+ * - 'drop-oldest' at most 'inFlight' events sent but not yet acknowledged by JS, others
+ * wait in a queue of at most 'maxQueue' events, dropping the oldest when full
+ * - 'sample' only every 'every'th event of each child and event type is sent
+ * <p>
+ * Throttled and sampled events are kept apart per child and event type, so the events of
+ * one child never replace or skip those of another. Value events have a single slot.
+ */
+class RNFirebaseDatabaseBackPressure {
+  static final String THROTTLE = "throttle";
+  static final String DROP_OLDEST = "drop-oldest";
+  static final String SAMPLE = "sample";
+
+  private static final int DEFAULT_INTERVAL = 100;
+  private static final int DEFAULT_MAX_QUEUE = 50;
+  private static final int DEFAULT_IN_FLIGHT = 4;
+  private static final int DEFAULT_EVERY = 2;
+
+  private final String registrationKey;
+  private final RNFirebaseDatabaseMetrics metrics;
+  private final String policy;
+  private final int interval;
+  private final int maxQueue;
+  private final int maxInFlight;
+  private final int every;
+  private final Handler handler;
+  private final Runnable flushRunnable;
+  private final ArrayDeque<Runnable> queue = new ArrayDeque<>();
+
+  private final LinkedHashMap<String, Runnable> pending = new LinkedHashMap<>();
+  private final HashMap<String, Long> received = new HashMap<>();
+  private long lastDelivery = 0;
+  private int inFlight = 0;
+
+  /**
+   * @param eventRegistrationKey
+   * @param databaseMetrics      dropped events are counted per registration
+   * @param options              map of 'policy' (unknown policies are treated as 'throttle') and its options
+   */
+  RNFirebaseDatabaseBackPressure(String eventRegistrationKey, RNFirebaseDatabaseMetrics databaseMetrics, ReadableMap options) {
+    registrationKey = eventRegistrationKey;
+    metrics = databaseMetrics;
+    String policyOption = options.hasKey("policy") && !options.isNull("policy") ? options.getString("policy") : null;
+    policy = DROP_OLDEST.equals(policyOption) || SAMPLE.equals(policyOption) ? policyOption : THROTTLE;
+    interval = getOption(options, "interval", DEFAULT_INTERVAL);
+    maxQueue = getOption(options, "maxQueue", DEFAULT_MAX_QUEUE);
+    maxInFlight = getOption(options, "inFlight", DEFAULT_IN_FLIGHT);
+    every = getOption(options, "every", DEFAULT_EVERY);
+
+    handler = new Handler(Looper.getMainLooper());
+    flushRunnable = new Runnable() {
+      @Override
+      public void run() {
+        flush();
+      }
+    };
+  }
+
+  /**
+   * @param registration
+   * @return true if the registration map has 'backpressure' options
+   */
+  static boolean isConfigured(ReadableMap registration) {
+    return registration.hasKey("backpressure") && !registration.isNull("backpressure");
+  }
+
+  /**
+   * Deliver, delay or drop an event according to the policy.
+   *
+   * @param eventType
+   * @param childKey  key of the child of a child event, null for value events
+   * @param delivery  converts and sends the event
+   */
+  synchronized void offer(String eventType, @Nullable String childKey, Runnable delivery) {
+    String slot = childKey == null ? eventType : eventType + "/" + childKey;
+
+    switch (policy) {
+      case THROTTLE:
+        throttle(slot, delivery);
+        break;
+      case DROP_OLDEST:
+        queue.addLast(delivery);
+        while (queue.size() > maxQueue) {
+          queue.pollFirst();
+          metrics.onDropped(registrationKey);
+        }
+        drain();
+        break;
+      case SAMPLE:
+        sample(slot, delivery);
+        break;
+    }
+
+    // the counts of a removed child are not needed unless it is added again
+    if (SAMPLE.equals(policy) && "child_removed".equals(eventType)) {
+      received.remove("child_added/" + childKey);
+      received.remove("child_changed/" + childKey);
+      received.remove("child_moved/" + childKey);
+      received.remove(slot);
+    }
+  }
+
+  /**
+   * JS has handled a delivered event, only used by the 'drop-oldest' policy.
+   */
+  synchronized void ack() {
+    if (!DROP_OLDEST.equals(policy)) return;
+    if (inFlight > 0) inFlight--;
+    handler.post(flushRunnable);
+  }
+
+  /**
+   * Drop any waiting events, used when the registration is removed.
+   */
+  synchronized void cancel() {
+    handler.removeCallbacks(flushRunnable);
+    pending.clear();
+    received.clear();
+    queue.clear();
+  }
+
+  private void throttle(String slot, Runnable delivery) {
+    if (!pending.isEmpty()) {
+      if (pending.put(slot, delivery) != null) metrics.onDropped(registrationKey);
+      return;
+    }
+
+    long now = SystemClock.elapsedRealtime();
+    long wait = lastDelivery + interval - now;
+    if (wait <= 0) {
+      lastDelivery = now;
+      delivery.run();
+    } else {
+      pending.put(slot, delivery);
+      handler.postDelayed(flushRunnable, wait);
+    }
+  }
+
+  private void sample(String slot, Runnable delivery) {
+    Long count = received.get(slot);
+    long slotReceived = count == null ? 0 : count;
+    received.put(slot, slotReceived + 1);
+
+    if (slotReceived % every == 0) {
+      delivery.run();
+    } else {
+      metrics.onDropped(registrationKey);
+    }
+  }
+
+  /**
+   * Send the waiting events, the latest of each slot in the order the slots were first filled.
+   */
+  private synchronized void flush() {
+    if (DROP_OLDEST.equals(policy)) {
+      drain();
+      return;
+    }
+
+    List<Runnable> deliveries = new ArrayList<>(pending.values());
+    pending.clear();
+
+    if (!deliveries.isEmpty()) {
+      lastDelivery = SystemClock.elapsedRealtime();
+      for (Runnable delivery : deliveries) {
+        delivery.run();
+      }
+    }
+  }
+
+  private void drain() {
+    while (inFlight < maxInFlight && !queue.isEmpty()) {
+      inFlight++;
+      queue.pollFirst().run();
+    }
+  }
+
+  private static int getOption(@Nullable ReadableMap options, String name, int defaultValue) {
+    if (options == null || !options.hasKey(name) || options.isNull(name)) return defaultValue;
+    return Math.max(1, options.getInt(name));
+  }
+}
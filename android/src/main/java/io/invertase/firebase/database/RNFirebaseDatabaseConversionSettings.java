@@ -0,0 +1,38 @@
+package io.invertase.firebase.database;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.invertase.firebase.Utils;
+
+/**
+ * Snapshot conversion options of each app, set from the 'maxDepth' and
+ * 'packedArrays' database options. Apps without options use the defaults.
+ */
+class RNFirebaseDatabaseConversionSettings {
+  private final ConcurrentHashMap<String, Utils.ConversionOptions> options = new ConcurrentHashMap<>();
+
+  /**
+   * @param appName
+   * @return the conversion options of the app
+   */
+  Utils.ConversionOptions get(String appName) {
+    Utils.ConversionOptions appOptions = options.get(appName);
+    return appOptions != null ? appOptions : Utils.ConversionOptions.DEFAULT;
+  }
+
+  /**
+   * @param appName
+   * @param depth   values less than 1 restore the default
+   */
+  synchronized void setMaxDepth(String appName, int depth) {
+    options.put(appName, get(appName).withMaxDepth(depth));
+  }
+
+  /**
+   * @param appName
+   * @param minLength 0 disables packing
+   */
+  synchronized void setPackedArrayMinLength(String appName, int minLength) {
+    options.put(appName, get(appName).withPackedArrayMinLength(minLength));
+  }
+}
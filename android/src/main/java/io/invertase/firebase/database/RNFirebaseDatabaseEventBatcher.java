@@ -0,0 +1,110 @@
+package io.invertase.firebase.database;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReactContext;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import io.invertase.firebase.Utils;
+
+/**
+ * Buffers child events for a single event registration and sends them to JS
+ * as one 'database_sync_event' containing a 'batch' array, keeping event order.
+ * <p>
+ * Events are flushed once 'size' events are buffered or 'interval' ms after the
+ * first buffered event, whichever happens first.
+ */
+class RNFirebaseDatabaseEventBatcher {
+  private static final int DEFAULT_INTERVAL = 16;
+  private static final int DEFAULT_SIZE = 100;
+
+  private final String key;
+  private final int interval;
+  private final int maxSize;
+  private final String eventType;
+  private final ReadableMap registration;
+  private final ReactContext reactContext;
+  private final Handler handler;
+  private final Runnable flushRunnable;
+
+  private WritableArray events;
+  private int size;
+
+  /**
+   * @param context
+   * @param refKey
+   * @param eventType
+   * @param registration
+   * @param options      optional map of 'interval' (ms) and 'size' (events)
+   */
+  RNFirebaseDatabaseEventBatcher(ReactContext context, String refKey, String eventType, ReadableMap registration, @Nullable ReadableMap options) {
+    key = refKey;
+    reactContext = context;
+    this.eventType = eventType;
+    this.registration = registration;
+    interval = getOption(options, "interval", DEFAULT_INTERVAL);
+    maxSize = getOption(options, "size", DEFAULT_SIZE);
+    handler = new Handler(Looper.getMainLooper());
+    flushRunnable = new Runnable() {
+      @Override
+      public void run() {
+        flush();
+      }
+    };
+  }
+
+  /**
+   * Buffer a converted snapshot map, flushing if the batch is full.
+   *
+   * @param data
+   */
+  synchronized void add(WritableMap data) {
+    if (events == null) {
+      events = Arguments.createArray();
+      handler.postDelayed(flushRunnable, interval);
+    }
+
+    events.pushMap(data);
+    size++;
+
+    if (size >= maxSize) {
+      flush();
+    }
+  }
+
+  /**
+   * Send any buffered events to JS.
+   */
+  synchronized void flush() {
+    handler.removeCallbacks(flushRunnable);
+    if (events == null) return;
+
+    WritableMap event = Arguments.createMap();
+    event.putArray("batch", events);
+    RNFirebaseDatabaseReference.putRegistration(event, key, eventType, registration);
+
+    events = null;
+    size = 0;
+
+    Utils.sendEvent(reactContext, "database_sync_event", event);
+  }
+
+  /**
+   * Drop any buffered events, used when the registration is removed.
+   */
+  synchronized void cancel() {
+    handler.removeCallbacks(flushRunnable);
+    events = null;
+    size = 0;
+  }
+
+  private static int getOption(@Nullable ReadableMap options, String name, int defaultValue) {
+    if (options == null || !options.hasKey(name) || options.isNull(name)) return defaultValue;
+    return Math.max(1, options.getInt(name));
+  }
+}
@@ -0,0 +1,208 @@
+package io.invertase.firebase.database;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.Query;
+import com.google.firebase.database.ValueEventListener;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.invertase.firebase.Utils;
+
+/**
+ * Tracks the queries kept synced per app so they can be reported along with the
+ * approximate size of the data each keeps on the device.
+ */
+class RNFirebaseDatabaseKeepSynced {
+  static final long REPORT_TIMEOUT = 5000;
+
+  private final Map<String, Entry> entries = new LinkedHashMap<>();
+  private final Handler handler = new Handler(Looper.getMainLooper());
+  private final long timeout;
+
+  RNFirebaseDatabaseKeepSynced() {
+    this(REPORT_TIMEOUT);
+  }
+
+  /**
+   * @param reportTimeout ms report waits for the size of a query
+   */
+  RNFirebaseDatabaseKeepSynced(long reportTimeout) {
+    timeout = reportTimeout;
+  }
+
+  /**
+   * Keep the query synced (or stop) and record it.
+   *
+   * @param appName
+   * @param path
+   * @param queryKey canonical query key, see RNFirebaseDatabaseRegistry.buildQueryKey
+   * @param query
+   * @param state
+   */
+  void keepSynced(String appName, String path, String queryKey, Query query, boolean state) {
+    query.keepSynced(state);
+
+    synchronized (entries) {
+      if (state) {
+        entries.put(queryKey, new Entry(appName, RNFirebaseDatabaseRegistry.normalizePath(path), queryKey, query));
+      } else {
+        entries.remove(queryKey);
+      }
+    }
+  }
+
+  /**
+   * Resolves with an array of { path, queryKey, bytes } for every query kept synced for the app,
+   * 'bytes' being a rough estimate of the data currently held for it.
+   * <p>
+   * Sizes are measured with a single value read of each query, which is served from the
+   * local cache when the data has already been synced and fetched otherwise. A read that
+   * has not returned within the timeout, e.g. offline with nothing cached, is reported with
+   * null bytes.
+   *
+   * Data nested deeper than the max depth is reported with null bytes.
+   *
+   * @param appName
+   * @param maxDepth max depth of the app, see Utils.ConversionOptions
+   * @param promise
+   */
+  void report(String appName, final int maxDepth, final Promise promise) {
+    final List<Entry> appEntries = new ArrayList<>();
+
+    synchronized (entries) {
+      for (Entry entry : entries.values()) {
+        if (entry.appName.equals(appName)) appEntries.add(entry);
+      }
+    }
+
+    if (appEntries.isEmpty()) {
+      promise.resolve(Arguments.createArray());
+      return;
+    }
+
+    final Report report = new Report(appEntries, promise);
+
+    for (int i = 0; i < appEntries.size(); i++) {
+      final int index = i;
+
+      report.listeners[i] = new ValueEventListener() {
+        @Override
+        public void onDataChange(DataSnapshot dataSnapshot) {
+          long size;
+          try {
+            size = RNFirebaseDatabaseSnapshotCache.estimateSize(dataSnapshot, maxDepth);
+          } catch (Utils.MaxDepthExceededException e) {
+            size = -1;
+          }
+          report.complete(index, size);
+        }
+
+        @Override
+        public void onCancelled(DatabaseError error) {
+          report.complete(index, -1);
+        }
+      };
+    }
+
+    for (int i = 0; i < appEntries.size(); i++) {
+      appEntries.get(i).query.addListenerForSingleValueEvent(report.listeners[i]);
+    }
+
+    handler.postDelayed(report, timeout);
+  }
+
+  /**
+   * Sizes of the queries of a single report, resolved once all are measured or on timeout.
+   */
+  private class Report implements Runnable {
+    private final List<Entry> appEntries;
+    private final Promise promise;
+    private final ValueEventListener[] listeners;
+    private final long[] sizes;
+    private final boolean[] measured;
+    private int pending;
+    private boolean resolved = false;
+
+    Report(List<Entry> appEntries, Promise promise) {
+      this.appEntries = appEntries;
+      this.promise = promise;
+      listeners = new ValueEventListener[appEntries.size()];
+      sizes = new long[appEntries.size()];
+      measured = new boolean[appEntries.size()];
+      pending = appEntries.size();
+    }
+
+    synchronized void complete(int index, long size) {
+      if (resolved || measured[index]) return;
+
+      measured[index] = true;
+      sizes[index] = size;
+      if (--pending == 0) resolve();
+    }
+
+    /**
+     * Timeout, the reads still pending are removed and reported with null bytes.
+     */
+    @Override
+    public synchronized void run() {
+      if (resolved) return;
+
+      for (int i = 0; i < appEntries.size(); i++) {
+        if (measured[i]) continue;
+        sizes[i] = -1;
+        appEntries.get(i).query.removeEventListener(listeners[i]);
+      }
+      resolve();
+    }
+
+    private void resolve() {
+      resolved = true;
+      handler.removeCallbacks(this);
+      promise.resolve(createReport(appEntries, sizes));
+    }
+  }
+
+  private static WritableArray createReport(List<Entry> appEntries, long[] sizes) {
+    WritableArray report = Arguments.createArray();
+
+    for (int i = 0; i < appEntries.size(); i++) {
+      Entry entry = appEntries.get(i);
+      WritableMap item = Arguments.createMap();
+      item.putString("path", entry.path);
+      item.putString("queryKey", entry.queryKey);
+      if (sizes[i] < 0) {
+        item.putNull("bytes");
+      } else {
+        item.putDouble("bytes", sizes[i]);
+      }
+      report.pushMap(item);
+    }
+
+    return report;
+  }
+
+  private static class Entry {
+    private final String appName;
+    private final String path;
+    private final String queryKey;
+    private final Query query;
+
+    Entry(String appName, String path, String queryKey, Query query) {
+      this.appName = appName;
+      this.path = path;
+      this.queryKey = queryKey;
+      this.query = query;
+    }
+  }
+}
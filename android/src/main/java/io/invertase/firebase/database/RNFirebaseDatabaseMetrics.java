@@ -0,0 +1,310 @@
+package io.invertase.firebase.database;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.ValueEventListener;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per app database instrumentation: write acknowledgement latency, listener
+ * attach-to-first-event latency, connection transitions and events (sent and dropped)
+ * per registration.
+ * <p>
+ * Latencies are recorded in lock free log-linear histograms, everything is updated
+ * with atomics so recording never blocks the firebase or native module threads.
+ */
+class RNFirebaseDatabaseMetrics {
+  private final ConcurrentHashMap<String, AppMetrics> apps = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, RegistrationMetrics> registrations = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, ConnectionMetrics> connections = new ConcurrentHashMap<>();
+
+  /**
+   * @param appName
+   * @return a value to pass to recordWriteAck once the write completes
+   */
+  long startWrite(String appName) {
+    monitorConnection(appName);
+    return System.nanoTime();
+  }
+
+  /**
+   * @param appName
+   * @param startNanos value returned by startWrite
+   */
+  void recordWriteAck(String appName, long startNanos) {
+    getApp(appName).writeAck.record(System.nanoTime() - startNanos);
+  }
+
+  /**
+   * Start timing a new listener registration, repeat attaches of the same key are ignored.
+   *
+   * @param appName
+   * @param registrationKey
+   */
+  void onAttach(String appName, String registrationKey) {
+    monitorConnection(appName);
+    registrations.putIfAbsent(registrationKey, new RegistrationMetrics(appName));
+  }
+
+  /**
+   * Count an event for a registration, the first records the attach-to-first-event latency.
+   *
+   * @param registrationKey
+   */
+  void onEvent(String registrationKey) {
+    RegistrationMetrics registration = registrations.get(registrationKey);
+    if (registration == null) return;
+
+    registration.events.incrementAndGet();
+    if (registration.firstEvent.compareAndSet(false, true)) {
+      getApp(registration.appName).attachToFirstEvent.record(System.nanoTime() - registration.attachedAt);
+    }
+  }
+
+  /**
+   * Count an event dropped by the back-pressure policy of a registration.
+   *
+   * @param registrationKey
+   */
+  void onDropped(String registrationKey) {
+    RegistrationMetrics registration = registrations.get(registrationKey);
+    if (registration != null) registration.dropped.incrementAndGet();
+  }
+
+  void onDetach(String registrationKey) {
+    registrations.remove(registrationKey);
+  }
+
+  /**
+   * @param appName
+   * @return map of 'writeAck', 'attachToFirstEvent', 'connection' and 'registrations' metrics
+   */
+  WritableMap toMap(String appName) {
+    AppMetrics app = getApp(appName);
+    long now = System.nanoTime();
+    WritableMap metrics = Arguments.createMap();
+
+    metrics.putDouble("duration", nanosToMillis(now - app.since));
+    metrics.putMap("writeAck", app.writeAck.toMap());
+    metrics.putMap("attachToFirstEvent", app.attachToFirstEvent.toMap());
+
+    WritableMap connection = Arguments.createMap();
+    ConnectionMetrics connectionMetrics = connections.get(appName);
+    if (connectionMetrics == null || connectionMetrics.changedAt == 0) {
+      connection.putNull("connected");
+    } else {
+      connection.putBoolean("connected", connectionMetrics.connected);
+      connection.putDouble("lastChange", nanosToMillis(now - connectionMetrics.changedAt));
+    }
+    connection.putDouble("reconnects", app.reconnects.get());
+    connection.putDouble("disconnects", app.disconnects.get());
+    metrics.putMap("connection", connection);
+
+    WritableMap registrationsMap = Arguments.createMap();
+    for (Map.Entry<String, RegistrationMetrics> entry : registrations.entrySet()) {
+      RegistrationMetrics registration = entry.getValue();
+      if (!registration.appName.equals(appName)) continue;
+
+      long events = registration.events.get();
+      double seconds = (now - Math.max(registration.attachedAt, app.since)) / 1e9;
+
+      WritableMap registrationMap = Arguments.createMap();
+      registrationMap.putDouble("events", events);
+      registrationMap.putDouble("dropped", registration.dropped.get());
+      registrationMap.putDouble("eventsPerSecond", seconds > 0 ? events / seconds : 0);
+      registrationsMap.putMap(entry.getKey(), registrationMap);
+    }
+    metrics.putMap("registrations", registrationsMap);
+
+    return metrics;
+  }
+
+  /**
+   * Reset all metrics for the app, connection monitoring and registrations are kept.
+   *
+   * @param appName
+   */
+  void reset(String appName) {
+    apps.put(appName, new AppMetrics());
+
+    for (RegistrationMetrics registration : registrations.values()) {
+      if (registration.appName.equals(appName)) {
+        registration.events.set(0);
+        registration.dropped.set(0);
+      }
+    }
+  }
+
+  private AppMetrics getApp(String appName) {
+    AppMetrics app = apps.get(appName);
+    if (app != null) return app;
+
+    AppMetrics created = new AppMetrics();
+    app = apps.putIfAbsent(appName, created);
+    return app != null ? app : created;
+  }
+
+  /**
+   * Listen to '.info/connected' once per app, lazily so that persistence
+   * can still be configured before the database is first used.
+   *
+   * @param appName
+   */
+  private void monitorConnection(final String appName) {
+    if (connections.containsKey(appName)) return;
+
+    final ConnectionMetrics connection = new ConnectionMetrics();
+    if (connections.putIfAbsent(appName, connection) != null) return;
+
+    RNFirebaseDatabase.getDatabaseForApp(appName).getReference(".info/connected").addValueEventListener(new ValueEventListener() {
+      @Override
+      public void onDataChange(DataSnapshot dataSnapshot) {
+        boolean connected = Boolean.TRUE.equals(dataSnapshot.getValue());
+        if (connection.changedAt != 0 && connected == connection.connected) return;
+
+        AppMetrics app = getApp(appName);
+        if (connected && connection.hasConnected) app.reconnects.incrementAndGet();
+        if (!connected && connection.hasConnected) app.disconnects.incrementAndGet();
+        if (connected) connection.hasConnected = true;
+
+        connection.connected = connected;
+        connection.changedAt = System.nanoTime();
+      }
+
+      @Override
+      public void onCancelled(DatabaseError error) {
+        // .info paths can not be cancelled
+      }
+    });
+  }
+
+  private static double nanosToMillis(long nanos) {
+    return nanos / 1e6;
+  }
+
+  private static class AppMetrics {
+    private final long since = System.nanoTime();
+    private final Histogram writeAck = new Histogram();
+    private final Histogram attachToFirstEvent = new Histogram();
+    private final AtomicLong reconnects = new AtomicLong();
+    private final AtomicLong disconnects = new AtomicLong();
+  }
+
+  private static class RegistrationMetrics {
+    private final String appName;
+    private final long attachedAt = System.nanoTime();
+    private final AtomicBoolean firstEvent = new AtomicBoolean(false);
+    private final AtomicLong events = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    RegistrationMetrics(String appName) {
+      this.appName = appName;
+    }
+  }
+
+  private static class ConnectionMetrics {
+    private volatile boolean connected = false;
+    private volatile boolean hasConnected = false;
+    private volatile long changedAt = 0;
+  }
+
+  /**
+   * Lock free log-linear histogram of microsecond values, 8 linear sub buckets per
+   * power of two so percentiles are accurate to within 12.5%.
+   */
+  static class Histogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_LIMIT = SUB_BUCKETS * 2;
+    private static final int BUCKETS = LINEAR_LIMIT + (64 - SUB_BUCKET_BITS - 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    void record(long nanos) {
+      long micros = Math.max(0, nanos / 1000);
+
+      counts.incrementAndGet(bucketOf(micros));
+      count.incrementAndGet();
+      sum.addAndGet(micros);
+
+      long currentMax = max.get();
+      while (micros > currentMax && !max.compareAndSet(currentMax, micros)) {
+        currentMax = max.get();
+      }
+    }
+
+    /**
+     * @return map of 'count' and the 'mean', 'p50', 'p95', 'p99' and 'max' latencies in ms
+     */
+    WritableMap toMap() {
+      WritableMap map = Arguments.createMap();
+      long total = count.get();
+
+      map.putDouble("count", total);
+      if (total == 0) {
+        map.putNull("mean");
+        map.putNull("p50");
+        map.putNull("p95");
+        map.putNull("p99");
+        map.putNull("max");
+        return map;
+      }
+
+      long[] snapshot = new long[BUCKETS];
+      long snapshotTotal = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+        snapshot[i] = counts.get(i);
+        snapshotTotal += snapshot[i];
+      }
+
+      map.putDouble("mean", sum.get() / (double) total / 1000);
+      map.putDouble("p50", percentile(snapshot, snapshotTotal, 0.50) / 1000);
+      map.putDouble("p95", percentile(snapshot, snapshotTotal, 0.95) / 1000);
+      map.putDouble("p99", percentile(snapshot, snapshotTotal, 0.99) / 1000);
+      map.putDouble("max", max.get() / 1000d);
+      return map;
+    }
+
+    private double percentile(long[] snapshot, long total, double quantile) {
+      long rank = (long) Math.ceil(quantile * total);
+      long seen = 0;
+
+      for (int i = 0; i < snapshot.length; i++) {
+        seen += snapshot[i];
+        if (seen >= rank && snapshot[i] > 0) {
+          return Math.min(bucketMidpoint(i), max.get());
+        }
+      }
+
+      return max.get();
+    }
+
+    private static int bucketOf(long micros) {
+      if (micros < LINEAR_LIMIT) return (int) micros;
+
+      int exponent = 63 - Long.numberOfLeadingZeros(micros);
+      int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+      return LINEAR_LIMIT + (exponent - SUB_BUCKET_BITS - 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static double bucketMidpoint(int bucket) {
+      if (bucket < LINEAR_LIMIT) return bucket;
+
+      int exponent = (bucket - LINEAR_LIMIT) / SUB_BUCKETS + SUB_BUCKET_BITS + 1;
+      int subBucket = (bucket - LINEAR_LIMIT) % SUB_BUCKETS;
+      long width = 1L << (exponent - SUB_BUCKET_BITS);
+      long lower = (long) (SUB_BUCKETS + subBucket) * width;
+      return lower + width / 2d;
+    }
+  }
+}
@@ -0,0 +1,241 @@
+package io.invertase.firebase.database;
+
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.ReadableType;
+import com.google.firebase.database.Query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable, pre-parsed list of query modifiers as sent from JS.
+ * <p>
+ * Compiled instances are interned by their modifier signatures, so building a query
+ * with a previously seen shape (e.g. repeated once() calls) skips parsing entirely.
+ * JS sends the signature of each modifier, only modifiers without one are read
+ * field by field to build it.
+ */
+class RNFirebaseDatabaseQueryModifiers {
+  private static final int CACHE_SIZE = 256;
+
+  private static final Map<String, RNFirebaseDatabaseQueryModifiers> cache = new LinkedHashMap<String, RNFirebaseDatabaseQueryModifiers>(32, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, RNFirebaseDatabaseQueryModifiers> eldest) {
+      return size() > CACHE_SIZE;
+    }
+  };
+
+  private final List<Modifier> modifiers;
+  private final String key;
+
+  private RNFirebaseDatabaseQueryModifiers(List<Modifier> modifiersList) {
+    modifiers = Collections.unmodifiableList(modifiersList);
+
+    // canonical key, modifiers are compared regardless of the order they were applied in
+    List<String> signatures = new ArrayList<>(modifiersList.size());
+    for (Modifier modifier : modifiersList) {
+      signatures.add(modifier.signature);
+    }
+    Collections.sort(signatures);
+
+    StringBuilder keyBuilder = new StringBuilder();
+    for (String signature : signatures) {
+      keyBuilder.append('$').append(signature);
+    }
+    key = keyBuilder.toString();
+  }
+
+  /**
+   * Return the interned compiled modifiers for the JS modifiers array.
+   *
+   * @param modifiersArray
+   * @return
+   */
+  static RNFirebaseDatabaseQueryModifiers compile(ReadableArray modifiersArray) {
+    int size = modifiersArray.size();
+    String[] signatures = new String[size];
+    StringBuilder cacheKey = new StringBuilder();
+
+    for (int i = 0; i < size; i++) {
+      ReadableMap modifier = modifiersArray.getMap(i);
+      signatures[i] = modifier.hasKey("signature") ? modifier.getString("signature") : Modifier.signatureOf(modifier);
+      cacheKey.append('$').append(signatures[i]);
+    }
+
+    synchronized (cache) {
+      RNFirebaseDatabaseQueryModifiers compiled = cache.get(cacheKey.toString());
+      if (compiled != null) return compiled;
+    }
+
+    List<Modifier> modifiersList = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      modifiersList.add(new Modifier(modifiersArray.getMap(i), signatures[i]));
+    }
+
+    RNFirebaseDatabaseQueryModifiers compiled = new RNFirebaseDatabaseQueryModifiers(modifiersList);
+    synchronized (cache) {
+      cache.put(cacheKey.toString(), compiled);
+    }
+    return compiled;
+  }
+
+  /**
+   * Canonical key for these modifiers, used to identify identical queries.
+   *
+   * @return
+   */
+  String getKey() {
+    return key;
+  }
+
+  /**
+   * Apply all modifiers, in the order they were sent from JS, to the query.
+   *
+   * @param query
+   * @return
+   */
+  Query apply(Query query) {
+    Query result = query;
+    for (Modifier modifier : modifiers) {
+      result = modifier.apply(result);
+    }
+    return result;
+  }
+
+  /**
+   * A single typed modifier, e.g. orderByChild('ts') or limitToLast(50).
+   */
+  private static class Modifier {
+    private final String type;
+    private final String name;
+    private final String key;
+    private final String valueType;
+    private final Object value;
+    private final int limit;
+    private final String signature;
+
+    Modifier(ReadableMap modifier, String modifierSignature) {
+      signature = modifierSignature;
+      type = getString(modifier, "type");
+      name = getString(modifier, "name");
+      key = getString(modifier, "key");
+      valueType = getString(modifier, "valueType");
+      limit = getLimit(modifier);
+      value = getValue(modifier, valueType);
+    }
+
+    /**
+     * Identifies a modifier by all of its fields without allocating a Modifier.
+     *
+     * @param modifier
+     * @return
+     */
+    static String signatureOf(ReadableMap modifier) {
+      String valueType = getString(modifier, "valueType");
+      return getString(modifier, "type") + ":" + getString(modifier, "name") + ":" + getString(modifier, "key") + ":"
+        + valueType + ":" + getValue(modifier, valueType) + ":" + getLimit(modifier);
+    }
+
+    private static int getLimit(ReadableMap modifier) {
+      return modifier.hasKey("limit") && modifier.getType("limit") == ReadableType.Number ? (int) modifier.getDouble("limit") : 0;
+    }
+
+    private static Object getValue(ReadableMap modifier, String valueType) {
+      if ("number".equals(valueType)) {
+        return modifier.getDouble("value");
+      } else if ("boolean".equals(valueType)) {
+        return modifier.getBoolean("value");
+      } else if ("string".equals(valueType)) {
+        return modifier.getString("value");
+      }
+      return null;
+    }
+
+    private static String getString(ReadableMap modifier, String name) {
+      return modifier.hasKey(name) && !modifier.isNull(name) ? modifier.getString(name) : null;
+    }
+
+    Query apply(Query query) {
+      if ("orderBy".equals(type)) {
+        return applyOrderBy(query);
+      } else if ("limit".equals(type)) {
+        return applyLimit(query);
+      } else if ("filter".equals(type)) {
+        return applyFilter(query);
+      }
+      return query;
+    }
+
+    private Query applyOrderBy(Query query) {
+      switch (name) {
+        case "orderByKey":
+          return query.orderByKey();
+        case "orderByPriority":
+          return query.orderByPriority();
+        case "orderByValue":
+          return query.orderByValue();
+        case "orderByChild":
+          return query.orderByChild(key);
+        default:
+          return query;
+      }
+    }
+
+    private Query applyLimit(Query query) {
+      if ("limitToLast".equals(name)) {
+        return query.limitToLast(limit);
+      } else if ("limitToFirst".equals(name)) {
+        return query.limitToFirst(limit);
+      }
+      return query;
+    }
+
+    private Query applyFilter(Query query) {
+      if ("equalTo".equals(name)) {
+        return applyEqualTo(query);
+      } else if ("endAt".equals(name)) {
+        return applyEndAt(query);
+      } else if ("startAt".equals(name)) {
+        return applyStartAt(query);
+      }
+      return query;
+    }
+
+    private Query applyEqualTo(Query query) {
+      if (value instanceof Double) {
+        return key == null ? query.equalTo((Double) value) : query.equalTo((Double) value, key);
+      } else if (value instanceof Boolean) {
+        return key == null ? query.equalTo((Boolean) value) : query.equalTo((Boolean) value, key);
+      } else if (value instanceof String) {
+        return key == null ? query.equalTo((String) value) : query.equalTo((String) value, key);
+      }
+      return query;
+    }
+
+    private Query applyEndAt(Query query) {
+      if (value instanceof Double) {
+        return key == null ? query.endAt((Double) value) : query.endAt((Double) value, key);
+      } else if (value instanceof Boolean) {
+        return key == null ? query.endAt((Boolean) value) : query.endAt((Boolean) value, key);
+      } else if (value instanceof String) {
+        return key == null ? query.endAt((String) value) : query.endAt((String) value, key);
+      }
+      return query;
+    }
+
+    private Query applyStartAt(Query query) {
+      if (value instanceof Double) {
+        return key == null ? query.startAt((Double) value) : query.startAt((Double) value, key);
+      } else if (value instanceof Boolean) {
+        return key == null ? query.startAt((Boolean) value) : query.startAt((Boolean) value, key);
+      } else if (value instanceof String) {
+        return key == null ? query.startAt((String) value) : query.startAt((String) value, key);
+      }
+      return query;
+    }
+  }
+}
@@ -2,7 +2,9 @@ package io.invertase.firebase.database;
 
 import java.util.Map;
 import java.util.List;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
 
 import android.util.Log;
 import android.support.annotation.Nullable;
@@ -11,8 +13,8 @@ import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.ReadableMap;
 import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.ReactContext;
-import com.facebook.react.bridge.ReadableArray;
 
 import com.google.firebase.database.Query;
 import com.google.firebase.database.DataSnapshot;
@@ -25,34 +27,67 @@ import io.invertase.firebase.Utils;
 
 class RNFirebaseDatabaseReference {
   private String key;
+  private String path;
   private Query query;
   private String appName;
+  private final Object lock;
+  private RNFirebaseDatabaseRegistry registry;
   private ReactContext reactContext;
+  private RNFirebaseDatabaseSnapshotCache snapshotCache;
+  private RNFirebaseDatabaseMetrics metrics;
+  private RNFirebaseDatabaseConversionSettings conversionSettings;
   private static final String TAG = "RNFirebaseDBReference";
-  private HashMap<String, ChildEventListener> childEventListeners;
-  private HashMap<String, ValueEventListener> valueEventListeners;
+  private ConcurrentHashMap<String, ChildEventListener> childEventListeners;
+  private ConcurrentHashMap<String, ValueEventListener> valueEventListeners;
+  private ConcurrentHashMap<String, RNFirebaseDatabaseEventBatcher> eventBatchers;
+  private ConcurrentHashMap<String, DataSnapshot> diffSnapshots;
+  private ConcurrentHashMap<String, SharedEventListener> sharedEventListeners;
+  private ConcurrentHashMap<String, RNFirebaseDatabaseBackPressure> backPressures;
 
   /**
    * RNFirebase wrapper around FirebaseDatabaseReference,
    * handles Query generation and event listeners.
    *
    * @param context
+   * @param cache
+   * @param databaseMetrics
+   * @param settings         conversion options of each app
+   * @param databaseRegistry registry that attaches and detaches registrations of this query
    * @param app
    * @param refKey
    * @param refPath
-   * @param modifiersArray
+   * @param modifiers
    */
-  RNFirebaseDatabaseReference(ReactContext context, String app, String refKey, String refPath, ReadableArray modifiersArray) {
+  RNFirebaseDatabaseReference(ReactContext context, RNFirebaseDatabaseSnapshotCache cache, RNFirebaseDatabaseMetrics databaseMetrics, RNFirebaseDatabaseConversionSettings settings, RNFirebaseDatabaseRegistry databaseRegistry, String app, String refKey, String refPath, RNFirebaseDatabaseQueryModifiers modifiers) {
     key = refKey;
+    path = RNFirebaseDatabaseRegistry.normalizePath(refPath);
     query = null;
     appName = app;
+    registry = databaseRegistry;
+    lock = databaseRegistry.lockFor(refKey);
     reactContext = context;
-    childEventListeners = new HashMap<>();
-    valueEventListeners = new HashMap<>();
-    buildDatabaseQueryAtPathAndModifiers(refPath, modifiersArray);
+    snapshotCache = cache;
+    metrics = databaseMetrics;
+    conversionSettings = settings;
+    childEventListeners = new ConcurrentHashMap<>();
+    valueEventListeners = new ConcurrentHashMap<>();
+    eventBatchers = new ConcurrentHashMap<>();
+    diffSnapshots = new ConcurrentHashMap<>();
+    sharedEventListeners = new ConcurrentHashMap<>();
+    backPressures = new ConcurrentHashMap<>();
+    buildDatabaseQueryAtPathAndModifiers(refPath, modifiers);
   }
 
 
+  /**
+   * Canonical query key this reference is registered under.
+   *
+   * @return String
+   */
+  String getKey() {
+    return key;
+  }
+
   /**
    * Used outside of class for keepSynced etc.
    *
@@ -69,7 +104,18 @@ class RNFirebaseDatabaseReference {
    * @return
    */
   private Boolean hasEventListener(String eventRegistrationKey) {
-    return valueEventListeners.containsKey(eventRegistrationKey) || childEventListeners.containsKey(eventRegistrationKey);
+    if (valueEventListeners.containsKey(eventRegistrationKey) || childEventListeners.containsKey(eventRegistrationKey)) {
+      return true;
+    }
+
+    for (SharedEventListener sharedEventListener : sharedEventListeners.values()) {
+      if (sharedEventListener.registrations.containsKey(eventRegistrationKey)
+        || sharedEventListener.joining.containsKey(eventRegistrationKey)) {
+        return true;
+      }
+    }
+
+    return false;
   }
 
   /**
@@ -78,7 +124,7 @@ class RNFirebaseDatabaseReference {
    * @return
    */
   Boolean hasListeners() {
-    return valueEventListeners.size() > 0 || childEventListeners.size() > 0;
+    return valueEventListeners.size() > 0 || childEventListeners.size() > 0 || sharedEventListeners.size() > 0;
   }
 
   /**
@@ -88,14 +134,101 @@ class RNFirebaseDatabaseReference {
    * @param eventRegistrationKey
    */
   void removeEventListener(String eventRegistrationKey) {
-    if (valueEventListeners.containsKey(eventRegistrationKey)) {
-      query.removeEventListener(valueEventListeners.get(eventRegistrationKey));
-      valueEventListeners.remove(eventRegistrationKey);
+    ValueEventListener valueEventListener = valueEventListeners.remove(eventRegistrationKey);
+    if (valueEventListener != null) {
+      query.removeEventListener(valueEventListener);
+      diffSnapshots.remove(eventRegistrationKey);
+      RNFirebaseDatabaseSnapshotStream.cancel(eventRegistrationKey);
+    }
+
+    ChildEventListener childEventListener = childEventListeners.remove(eventRegistrationKey);
+    if (childEventListener != null) {
+      query.removeEventListener(childEventListener);
+    }
+
+    RNFirebaseDatabaseEventBatcher batcher = eventBatchers.remove(eventRegistrationKey);
+    if (batcher != null) {
+      batcher.cancel();
+    }
+
+    RNFirebaseDatabaseBackPressure backPressure = backPressures.remove(eventRegistrationKey);
+    if (backPressure != null) {
+      backPressure.cancel();
+    }
+
+    synchronized (lock) {
+      for (SharedEventListener sharedEventListener : sharedEventListeners.values()) {
+        boolean removed = sharedEventListener.registrations.remove(eventRegistrationKey) != null
+          | sharedEventListener.joining.remove(eventRegistrationKey) != null;
+
+        if (removed && sharedEventListener.registrations.isEmpty() && sharedEventListener.joining.isEmpty()) {
+          removeSharedEventListener(sharedEventListener);
+        }
+      }
+    }
+  }
+
+  /**
+   * JS has handled an event for a registration with a 'drop-oldest' back-pressure policy.
+   *
+   * @param eventRegistrationKey
+   */
+  void ack(String eventRegistrationKey) {
+    RNFirebaseDatabaseBackPressure backPressure = backPressures.get(eventRegistrationKey);
+    if (backPressure != null) backPressure.ack();
+  }
+
+  /**
+   * Add a registration to the shared listener for the event type,
+   * adding the listener to the query if this is the first registration.
+   * <p>
+   * The listener has already sent its initial events, so a registration joining an
+   * existing listener is first sent the current 'value', or a 'child_added' event for
+   * each current child, read with a single value event. It only receives the events of
+   * the shared listener once these are sent, events being delivered in order on the
+   * main thread.
+   *
+   * @param eventType
+   * @param registration
+   */
+  private void addSharedEventListener(String eventType, ReadableMap registration) {
+    SharedEventListener sharedEventListener = sharedEventListeners.get(eventType);
+    String eventRegistrationKey = registration.getString("eventRegistrationKey");
+
+    if (sharedEventListener == null) {
+      sharedEventListener = new SharedEventListener(eventType);
+      sharedEventListeners.put(eventType, sharedEventListener);
+      sharedEventListener.registrations.put(eventRegistrationKey, registration);
+
+      if ("value".equals(eventType)) {
+        query.addValueEventListener((ValueEventListener) sharedEventListener);
+      } else {
+        query.addChildEventListener((ChildEventListener) sharedEventListener);
+      }
+
+      return;
+    }
+
+    // changed, removed and moved events have no initial events to catch up on
+    if (!"value".equals(eventType) && !"child_added".equals(eventType)) {
+      sharedEventListener.registrations.put(eventRegistrationKey, registration);
+      return;
     }
 
-    if (childEventListeners.containsKey(eventRegistrationKey)) {
-      query.removeEventListener(childEventListeners.get(eventRegistrationKey));
-      childEventListeners.remove(eventRegistrationKey);
+    sharedEventListener.joining.put(eventRegistrationKey, registration);
+    query.addListenerForSingleValueEvent(new JoinListener(sharedEventListener, eventRegistrationKey));
+  }
+
+  /**
+   * @param sharedEventListener
+   */
+  private void removeSharedEventListener(SharedEventListener sharedEventListener) {
+    if (!sharedEventListeners.remove(sharedEventListener.eventType, sharedEventListener)) return;
+
+    if ("value".equals(sharedEventListener.eventType)) {
+      query.removeEventListener((ValueEventListener) sharedEventListener);
+    } else {
+      query.removeEventListener((ChildEventListener) sharedEventListener);
     }
   }
 
@@ -125,20 +258,43 @@ class RNFirebaseDatabaseReference {
   }
 
   /**
-   * Listen for a single .once('value',..) event from firebase.
+   * Listen for a single .once('value',..) event from firebase,
+   * resolving from the snapshot cache when possible.
    *
    * @param promise
    */
   private void addOnceValueEventListener(final Promise promise) {
+    if (snapshotCache.isEnabled()) {
+      WritableMap cached = snapshotCache.get(key);
+      if (cached != null) {
+        promise.resolve(cached);
+        return;
+      }
+    }
+
+    final RNFirebaseDatabaseSnapshotCache.Request cacheRequest = snapshotCache.begin(appName, path);
+
     ValueEventListener onceValueEventListener = new ValueEventListener() {
       @Override
       public void onDataChange(DataSnapshot dataSnapshot) {
-        WritableMap data = Utils.snapshotToMap(dataSnapshot, null);
+        WritableMap data;
+        Utils.SizeEstimate size = cacheRequest != null ? new Utils.SizeEstimate() : null;
+
+        try {
+          data = Utils.snapshotToMap(dataSnapshot, null, conversionSettings.get(appName), size);
+        } catch (Utils.MaxDepthExceededException e) {
+          if (cacheRequest != null) snapshotCache.cancel(cacheRequest);
+          promise.reject(Utils.MaxDepthExceededException.CODE, e.getMessage(), e);
+          return;
+        }
+
+        if (cacheRequest != null) snapshotCache.put(key, cacheRequest, data, size.getBytes());
         promise.resolve(data);
       }
 
       @Override
       public void onCancelled(DatabaseError error) {
+        if (cacheRequest != null) snapshotCache.cancel(cacheRequest);
         RNFirebaseDatabase.handlePromise(promise, error);
       }
     };
@@ -159,8 +315,7 @@ class RNFirebaseDatabaseReference {
       public void onChildAdded(DataSnapshot dataSnapshot, String previousChildName) {
         if ("child_added".equals(eventName)) {
           query.removeEventListener(this);
-          WritableMap data = Utils.snapshotToMap(dataSnapshot, previousChildName);
-          promise.resolve(data);
+          resolveOnce(promise, dataSnapshot, previousChildName);
         }
       }
 
@@ -168,8 +323,7 @@ class RNFirebaseDatabaseReference {
       public void onChildChanged(DataSnapshot dataSnapshot, String previousChildName) {
         if ("child_changed".equals(eventName)) {
           query.removeEventListener(this);
-          WritableMap data = Utils.snapshotToMap(dataSnapshot, previousChildName);
-          promise.resolve(data);
+          resolveOnce(promise, dataSnapshot, previousChildName);
         }
       }
 
@@ -177,8 +331,7 @@ class RNFirebaseDatabaseReference {
       public void onChildRemoved(DataSnapshot dataSnapshot) {
         if ("child_removed".equals(eventName)) {
           query.removeEventListener(this);
-          WritableMap data = Utils.snapshotToMap(dataSnapshot, null);
-          promise.resolve(data);
+          resolveOnce(promise, dataSnapshot, null);
         }
       }
 
@@ -186,8 +339,7 @@ class RNFirebaseDatabaseReference {
       public void onChildMoved(DataSnapshot dataSnapshot, String previousChildName) {
         if ("child_moved".equals(eventName)) {
           query.removeEventListener(this);
-          WritableMap data = Utils.snapshotToMap(dataSnapshot, previousChildName);
-          promise.resolve(data);
+          resolveOnce(promise, dataSnapshot, previousChildName);
         }
       }
 
@@ -202,16 +354,46 @@ class RNFirebaseDatabaseReference {
   }
 
 
+  /**
+   * Resolve a once() promise with the converted snapshot.
+   *
+   * @param promise
+   * @param dataSnapshot
+   * @param previousChildName
+   */
+  private void resolveOnce(Promise promise, DataSnapshot dataSnapshot, @Nullable String previousChildName) {
+    try {
+      promise.resolve(Utils.snapshotToMap(dataSnapshot, previousChildName, conversionSettings.get(appName)));
+    } catch (Utils.MaxDepthExceededException e) {
+      promise.reject(Utils.MaxDepthExceededException.CODE, e.getMessage(), e);
+    }
+  }
+
   /**
    * Handles a React Native JS '.on(..)' request and initializes listeners.
    *
+   * @param eventType
    * @param registration
+   * @param batch        optional child event batching options, ignored for 'value' events
+   *                     and registrations with back-pressure options
+   * @param diff         whether 'value' events after the first should only send a patch
+   * @param stream       optional chunking options for full 'value' events
    */
-  void on(String eventType, ReadableMap registration) {
-    if (eventType.equals("value")) {
-      addValueEventListener(registration);
+  void on(String eventType, ReadableMap registration, @Nullable ReadableMap batch, boolean diff, @Nullable ReadableMap stream) {
+    if (hasEventListener(registration.getString("eventRegistrationKey"))) return;
+
+    if (RNFirebaseDatabaseBackPressure.isConfigured(registration)) {
+      String eventRegistrationKey = registration.getString("eventRegistrationKey");
+      backPressures.put(eventRegistrationKey, new RNFirebaseDatabaseBackPressure(eventRegistrationKey, metrics, registration.getMap("backpressure")));
+    }
+
+    // registrations without per registration options share a single native listener
+    if (batch == null && !diff && stream == null && !RNFirebaseDatabaseBackPressure.isConfigured(registration)) {
+      addSharedEventListener(eventType, registration);
+    } else if (eventType.equals("value")) {
+      addValueEventListener(registration, diff, stream);
     } else {
-      addChildEventListener(registration, eventType);
+      addChildEventListener(registration, eventType, batch);
     }
   }
 
@@ -230,49 +412,98 @@ class RNFirebaseDatabaseReference {
   }
 
 
+  /**
+   * Handles a React Native JS 'once' request for a 'value' event, sending the
+   * snapshot to JS in chunks before resolving the promise.
+   *
+   * @param streamId
+   * @param options
+   * @param promise
+   */
+  void onceStream(final String streamId, @Nullable final ReadableMap options, final Promise promise) {
+    ValueEventListener onceValueEventListener = new ValueEventListener() {
+      @Override
+      public void onDataChange(DataSnapshot dataSnapshot) {
+        RNFirebaseDatabaseSnapshotStream.stream(streamId, dataSnapshot, options, conversionSettings.get(appName), new RNFirebaseDatabaseSnapshotStream.ChunkListener() {
+          @Override
+          public void onChunk(WritableMap chunk) {
+            WritableMap event = Arguments.createMap();
+            event.putString("key", key);
+            event.putMap("stream", chunk);
+            Utils.sendEvent(reactContext, "database_sync_event", event);
+          }
+
+          @Override
+          public void onDone() {
+            promise.resolve(null);
+          }
+
+          @Override
+          public void onError(WritableMap error) {
+            promise.reject(error.getString("code"), error.getString("message"));
+          }
+        });
+      }
+
+      @Override
+      public void onCancelled(DatabaseError error) {
+        RNFirebaseDatabase.handlePromise(promise, error);
+      }
+    };
+
+    query.addListenerForSingleValueEvent(onceValueEventListener);
+  }
+
   /**
    * Add a native .on('child_X',.. ) event listener.
    *
    * @param registration
    * @param eventType
+   * @param batch        optional batching options, events are sent individually if null
    */
-  private void addChildEventListener(final ReadableMap registration, final String eventType) {
+  private void addChildEventListener(final ReadableMap registration, final String eventType, @Nullable ReadableMap batch) {
     final String eventRegistrationKey = registration.getString("eventRegistrationKey");
     final String registrationCancellationKey = registration.getString("registrationCancellationKey");
 
     if (!hasEventListener(eventRegistrationKey)) {
+      if (batch != null && !backPressures.containsKey(eventRegistrationKey)) {
+        eventBatchers.put(eventRegistrationKey, new RNFirebaseDatabaseEventBatcher(reactContext, key, eventType, registration, batch));
+      }
+
       ChildEventListener childEventListener = new ChildEventListener() {
         @Override
         public void onChildAdded(DataSnapshot dataSnapshot, String previousChildName) {
           if ("child_added".equals(eventType)) {
-            handleDatabaseEvent("child_added", registration, dataSnapshot, previousChildName);
+            dispatchChildEvent("child_added", registration, dataSnapshot, previousChildName);
           }
         }
 
         @Override
         public void onChildChanged(DataSnapshot dataSnapshot, String previousChildName) {
           if ("child_changed".equals(eventType)) {
-            handleDatabaseEvent("child_changed", registration, dataSnapshot, previousChildName);
+            dispatchChildEvent("child_changed", registration, dataSnapshot, previousChildName);
           }
         }
 
         @Override
         public void onChildRemoved(DataSnapshot dataSnapshot) {
           if ("child_removed".equals(eventType)) {
-            handleDatabaseEvent("child_removed", registration, dataSnapshot, null);
+            dispatchChildEvent("child_removed", registration, dataSnapshot, null);
           }
         }
 
         @Override
         public void onChildMoved(DataSnapshot dataSnapshot, String previousChildName) {
           if ("child_moved".equals(eventType)) {
-            handleDatabaseEvent("child_moved", registration, dataSnapshot, previousChildName);
+            dispatchChildEvent("child_moved", registration, dataSnapshot, previousChildName);
           }
         }
 
         @Override
         public void onCancelled(DatabaseError error) {
-          removeEventListener(eventRegistrationKey);
+          RNFirebaseDatabaseEventBatcher batcher = eventBatchers.get(eventRegistrationKey);
+          if (batcher != null) batcher.flush();
+          registry.detach(eventRegistrationKey);
           handleDatabaseError(registration, error);
         }
       };
@@ -283,22 +514,39 @@ class RNFirebaseDatabaseReference {
 
   /**
    * Add a native .on('value',.. ) event listener.
+   * <p>
+   * In diff mode the last snapshot is kept for the registration and subsequent
+   * events only contain a patch against it, the first event sends the full value.
    *
    * @param registration
+   * @param diff
+   * @param stream       optional chunking options, full values are sent as a single event if null
    */
-  private void addValueEventListener(final ReadableMap registration) {
+  private void addValueEventListener(final ReadableMap registration, final boolean diff, @Nullable final ReadableMap stream) {
     final String eventRegistrationKey = registration.getString("eventRegistrationKey");
 
     if (!hasEventListener(eventRegistrationKey)) {
       ValueEventListener valueEventListener = new ValueEventListener() {
         @Override
-        public void onDataChange(DataSnapshot dataSnapshot) {
-          handleDatabaseEvent("value", registration, dataSnapshot, null);
+        public void onDataChange(final DataSnapshot dataSnapshot) {
+          RNFirebaseDatabaseBackPressure backPressure = backPressures.get(eventRegistrationKey);
+
+          if (backPressure == null) {
+            handleValueEvent(registration, diff, stream, dataSnapshot);
+            return;
+          }
+
+          backPressure.offer("value", null, new Runnable() {
+            @Override
+            public void run() {
+              handleValueEvent(registration, diff, stream, dataSnapshot);
+            }
+          });
         }
 
         @Override
         public void onCancelled(DatabaseError error) {
-          removeEventListener(eventRegistrationKey);
+          registry.detach(eventRegistrationKey);
           handleDatabaseError(registration, error);
         }
       };
@@ -307,6 +555,56 @@ class RNFirebaseDatabaseReference {
     }
   }
 
+  /**
+   * Handles a value event for a registration with its own listener.
+   *
+   * @param registration
+   * @param diff
+   * @param stream
+   * @param dataSnapshot
+   */
+  private void handleValueEvent(ReadableMap registration, boolean diff, @Nullable ReadableMap stream, DataSnapshot dataSnapshot) {
+    if (diff) {
+      DataSnapshot previous = diffSnapshots.put(registration.getString("eventRegistrationKey"), dataSnapshot);
+      if (previous != null) {
+        handleDatabasePatchEvent(registration, previous, dataSnapshot);
+        return;
+      }
+    }
+
+    if (stream != null) {
+      handleDatabaseStreamEvent(registration, dataSnapshot, stream);
+      return;
+    }
+
+    handleDatabaseEvent("value", registration, dataSnapshot, null);
+  }
+
+  /**
+   * Handles a child event for a registration with its own listener, applying
+   * its back-pressure policy if it has one.
+   *
+   * @param eventType
+   * @param registration
+   * @param dataSnapshot
+   * @param previousChildName
+   */
+  private void dispatchChildEvent(final String eventType, final ReadableMap registration, final DataSnapshot dataSnapshot, @Nullable final String previousChildName) {
+    RNFirebaseDatabaseBackPressure backPressure = backPressures.get(registration.getString("eventRegistrationKey"));
+
+    if (backPressure == null) {
+      handleDatabaseEvent(eventType, registration, dataSnapshot, previousChildName);
+      return;
+    }
+
+    backPressure.offer(eventType, dataSnapshot.getKey(), new Runnable() {
+      @Override
+      public void run() {
+        handleDatabaseEvent(eventType, registration, dataSnapshot, previousChildName);
+      }
+    });
+  }
+
   /**
    * Handles value/child update events.
    *
@@ -315,208 +613,349 @@ class RNFirebaseDatabaseReference {
    * @param previousChildName
    */
   private void handleDatabaseEvent(String eventType, ReadableMap registration, DataSnapshot dataSnapshot, @Nullable String previousChildName) {
+    snapshotCache.invalidate(appName, path);
+    metrics.onEvent(registration.getString("eventRegistrationKey"));
+    WritableMap data;
+
+    try {
+      data = Utils.snapshotToMap(dataSnapshot, previousChildName, conversionSettings.get(appName));
+    } catch (Utils.MaxDepthExceededException e) {
+      handleConversionError(registration, e);
+      return;
+    }
+
+    RNFirebaseDatabaseEventBatcher batcher = eventBatchers.get(registration.getString("eventRegistrationKey"));
+
+    if (batcher != null) {
+      batcher.add(data);
+      return;
+    }
+
     WritableMap event = Arguments.createMap();
-    WritableMap data = Utils.snapshotToMap(dataSnapshot, previousChildName);
 
     event.putMap("data", data);
-    event.putString("key", key);
-    event.putString("eventType", eventType);
-    event.putMap("registration", Utils.readableMapToWritableMap(registration));
+    putRegistration(event, key, eventType, registration);
 
     Utils.sendEvent(reactContext, "database_sync_event", event);
   }
 
   /**
-   * Handles a database listener cancellation error.
+   * Handles a diff mode value event, sending the snapshot without its value
+   * and a patch to apply to the previously sent value.
    *
-   * @param error
+   * @param registration
+   * @param previous
+   * @param dataSnapshot
    */
-  private void handleDatabaseError(ReadableMap registration, DatabaseError error) {
+  private void handleDatabasePatchEvent(ReadableMap registration, DataSnapshot previous, DataSnapshot dataSnapshot) {
+    snapshotCache.invalidate(appName, path);
+    metrics.onEvent(registration.getString("eventRegistrationKey"));
     WritableMap event = Arguments.createMap();
+    WritableMap data = Arguments.createMap();
 
-    event.putString("key", key);
-    event.putMap("error", RNFirebaseDatabase.getJSError(error));
-    event.putMap("registration", Utils.readableMapToWritableMap(registration));
+    try {
+      data.putMap("patch", RNFirebaseDatabaseSnapshotDiff.createPatch(previous, dataSnapshot, conversionSettings.get(appName)));
+    } catch (Utils.MaxDepthExceededException e) {
+      handleConversionError(registration, e);
+      return;
+    }
+
+    data.putMap("snapshot", Utils.snapshotMetadataToMap(dataSnapshot));
+    data.putString("previousChildName", null);
+
+    event.putMap("data", data);
+    putRegistration(event, key, "value", registration);
 
     Utils.sendEvent(reactContext, "database_sync_event", event);
   }
 
   /**
-   * @param path
-   * @param modifiers
-   * @return
+   * Handles a streamed value event, sending the snapshot as a sequence of chunk events.
+   *
+   * @param registration
+   * @param dataSnapshot
+   * @param options
    */
-  private void buildDatabaseQueryAtPathAndModifiers(String path, ReadableArray modifiers) {
-    FirebaseDatabase firebaseDatabase = RNFirebaseDatabase.getDatabaseForApp(appName);
+  private void handleDatabaseStreamEvent(final ReadableMap registration, DataSnapshot dataSnapshot, ReadableMap options) {
+    snapshotCache.invalidate(appName, path);
+
+    String streamId = registration.getString("eventRegistrationKey");
+    metrics.onEvent(streamId);
+
+    RNFirebaseDatabaseSnapshotStream.stream(streamId, dataSnapshot, options, conversionSettings.get(appName), new RNFirebaseDatabaseSnapshotStream.ChunkListener() {
+      @Override
+      public void onChunk(WritableMap chunk) {
+        WritableMap event = Arguments.createMap();
 
-    query = firebaseDatabase.getReference(path);
-    List<Object> modifiersList = Utils.recursivelyDeconstructReadableArray(modifiers);
+        event.putMap("stream", chunk);
+        putRegistration(event, key, "value", registration);
 
-    for (Object m : modifiersList) {
-      Map modifier = (Map) m;
-      String type = (String) modifier.get("type");
-      String name = (String) modifier.get("name");
+        Utils.sendEvent(reactContext, "database_sync_event", event);
+      }
 
-      if ("orderBy".equals(type)) {
-        applyOrderByModifier(name, type, modifier);
-      } else if ("limit".equals(type)) {
-        applyLimitModifier(name, type, modifier);
-      } else if ("filter".equals(type)) {
-        applyFilterModifier(name, modifier);
+      @Override
+      public void onDone() {
       }
-    }
-  }
 
-  /* =================
-   *  QUERY MODIFIERS
-   * =================
-   */
+      @Override
+      public void onError(WritableMap error) {
+        Log.w(TAG, error.getString("message"));
+        registry.detach(registration.getString("eventRegistrationKey"));
+        sendErrorEvent(registration, error);
+      }
+    });
+  }
 
   /**
-   * @param name
-   * @param type
-   * @param modifier
+   * Handles value/child events for a shared listener, the snapshot is converted once
+   * and sent in a single event along with every registration it applies to.
+   *
+   * @param eventType
+   * @param registrations
+   * @param dataSnapshot
+   * @param previousChildName
    */
-  private void applyOrderByModifier(String name, String type, Map modifier) {
-    switch (name) {
-      case "orderByKey":
-        query = query.orderByKey();
-        break;
-      case "orderByPriority":
-        query = query.orderByPriority();
-        break;
-      case "orderByValue":
-        query = query.orderByValue();
-        break;
-      case "orderByChild":
-        String key = (String) modifier.get("key");
-        query = query.orderByChild(key);
+  private void handleSharedDatabaseEvent(String eventType, Map<String, ReadableMap> registrationsMap, DataSnapshot dataSnapshot, @Nullable String previousChildName) {
+    List<ReadableMap> registrations = new ArrayList<>(registrationsMap.values());
+    if (registrations.isEmpty()) return;
+
+    snapshotCache.invalidate(appName, path);
+    for (ReadableMap registration : registrations) {
+      metrics.onEvent(registration.getString("eventRegistrationKey"));
+    }
+
+    WritableMap event = Arguments.createMap();
+    WritableMap data = Utils.snapshotToMap(dataSnapshot, previousChildName, conversionSettings.get(appName));
+
+    event.putMap("data", data);
+
+    if (registrations.size() == 1) {
+      putRegistration(event, key, eventType, registrations.get(0));
+    } else if (hasRegistrationIds(registrations)) {
+      WritableArray ids = Arguments.createArray();
+      for (ReadableMap registration : registrations) {
+        ids.pushInt(registration.getInt("id"));
+      }
+      event.putArray("ids", ids);
+    } else {
+      event.putString("key", key);
+      event.putString("eventType", eventType);
+
+      WritableArray registrationsArray = Arguments.createArray();
+      for (ReadableMap registration : registrations) {
+        registrationsArray.pushMap(Utils.readableMapToWritableMap(registration));
+      }
+      event.putArray("registrations", registrationsArray);
     }
+
+    Utils.sendEvent(reactContext, "database_sync_event", event);
   }
 
   /**
-   * @param name
-   * @param type
-   * @param modifier
+   * Identify the registration an event is for by the integer id JS assigned to it, so
+   * only an int is sent rather than a copy of the registration map, the ref key and
+   * the event type, which JS already holds for the id. Registrations without an id
+   * are sent in full.
+   *
+   * @param event
+   * @param refKey
+   * @param eventType
+   * @param registration
    */
-  private void applyLimitModifier(String name, String type, Map modifier) {
-    int limit = ((Double) modifier.get("limit")).intValue();
-    if ("limitToLast".equals(name)) {
-      query = query.limitToLast(limit);
-    } else if ("limitToFirst".equals(name)) {
-      query = query.limitToFirst(limit);
+  static void putRegistration(WritableMap event, String refKey, String eventType, ReadableMap registration) {
+    if (registration.hasKey("id")) {
+      event.putInt("id", registration.getInt("id"));
+      return;
+    }
+
+    event.putString("key", refKey);
+    event.putString("eventType", eventType);
+    event.putMap("registration", Utils.readableMapToWritableMap(registration));
+  }
+
+  private static boolean hasRegistrationIds(List<ReadableMap> registrations) {
+    for (ReadableMap registration : registrations) {
+      if (!registration.hasKey("id")) return false;
     }
+    return true;
   }
 
   /**
-   * @param name
-   * @param modifier
+   * Handles a database listener cancellation error.
+   *
+   * @param error
    */
-  private void applyFilterModifier(String name, Map modifier) {
-    String valueType = (String) modifier.get("valueType");
-    String key = (String) modifier.get("key");
-    if ("equalTo".equals(name)) {
-      applyEqualToFilter(key, valueType, modifier);
-    } else if ("endAt".equals(name)) {
-      applyEndAtFilter(key, valueType, modifier);
-    } else if ("startAt".equals(name)) {
-      applyStartAtFilter(key, valueType, modifier);
-    }
+  private void handleDatabaseError(ReadableMap registration, DatabaseError error) {
+    sendErrorEvent(registration, RNFirebaseDatabase.getJSError(error));
   }
 
+  /**
+   * Handles a snapshot that is nested too deep to convert, the registration
+   * is removed the same way as a cancelled listener.
+   *
+   * @param registration
+   * @param exception
+   */
+  private void handleConversionError(ReadableMap registration, Utils.MaxDepthExceededException exception) {
+    Log.w(TAG, exception.getMessage());
+    registry.detach(registration.getString("eventRegistrationKey"));
+    sendErrorEvent(registration, exception.toMap());
+  }
 
-  /* ===============
-   *  QUERY FILTERS
-   * ===============
+  /**
+   * @param registration
+   * @param error
    */
+  private void sendErrorEvent(ReadableMap registration, WritableMap error) {
+    WritableMap event = Arguments.createMap();
+
+    event.putString("key", key);
+    event.putMap("error", error);
+    event.putMap("registration", Utils.readableMapToWritableMap(registration));
+
+    Utils.sendEvent(reactContext, "database_sync_event", event);
+  }
 
   /**
-   * @param key
-   * @param valueType
-   * @param modifier
+   * @param path
+   * @param modifiers
+   * @return
    */
-  private void applyEqualToFilter(String key, String valueType, Map modifier) {
-    if ("number".equals(valueType)) {
-      double value = (Double) modifier.get("value");
-      if (key == null) {
-        query = query.equalTo(value);
-      } else {
-        query = query.equalTo(value, key);
-      }
-    } else if ("boolean".equals(valueType)) {
-      boolean value = (Boolean) modifier.get("value");
-      if (key == null) {
-        query = query.equalTo(value);
-      } else {
-        query = query.equalTo(value, key);
-      }
-    } else if ("string".equals(valueType)) {
-      String value = (String) modifier.get("value");
-      if (key == null) {
-        query = query.equalTo(value);
-      } else {
-        query = query.equalTo(value, key);
-      }
-    }
+  private void buildDatabaseQueryAtPathAndModifiers(String path, RNFirebaseDatabaseQueryModifiers modifiers) {
+    FirebaseDatabase firebaseDatabase = RNFirebaseDatabase.getDatabaseForApp(appName);
+    query = modifiers.apply(firebaseDatabase.getReference(path));
   }
 
   /**
-   * @param key
-   * @param valueType
-   * @param modifier
+   * A single native listener for one event type that is shared by every
+   * JS registration on this query that has no per registration options.
    */
-  private void applyEndAtFilter(String key, String valueType, Map modifier) {
-    if ("number".equals(valueType)) {
-      double value = (Double) modifier.get("value");
-      if (key == null) {
-        query = query.endAt(value);
-      } else {
-        query = query.endAt(value, key);
+  private class SharedEventListener implements ValueEventListener, ChildEventListener {
+    private final String eventType;
+    private final ConcurrentHashMap<String, ReadableMap> registrations;
+    private final ConcurrentHashMap<String, ReadableMap> joining;
+
+    SharedEventListener(String type) {
+      eventType = type;
+      registrations = new ConcurrentHashMap<>();
+      joining = new ConcurrentHashMap<>();
+    }
+
+    @Override
+    public void onDataChange(DataSnapshot dataSnapshot) {
+      dispatch(dataSnapshot, null);
+    }
+
+    @Override
+    public void onChildAdded(DataSnapshot dataSnapshot, String previousChildName) {
+      if ("child_added".equals(eventType)) dispatch(dataSnapshot, previousChildName);
+    }
+
+    @Override
+    public void onChildChanged(DataSnapshot dataSnapshot, String previousChildName) {
+      if ("child_changed".equals(eventType)) dispatch(dataSnapshot, previousChildName);
+    }
+
+    @Override
+    public void onChildRemoved(DataSnapshot dataSnapshot) {
+      if ("child_removed".equals(eventType)) dispatch(dataSnapshot, null);
+    }
+
+    @Override
+    public void onChildMoved(DataSnapshot dataSnapshot, String previousChildName) {
+      if ("child_moved".equals(eventType)) dispatch(dataSnapshot, previousChildName);
+    }
+
+    @Override
+    public void onCancelled(DatabaseError error) {
+      for (ReadableMap registration : detachAll()) {
+        handleDatabaseError(registration, error);
       }
-    } else if ("boolean".equals(valueType)) {
-      boolean value = (Boolean) modifier.get("value");
-      if (key == null) {
-        query = query.endAt(value);
-      } else {
-        query = query.endAt(value, key);
+    }
+
+    private void dispatch(DataSnapshot dataSnapshot, @Nullable String previousChildName) {
+      if (registrations.isEmpty()) return;
+
+      try {
+        handleSharedDatabaseEvent(eventType, registrations, dataSnapshot, previousChildName);
+      } catch (Utils.MaxDepthExceededException e) {
+        Log.w(TAG, e.getMessage());
+        for (ReadableMap registration : detachAll()) {
+          sendErrorEvent(registration, e.toMap());
+        }
       }
-    } else if ("string".equals(valueType)) {
-      String value = (String) modifier.get("value");
-      if (key == null) {
-        query = query.endAt(value);
-      } else {
-        query = query.endAt(value, key);
+    }
+
+    /**
+     * Detach every registration through the registry, the listener is
+     * removed from the query with the last one.
+     *
+     * @return the registrations detached
+     */
+    private List<ReadableMap> detachAll() {
+      List<ReadableMap> detached = new ArrayList<>(registrations.values());
+      detached.addAll(joining.values());
+
+      for (ReadableMap registration : detached) {
+        registry.detach(registration.getString("eventRegistrationKey"));
       }
+
+      return detached;
     }
   }
 
   /**
-   * @param key
-   * @param valueType
-   * @param modifier
+   * Sends the initial events of a registration joining a shared listener, then
+   * moves it to the registrations of the shared listener.
    */
-  private void applyStartAtFilter(String key, String valueType, Map modifier) {
-    if ("number".equals(valueType)) {
-      double value = (Double) modifier.get("value");
-      if (key == null) {
-        query = query.startAt(value);
-      } else {
-        query = query.startAt(value, key);
-      }
-    } else if ("boolean".equals(valueType)) {
-      boolean value = (Boolean) modifier.get("value");
-      if (key == null) {
-        query = query.startAt(value);
-      } else {
-        query = query.startAt(value, key);
+  private class JoinListener implements ValueEventListener {
+    private final SharedEventListener sharedEventListener;
+    private final String eventRegistrationKey;
+
+    JoinListener(SharedEventListener listener, String registrationKey) {
+      sharedEventListener = listener;
+      eventRegistrationKey = registrationKey;
+    }
+
+    @Override
+    public void onDataChange(DataSnapshot dataSnapshot) {
+      ReadableMap registration = sharedEventListener.joining.get(eventRegistrationKey);
+      // removed whilst joining
+      if (registration == null) return;
+
+      Map<String, ReadableMap> registrationMap = Collections.singletonMap(eventRegistrationKey, registration);
+
+      try {
+        if ("value".equals(sharedEventListener.eventType)) {
+          handleSharedDatabaseEvent("value", registrationMap, dataSnapshot, null);
+        } else {
+          String previousChildName = null;
+          for (DataSnapshot child : dataSnapshot.getChildren()) {
+            handleSharedDatabaseEvent("child_added", registrationMap, child, previousChildName);
+            previousChildName = child.getKey();
+          }
+        }
+      } catch (Utils.MaxDepthExceededException e) {
+        handleConversionError(registration, e);
+        return;
       }
-    } else if ("string".equals(valueType)) {
-      String value = (String) modifier.get("value");
-      if (key == null) {
-        query = query.startAt(value);
-      } else {
-        query = query.startAt(value, key);
+
+      // the registration may be detached from the bridge thread at any point,
+      // so it is only moved under the lock detach holds
+      synchronized (lock) {
+        if (sharedEventListener.joining.remove(eventRegistrationKey) != null) {
+          sharedEventListener.registrations.put(eventRegistrationKey, registration);
+        }
       }
     }
+
+    @Override
+    public void onCancelled(DatabaseError error) {
+      ReadableMap registration = sharedEventListener.joining.get(eventRegistrationKey);
+      if (registration == null) return;
+
+      registry.detach(eventRegistrationKey);
+      handleDatabaseError(registration, error);
+    }
   }
 }
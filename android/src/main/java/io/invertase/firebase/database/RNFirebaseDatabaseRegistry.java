@@ -0,0 +1,158 @@
+package io.invertase.firebase.database;
+
+import android.support.annotation.Nullable;
+
+import com.facebook.react.bridge.ReactContext;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Thread safe registry of RNFirebaseDatabaseReference instances.
+ * <p>
+ * References are keyed by a canonical query key built from the app name, path and
+ * modifiers, so identical queries from different JS references share one native Query.
+ * Attach and detach are serialized per query key using striped locks, and a reference
+ * is dropped once its last event registration is detached.
+ */
+class RNFirebaseDatabaseRegistry {
+  private static final int STRIPES = 16;
+
+  private final ReactContext reactContext;
+  private final RNFirebaseDatabaseSnapshotCache snapshotCache;
+  private final RNFirebaseDatabaseMetrics metrics;
+  private final RNFirebaseDatabaseConversionSettings conversionSettings;
+  private final Object[] locks = new Object[STRIPES];
+  private final ConcurrentHashMap<String, RNFirebaseDatabaseReference> references = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, RNFirebaseDatabaseReference> registrations = new ConcurrentHashMap<>();
+
+  RNFirebaseDatabaseRegistry(ReactContext context, RNFirebaseDatabaseSnapshotCache cache, RNFirebaseDatabaseMetrics databaseMetrics, RNFirebaseDatabaseConversionSettings settings) {
+    reactContext = context;
+    snapshotCache = cache;
+    metrics = databaseMetrics;
+    conversionSettings = settings;
+    for (int i = 0; i < STRIPES; i++) {
+      locks[i] = new Object();
+    }
+  }
+
+  /**
+   * Attach an event registration to the shared reference for the path + modifiers.
+   *
+   * @param appName
+   * @param path
+   * @param modifiers
+   * @param eventType
+   * @param registration
+   * @param batch
+   * @param diff
+   * @param stream
+   */
+  void attach(String appName, String path, ReadableArray modifiers, String eventType, ReadableMap registration, @Nullable ReadableMap batch, boolean diff, @Nullable ReadableMap stream) {
+    RNFirebaseDatabaseQueryModifiers compiledModifiers = RNFirebaseDatabaseQueryModifiers.compile(modifiers);
+    String queryKey = buildQueryKey(appName, path, compiledModifiers);
+    String eventRegistrationKey = registration.getString("eventRegistrationKey");
+
+    synchronized (lockFor(queryKey)) {
+      RNFirebaseDatabaseReference reference = references.get(queryKey);
+
+      if (reference == null) {
+        reference = new RNFirebaseDatabaseReference(reactContext, snapshotCache, metrics, conversionSettings, this, appName, queryKey, path, compiledModifiers);
+        references.put(queryKey, reference);
+      }
+
+      metrics.onAttach(appName, eventRegistrationKey);
+      reference.on(eventType, registration, batch, diff, stream);
+      registrations.put(eventRegistrationKey, reference);
+    }
+  }
+
+  /**
+   * Detach an event registration, unknown registrations are ignored.
+   *
+   * @param eventRegistrationKey
+   */
+  void detach(String eventRegistrationKey) {
+    RNFirebaseDatabaseReference reference = registrations.get(eventRegistrationKey);
+    if (reference == null) return;
+
+    synchronized (lockFor(reference.getKey())) {
+      if (!registrations.remove(eventRegistrationKey, reference)) return;
+      reference.removeEventListener(eventRegistrationKey);
+      metrics.onDetach(eventRegistrationKey);
+
+      if (!reference.hasListeners()) {
+        references.remove(reference.getKey(), reference);
+      }
+    }
+  }
+
+  /**
+   * Acknowledge an event handled by JS for a registration, unknown registrations are ignored.
+   *
+   * @param eventRegistrationKey
+   */
+  void ack(String eventRegistrationKey) {
+    RNFirebaseDatabaseReference reference = registrations.get(eventRegistrationKey);
+    if (reference != null) reference.ack(eventRegistrationKey);
+  }
+
+  /**
+   * Return the shared reference for the path + modifiers if one exists,
+   * otherwise a new reference that is not kept in the registry.
+   *
+   * @param appName
+   * @param path
+   * @param modifiers
+   * @return
+   */
+  RNFirebaseDatabaseReference get(String appName, String path, ReadableArray modifiers) {
+    RNFirebaseDatabaseQueryModifiers compiledModifiers = RNFirebaseDatabaseQueryModifiers.compile(modifiers);
+    String queryKey = buildQueryKey(appName, path, compiledModifiers);
+    RNFirebaseDatabaseReference reference = references.get(queryKey);
+
+    if (reference == null) {
+      reference = new RNFirebaseDatabaseReference(reactContext, snapshotCache, metrics, conversionSettings, this, appName, queryKey, path, compiledModifiers);
+    }
+
+    return reference;
+  }
+
+  /**
+   * The lock attach and detach hold for a query key, shared listeners
+   * of the reference also hold it to move joining registrations.
+   *
+   * @param queryKey
+   * @return
+   */
+  Object lockFor(String queryKey) {
+    return locks[(queryKey.hashCode() & 0x7fffffff) % STRIPES];
+  }
+
+  /**
+   * Build a canonical key for an app, path and modifiers combination.
+   *
+   * @param appName
+   * @param path
+   * @param modifiers
+   * @return
+   */
+  static String buildQueryKey(String appName, String path, RNFirebaseDatabaseQueryModifiers modifiers) {
+    return appName + "$/" + normalizePath(path) + modifiers.getKey();
+  }
+
+  /**
+   * Strip leading and trailing slashes, the root path becomes ''.
+   *
+   * @param path
+   * @return
+   */
+  static String normalizePath(String path) {
+    int start = 0;
+    int end = path.length();
+    while (start < end && path.charAt(start) == '/') start++;
+    while (end > start && path.charAt(end - 1) == '/') end--;
+    return path.substring(start, end);
+  }
+}
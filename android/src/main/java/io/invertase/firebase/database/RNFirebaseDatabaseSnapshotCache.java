@@ -0,0 +1,342 @@
+package io.invertase.firebase.database;
+
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableMap;
+import com.google.firebase.database.DataSnapshot;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import io.invertase.firebase.Utils;
+
+/**
+ * Optional LRU cache of converted once('value') snapshots, keyed by the canonical
+ * query key (app, path and modifiers), so repeat once() calls resolve without
+ * a firebase listener or snapshot conversion.
+ * <p>
+ * Entries expire after 'ttl' ms and the total estimated size is kept under 'maxBytes'.
+ * Entries are invalidated when an active on() listener receives data or a write is
+ * made on an overlapping path (the same path, an ancestor or a descendant).
+ * <p>
+ * Entries and in flight requests are indexed by path, so an invalidation only visits
+ * the overlapping paths, and returns without taking the lock while the cache is
+ * disabled or empty.
+ */
+class RNFirebaseDatabaseSnapshotCache {
+  private static final long DEFAULT_MAX_BYTES = 4 * 1024 * 1024;
+  private static final long DEFAULT_TTL = 30000;
+
+  private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(32, 0.75f, true);
+  private final TreeMap<String, Set<Entry>> entryIndex = new TreeMap<>();
+  private final TreeMap<String, Set<Request>> requestIndex = new TreeMap<>();
+
+  private volatile boolean enabled = false;
+  private volatile int tracked = 0;
+
+  private long maxBytes = 0;
+  private long ttl = DEFAULT_TTL;
+  private long currentBytes = 0;
+
+  /**
+   * A once('value') request started while the cache is enabled, its snapshot is
+   * not cached if an overlapping path is invalidated before it arrives.
+   */
+  static class Request {
+    private final String indexKey;
+    private boolean stale = false;
+
+    private Request(String indexKey) {
+      this.indexKey = indexKey;
+    }
+  }
+
+  /**
+   * Enable, resize or disable (maxBytes of 0 or a null config) the cache, clearing any entries.
+   *
+   * @param config optional map of 'maxBytes' and 'ttl' (ms)
+   */
+  synchronized void configure(@Nullable ReadableMap config) {
+    if (config == null) {
+      maxBytes = 0;
+    } else {
+      maxBytes = getLong(config, "maxBytes", DEFAULT_MAX_BYTES);
+      ttl = getLong(config, "ttl", DEFAULT_TTL);
+    }
+
+    enabled = maxBytes > 0;
+    clear();
+  }
+
+  boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Start a request for the snapshot at the path, pass it to put() or cancel() once done.
+   *
+   * @param appName
+   * @param path
+   * @return the request, null if the cache is disabled
+   */
+  @Nullable
+  synchronized Request begin(String appName, String path) {
+    if (maxBytes <= 0) return null;
+
+    Request request = new Request(indexKey(appName, path));
+    addToIndex(requestIndex, request.indexKey, request);
+    tracked++;
+    return request;
+  }
+
+  /**
+   * A request ended without a snapshot to cache.
+   *
+   * @param request
+   */
+  synchronized void cancel(Request request) {
+    if (removeFromIndex(requestIndex, request.indexKey, request)) tracked--;
+  }
+
+  /**
+   * Return a copy of the cached snapshot map for the query key, null if missing or expired.
+   *
+   * @param queryKey
+   * @return
+   */
+  @Nullable
+  synchronized WritableMap get(String queryKey) {
+    Entry entry = entries.get(queryKey);
+    if (entry == null) return null;
+
+    if (entry.expiresAt <= SystemClock.elapsedRealtime()) {
+      remove(queryKey);
+      return null;
+    }
+
+    WritableMap copy = Arguments.createMap();
+    copy.merge(entry.data);
+    return copy;
+  }
+
+  /**
+   * Cache a copy of a converted snapshot map, the map itself can still be sent to JS.
+   *
+   * @param queryKey
+   * @param request  the request the snapshot was received for
+   * @param data
+   * @param dataSize estimated size of the snapshot, from its conversion
+   */
+  synchronized void put(String queryKey, Request request, WritableMap data, long dataSize) {
+    cancel(request);
+    if (maxBytes <= 0 || request.stale) return;
+
+    long size = queryKey.length() * 2 + dataSize;
+    if (size > maxBytes) return;
+
+    WritableMap copy = Arguments.createMap();
+    copy.merge(data);
+
+    remove(queryKey);
+    Entry entry = new Entry(queryKey, request.indexKey, copy, size, SystemClock.elapsedRealtime() + ttl);
+    entries.put(queryKey, entry);
+    addToIndex(entryIndex, entry.indexKey, entry);
+    currentBytes += size;
+    tracked++;
+
+    Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+    while (currentBytes > maxBytes && iterator.hasNext()) {
+      Entry eldest = iterator.next().getValue();
+      iterator.remove();
+      unlink(eldest);
+    }
+  }
+
+  /**
+   * Remove all entries for the app whose path overlaps the given path, and mark
+   * overlapping requests in flight as stale.
+   *
+   * @param appName
+   * @param path
+   */
+  void invalidate(String appName, String path) {
+    if (!enabled || tracked == 0) return;
+
+    String indexKey = indexKey(appName, path);
+
+    synchronized (this) {
+      for (Request request : collectOverlapping(requestIndex, indexKey)) {
+        request.stale = true;
+      }
+
+      for (Entry entry : collectOverlapping(entryIndex, indexKey)) {
+        entries.remove(entry.queryKey);
+        unlink(entry);
+      }
+    }
+  }
+
+  synchronized void clear() {
+    for (Set<Request> requests : requestIndex.values()) {
+      for (Request request : requests) {
+        request.stale = true;
+      }
+    }
+
+    entries.clear();
+    entryIndex.clear();
+    requestIndex.clear();
+    currentBytes = 0;
+    tracked = 0;
+  }
+
+  private void remove(String queryKey) {
+    Entry entry = entries.remove(queryKey);
+    if (entry != null) unlink(entry);
+  }
+
+  /**
+   * @param entry an entry already removed from entries
+   */
+  private void unlink(Entry entry) {
+    removeFromIndex(entryIndex, entry.indexKey, entry);
+    currentBytes -= entry.size;
+    tracked--;
+  }
+
+  /**
+   * Index key of an app and path, '/' separated with a trailing '/' so the keys of
+   * descendant paths start with the key of their ancestors.
+   *
+   * @param appName
+   * @param path
+   * @return
+   */
+  private static String indexKey(String appName, String path) {
+    String normalizedPath = RNFirebaseDatabaseRegistry.normalizePath(path);
+    return normalizedPath.isEmpty() ? appName + "\u0000/" : appName + "\u0000/" + normalizedPath + "/";
+  }
+
+  /**
+   * @param index
+   * @param indexKey
+   * @param <T>
+   * @return the values indexed at the path, its descendants and its ancestors
+   */
+  private static <T> List<T> collectOverlapping(TreeMap<String, Set<T>> index, String indexKey) {
+    List<T> overlapping = new ArrayList<>();
+    if (index.isEmpty()) return overlapping;
+
+    for (Set<T> values : index.subMap(indexKey, true, indexKey + '\uffff', false).values()) {
+      overlapping.addAll(values);
+    }
+
+    int end = indexKey.indexOf('\u0000') + 1;
+    while ((end = indexKey.indexOf('/', end) + 1) > 0 && end < indexKey.length()) {
+      Set<T> values = index.get(indexKey.substring(0, end));
+      if (values != null) overlapping.addAll(values);
+    }
+
+    return overlapping;
+  }
+
+  /**
+   * Rough estimate of the memory held by the converted snapshot, for sizes
+   * needed without converting it. Walks the snapshot without recursion.
+   *
+   * @param snapshot
+   * @param maxDepth max levels of nodes below the snapshot
+   * @return
+   * @throws Utils.MaxDepthExceededException if the snapshot is nested deeper than maxDepth
+   */
+  static long estimateSize(DataSnapshot snapshot, int maxDepth) {
+    Utils.SizeEstimate size = new Utils.SizeEstimate();
+    List<Iterator<DataSnapshot>> stack = new ArrayList<>();
+    List<String> keys = new ArrayList<>();
+
+    size.addNode(snapshot.getKey());
+    if (!snapshot.hasChildren()) {
+      size.addValue(snapshot.getValue());
+      return size.getBytes();
+    }
+
+    stack.add(snapshot.getChildren().iterator());
+
+    while (!stack.isEmpty()) {
+      Iterator<DataSnapshot> children = stack.get(stack.size() - 1);
+
+      if (!children.hasNext()) {
+        stack.remove(stack.size() - 1);
+        if (!keys.isEmpty()) keys.remove(keys.size() - 1);
+        continue;
+      }
+
+      DataSnapshot child = children.next();
+      size.addNode(child.getKey());
+
+      if (!child.hasChildren()) {
+        size.addValue(child.getValue());
+        continue;
+      }
+
+      keys.add(child.getKey());
+      if (stack.size() >= maxDepth) {
+        StringBuilder path = new StringBuilder();
+        for (String key : keys) {
+          if (path.length() > 0) path.append('/');
+          path.append(key);
+        }
+        throw new Utils.MaxDepthExceededException(path.toString(), maxDepth);
+      }
+      stack.add(child.getChildren().iterator());
+    }
+
+    return size.getBytes();
+  }
+
+  private static <T> void addToIndex(TreeMap<String, Set<T>> index, String indexKey, T value) {
+    Set<T> values = index.get(indexKey);
+    if (values == null) {
+      values = new HashSet<>();
+      index.put(indexKey, values);
+    }
+    values.add(value);
+  }
+
+  private static <T> boolean removeFromIndex(TreeMap<String, Set<T>> index, String indexKey, T value) {
+    Set<T> values = index.get(indexKey);
+    if (values == null || !values.remove(value)) return false;
+    if (values.isEmpty()) index.remove(indexKey);
+    return true;
+  }
+
+  private static long getLong(ReadableMap config, String name, long defaultValue) {
+    if (!config.hasKey(name) || config.isNull(name)) return defaultValue;
+    return Math.max(0, (long) config.getDouble(name));
+  }
+
+  private static class Entry {
+    private final String queryKey;
+    private final String indexKey;
+    private final WritableMap data;
+    private final long size;
+    private final long expiresAt;
+
+    Entry(String queryKey, String indexKey, WritableMap data, long size, long expiresAt) {
+      this.queryKey = queryKey;
+      this.indexKey = indexKey;
+      this.data = data;
+      this.size = size;
+      this.expiresAt = expiresAt;
+    }
+  }
+}
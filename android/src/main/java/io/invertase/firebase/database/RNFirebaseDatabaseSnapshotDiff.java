@@ -0,0 +1,465 @@
+package io.invertase.firebase.database;
+
+import android.support.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.MutableData;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import io.invertase.firebase.Utils;
+
+/**
+ * Computes a structural patch between two snapshots of the same location so that
+ * 'diff' mode value listeners and transaction retries only send what changed across the bridge.
+ * <p>
+ * Paths are '/' separated and relative to the snapshot location, '' being the root.
+ * A node whose array/object shape changes is sent as a single 'changed' entry, shapes being
+ * decided in the same pass that compares the children.
+ * Both trees are walked without recursion, to the same max depth as snapshot conversion.
+ */
+class RNFirebaseDatabaseSnapshotDiff {
+  private static final int ADDED = 0;
+  private static final int CHANGED = 1;
+  private static final int REMOVED = 2;
+
+  private final List<Operation> operations = new ArrayList<>();
+  private final Utils.ConversionOptions options;
+
+  private RNFirebaseDatabaseSnapshotDiff(Utils.ConversionOptions conversionOptions) {
+    options = conversionOptions;
+  }
+
+  /**
+   * Build a patch map of 'added', 'changed' and 'removed' paths that transforms
+   * the previous snapshot value into the next snapshot value.
+   *
+   * @param previous
+   * @param next
+   * @param options  conversion options of the app
+   * @return
+   */
+  static WritableMap createPatch(DataSnapshot previous, DataSnapshot next, Utils.ConversionOptions options) {
+    RNFirebaseDatabaseSnapshotDiff diff = new RNFirebaseDatabaseSnapshotDiff(options);
+    diff.diffSnapshots(previous, next);
+    return diff.toPatch();
+  }
+
+  /**
+   * Build a patch that transforms a value tree, see ValueTree, into the MutableData value.
+   *
+   * @param previousTree
+   * @param next
+   * @param options      conversion options of the app
+   * @return the patch, null if the values are the same
+   */
+  @Nullable
+  static WritableMap createPatch(@Nullable Object previousTree, MutableData next, Utils.ConversionOptions options) {
+    RNFirebaseDatabaseSnapshotDiff diff = new RNFirebaseDatabaseSnapshotDiff(options);
+    diff.diffMutableData(previousTree, next);
+    return diff.operations.isEmpty() ? null : diff.toPatch();
+  }
+
+  /**
+   * Walks both snapshots with an explicit stack rather than recursion, nodes nested
+   * deeper than the max depth of the app throw a MaxDepthExceededException.
+   * <p>
+   * The array shape of both nodes of a frame is decided whilst iterating their children,
+   * if they differ once the frame is done the operations buffered for its descendants
+   * are replaced by a single 'changed' operation for the node.
+   *
+   * @param previous
+   * @param next
+   */
+  private void diffSnapshots(DataSnapshot previous, DataSnapshot next) {
+    List<SnapshotFrame> stack = new ArrayList<>();
+    visit("", previous, next, stack);
+
+    while (!stack.isEmpty()) {
+      SnapshotFrame frame = stack.get(stack.size() - 1);
+
+      if (!frame.nextChildren.hasNext()) {
+        stack.remove(stack.size() - 1);
+
+        Utils.ArrayShape previousShape = new Utils.ArrayShape(frame.previous.getChildrenCount());
+
+        for (DataSnapshot previousChild : frame.previous.getChildren()) {
+          String childKey = previousChild.getKey();
+          previousShape.add(childKey);
+          if (!frame.next.hasChild(childKey)) addOperation(REMOVED, childPath(frame.path, childKey), null);
+        }
+
+        if (previousShape.isArray() != frame.nextShape.isArray()) {
+          replaceOperations(frame.operationsStart, frame.path, frame.next);
+        }
+
+        continue;
+      }
+
+      DataSnapshot nextChild = frame.nextChildren.next();
+      String childKey = nextChild.getKey();
+      String childPath = childPath(frame.path, childKey);
+      frame.nextShape.add(childKey);
+
+      if (frame.previous.hasChild(childKey)) {
+        visit(childPath, frame.previous.child(childKey), nextChild, stack);
+      } else {
+        addOperation(ADDED, childPath, nextChild);
+      }
+    }
+  }
+
+  /**
+   * Compare two leaves or push a frame to compare the children of two nodes with children.
+   *
+   * @param path
+   * @param previous
+   * @param next
+   * @param stack
+   */
+  private void visit(String path, DataSnapshot previous, DataSnapshot next, List<SnapshotFrame> stack) {
+    boolean previousHasChildren = previous.hasChildren();
+    boolean nextHasChildren = next.hasChildren();
+
+    if (!previousHasChildren && !nextHasChildren) {
+      Object previousValue = previous.getValue();
+      Object nextValue = next.getValue();
+      if (previousValue == null ? nextValue != null : !previousValue.equals(nextValue)) {
+        addOperation(CHANGED, path, next);
+      }
+      return;
+    }
+
+    if (previousHasChildren != nextHasChildren) {
+      addOperation(CHANGED, path, next);
+      return;
+    }
+
+    checkDepth(path, stack.size());
+    stack.add(new SnapshotFrame(path, previous, next, operations.size()));
+  }
+
+  /**
+   * MutableData equivalent of diffSnapshots, against a value tree.
+   *
+   * @param previous
+   * @param next
+   */
+  private void diffMutableData(@Nullable Object previous, MutableData next) {
+    List<MutableDataFrame> stack = new ArrayList<>();
+    visit("", previous, next, stack);
+
+    while (!stack.isEmpty()) {
+      MutableDataFrame frame = stack.get(stack.size() - 1);
+
+      if (!frame.nextChildren.hasNext()) {
+        stack.remove(stack.size() - 1);
+
+        if (frame.previous.isArray != frame.nextShape.isArray()) {
+          replaceOperations(frame.operationsStart, frame.path, frame.next);
+          continue;
+        }
+
+        for (String childKey : frame.previous.children.keySet()) {
+          if (!frame.next.hasChild(childKey)) addOperation(REMOVED, childPath(frame.path, childKey), null);
+        }
+
+        continue;
+      }
+
+      MutableData nextChild = frame.nextChildren.next();
+      String childKey = nextChild.getKey();
+      String childPath = childPath(frame.path, childKey);
+      Object previousChild = frame.previous.children.get(childKey);
+      frame.nextShape.add(childKey);
+
+      if (previousChild != null) {
+        visit(childPath, previousChild, nextChild, stack);
+      } else {
+        addOperation(ADDED, childPath, nextChild);
+      }
+    }
+  }
+
+  /**
+   * @param path
+   * @param previous value tree
+   * @param next
+   * @param stack
+   */
+  private void visit(String path, @Nullable Object previous, MutableData next, List<MutableDataFrame> stack) {
+    boolean previousHasChildren = previous instanceof ValueTree;
+    boolean nextHasChildren = next.hasChildren();
+
+    if (!previousHasChildren && !nextHasChildren) {
+      if (!leafEquals(previous, next.getValue())) addOperation(CHANGED, path, next);
+      return;
+    }
+
+    if (previousHasChildren != nextHasChildren) {
+      addOperation(CHANGED, path, next);
+      return;
+    }
+
+    checkDepth(path, stack.size());
+    stack.add(new MutableDataFrame(path, (ValueTree) previous, next, operations.size()));
+  }
+
+  /**
+   * Numbers are compared by value as JS numbers are received as doubles.
+   *
+   * @param previous
+   * @param next
+   * @return
+   */
+  private static boolean leafEquals(@Nullable Object previous, @Nullable Object next) {
+    if (previous instanceof Number && next instanceof Number) {
+      return ((Number) previous).doubleValue() == ((Number) next).doubleValue();
+    }
+
+    return previous == null ? next == null : previous.equals(next);
+  }
+
+  /**
+   * @param type
+   * @param path
+   * @param node DataSnapshot or MutableData, converted once the walk is done
+   */
+  private void addOperation(int type, String path, Object node) {
+    operations.add(new Operation(type, path, node));
+  }
+
+  /**
+   * Replace the operations buffered since start, those of the descendants of a node
+   * whose array shape changed, by a single 'changed' operation for the node.
+   *
+   * @param start
+   * @param path
+   * @param node
+   */
+  private void replaceOperations(int start, String path, Object node) {
+    operations.subList(start, operations.size()).clear();
+    addOperation(CHANGED, path, node);
+  }
+
+  /**
+   * @return the patch map of the buffered operations
+   */
+  private WritableMap toPatch() {
+    WritableArray added = Arguments.createArray();
+    WritableArray changed = Arguments.createArray();
+    WritableArray removed = Arguments.createArray();
+
+    for (Operation operation : operations) {
+      if (operation.type == REMOVED) {
+        removed.pushString(operation.path);
+      } else {
+        (operation.type == ADDED ? added : changed).pushMap(createChange(operation.path, operation.node));
+      }
+    }
+
+    WritableMap patch = Arguments.createMap();
+    patch.putArray("added", added);
+    patch.putArray("changed", changed);
+    patch.putArray("removed", removed);
+    return patch;
+  }
+
+  /**
+   * @param path  path of a node about to be pushed
+   * @param depth number of frames already on the stack
+   */
+  private void checkDepth(String path, int depth) {
+    if (depth >= options.getMaxDepth()) {
+      throw new Utils.MaxDepthExceededException(path, options.getMaxDepth());
+    }
+  }
+
+  private static String childPath(String path, String childKey) {
+    return path.isEmpty() ? childKey : path + "/" + childKey;
+  }
+
+  /**
+   * A path added, changed or removed, in the order found.
+   */
+  private static class Operation {
+    private final int type;
+    private final String path;
+    private final Object node;
+
+    Operation(int type, String path, Object node) {
+      this.type = type;
+      this.path = path;
+      this.node = node;
+    }
+  }
+
+  /**
+   * Children of a pair of snapshot nodes still to be compared.
+   */
+  private static class SnapshotFrame {
+    private final String path;
+    private final DataSnapshot previous;
+    private final DataSnapshot next;
+    private final Iterator<DataSnapshot> nextChildren;
+    private final Utils.ArrayShape nextShape;
+    private final int operationsStart;
+
+    SnapshotFrame(String path, DataSnapshot previous, DataSnapshot next, int operationsStart) {
+      this.path = path;
+      this.previous = previous;
+      this.next = next;
+      this.nextChildren = next.getChildren().iterator();
+      this.nextShape = new Utils.ArrayShape(next.getChildrenCount());
+      this.operationsStart = operationsStart;
+    }
+  }
+
+  /**
+   * Children of a value tree node and mutable data node still to be compared.
+   */
+  private static class MutableDataFrame {
+    private final String path;
+    private final ValueTree previous;
+    private final MutableData next;
+    private final Iterator<MutableData> nextChildren;
+    private final Utils.ArrayShape nextShape;
+    private final int operationsStart;
+
+    MutableDataFrame(String path, ValueTree previous, MutableData next, int operationsStart) {
+      this.path = path;
+      this.previous = previous;
+      this.next = next;
+      this.nextChildren = next.getChildren().iterator();
+      this.nextShape = new Utils.ArrayShape(next.getChildrenCount());
+      this.operationsStart = operationsStart;
+    }
+  }
+
+  /**
+   * Node with children of a value last received from JS, the base a MutableData value is
+   * diffed against. Children are ValueTree nodes or leaf values, null values are left out.
+   */
+  static class ValueTree {
+    private final HashMap<String, Object> children = new HashMap<>();
+    private final boolean isArray;
+
+    private ValueTree(boolean isArray) {
+      this.isArray = isArray;
+    }
+
+    /**
+     * Build the tree of a value deconstructed from JS, without recursion.
+     *
+     * @param value map, list or leaf value
+     * @return a ValueTree for maps and lists with values, otherwise the value itself
+     */
+    @Nullable
+    static Object fromValue(@Nullable Object value) {
+      if (!hasValues(value)) return value instanceof Map || value instanceof List ? null : value;
+
+      ValueTree root = new ValueTree(value instanceof List);
+      List<Object> values = new ArrayList<>();
+      List<ValueTree> trees = new ArrayList<>();
+      values.add(value);
+      trees.add(root);
+
+      while (!values.isEmpty()) {
+        Object node = values.remove(values.size() - 1);
+        ValueTree tree = trees.remove(trees.size() - 1);
+
+        if (node instanceof List) {
+          List<?> list = (List<?>) node;
+          for (int i = 0; i < list.size(); i++) {
+            addChild(tree, String.valueOf(i), list.get(i), values, trees);
+          }
+        } else {
+          for (Map.Entry<?, ?> entry : ((Map<?, ?>) node).entrySet()) {
+            addChild(tree, (String) entry.getKey(), entry.getValue(), values, trees);
+          }
+        }
+      }
+
+      return root;
+    }
+
+    private static void addChild(ValueTree tree, String key, @Nullable Object value, List<Object> values, List<ValueTree> trees) {
+      if (hasValues(value)) {
+        ValueTree child = new ValueTree(value instanceof List);
+        tree.children.put(key, child);
+        values.add(value);
+        trees.add(child);
+      } else if (value != null && !(value instanceof Map) && !(value instanceof List)) {
+        tree.children.put(key, value);
+      }
+    }
+
+    private static boolean hasValues(@Nullable Object value) {
+      if (value instanceof Map) return !((Map<?, ?>) value).isEmpty();
+      if (!(value instanceof List)) return false;
+
+      for (Object item : (List<?>) value) {
+        if (item != null) return true;
+      }
+
+      return false;
+    }
+  }
+
+  /**
+   * @param path
+   * @param node DataSnapshot or MutableData
+   * @return
+   */
+  private WritableMap createChange(String path, Object node) {
+    return node instanceof DataSnapshot ? createChange(path, (DataSnapshot) node) : createChange(path, (MutableData) node);
+  }
+
+  /**
+   * @param path
+   * @param mutableData
+   * @return
+   */
+  private WritableMap createChange(String path, MutableData mutableData) {
+    WritableMap change = Arguments.createMap();
+    change.putString("path", path);
+
+    if (!mutableData.hasChildren()) {
+      Utils.mapPutValue("value", mutableData.getValue(), change);
+    } else {
+      Utils.mapPutCastedValue("value", Utils.castValue(mutableData, options), change);
+    }
+
+    return change;
+  }
+
+  /**
+   * @param path
+   * @param snapshot
+   * @return
+   */
+  private WritableMap createChange(String path, DataSnapshot snapshot) {
+    WritableMap change = Arguments.createMap();
+    change.putString("path", path);
+
+    if (!snapshot.hasChildren()) {
+      Utils.mapPutValue("value", snapshot.getValue(), change);
+    } else {
+      Object value = Utils.castValue(snapshot, options);
+      if (value instanceof WritableArray) {
+        change.putArray("value", (WritableArray) value);
+      } else {
+        change.putMap("value", (WritableMap) value);
+      }
+    }
+
+    return change;
+  }
+}
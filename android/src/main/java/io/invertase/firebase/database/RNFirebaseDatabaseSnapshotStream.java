@@ -0,0 +1,253 @@
+package io.invertase.firebase.database;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.google.firebase.database.DataSnapshot;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.invertase.firebase.Utils;
+
+/**
+ * Converts a snapshot to JS in bounded size chunks rather than as a single map, so
+ * that only a couple of chunks of converted children are held at a time.
+ * <p>
+ * The direct children of the snapshot are converted one at a time and sent in chunks of
+ * at most 'size' children or roughly 'bytes' bytes, each with an increasing 'sequence'.
+ * The last chunk has 'done' set and contains the snapshot without its value, plus
+ * whether the children form an array, from which JS reassembles the value.
+ * <p>
+ * Chunks are paced by JS: a chunk is only converted once JS has acknowledged all but
+ * one of the chunks sent before it (see ackStreamChunk), the conversion continuing on
+ * the main thread. A stream not acknowledged within the timeout fails.
+ */
+class RNFirebaseDatabaseSnapshotStream {
+  private static final int DEFAULT_SIZE = 500;
+  private static final int DEFAULT_BYTES = 256 * 1024;
+  private static final int MAX_UNACKNOWLEDGED = 2;
+  private static final long ACK_TIMEOUT = 15000;
+
+  private static final ConcurrentHashMap<String, RNFirebaseDatabaseSnapshotStream> streams = new ConcurrentHashMap<>();
+
+  interface ChunkListener {
+    void onChunk(WritableMap chunk);
+
+    /**
+     * The last chunk has been sent.
+     */
+    void onDone();
+
+    /**
+     * The stream stopped before its last chunk.
+     *
+     * @param error js like error map of 'code' and 'message'
+     */
+    void onError(WritableMap error);
+  }
+
+  private final String streamId;
+  private final DataSnapshot dataSnapshot;
+  private final int maxSize;
+  private final long maxBytes;
+  private final Utils.ConversionOptions conversion;
+  private final ChunkListener listener;
+  private final Handler handler;
+  private final Runnable sendRunnable;
+  private final Runnable timeoutRunnable;
+
+  private Iterator<DataSnapshot> children;
+  private WritableArray childKeys;
+  private Utils.ArrayShape shape;
+  private int sequence = 0;
+  private int acknowledged = -1;
+  private boolean finished = false;
+
+  private RNFirebaseDatabaseSnapshotStream(String id, DataSnapshot snapshot, @Nullable ReadableMap options, Utils.ConversionOptions conversionOptions, ChunkListener chunkListener) {
+    streamId = id;
+    dataSnapshot = snapshot;
+    maxSize = getOption(options, "size", DEFAULT_SIZE);
+    maxBytes = getOption(options, "bytes", DEFAULT_BYTES);
+    conversion = conversionOptions;
+    listener = chunkListener;
+
+    handler = new Handler(Looper.getMainLooper());
+    sendRunnable = new Runnable() {
+      @Override
+      public void run() {
+        send();
+      }
+    };
+    timeoutRunnable = new Runnable() {
+      @Override
+      public void run() {
+        timeout();
+      }
+    };
+  }
+
+  /**
+   * Start streaming a snapshot, replacing any stream still running with the same id.
+   *
+   * @param streamId
+   * @param dataSnapshot
+   * @param options      optional map of 'size' (children) and 'bytes' per chunk
+   * @param conversion   conversion options of the app
+   * @param listener     called with each chunk in order, the first chunks on the calling thread
+   */
+  static void stream(String streamId, DataSnapshot dataSnapshot, @Nullable ReadableMap options, Utils.ConversionOptions conversion, ChunkListener listener) {
+    RNFirebaseDatabaseSnapshotStream stream = new RNFirebaseDatabaseSnapshotStream(streamId, dataSnapshot, options, conversion, listener);
+
+    RNFirebaseDatabaseSnapshotStream previous = streams.put(streamId, stream);
+    if (previous != null) previous.cancel();
+
+    stream.send();
+  }
+
+  /**
+   * JS has received a chunk of the stream, unknown streams are ignored.
+   *
+   * @param streamId
+   * @param sequence
+   */
+  static void ack(String streamId, int sequence) {
+    RNFirebaseDatabaseSnapshotStream stream = streams.get(streamId);
+    if (stream != null) stream.onAck(sequence);
+  }
+
+  /**
+   * Stop a stream without sending its remaining chunks, unknown streams are ignored.
+   *
+   * @param streamId
+   */
+  static void cancel(String streamId) {
+    RNFirebaseDatabaseSnapshotStream stream = streams.remove(streamId);
+    if (stream != null) stream.cancel();
+  }
+
+  private synchronized void onAck(int chunkSequence) {
+    if (finished || chunkSequence <= acknowledged) return;
+    acknowledged = chunkSequence;
+    handler.post(sendRunnable);
+  }
+
+  private synchronized void cancel() {
+    finished = true;
+    handler.removeCallbacks(sendRunnable);
+    handler.removeCallbacks(timeoutRunnable);
+  }
+
+  private synchronized void timeout() {
+    if (finished) return;
+    finish();
+
+    WritableMap error = Arguments.createMap();
+    error.putString("code", "database/stream-timeout");
+    error.putString("message", "JS did not acknowledge a chunk of the snapshot stream within " + ACK_TIMEOUT + "ms.");
+    listener.onError(error);
+  }
+
+  /**
+   * Send chunks until the stream is done or too many are unacknowledged.
+   */
+  private synchronized void send() {
+    handler.removeCallbacks(timeoutRunnable);
+
+    try {
+      while (!finished && sequence - acknowledged <= MAX_UNACKNOWLEDGED) {
+        sendChunk();
+      }
+    } catch (Utils.MaxDepthExceededException e) {
+      finish();
+      listener.onError(e.toMap());
+      return;
+    }
+
+    if (!finished) handler.postDelayed(timeoutRunnable, ACK_TIMEOUT);
+  }
+
+  private void sendChunk() {
+    if (!dataSnapshot.hasChildren()) {
+      WritableMap chunk = createChunk(sequence++);
+      chunk.putBoolean("done", true);
+      chunk.putMap("snapshot", Utils.snapshotToMap(dataSnapshot, conversion));
+      finish();
+      listener.onChunk(chunk);
+      listener.onDone();
+      return;
+    }
+
+    if (children == null) {
+      children = dataSnapshot.getChildren().iterator();
+      childKeys = Arguments.createArray();
+      shape = new Utils.ArrayShape(dataSnapshot.getChildrenCount());
+    }
+
+    int size = 0;
+    long bytes = 0;
+    WritableMap chunkChildren = Arguments.createMap();
+
+    while (children.hasNext() && size < maxSize && bytes < maxBytes) {
+      DataSnapshot child = children.next();
+      String childKey = child.getKey();
+      childKeys.pushString(childKey);
+      shape.add(childKey);
+
+      Utils.SizeEstimate childSize = new Utils.SizeEstimate();
+      Utils.mapPutCastedValue(childKey, Utils.castValue(child, conversion, childSize), chunkChildren);
+      bytes += childSize.getBytes();
+      size++;
+    }
+
+    WritableMap chunk = createChunk(sequence++);
+
+    if (children.hasNext()) {
+      chunk.putBoolean("done", false);
+      chunk.putMap("children", chunkChildren);
+      listener.onChunk(chunk);
+      return;
+    }
+
+    WritableMap snapshot = Arguments.createMap();
+    snapshot.putString("key", dataSnapshot.getKey());
+    snapshot.putBoolean("exists", dataSnapshot.exists());
+    snapshot.putBoolean("hasChildren", true);
+    snapshot.putDouble("childrenCount", dataSnapshot.getChildrenCount());
+    snapshot.putArray("childKeys", childKeys);
+    Utils.mapPutValue("priority", dataSnapshot.getPriority(), snapshot);
+
+    chunk.putBoolean("done", true);
+    chunk.putBoolean("isArray", shape.isArray());
+    chunk.putMap("snapshot", snapshot);
+    if (size > 0) chunk.putMap("children", chunkChildren);
+
+    finish();
+    listener.onChunk(chunk);
+    listener.onDone();
+  }
+
+  private void finish() {
+    finished = true;
+    streams.remove(streamId, this);
+    handler.removeCallbacks(sendRunnable);
+    handler.removeCallbacks(timeoutRunnable);
+  }
+
+  private WritableMap createChunk(int chunkSequence) {
+    WritableMap chunk = Arguments.createMap();
+    chunk.putString("id", streamId);
+    chunk.putInt("sequence", chunkSequence);
+    return chunk;
+  }
+
+  private static int getOption(@Nullable ReadableMap options, String name, int defaultValue) {
+    if (options == null || !options.hasKey(name) || options.isNull(name)) return defaultValue;
+    return Math.max(1, options.getInt(name));
+  }
+}
@@ -0,0 +1,188 @@
+package io.invertase.firebase.database;
+
+import com.google.firebase.database.MutableData;
+import com.google.firebase.database.Transaction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A declarative transaction update applied entirely natively inside doTransaction,
+ * avoiding the JS round trip a transaction() update function needs on every attempt.
+ * <p>
+ * Supported types:
+ * - 'increment' adds 'value' (a number) to the current number, a missing value counts as 0
+ * - 'appendUnique' appends 'value' to the current array unless it is already present
+ * - 'setIfAbsent' sets 'value' only if there is no current value
+ * - 'max' / 'min' sets 'value' if there is no current number or it is greater / less than it
+ * - 'removeIfEquals' removes the current value if it equals 'value'
+ * <p>
+ * As with a transaction() update function returning undefined, the transaction is aborted
+ * (not committed) when the operation would not change anything or the current value has
+ * an incompatible type.
+ */
+class RNFirebaseDatabaseTransactionOperation {
+  private final String type;
+  private final Object value;
+
+  /**
+   * @param op deconstructed { type, value } operation map
+   * @throws IllegalArgumentException for unknown types or a value of the wrong type
+   */
+  RNFirebaseDatabaseTransactionOperation(Map<String, Object> op) {
+    Object opType = op.get("type");
+    type = opType instanceof String ? (String) opType : null;
+    value = op.get("value");
+
+    if (type == null) {
+      throw new IllegalArgumentException("Transaction operation requires a type.");
+    }
+
+    switch (type) {
+      case "increment":
+      case "max":
+      case "min":
+        if (!(value instanceof Number)) {
+          throw new IllegalArgumentException("Transaction operation '" + type + "' requires a number value.");
+        }
+        break;
+      case "appendUnique":
+      case "setIfAbsent":
+        if (value == null) {
+          throw new IllegalArgumentException("Transaction operation '" + type + "' requires a value.");
+        }
+        break;
+      case "removeIfEquals":
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown transaction operation type '" + type + "'.");
+    }
+  }
+
+  /**
+   * @param mutableData
+   * @return
+   */
+  Transaction.Result apply(MutableData mutableData) {
+    Object current = mutableData.getValue();
+
+    switch (type) {
+      case "increment":
+        return increment(mutableData, current);
+      case "appendUnique":
+        return appendUnique(mutableData, current);
+      case "setIfAbsent":
+        if (current != null) return Transaction.abort();
+        mutableData.setValue(value);
+        return Transaction.success(mutableData);
+      case "max":
+      case "min":
+        return extreme(mutableData, current, "max".equals(type));
+      case "removeIfEquals":
+        if (current == null || !valuesEqual(current, value)) return Transaction.abort();
+        mutableData.setValue(null);
+        return Transaction.success(mutableData);
+      default:
+        return Transaction.abort();
+    }
+  }
+
+  private Transaction.Result increment(MutableData mutableData, Object current) {
+    if (current != null && !(current instanceof Number)) return Transaction.abort();
+
+    Number by = (Number) value;
+    Number base = current == null ? 0L : (Number) current;
+
+    if (isIntegral(base) && isIntegral(by)) {
+      mutableData.setValue(base.longValue() + by.longValue());
+    } else {
+      mutableData.setValue(base.doubleValue() + by.doubleValue());
+    }
+
+    return Transaction.success(mutableData);
+  }
+
+  private Transaction.Result appendUnique(MutableData mutableData, Object current) {
+    if (current == null) {
+      List<Object> list = new ArrayList<>(1);
+      list.add(value);
+      mutableData.setValue(list);
+      return Transaction.success(mutableData);
+    }
+
+    if (!(current instanceof List)) return Transaction.abort();
+
+    List<?> currentList = (List<?>) current;
+    for (Object item : currentList) {
+      if (valuesEqual(item, value)) return Transaction.abort();
+    }
+
+    List<Object> list = new ArrayList<Object>(currentList);
+    list.add(value);
+    mutableData.setValue(list);
+    return Transaction.success(mutableData);
+  }
+
+  private Transaction.Result extreme(MutableData mutableData, Object current, boolean max) {
+    if (current != null) {
+      if (!(current instanceof Number)) return Transaction.abort();
+
+      double currentValue = ((Number) current).doubleValue();
+      double newValue = ((Number) value).doubleValue();
+      if (max ? newValue <= currentValue : newValue >= currentValue) return Transaction.abort();
+    }
+
+    mutableData.setValue(value);
+    return Transaction.success(mutableData);
+  }
+
+  /**
+   * Integral numbers may be a Long from firebase or a Double from JS.
+   *
+   * @param number
+   * @return
+   */
+  private static boolean isIntegral(Number number) {
+    if (number instanceof Long || number instanceof Integer) return true;
+    double doubleValue = number.doubleValue();
+    return doubleValue == Math.rint(doubleValue) && Math.abs(doubleValue) < (1L << 53);
+  }
+
+  /**
+   * Deep equality of firebase / JS values, comparing numbers by value.
+   *
+   * @param a
+   * @param b
+   * @return
+   */
+  private static boolean valuesEqual(Object a, Object b) {
+    if (a == null || b == null) return a == b;
+
+    if (a instanceof Number && b instanceof Number) {
+      return ((Number) a).doubleValue() == ((Number) b).doubleValue();
+    }
+
+    if (a instanceof List && b instanceof List) {
+      List<?> listA = (List<?>) a;
+      List<?> listB = (List<?>) b;
+      if (listA.size() != listB.size()) return false;
+      for (int i = 0; i < listA.size(); i++) {
+        if (!valuesEqual(listA.get(i), listB.get(i))) return false;
+      }
+      return true;
+    }
+
+    if (a instanceof Map && b instanceof Map) {
+      Map<?, ?> mapA = (Map<?, ?>) a;
+      Map<?, ?> mapB = (Map<?, ?>) b;
+      if (mapA.size() != mapB.size()) return false;
+      for (Map.Entry<?, ?> entry : mapA.entrySet()) {
+        if (!mapB.containsKey(entry.getKey()) || !valuesEqual(entry.getValue(), mapB.get(entry.getKey()))) return false;
+      }
+      return true;
+    }
+
+    return a.equals(b);
+  }
+}
@@ -0,0 +1,230 @@
+package io.invertase.firebase.database;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.WritableArray;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Groups an ordered list of set/update/remove/setPriority operations into as few
+ * multi-path updateChildren calls on the root reference as possible.
+ * <p>
+ * Consecutive operations share a group until one writes to a path that is an ancestor
+ * or descendant of a path already written in the group, which updateChildren does not
+ * allow, at which point a new group is started. Groups are issued in order so the
+ * resulting writes are applied in the same order as the operations.
+ */
+class RNFirebaseDatabaseWriteBatch {
+  private final DatabaseReference root;
+  private final List<Group> groups = new ArrayList<>();
+  private final Set<String> paths = new LinkedHashSet<>();
+  private final DatabaseError[] errors;
+  private Group current;
+
+  /**
+   * @param rootRef
+   * @param ops     deconstructed list of { type, path, value } operation maps
+   * @throws IllegalArgumentException for unknown operation types
+   */
+  @SuppressWarnings("unchecked")
+  RNFirebaseDatabaseWriteBatch(DatabaseReference rootRef, List<Object> ops) {
+    root = rootRef;
+    errors = new DatabaseError[ops.size()];
+
+    for (int i = 0; i < ops.size(); i++) {
+      addOperation(i, (Map<String, Object>) ops.get(i));
+    }
+  }
+
+  /**
+   * @return the distinct paths written to by the operations
+   */
+  Set<String> getPaths() {
+    return paths;
+  }
+
+  /**
+   * Issue every group, resolving the promise once all have completed with an array
+   * containing null or an error map for each operation.
+   * <p>
+   * The ack latency of each group written is recorded as a write of the app.
+   *
+   * @param metrics
+   * @param appName
+   * @param promise
+   */
+  void commit(final RNFirebaseDatabaseMetrics metrics, final String appName, final Promise promise) {
+    if (groups.isEmpty()) {
+      promise.resolve(createResults());
+      return;
+    }
+
+    final AtomicInteger pending = new AtomicInteger(groups.size());
+
+    for (final Group group : groups) {
+      final boolean written = group.rootSet || !group.updates.isEmpty();
+      final long writeStart = written ? metrics.startWrite(appName) : 0;
+
+      DatabaseReference.CompletionListener listener = new DatabaseReference.CompletionListener() {
+        @Override
+        public void onComplete(DatabaseError error, DatabaseReference ref) {
+          if (written) metrics.recordWriteAck(appName, writeStart);
+          recordError(group, error);
+          if (pending.decrementAndGet() == 0) {
+            promise.resolve(createResults());
+          }
+        }
+      };
+
+      if (group.rootSet) {
+        root.setValue(group.rootValue, listener);
+      } else if (written) {
+        root.updateChildren(group.updates, listener);
+      } else {
+        listener.onComplete(null, root);
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private void addOperation(int index, Map<String, Object> op) {
+    String type = (String) op.get("type");
+    Object value = op.get("value");
+
+    if (type == null || op.get("path") == null) {
+      throw new IllegalArgumentException("Write batch operation at index " + index + " requires a type and path.");
+    }
+
+    String path = RNFirebaseDatabaseRegistry.normalizePath((String) op.get("path"));
+
+    paths.add(path);
+
+    switch (type) {
+      case "set":
+        put(index, path, ((Map<String, Object>) value).get("value"));
+        break;
+      case "setPriority":
+        put(index, join(path, ".priority"), ((Map<String, Object>) value).get("value"));
+        break;
+      case "remove":
+        put(index, path, null);
+        break;
+      case "update":
+        Map<String, Object> updates = (Map<String, Object>) value;
+        for (Map.Entry<String, Object> update : updates.entrySet()) {
+          put(index, join(path, RNFirebaseDatabaseRegistry.normalizePath(update.getKey())), update.getValue());
+        }
+        if (updates.isEmpty()) addToGroup(index);
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown write batch operation type '" + type + "' at index " + index + ".");
+    }
+  }
+
+  private void put(int index, String path, Object value) {
+    // setting the root can not be part of a multi-path update
+    if (path.isEmpty()) {
+      Group rootGroup = new Group();
+      rootGroup.rootSet = true;
+      rootGroup.rootValue = value;
+      rootGroup.ops.add(index);
+      groups.add(rootGroup);
+      current = null;
+      return;
+    }
+
+    if (current == null || current.conflicts(path)) {
+      current = new Group();
+      groups.add(current);
+    }
+
+    current.put(path, value);
+    current.addOp(index);
+  }
+
+  private void addToGroup(int index) {
+    if (current == null) {
+      current = new Group();
+      groups.add(current);
+    }
+    current.addOp(index);
+  }
+
+  private synchronized void recordError(Group group, DatabaseError error) {
+    if (error == null) return;
+    for (int index : group.ops) {
+      if (errors[index] == null) errors[index] = error;
+    }
+  }
+
+  private synchronized WritableArray createResults() {
+    WritableArray results = Arguments.createArray();
+    for (DatabaseError error : errors) {
+      if (error == null) {
+        results.pushNull();
+      } else {
+        results.pushMap(RNFirebaseDatabase.getJSError(error));
+      }
+    }
+    return results;
+  }
+
+  private static String join(String path, String child) {
+    if (path.isEmpty()) return child;
+    if (child.isEmpty()) return path;
+    return path + "/" + child;
+  }
+
+  /**
+   * A single updateChildren call, or a setValue call on the root.
+   */
+  private static class Group {
+    private final Map<String, Object> updates = new LinkedHashMap<>();
+    private final Set<String> ancestors = new HashSet<>();
+    private final List<Integer> ops = new ArrayList<>();
+    private boolean rootSet = false;
+    private Object rootValue;
+
+    /**
+     * @param path
+     * @return true if the path is an ancestor or descendant of a path already in the group
+     */
+    boolean conflicts(String path) {
+      if (ancestors.contains(path)) return true;
+
+      int separator = path.indexOf('/');
+      while (separator != -1) {
+        if (updates.containsKey(path.substring(0, separator))) return true;
+        separator = path.indexOf('/', separator + 1);
+      }
+
+      return false;
+    }
+
+    void put(String path, Object value) {
+      updates.put(path, value);
+
+      int separator = path.indexOf('/');
+      while (separator != -1) {
+        ancestors.add(path.substring(0, separator));
+        separator = path.indexOf('/', separator + 1);
+      }
+    }
+
+    void addOp(int index) {
+      if (ops.isEmpty() || ops.get(ops.size() - 1) != index) {
+        ops.add(index);
+      }
+    }
+  }
+}
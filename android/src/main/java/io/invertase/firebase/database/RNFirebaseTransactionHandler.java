@@ -11,31 +11,61 @@ import com.google.firebase.database.MutableData;
 
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 
 import javax.annotation.Nullable;
 
 import io.invertase.firebase.Utils;
 
+/**
+ * Hands transaction updates from the JS thread to the thread running doTransaction.
+ * <p>
+ * One handler is created per transaction and reused for every retry, the
+ * update for the current attempt is exchanged through a single lock free slot.
+ * <p>
+ * Retries only send what changed since the value last committed by JS, which JS
+ * keeps as the base of the next attempt: a patch, or an 'unchanged' flag when the
+ * value is the same. The MutableData is diffed directly against a tree of the
+ * committed value, built on the JS thread when the update is received.
+ */
 public class RNFirebaseTransactionHandler {
+  static final long DEFAULT_TIMEOUT = 5000;
+
   private int transactionId;
   private String appName;
-  private final ReentrantLock lock;
-  private final Condition condition;
+  private final long timeoutMillis;
+  private final Utils.ConversionOptions conversionOptions;
+  private final AtomicReference<Update> slot;
+  private volatile Thread waiter;
   private Map<String, Object> data;
-  private boolean signalled;
+
+  private boolean hasSentValue = false;
+  private Object committedTree;
 
   public Object value;
   boolean interrupted;
   boolean abort = false;
   boolean timeout = false;
+  Utils.MaxDepthExceededException conversionError;
 
-  RNFirebaseTransactionHandler(int id, String app) {
+  RNFirebaseTransactionHandler(int id, String app, long timeout, Utils.ConversionOptions options) {
     appName = app;
     transactionId = id;
-    lock = new ReentrantLock();
-    condition = lock.newCondition();
+    timeoutMillis = timeout > 0 ? timeout : DEFAULT_TIMEOUT;
+    conversionOptions = options;
+    slot = new AtomicReference<>();
+  }
+
+  /**
+   * Reset the handler state before a new doTransaction attempt.
+   */
+  void prepare() {
+    slot.set(null);
+    data = null;
+    value = null;
+    abort = false;
+    waiter = Thread.currentThread();
   }
 
   /**
@@ -45,42 +75,44 @@ public class RNFirebaseTransactionHandler {
    */
   void signalUpdateReceived(ReadableMap updates) {
     Map<String, Object> updateData = Utils.recursivelyDeconstructReadableMap(updates);
+    boolean updateAbort = (Boolean) updateData.get("abort");
+    Object tree = updateAbort ? null : RNFirebaseDatabaseSnapshotDiff.ValueTree.fromValue(updateData.get("value"));
 
-    lock.lock();
-    value = updateData.get("value");
-    abort = (Boolean) updateData.get("abort");
-
-    try {
-      if (signalled) {
-        throw new IllegalStateException("This transactionUpdateHandler has already been signalled.");
-      }
-
-      signalled = true;
-      data = updateData;
-      condition.signalAll();
-    } finally {
-      lock.unlock();
+    if (!slot.compareAndSet(null, new Update(updateData, tree))) {
+      throw new IllegalStateException("This transactionUpdateHandler has already been signalled.");
     }
+
+    Thread thread = waiter;
+    if (thread != null) LockSupport.unpark(thread);
   }
 
   /**
-   * Wait for signalUpdateReceived to signal condition
+   * Wait for signalUpdateReceived to fill the slot, or the timeout to elapse
    *
    * @throws InterruptedException
    */
   void await() throws InterruptedException {
-    lock.lock();
-
-    long timeoutExpired = System.currentTimeMillis() + 5000;
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
 
     try {
-      while (!timeout && !condition.await(250, TimeUnit.MILLISECONDS) && !signalled) {
-        if (!signalled && System.currentTimeMillis() > timeoutExpired) {
+      Update update;
+      while ((update = slot.get()) == null) {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
           timeout = true;
+          return;
         }
+
+        LockSupport.parkNanos(this, remaining);
+        if (Thread.interrupted()) throw new InterruptedException();
       }
+
+      data = update.data;
+      value = update.data.get("value");
+      abort = (Boolean) update.data.get("abort");
+      committedTree = update.tree;
     } finally {
-      lock.unlock();
+      waiter = null;
     }
   }
 
@@ -108,10 +140,17 @@ public class RNFirebaseTransactionHandler {
     // all events get distributed js side based on app name
     updatesMap.putString("appName", appName);
 
-    if (!updatesData.hasChildren()) {
+    if (hasSentValue) {
+      WritableMap patch = RNFirebaseDatabaseSnapshotDiff.createPatch(committedTree, updatesData, conversionOptions);
+      if (patch == null) {
+        updatesMap.putBoolean("unchanged", true);
+      } else {
+        updatesMap.putMap("patch", patch);
+      }
+    } else if (!updatesData.hasChildren()) {
       Utils.mapPutValue("value", updatesData.getValue(), updatesMap);
     } else {
-      Object value = Utils.castValue(updatesData);
+      Object value = Utils.castValue(updatesData, conversionOptions);
 
       if (value instanceof WritableNativeArray) {
         updatesMap.putArray("value", (WritableArray) value);
@@ -120,9 +159,22 @@ public class RNFirebaseTransactionHandler {
       }
     }
 
+    hasSentValue = true;
     return updatesMap;
   }
 
+  /**
+   * An update received from JS and the value tree of its committed value.
+   */
+  private static class Update {
+    private final Map<String, Object> data;
+    private final Object tree;
+
+    Update(Map<String, Object> data, @Nullable Object tree) {
+      this.data = data;
+      this.tree = tree;
+    }
+  }
 
   WritableMap createResultMap(@Nullable DatabaseError error, boolean committed, DataSnapshot snapshot) {
     WritableMap resultMap = Arguments.createMap();
@@ -134,18 +186,24 @@ public class RNFirebaseTransactionHandler {
     resultMap.putBoolean("committed", committed);
     resultMap.putBoolean("interrupted", interrupted);
 
-    if (error != null || timeout || interrupted) {
+    if (error != null || timeout || interrupted || conversionError != null) {
       resultMap.putString("type", "error");
       if (error != null) resultMap.putMap("error", RNFirebaseDatabase.getJSError(error));
-      if (error == null && timeout) {
+      if (error == null && conversionError != null) resultMap.putMap("error", conversionError.toMap());
+      if (error == null && conversionError == null && timeout) {
         WritableMap timeoutError = Arguments.createMap();
         timeoutError.putString("code", "DATABASE/INTERNAL-TIMEOUT");
         timeoutError.putString("message", "A timeout occurred whilst waiting for RN JS thread to send transaction updates.");
         resultMap.putMap("error", timeoutError);
       }
     } else {
-      resultMap.putString("type", "complete");
-      resultMap.putMap("snapshot", Utils.snapshotToMap(snapshot));
+      try {
+        resultMap.putMap("snapshot", Utils.snapshotToMap(snapshot, conversionOptions));
+        resultMap.putString("type", "complete");
+      } catch (Utils.MaxDepthExceededException e) {
+        resultMap.putString("type", "error");
+        resultMap.putMap("error", e.toMap());
+      }
     }
 
     return resultMap;
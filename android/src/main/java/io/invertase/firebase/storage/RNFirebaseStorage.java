@@ -4,17 +4,21 @@ import android.util.Log;
 import android.os.Environment;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import android.net.Uri;
 import android.database.Cursor;
 import android.provider.MediaStore;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
 import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.Promise;
@@ -64,8 +68,20 @@ public class RNFirebaseStorage extends ReactContextBaseJavaModule {
   private static final String STORAGE_DOWNLOAD_SUCCESS = "download_success";
   private static final String STORAGE_DOWNLOAD_FAILURE = "download_failure";
 
+  private static final int SEGMENT_POOL_SIZE = 4;
+
+  private final ConcurrentHashMap<String, Integer> downloadBufferSizes = new ConcurrentHashMap<>();
+  private static final AtomicInteger nativeTaskIds = new AtomicInteger();
+  private static final ConcurrentHashMap<String, RNFirebaseStorageProgressThrottle.Policy> progressPolicies = new ConcurrentHashMap<>();
+  private static final ConcurrentHashMap<String, RNFirebaseStorageProgressThrottle.Stats> progressStats = new ConcurrentHashMap<>();
+  // shared by module instances so downloads continue across JS reloads
+  private static final ExecutorService segmentExecutor = Executors.newFixedThreadPool(SEGMENT_POOL_SIZE);
+
+  private final RNFirebaseStorageTaskScheduler scheduler = RNFirebaseStorageTaskScheduler.getInstance();
+
   public RNFirebaseStorage(ReactApplicationContext reactContext) {
     super(reactContext);
+    scheduler.setReactContext(reactContext);
 
     Log.d(TAG, "New instance");
   }
@@ -214,6 +230,20 @@ public class RNFirebaseStorage extends ReactContextBaseJavaModule {
    */
   @ReactMethod
   public void downloadFile(final String appName, final String path, final String localPath, final Promise promise) {
+    downloadFileScheduled(appName, path, localPath, null, promise);
+  }
+
+  /**
+   * Android only - downloadFile queued by the task scheduler
+   *
+   * @param appName
+   * @param path
+   * @param localPath
+   * @param options   optional map of 'taskId' and 'priority'
+   * @param promise
+   */
+  @ReactMethod
+  public void downloadFileScheduled(final String appName, final String path, final String localPath, @Nullable ReadableMap options, final Promise promise) {
     if (!isExternalStorageWritable()) {
       promise.reject(
         "storage/invalid-device-file-path",
@@ -223,42 +253,46 @@ public class RNFirebaseStorage extends ReactContextBaseJavaModule {
       return;
     }
 
+    scheduler.schedule(
+      getTaskId(options),
+      RNFirebaseStorageTaskScheduler.DOWNLOAD,
+      getPriority(options),
+      appName,
+      path,
+      new RNFirebaseStorageTaskScheduler.Starter() {
+        @Override
+        public RNFirebaseStorageTaskScheduler.Handle start(String taskId) {
+          return RNFirebaseStorageTaskScheduler.wrap(startDownloadFile(taskId, appName, path, localPath, promise));
+        }
+      },
+      promise
+    );
+  }
+
+  private StorageTask<?> startDownloadFile(final String taskId, final String appName, final String path, final String localPath, final Promise promise) {
     Log.d(TAG, "downloadFile path: " + path);
     StorageReference reference = this.getReference(path, appName);
+    final RNFirebaseStorageFileWriter fileWriter = new RNFirebaseStorageFileWriter(getDownloadBufferSize(appName));
+    final RNFirebaseStorageProgressThrottle progressThrottle = createProgressThrottle(appName);
 
-    reference.getStream(new StreamDownloadTask.StreamProcessor() {
+    return reference.getStream(new StreamDownloadTask.StreamProcessor() {
       @Override
       public void doInBackground(StreamDownloadTask.TaskSnapshot taskSnapshot, InputStream inputStream) throws IOException {
-        int indexOfLastSlash = localPath.lastIndexOf("/");
-        String pathMinusFileName = indexOfLastSlash > 0 ? localPath.substring(0, indexOfLastSlash) + "/" : "/";
-        String filename = indexOfLastSlash > 0 ? localPath.substring(indexOfLastSlash + 1) : localPath;
-        File fileWithJustPath = new File(pathMinusFileName);
-
-        // directoriesCreated assignment for not consumed warning
-        Boolean directoriesCreated = fileWithJustPath.mkdirs();
-        File fileWithFullPath = new File(pathMinusFileName, filename);
-        FileOutputStream output = new FileOutputStream(fileWithFullPath);
-        int bufferSize = 1024;
-        byte[] buffer = new byte[bufferSize];
-
-        int len;
-        while ((len = inputStream.read(buffer)) != -1) {
-          output.write(buffer, 0, len);
-        }
-
-        output.close();
+        fileWriter.write(inputStream, localPath);
       }
     }).addOnProgressListener(new OnProgressListener<StreamDownloadTask.TaskSnapshot>() {
       @Override
       public void onProgress(StreamDownloadTask.TaskSnapshot taskSnapshot) {
-        Log.d(TAG, "downloadFile progress " + taskSnapshot);
-        WritableMap event = getDownloadTaskAsMap(taskSnapshot);
-        sendJSEvent(appName, STORAGE_STATE_CHANGED, path, event);
+        String state = getTaskStatus(taskSnapshot.getTask());
+        if (progressThrottle.shouldEmit(state, taskSnapshot.getBytesTransferred(), taskSnapshot.getTotalByteCount())) {
+          sendJSEvent(appName, STORAGE_STATE_CHANGED, path, getDownloadTaskAsMap(taskSnapshot));
+        }
       }
     }).addOnPausedListener(new OnPausedListener<StreamDownloadTask.TaskSnapshot>() {
       @Override
       public void onPaused(StreamDownloadTask.TaskSnapshot taskSnapshot) {
         Log.d(TAG, "downloadFile paused " + taskSnapshot);
+        progressThrottle.forceEmit("paused", taskSnapshot.getBytesTransferred());
         WritableMap event = getDownloadTaskAsMap(taskSnapshot);
         sendJSEvent(appName, STORAGE_STATE_CHANGED, path, event);
       }
@@ -266,6 +300,7 @@ public class RNFirebaseStorage extends ReactContextBaseJavaModule {
       @Override
       public void onSuccess(StreamDownloadTask.TaskSnapshot taskSnapshot) {
         Log.d(TAG, "downloadFile success" + taskSnapshot);
+        scheduler.onFinished(taskId);
         WritableMap resp = getDownloadTaskAsMap(taskSnapshot);
         sendJSEvent(appName, STORAGE_DOWNLOAD_SUCCESS, path, resp);
         resp = getDownloadTaskAsMap(taskSnapshot);
@@ -275,12 +310,210 @@ public class RNFirebaseStorage extends ReactContextBaseJavaModule {
       @Override
       public void onFailure(@NonNull Exception exception) {
         Log.e(TAG, "downloadFile failure " + exception.getMessage());
+        scheduler.onFinished(taskId);
         // TODO sendJS error event
         promiseRejectStorageException(promise, exception);
       }
     });
   }
 
+  /**
+   * Android only - downloadFile that continues a previous interrupted download of the
+   * same object generation to the same path instead of starting again, queued by the
+   * task scheduler.
+   * <p>
+   * Bytes are fetched from the object download URL with HTTP range requests.
+   *
+   * @param appName
+   * @param path
+   * @param localPath
+   * @param options   optional map of 'taskId' and 'priority'
+   * @param promise
+   */
+  @ReactMethod
+  public void downloadFileResumable(final String appName, final String path, final String localPath, @Nullable ReadableMap options, final Promise promise) {
+    if (!isExternalStorageWritable()) {
+      promise.reject(
+        "storage/invalid-device-file-path",
+        "The specified device file path is invalid or is restricted."
+      );
+
+      return;
+    }
+
+    scheduler.schedule(
+      getTaskId(options),
+      RNFirebaseStorageTaskScheduler.DOWNLOAD,
+      getPriority(options),
+      appName,
+      path,
+      new RNFirebaseStorageTaskScheduler.Starter() {
+        @Override
+        public RNFirebaseStorageTaskScheduler.Handle start(String taskId) {
+          return startDownloadFileResumable(taskId, appName, path, localPath, promise);
+        }
+      },
+      promise
+    );
+  }
+
+  private RNFirebaseStorageTaskScheduler.Handle startDownloadFileResumable(final String taskId, final String appName, final String path, final String localPath, final Promise promise) {
+    Log.d(TAG, "downloadFileResumable path: " + path);
+    final StorageReference reference = this.getReference(path, appName);
+    final RNFirebaseStorageDownloadTask task = createDownloadTask(taskId, appName, path, reference.getPath(), "downloadFileResumable", promise);
+
+    reference.getMetadata().addOnSuccessListener(new OnSuccessListener<StorageMetadata>() {
+      @Override
+      public void onSuccess(final StorageMetadata storageMetadata) {
+        reference.getDownloadUrl().addOnSuccessListener(new OnSuccessListener<Uri>() {
+          @Override
+          public void onSuccess(Uri uri) {
+            task.start(scheduler.getDownloadExecutor(), new RNFirebaseStorageResumableDownload(
+              uri.toString(),
+              localPath,
+              storageMetadata.getGeneration(),
+              storageMetadata.getSizeBytes(),
+              getDownloadBufferSize(appName),
+              task
+            ));
+          }
+        }).addOnFailureListener(getDownloadTaskFailureListener(task));
+      }
+    }).addOnFailureListener(getDownloadTaskFailureListener(task));
+
+    return task;
+  }
+
+  /**
+   * Android only - downloadFile that fetches the object as concurrent byte ranges
+   * written into a preallocated file, verified against the object size and md5 hash,
+   * queued by the task scheduler.
+   * <p>
+   * All segmented downloads share a pool of SEGMENT_POOL_SIZE connections.
+   *
+   * @param appName
+   * @param path
+   * @param localPath
+   * @param segments  number of byte ranges, at most 8 and none under 1MB
+   * @param options   optional map of 'taskId' and 'priority'
+   * @param promise
+   */
+  @ReactMethod
+  public void downloadFileSegmented(final String appName, final String path, final String localPath, final int segments, @Nullable ReadableMap options, final Promise promise) {
+    if (!isExternalStorageWritable()) {
+      promise.reject(
+        "storage/invalid-device-file-path",
+        "The specified device file path is invalid or is restricted."
+      );
+
+      return;
+    }
+
+    scheduler.schedule(
+      getTaskId(options),
+      RNFirebaseStorageTaskScheduler.DOWNLOAD,
+      getPriority(options),
+      appName,
+      path,
+      new RNFirebaseStorageTaskScheduler.Starter() {
+        @Override
+        public RNFirebaseStorageTaskScheduler.Handle start(String taskId) {
+          return startDownloadFileSegmented(taskId, appName, path, localPath, segments, promise);
+        }
+      },
+      promise
+    );
+  }
+
+  private RNFirebaseStorageTaskScheduler.Handle startDownloadFileSegmented(final String taskId, final String appName, final String path, final String localPath, final int segments, final Promise promise) {
+    Log.d(TAG, "downloadFileSegmented path: " + path);
+    final StorageReference reference = this.getReference(path, appName);
+    final RNFirebaseStorageDownloadTask task = createDownloadTask(taskId, appName, path, reference.getPath(), "downloadFileSegmented", promise);
+
+    reference.getMetadata().addOnSuccessListener(new OnSuccessListener<StorageMetadata>() {
+      @Override
+      public void onSuccess(final StorageMetadata storageMetadata) {
+        reference.getDownloadUrl().addOnSuccessListener(new OnSuccessListener<Uri>() {
+          @Override
+          public void onSuccess(Uri uri) {
+            task.start(scheduler.getDownloadExecutor(), new RNFirebaseStorageSegmentedDownload(
+              uri.toString(),
+              localPath,
+              storageMetadata.getSizeBytes(),
+              storageMetadata.getMd5Hash(),
+              segments,
+              getDownloadBufferSize(appName),
+              segmentExecutor,
+              task
+            ));
+          }
+        }).addOnFailureListener(getDownloadTaskFailureListener(task));
+      }
+    }).addOnFailureListener(getDownloadTaskFailureListener(task));
+
+    return task;
+  }
+
+  /**
+   * Scheduler handle of a resumable or segmented download, sending its progress
+   * and settling the promise.
+   *
+   * @param taskId
+   * @param appName
+   * @param path
+   * @param ref     path of the storage reference
+   * @param method  name logged with the outcome
+   * @param promise
+   * @return
+   */
+  private RNFirebaseStorageDownloadTask createDownloadTask(final String taskId, final String appName, final String path, final String ref, final String method, final Promise promise) {
+    final RNFirebaseStorageProgressThrottle progressThrottle = createProgressThrottle(appName);
+
+    return new RNFirebaseStorageDownloadTask(new RNFirebaseStorageDownloadListener() {
+      @Override
+      public void onProgress(long bytesTransferred, long totalBytes) {
+        if (progressThrottle.shouldEmit("running", bytesTransferred, totalBytes)) {
+          sendJSEvent(appName, STORAGE_STATE_CHANGED, path, getDownloadProgressAsMap(ref, "running", bytesTransferred, totalBytes));
+        }
+      }
+
+      @Override
+      public void onSuccess(long totalBytes) {
+        Log.d(TAG, method + " success " + ref);
+        scheduler.onFinished(taskId);
+        sendJSEvent(appName, STORAGE_DOWNLOAD_SUCCESS, path, getDownloadProgressAsMap(ref, "success", totalBytes, totalBytes));
+        promise.resolve(getDownloadProgressAsMap(ref, "success", totalBytes, totalBytes));
+      }
+
+      @Override
+      public void onFailure(Exception exception) {
+        Log.e(TAG, method + " failure " + exception.getMessage());
+        scheduler.onFinished(taskId);
+        promiseRejectStorageException(promise, exception);
+      }
+    });
+  }
+
+  private static OnFailureListener getDownloadTaskFailureListener(final RNFirebaseStorageDownloadTask task) {
+    return new OnFailureListener() {
+      @Override
+      public void onFailure(@NonNull Exception exception) {
+        task.onFailure(exception);
+      }
+    };
+  }
+
+  /**
+   * Android only - size of the buffer downloadFile writes to disk through
+   *
+   * @param appName
+   * @param bytes   clamped to 8KB - 8MB
+   */
+  @ReactMethod
+  public void setDownloadBufferSize(String appName, final double bytes) {
+    downloadBufferSizes.put(appName, RNFirebaseStorageFileWriter.clampBufferSize((int) bytes));
+  }
+
   /**
    * setMaxDownloadRetryTime
    *
@@ -334,6 +567,38 @@ public class RNFirebaseStorage extends ReactContextBaseJavaModule {
    */
   @ReactMethod
   public void putFile(final String appName, final String path, final String localPath, final ReadableMap metadata, final Promise promise) {
+    putFileScheduled(appName, path, localPath, metadata, null, promise);
+  }
+
+  /**
+   * Android only - putFile queued by the task scheduler
+   *
+   * @param appName
+   * @param path
+   * @param localPath
+   * @param metadata
+   * @param options   optional map of 'taskId' and 'priority'
+   * @param promise
+   */
+  @ReactMethod
+  public void putFileScheduled(final String appName, final String path, final String localPath, final ReadableMap metadata, @Nullable ReadableMap options, final Promise promise) {
+    scheduler.schedule(
+      getTaskId(options),
+      RNFirebaseStorageTaskScheduler.UPLOAD,
+      getPriority(options),
+      appName,
+      path,
+      new RNFirebaseStorageTaskScheduler.Starter() {
+        @Override
+        public RNFirebaseStorageTaskScheduler.Handle start(String taskId) {
+          return RNFirebaseStorageTaskScheduler.wrap(startPutFile(taskId, appName, path, localPath, metadata, promise));
+        }
+      },
+      promise
+    );
+  }
+
+  private StorageTask<?> startPutFile(final String taskId, final String appName, final String path, final String localPath, final ReadableMap metadata, final Promise promise) {
     StorageReference reference = this.getReference(path, appName);
 
     Log.i(TAG, "putFile: " + localPath + " to " + path);
@@ -348,15 +613,17 @@ public class RNFirebaseStorage extends ReactContextBaseJavaModule {
       }
 
       StorageMetadata md = buildMetadataFromMap(metadata);
+      final RNFirebaseStorageProgressThrottle progressThrottle = createProgressThrottle(appName);
       UploadTask uploadTask = reference.putFile(file, md);
 
       // register observers to listen for when the download is done or if it fails
-      uploadTask
+      return uploadTask
         .addOnFailureListener(new OnFailureListener() {
           @Override
           public void onFailure(@NonNull Exception exception) {
             // handle unsuccessful uploads
             Log.e(TAG, "putFile failure " + exception.getMessage());
+            scheduler.onFinished(taskId);
             // TODO sendJS error event
             promiseRejectStorageException(promise, exception);
           }
@@ -365,6 +632,7 @@ public class RNFirebaseStorage extends ReactContextBaseJavaModule {
           @Override
           public void onSuccess(UploadTask.TaskSnapshot taskSnapshot) {
             Log.d(TAG, "putFile success " + taskSnapshot);
+            scheduler.onFinished(taskId);
             WritableMap resp = getUploadTaskAsMap(taskSnapshot);
             sendJSEvent(appName, STORAGE_STATE_CHANGED, path, resp);
 
@@ -379,23 +647,153 @@ public class RNFirebaseStorage extends ReactContextBaseJavaModule {
         .addOnProgressListener(new OnProgressListener<UploadTask.TaskSnapshot>() {
           @Override
           public void onProgress(UploadTask.TaskSnapshot taskSnapshot) {
-            Log.d(TAG, "putFile progress " + taskSnapshot);
-            sendJSEvent(appName, STORAGE_STATE_CHANGED, path, getUploadTaskAsMap(taskSnapshot));
+            String state = getTaskStatus(taskSnapshot.getTask());
+            if (progressThrottle.shouldEmit(state, taskSnapshot.getBytesTransferred(), taskSnapshot.getTotalByteCount())) {
+              sendJSEvent(appName, STORAGE_STATE_CHANGED, path, getUploadTaskAsMap(taskSnapshot));
+            }
           }
         })
         .addOnPausedListener(new OnPausedListener<UploadTask.TaskSnapshot>() {
           @Override
           public void onPaused(UploadTask.TaskSnapshot taskSnapshot) {
             Log.d(TAG, "putFile paused " + taskSnapshot);
+            progressThrottle.forceEmit("paused", taskSnapshot.getBytesTransferred());
             WritableMap event = getUploadTaskAsMap(taskSnapshot);
             sendJSEvent(appName, STORAGE_STATE_CHANGED, path, event);
           }
         });
     } catch (Exception exception) {
       promiseRejectStorageException(promise, exception);
+      return null;
     }
   }
 
+  /**
+   * @param appName
+   * @return the download buffer size set for the app or the default
+   */
+  private int getDownloadBufferSize(String appName) {
+    Integer bufferSize = downloadBufferSizes.get(appName);
+    return bufferSize != null ? bufferSize : RNFirebaseStorageFileWriter.DEFAULT_BUFFER_SIZE;
+  }
+
+  /**
+   * Android only - which progress updates of the app's tasks are sent as state_changed
+   * events, applies to tasks started afterwards
+   *
+   * @param appName
+   * @param options map of 'interval' (ms), 'minBytes' and 'percentStep'
+   */
+  @ReactMethod
+  public void setProgressPolicy(String appName, ReadableMap options) {
+    progressPolicies.put(appName, RNFirebaseStorageProgressThrottle.Policy.fromMap(options));
+  }
+
+  /**
+   * Android only - resolves with the number of progress updates 'emitted' and 'suppressed'
+   *
+   * @param appName
+   * @param promise
+   */
+  @ReactMethod
+  public void getProgressStats(String appName, Promise promise) {
+    promise.resolve(getProgressStats(appName).toMap());
+  }
+
+  /**
+   * Android only - reset the counts returned by getProgressStats
+   *
+   * @param appName
+   */
+  @ReactMethod
+  public void resetProgressStats(String appName) {
+    getProgressStats(appName).reset();
+  }
+
+  private static RNFirebaseStorageProgressThrottle.Stats getProgressStats(String appName) {
+    RNFirebaseStorageProgressThrottle.Stats stats = progressStats.get(appName);
+    if (stats != null) return stats;
+
+    RNFirebaseStorageProgressThrottle.Stats created = new RNFirebaseStorageProgressThrottle.Stats();
+    stats = progressStats.putIfAbsent(appName, created);
+    return stats != null ? stats : created;
+  }
+
+  private static RNFirebaseStorageProgressThrottle createProgressThrottle(String appName) {
+    RNFirebaseStorageProgressThrottle.Policy policy = progressPolicies.get(appName);
+    return new RNFirebaseStorageProgressThrottle(
+      policy != null ? policy : RNFirebaseStorageProgressThrottle.Policy.DEFAULT,
+      getProgressStats(appName)
+    );
+  }
+
+  /**
+   * Android only - set the scheduler concurrency limits, shared by all apps
+   *
+   * @param config map of 'maxConcurrentUploads' and 'maxConcurrentDownloads'
+   */
+  @ReactMethod
+  public void configureTaskScheduler(ReadableMap config) {
+    scheduler.configure(config);
+  }
+
+  /**
+   * Android only - pause a scheduled task, it no longer counts towards the concurrency limit
+   *
+   * @param taskId
+   * @param promise resolves false if the task is unknown or can not be paused
+   */
+  @ReactMethod
+  public void pauseTask(String taskId, Promise promise) {
+    promise.resolve(scheduler.pause(taskId));
+  }
+
+  /**
+   * Android only - queue a paused task again
+   *
+   * @param taskId
+   * @param promise resolves false if the task is unknown or not paused
+   */
+  @ReactMethod
+  public void resumeTask(String taskId, Promise promise) {
+    promise.resolve(scheduler.resume(taskId));
+  }
+
+  /**
+   * Android only - cancel a scheduled task
+   *
+   * @param taskId
+   * @param promise resolves false if the task is unknown
+   */
+  @ReactMethod
+  public void cancelTask(String taskId, Promise promise) {
+    promise.resolve(scheduler.cancel(taskId));
+  }
+
+  /**
+   * Android only - concurrency limits, running and queued counts and scheduled tasks
+   *
+   * @param promise
+   */
+  @ReactMethod
+  public void getTaskSchedulerState(Promise promise) {
+    promise.resolve(scheduler.getState());
+  }
+
+  private static String getTaskId(@Nullable ReadableMap options) {
+    if (options != null && options.hasKey("taskId") && !options.isNull("taskId")) {
+      return options.getString("taskId");
+    }
+    return "native-" + nativeTaskIds.incrementAndGet();
+  }
+
+  private static String getPriority(@Nullable ReadableMap options) {
+    if (options != null && options.hasKey("priority") && !options.isNull("priority")) {
+      return RNFirebaseStorageTaskScheduler.normalizePriority(options.getString("priority"));
+    }
+    return RNFirebaseStorageTaskScheduler.PRIORITY_NORMAL;
+  }
+
   /**
    * Internal helper to detect if ref is from url or a path.
    *
@@ -484,6 +882,25 @@ public class RNFirebaseStorage extends ReactContextBaseJavaModule {
     return resp;
   }
 
+  /**
+   * Download progress in the same format as getDownloadTaskAsMap, for downloads
+   * not made with a storage task
+   *
+   * @param ref
+   * @param state
+   * @param bytesTransferred
+   * @param totalBytes
+   * @return
+   */
+  private WritableMap getDownloadProgressAsMap(String ref, String state, long bytesTransferred, long totalBytes) {
+    WritableMap resp = Arguments.createMap();
+    resp.putDouble("bytesTransferred", bytesTransferred);
+    resp.putString("ref", ref);
+    resp.putString("state", state);
+    resp.putDouble("totalBytes", totalBytes);
+
+    return resp;
+  }
 
   /**
    * Convert an upload task snapshot to a RN WritableMAP
@@ -517,7 +934,7 @@ public class RNFirebaseStorage extends ReactContextBaseJavaModule {
    * @param storageMetadata
    * @return
    */
-  private WritableMap getMetadataAsMap(StorageMetadata storageMetadata) {
+  WritableMap getMetadataAsMap(StorageMetadata storageMetadata) {
     WritableMap metadata = Arguments.createMap();
     metadata.putString("bucket", storageMetadata.getBucket());
     metadata.putString("generation", storageMetadata.getGeneration());
@@ -589,7 +1006,7 @@ public class RNFirebaseStorage extends ReactContextBaseJavaModule {
     event.putString("path", path);
     event.putMap("body", body);
 
-    Utils.sendEvent(this.getReactApplicationContext(), STORAGE_EVENT, event);
+    scheduler.sendEvent(STORAGE_EVENT, event);
   }
 
   /**
@@ -648,6 +1065,30 @@ public class RNFirebaseStorage extends ReactContextBaseJavaModule {
             message = "User cancelled the operation.";
             break;
         }
+      } else if (exception instanceof RNFirebaseStorageDownloadTask.CancelledException) {
+        code = "storage/cancelled";
+        message = "User cancelled the operation.";
+      } else if (exception instanceof RNFirebaseStorageSegmentedDownload.ChecksumException) {
+        code = "storage/non-matching-checksum";
+        message = "File on the client does not match the checksum of the file received by the server.";
+      } else if (exception instanceof RNFirebaseStorageRangeRequest.HttpStatusException) {
+        switch (((RNFirebaseStorageRangeRequest.HttpStatusException) exception).status) {
+          case 401:
+            code = "storage/unauthenticated";
+            message = "User is unauthenticated. Authenticate and try again.";
+            break;
+          case 403:
+            code = "storage/unauthorized";
+            message = "User is not authorized to perform the desired action.";
+            break;
+          case 404:
+            code = "storage/object-not-found";
+            message = "No object exists at the desired reference.";
+            break;
+          default:
+            code = "storage/unknown";
+            break;
+        }
       } else {
         code = "storage/unknown";
         message = "An unknown error has occurred.";
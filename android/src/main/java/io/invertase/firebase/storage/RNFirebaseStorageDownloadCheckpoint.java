@@ -0,0 +1,123 @@
+package io.invertase.firebase.storage;
+
+import android.support.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Properties;
+
+/**
+ * Progress of a resumable download persisted next to the target file, so that a
+ * download interrupted by a failure or process death continues where it stopped.
+ * <p>
+ * A checkpoint is only valid for the object generation it was written for, the
+ * offset never exceeds the bytes forced to the partial file.
+ */
+class RNFirebaseStorageDownloadCheckpoint {
+  private static final String PART_SUFFIX = ".part";
+  private static final String CHECKPOINT_SUFFIX = ".checkpoint";
+
+  private final File file;
+  String generation;
+  String etag;
+  long totalBytes;
+  long offset;
+
+  private RNFirebaseStorageDownloadCheckpoint(File file) {
+    this.file = file;
+  }
+
+  /**
+   * @param localPath download target path
+   * @return the partial file data is written to until the download completes
+   */
+  static File partFile(String localPath) {
+    return new File(localPath + PART_SUFFIX);
+  }
+
+  /**
+   * Load the checkpoint for the target path, a missing or unreadable checkpoint,
+   * or one written for another generation or without its partial file, starts
+   * again from 0.
+   *
+   * @param localPath  download target path
+   * @param generation generation of the object from its StorageMetadata
+   * @param totalBytes size of the object from its StorageMetadata
+   * @return
+   */
+  static RNFirebaseStorageDownloadCheckpoint load(String localPath, String generation, long totalBytes) {
+    RNFirebaseStorageDownloadCheckpoint checkpoint = new RNFirebaseStorageDownloadCheckpoint(new File(localPath + CHECKPOINT_SUFFIX));
+    Properties properties = checkpoint.read();
+    File part = partFile(localPath);
+
+    checkpoint.generation = generation;
+    checkpoint.totalBytes = totalBytes;
+
+    if (properties != null && generation != null && generation.equals(properties.getProperty("generation")) && part.isFile()) {
+      try {
+        long offset = Long.parseLong(properties.getProperty("offset", "0"));
+        if (offset >= 0 && offset <= part.length() && (totalBytes <= 0 || offset <= totalBytes)) {
+          checkpoint.offset = offset;
+          checkpoint.etag = properties.getProperty("etag");
+        }
+      } catch (NumberFormatException e) {
+        // start again
+      }
+    }
+
+    return checkpoint;
+  }
+
+  /**
+   * Persist the checkpoint, writing a temporary file first so a crash never
+   * leaves a truncated checkpoint behind.
+   *
+   * @throws IOException
+   */
+  void save() throws IOException {
+    Properties properties = new Properties();
+    properties.setProperty("generation", generation != null ? generation : "");
+    properties.setProperty("offset", String.valueOf(offset));
+    properties.setProperty("totalBytes", String.valueOf(totalBytes));
+    if (etag != null) properties.setProperty("etag", etag);
+
+    File temp = new File(file.getPath() + ".tmp");
+    FileOutputStream output = new FileOutputStream(temp);
+    try {
+      properties.store(output, null);
+      output.getFD().sync();
+    } finally {
+      RNFirebaseStorageFileWriter.closeQuietly(output);
+    }
+
+    if (!RNFirebaseStorageFileWriter.rename(temp, file)) {
+      throw new IOException("Unable to save download checkpoint " + file.getPath());
+    }
+  }
+
+  /**
+   * Remove the checkpoint once the download has completed.
+   */
+  void delete() {
+    // noinspection ResultOfMethodCallIgnored
+    file.delete();
+  }
+
+  private @Nullable Properties read() {
+    if (!file.isFile()) return null;
+
+    FileInputStream input = null;
+    try {
+      input = new FileInputStream(file);
+      Properties properties = new Properties();
+      properties.load(input);
+      return properties;
+    } catch (IOException e) {
+      return null;
+    } finally {
+      if (input != null) RNFirebaseStorageFileWriter.closeQuietly(input);
+    }
+  }
+}
@@ -0,0 +1,13 @@
+package io.invertase.firebase.storage;
+
+/**
+ * Callbacks of downloads made outside of a storage SDK task, called on the
+ * thread the download runs on.
+ */
+interface RNFirebaseStorageDownloadListener {
+  void onProgress(long bytesTransferred, long totalBytes);
+
+  void onSuccess(long totalBytes);
+
+  void onFailure(Exception exception);
+}
@@ -0,0 +1,85 @@
+package io.invertase.firebase.storage;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Scheduler handle of a download made outside of a storage SDK task (resumable and
+ * segmented), passed to the download as its listener.
+ * <p>
+ * Cancelling interrupts the download and fails it with a CancelledException, any
+ * later callback of the download is ignored. These downloads can not be paused.
+ */
+class RNFirebaseStorageDownloadTask implements RNFirebaseStorageTaskScheduler.Handle, RNFirebaseStorageDownloadListener {
+  /**
+   * The download was cancelled
+   */
+  static class CancelledException extends IOException {
+    CancelledException() {
+      super("User cancelled the operation.");
+    }
+  }
+
+  private final RNFirebaseStorageDownloadListener listener;
+  private final AtomicBoolean finished = new AtomicBoolean();
+  private boolean cancelled = false;
+  private FutureTask<Void> future;
+
+  /**
+   * @param downloadListener receives the progress and the first success or failure
+   */
+  RNFirebaseStorageDownloadTask(RNFirebaseStorageDownloadListener downloadListener) {
+    listener = downloadListener;
+  }
+
+  /**
+   * Run the download on the executor, unless the task has been cancelled.
+   *
+   * @param executor
+   * @param download
+   */
+  synchronized void start(Executor executor, Runnable download) {
+    if (cancelled) return;
+    future = new FutureTask<>(download, null);
+    executor.execute(future);
+  }
+
+  @Override
+  public boolean pause() {
+    return false;
+  }
+
+  @Override
+  public boolean resume() {
+    return false;
+  }
+
+  @Override
+  public boolean cancel() {
+    synchronized (this) {
+      cancelled = true;
+      if (future != null) future.cancel(true);
+    }
+
+    if (!finished.compareAndSet(false, true)) return false;
+    listener.onFailure(new CancelledException());
+    return true;
+  }
+
+  @Override
+  public void onProgress(long bytesTransferred, long totalBytes) {
+    if (!finished.get()) listener.onProgress(bytesTransferred, totalBytes);
+  }
+
+  @Override
+  public void onSuccess(long totalBytes) {
+    if (finished.compareAndSet(false, true)) listener.onSuccess(totalBytes);
+  }
+
+  @Override
+  public void onFailure(Exception exception) {
+    if (finished.compareAndSet(false, true)) listener.onFailure(exception);
+  }
+}
@@ -0,0 +1,166 @@
+package io.invertase.firebase.storage;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Writes a download stream to a device file through a large direct buffer and a
+ * FileChannel, so each write syscall moves a full buffer rather than a few KB.
+ * <p>
+ * Data is written to a temporary file next to the target which is only renamed
+ * over the target once the whole stream has been written, a failed or cancelled
+ * download never leaves a partial file at the target path.
+ */
+class RNFirebaseStorageFileWriter {
+  static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+  static final int MIN_BUFFER_SIZE = 8 * 1024;
+  static final int MAX_BUFFER_SIZE = 8 * 1024 * 1024;
+
+  private static final String TEMP_SUFFIX = ".download";
+  private static final int MAX_POOLED_BUFFERS = 4;
+  private static final ConcurrentLinkedQueue<ByteBuffer> bufferPool = new ConcurrentLinkedQueue<>();
+
+  private final int bufferSize;
+
+  /**
+   * @param bufferSize size of the direct buffer, clamped to MIN_BUFFER_SIZE - MAX_BUFFER_SIZE
+   */
+  RNFirebaseStorageFileWriter(int bufferSize) {
+    this.bufferSize = clampBufferSize(bufferSize);
+  }
+
+  /**
+   * @param bufferSize
+   * @return the buffer size clamped to MIN_BUFFER_SIZE - MAX_BUFFER_SIZE
+   */
+  static int clampBufferSize(int bufferSize) {
+    return Math.max(MIN_BUFFER_SIZE, Math.min(MAX_BUFFER_SIZE, bufferSize));
+  }
+
+  /**
+   * Write the stream to the file at localPath, creating any missing directories.
+   * The input stream is always closed.
+   *
+   * @param inputStream
+   * @param localPath
+   * @return the number of bytes written
+   * @throws IOException
+   */
+  long write(InputStream inputStream, String localPath) throws IOException {
+    File target = new File(localPath);
+    File directory = target.getAbsoluteFile().getParentFile();
+
+    if (directory != null && !directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+      inputStream.close();
+      throw new IOException("Unable to create directory " + directory.getPath());
+    }
+
+    File temp = null;
+    FileOutputStream output = null;
+    ReadableByteChannel input = Channels.newChannel(inputStream);
+    ByteBuffer buffer = acquireBuffer(bufferSize);
+    boolean completed = false;
+
+    try {
+      temp = File.createTempFile(target.getName(), TEMP_SUFFIX, directory);
+      output = new FileOutputStream(temp);
+      long written = copy(input, output.getChannel(), buffer);
+
+      output.getChannel().force(false);
+      output.close();
+      output = null;
+
+      if (!rename(temp, target)) {
+        throw new IOException("Unable to move downloaded file to " + target.getPath());
+      }
+
+      completed = true;
+      return written;
+    } finally {
+      releaseBuffer(buffer);
+      closeQuietly(input);
+      if (output != null) closeQuietly(output);
+      if (!completed && temp != null) {
+        // noinspection ResultOfMethodCallIgnored
+        temp.delete();
+      }
+    }
+  }
+
+  /**
+   * Fills the buffer completely before each write, the input channel of a wrapped
+   * stream only returns as many bytes as a single read of the stream does.
+   *
+   * @param input
+   * @param output
+   * @param buffer
+   * @return
+   * @throws IOException
+   */
+  static long copy(ReadableByteChannel input, FileChannel output, ByteBuffer buffer) throws IOException {
+    long written = 0;
+    boolean eof = false;
+
+    while (!eof) {
+      buffer.clear();
+      while (buffer.hasRemaining()) {
+        if (input.read(buffer) == -1) {
+          eof = true;
+          break;
+        }
+      }
+
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        written += output.write(buffer);
+      }
+    }
+
+    return written;
+  }
+
+  /**
+   * renameTo is atomic on the same file system but will not replace an existing
+   * target on every platform, so retry once the old target is removed.
+   *
+   * @param from
+   * @param to
+   * @return
+   */
+  static boolean rename(File from, File to) {
+    if (from.renameTo(to)) return true;
+    return to.delete() && from.renameTo(to);
+  }
+
+  /**
+   * @param bufferSize
+   * @return a pooled direct buffer of the size, or a new one
+   */
+  static ByteBuffer acquireBuffer(int bufferSize) {
+    ByteBuffer buffer;
+    while ((buffer = bufferPool.poll()) != null) {
+      if (buffer.capacity() == bufferSize) return buffer;
+    }
+    return ByteBuffer.allocateDirect(bufferSize);
+  }
+
+  static void releaseBuffer(ByteBuffer buffer) {
+    if (bufferPool.size() < MAX_POOLED_BUFFERS) bufferPool.offer(buffer);
+  }
+
+  static void closeQuietly(Closeable closeable) {
+    try {
+      closeable.close();
+    } catch (IOException e) {
+      // already failed or finished
+    }
+  }
+}
@@ -0,0 +1,132 @@
+package io.invertase.firebase.storage;
+
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides which progress updates of a single storage task are sent to JS, so fast
+ * transfers do not flood the bridge.
+ * <p>
+ * An update is sent when the task state changes, when the transfer completes, or
+ * when at least 'interval' ms, 'minBytes' bytes and 'percentStep' percent have all
+ * passed since the last update sent. Other updates are counted as suppressed.
+ * <p>
+ * The default policy sends every update, throttling is opt-in.
+ */
+class RNFirebaseStorageProgressThrottle {
+  private final Policy policy;
+  private final Stats stats;
+
+  private String lastState;
+  private long lastBytes = -1;
+  private long lastTime = 0;
+
+  /**
+   * Progress policy of an app, see setProgressPolicy
+   */
+  static class Policy {
+    static final Policy DEFAULT = new Policy(0, 0, 0);
+
+    private final long interval;
+    private final long minBytes;
+    private final double percentStep;
+
+    private Policy(long interval, long minBytes, double percentStep) {
+      this.interval = interval;
+      this.minBytes = minBytes;
+      this.percentStep = percentStep;
+    }
+
+    /**
+     * @param options map of 'interval' (ms), 'minBytes' and 'percentStep', missing values are 0
+     * @return
+     */
+    static Policy fromMap(ReadableMap options) {
+      return new Policy(
+        (long) getOption(options, "interval"),
+        (long) getOption(options, "minBytes"),
+        Math.min(100, getOption(options, "percentStep"))
+      );
+    }
+
+    private static double getOption(@Nullable ReadableMap options, String name) {
+      if (options == null || !options.hasKey(name) || options.isNull(name)) return 0;
+      return Math.max(0, options.getDouble(name));
+    }
+  }
+
+  /**
+   * Progress updates sent and suppressed for an app
+   */
+  static class Stats {
+    private final AtomicLong emitted = new AtomicLong();
+    private final AtomicLong suppressed = new AtomicLong();
+
+    WritableMap toMap() {
+      WritableMap map = Arguments.createMap();
+      map.putDouble("emitted", emitted.get());
+      map.putDouble("suppressed", suppressed.get());
+      return map;
+    }
+
+    void reset() {
+      emitted.set(0);
+      suppressed.set(0);
+    }
+  }
+
+  /**
+   * @param policy
+   * @param stats  counters of the app the task belongs to
+   */
+  RNFirebaseStorageProgressThrottle(Policy policy, Stats stats) {
+    this.policy = policy;
+    this.stats = stats;
+  }
+
+  /**
+   * @param state            task state, any change is always sent
+   * @param bytesTransferred
+   * @param totalBytes
+   * @return true if the update should be sent to JS
+   */
+  synchronized boolean shouldEmit(String state, long bytesTransferred, long totalBytes) {
+    long now = SystemClock.elapsedRealtime();
+    boolean emit = !state.equals(lastState)
+      || (totalBytes > 0 && bytesTransferred >= totalBytes && bytesTransferred != lastBytes)
+      || (now - lastTime >= policy.interval
+      && bytesTransferred - lastBytes >= policy.minBytes
+      && (totalBytes <= 0 || (bytesTransferred - lastBytes) * 100d / totalBytes >= policy.percentStep));
+
+    if (!emit) {
+      stats.suppressed.incrementAndGet();
+      return false;
+    }
+
+    record(state, bytesTransferred, now);
+    return true;
+  }
+
+  /**
+   * Count an update that is sent regardless of the policy, e.g. the task pausing.
+   *
+   * @param state
+   * @param bytesTransferred
+   */
+  synchronized void forceEmit(String state, long bytesTransferred) {
+    record(state, bytesTransferred, SystemClock.elapsedRealtime());
+  }
+
+  private void record(String state, long bytesTransferred, long now) {
+    lastState = state;
+    lastBytes = bytesTransferred;
+    lastTime = now;
+    stats.emitted.incrementAndGet();
+  }
+}
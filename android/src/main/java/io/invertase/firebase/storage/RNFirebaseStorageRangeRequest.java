@@ -0,0 +1,79 @@
+package io.invertase.firebase.storage;
+
+import android.support.annotation.Nullable;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * HTTP GET of a byte range of a storage object from its download URL, the storage
+ * SDK streams only ever start at the first byte.
+ */
+class RNFirebaseStorageRangeRequest {
+  private static final int CONNECT_TIMEOUT = 15000;
+  private static final int READ_TIMEOUT = 30000;
+
+  /**
+   * Error response from the storage server
+   */
+  static class HttpStatusException extends IOException {
+    final int status;
+
+    HttpStatusException(int status) {
+      super("Storage server responded with HTTP " + status + ".");
+      this.status = status;
+    }
+  }
+
+  /**
+   * @param downloadUrl
+   * @param start       first byte
+   * @param end         last byte (inclusive), or -1 for the rest of the object
+   * @param ifRange     ETag the range is only valid for, the server responds 200 with
+   *                    the whole object if it no longer matches
+   * @return an open connection with a 200 or 206 response
+   * @throws IOException
+   */
+  static HttpURLConnection open(String downloadUrl, long start, long end, @Nullable String ifRange) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) new URL(downloadUrl).openConnection();
+    connection.setConnectTimeout(CONNECT_TIMEOUT);
+    connection.setReadTimeout(READ_TIMEOUT);
+    connection.setRequestProperty("Accept-Encoding", "identity");
+
+    if (start > 0 || end >= 0) {
+      connection.setRequestProperty("Range", "bytes=" + start + "-" + (end >= 0 ? String.valueOf(end) : ""));
+      if (ifRange != null) connection.setRequestProperty("If-Range", ifRange);
+    }
+
+    int status = connection.getResponseCode();
+    if (status != HttpURLConnection.HTTP_OK && status != HttpURLConnection.HTTP_PARTIAL) {
+      connection.disconnect();
+      throw new HttpStatusException(status);
+    }
+
+    return connection;
+  }
+
+  /**
+   * @param connection
+   * @return the first byte of a 206 response, 0 for a whole object response
+   */
+  static long getRangeStart(HttpURLConnection connection) throws IOException {
+    if (connection.getResponseCode() != HttpURLConnection.HTTP_PARTIAL) return 0;
+
+    String contentRange = connection.getHeaderField("Content-Range");
+    if (contentRange == null) throw new IOException("Missing Content-Range in partial response.");
+
+    // bytes <start>-<end>/<size>
+    int space = contentRange.indexOf(' ');
+    int dash = contentRange.indexOf('-', space + 1);
+    if (space < 0 || dash < 0) throw new IOException("Invalid Content-Range '" + contentRange + "'.");
+
+    try {
+      return Long.parseLong(contentRange.substring(space + 1, dash).trim());
+    } catch (NumberFormatException e) {
+      throw new IOException("Invalid Content-Range '" + contentRange + "'.");
+    }
+  }
+}
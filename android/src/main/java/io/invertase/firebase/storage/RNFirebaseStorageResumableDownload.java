@@ -0,0 +1,148 @@
+package io.invertase.firebase.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Downloads an object to a partial file next to the target, checkpointing the
+ * offset as it goes. A later download of the same object (same generation) to the
+ * same path requests only the remaining bytes, after a failure or process death.
+ * <p>
+ * The partial file is moved to the target once complete.
+ */
+class RNFirebaseStorageResumableDownload implements Runnable {
+  private static final long CHECKPOINT_INTERVAL = 1024 * 1024;
+
+  private final String downloadUrl;
+  private final String localPath;
+  private final String generation;
+  private final long totalBytes;
+  private final int bufferSize;
+  private final RNFirebaseStorageDownloadListener listener;
+
+  /**
+   * @param downloadUrl
+   * @param localPath
+   * @param generation  object generation from its StorageMetadata
+   * @param totalBytes  object size from its StorageMetadata
+   * @param bufferSize
+   * @param listener
+   */
+  RNFirebaseStorageResumableDownload(String downloadUrl, String localPath, String generation, long totalBytes, int bufferSize, RNFirebaseStorageDownloadListener listener) {
+    this.downloadUrl = downloadUrl;
+    this.localPath = localPath;
+    this.generation = generation;
+    this.totalBytes = totalBytes;
+    this.bufferSize = bufferSize;
+    this.listener = listener;
+  }
+
+  @Override
+  public void run() {
+    try {
+      download();
+    } catch (Exception exception) {
+      listener.onFailure(exception);
+    }
+  }
+
+  private void download() throws IOException {
+    File target = new File(localPath);
+    File directory = target.getAbsoluteFile().getParentFile();
+    if (directory != null && !directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+      throw new IOException("Unable to create directory " + directory.getPath());
+    }
+
+    RNFirebaseStorageDownloadCheckpoint checkpoint = RNFirebaseStorageDownloadCheckpoint.load(localPath, generation, totalBytes);
+    File part = RNFirebaseStorageDownloadCheckpoint.partFile(localPath);
+
+    if (totalBytes <= 0 || checkpoint.offset < totalBytes) {
+      fetch(checkpoint, part);
+    }
+
+    if (totalBytes > 0 && part.length() != totalBytes) {
+      throw new IOException("Downloaded " + part.length() + " of " + totalBytes + " bytes.");
+    }
+
+    if (!RNFirebaseStorageFileWriter.rename(part, target)) {
+      throw new IOException("Unable to move downloaded file to " + target.getPath());
+    }
+
+    checkpoint.delete();
+    listener.onSuccess(target.length());
+  }
+
+  /**
+   * Request the bytes from the checkpoint offset onwards and append them to the
+   * partial file, starting again from 0 if the server sends the whole object.
+   *
+   * @param checkpoint
+   * @param part
+   * @throws IOException
+   */
+  private void fetch(RNFirebaseStorageDownloadCheckpoint checkpoint, File part) throws IOException {
+    HttpURLConnection connection = RNFirebaseStorageRangeRequest.open(downloadUrl, checkpoint.offset, -1, checkpoint.etag);
+    long offset = RNFirebaseStorageRangeRequest.getRangeStart(connection);
+
+    if (offset != checkpoint.offset && offset != 0) {
+      connection.disconnect();
+      throw new IOException("Storage server sent bytes from " + offset + ", expected " + checkpoint.offset + ".");
+    }
+
+    String etag = connection.getHeaderField("ETag");
+    if (etag != null) checkpoint.etag = etag;
+
+    InputStream inputStream = connection.getInputStream();
+    ReadableByteChannel input = Channels.newChannel(inputStream);
+    RandomAccessFile file = new RandomAccessFile(part, "rw");
+    FileChannel output = file.getChannel();
+    ByteBuffer buffer = RNFirebaseStorageFileWriter.acquireBuffer(bufferSize);
+
+    try {
+      output.truncate(offset);
+      output.position(offset);
+      checkpoint.offset = offset;
+      checkpoint.save();
+
+      long checkpointed = offset;
+      boolean eof = false;
+
+      while (!eof) {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+          if (input.read(buffer) == -1) {
+            eof = true;
+            break;
+          }
+        }
+
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+          offset += output.write(buffer);
+        }
+
+        if (eof || offset - checkpointed >= CHECKPOINT_INTERVAL) {
+          // data must be on disk before the checkpoint says it is
+          output.force(false);
+          checkpoint.offset = offset;
+          checkpoint.save();
+          checkpointed = offset;
+        }
+
+        listener.onProgress(offset, totalBytes);
+      }
+    } finally {
+      RNFirebaseStorageFileWriter.releaseBuffer(buffer);
+      RNFirebaseStorageFileWriter.closeQuietly(input);
+      RNFirebaseStorageFileWriter.closeQuietly(file);
+      connection.disconnect();
+    }
+  }
+}
@@ -0,0 +1,255 @@
+package io.invertase.firebase.storage;
+
+import android.support.annotation.Nullable;
+import android.util.Base64;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Downloads an object of known size as N byte ranges fetched concurrently, each
+ * written at its position in a preallocated temporary file next to the target.
+ * <p>
+ * Once all segments complete, the file size and md5 hash are verified against the
+ * object metadata before the file is moved to the target.
+ */
+class RNFirebaseStorageSegmentedDownload implements Runnable {
+  static final int MAX_SEGMENTS = 8;
+  private static final long MIN_SEGMENT_SIZE = 1024 * 1024;
+  private static final String TEMP_SUFFIX = ".download";
+
+  /**
+   * Downloaded file does not match the md5 hash of the object
+   */
+  static class ChecksumException extends IOException {
+    ChecksumException() {
+      super("Downloaded file does not match the md5 hash of the object.");
+    }
+  }
+
+  private final String downloadUrl;
+  private final String localPath;
+  private final long totalBytes;
+  private final String md5Hash;
+  private final int segments;
+  private final int bufferSize;
+  private final ExecutorService segmentExecutor;
+  private final RNFirebaseStorageDownloadListener listener;
+  private final AtomicLong bytesTransferred = new AtomicLong();
+
+  /**
+   * @param downloadUrl
+   * @param localPath
+   * @param totalBytes      object size from its StorageMetadata
+   * @param md5Hash         base64 md5 hash from its StorageMetadata, not verified if null
+   * @param segments        requested number of segments, reduced so no segment is under 1MB
+   * @param bufferSize      buffer size of each segment
+   * @param segmentExecutor bounded pool the segments are fetched on
+   * @param listener
+   */
+  RNFirebaseStorageSegmentedDownload(String downloadUrl, String localPath, long totalBytes, @Nullable String md5Hash, int segments, int bufferSize, ExecutorService segmentExecutor, RNFirebaseStorageDownloadListener listener) {
+    this.downloadUrl = downloadUrl;
+    this.localPath = localPath;
+    this.totalBytes = totalBytes;
+    this.md5Hash = md5Hash;
+    this.segments = (int) Math.max(1, Math.min(Math.min(segments, MAX_SEGMENTS), totalBytes / MIN_SEGMENT_SIZE));
+    this.bufferSize = bufferSize;
+    this.segmentExecutor = segmentExecutor;
+    this.listener = listener;
+  }
+
+  @Override
+  public void run() {
+    try {
+      download();
+    } catch (Exception exception) {
+      listener.onFailure(exception);
+    }
+  }
+
+  private void download() throws Exception {
+    File target = new File(localPath);
+    File directory = target.getAbsoluteFile().getParentFile();
+    if (directory != null && !directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+      throw new IOException("Unable to create directory " + directory.getPath());
+    }
+
+    File temp = File.createTempFile(target.getName(), TEMP_SUFFIX, directory);
+    RandomAccessFile file = null;
+    boolean completed = false;
+
+    try {
+      file = new RandomAccessFile(temp, "rw");
+      file.setLength(totalBytes);
+      fetchSegments(file.getChannel());
+      file.getChannel().force(false);
+      file.close();
+      file = null;
+
+      if (temp.length() != totalBytes) {
+        throw new IOException("Downloaded " + temp.length() + " of " + totalBytes + " bytes.");
+      }
+
+      if (md5Hash != null && !md5Hash.equals(md5(temp))) {
+        throw new ChecksumException();
+      }
+
+      if (!RNFirebaseStorageFileWriter.rename(temp, target)) {
+        throw new IOException("Unable to move downloaded file to " + target.getPath());
+      }
+
+      completed = true;
+      listener.onSuccess(totalBytes);
+    } finally {
+      if (file != null) RNFirebaseStorageFileWriter.closeQuietly(file);
+      if (!completed) {
+        // noinspection ResultOfMethodCallIgnored
+        temp.delete();
+      }
+    }
+  }
+
+  /**
+   * Fetch all segments on the segment pool, the first failure cancels the others.
+   *
+   * @param output
+   * @throws Exception
+   */
+  private void fetchSegments(final FileChannel output) throws Exception {
+    long segmentSize = (totalBytes + segments - 1) / segments;
+    CompletionService<Void> completionService = new ExecutorCompletionService<>(segmentExecutor);
+    List<Future<Void>> futures = new ArrayList<>(segments);
+
+    for (int i = 0; i < segments; i++) {
+      final long start = i * segmentSize;
+      final long end = Math.min(totalBytes, start + segmentSize) - 1;
+
+      futures.add(completionService.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws IOException {
+          fetchSegment(output, start, end);
+          return null;
+        }
+      }));
+    }
+
+    try {
+      // in completion order, so a failing segment is not waited on behind slower ones
+      for (int i = 0; i < segments; i++) {
+        completionService.take().get();
+      }
+    } catch (ExecutionException e) {
+      for (Future<Void> future : futures) {
+        future.cancel(true);
+      }
+      Throwable cause = e.getCause();
+      throw cause instanceof Exception ? (Exception) cause : e;
+    }
+  }
+
+  /**
+   * Fetch the bytes start - end (inclusive) and write them at the same positions.
+   *
+   * @param output
+   * @param start
+   * @param end
+   * @throws IOException
+   */
+  private void fetchSegment(FileChannel output, long start, long end) throws IOException {
+    HttpURLConnection connection = RNFirebaseStorageRangeRequest.open(downloadUrl, start, end, null);
+
+    if (RNFirebaseStorageRangeRequest.getRangeStart(connection) != start || (segments > 1 && connection.getResponseCode() != HttpURLConnection.HTTP_PARTIAL)) {
+      connection.disconnect();
+      throw new IOException("Storage server did not send the requested range " + start + "-" + end + ".");
+    }
+
+    InputStream inputStream = connection.getInputStream();
+    ReadableByteChannel input = Channels.newChannel(inputStream);
+    ByteBuffer buffer = RNFirebaseStorageFileWriter.acquireBuffer(bufferSize);
+    long position = start;
+    long limit = end + 1;
+
+    try {
+      boolean eof = false;
+
+      while (!eof && position < limit) {
+        buffer.clear();
+        if (buffer.capacity() > limit - position) buffer.limit((int) (limit - position));
+
+        while (buffer.hasRemaining()) {
+          if (Thread.currentThread().isInterrupted()) throw new IOException("Segment download cancelled.");
+          if (input.read(buffer) == -1) {
+            eof = true;
+            break;
+          }
+        }
+
+        buffer.flip();
+        int length = buffer.remaining();
+        while (buffer.hasRemaining()) {
+          position += output.write(buffer, position);
+        }
+
+        listener.onProgress(bytesTransferred.addAndGet(length), totalBytes);
+      }
+
+      if (position != limit) {
+        throw new IOException("Segment " + start + "-" + end + " ended after " + (position - start) + " bytes.");
+      }
+    } finally {
+      RNFirebaseStorageFileWriter.releaseBuffer(buffer);
+      RNFirebaseStorageFileWriter.closeQuietly(input);
+      connection.disconnect();
+    }
+  }
+
+  /**
+   * @param file
+   * @return base64 md5 hash of the file, as in StorageMetadata
+   * @throws IOException
+   */
+  private String md5(File file) throws IOException {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("MD5");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IOException("MD5 is not available.");
+    }
+
+    RandomAccessFile input = new RandomAccessFile(file, "r");
+    FileChannel channel = input.getChannel();
+    ByteBuffer buffer = RNFirebaseStorageFileWriter.acquireBuffer(bufferSize);
+
+    try {
+      buffer.clear();
+      while (channel.read(buffer) != -1) {
+        buffer.flip();
+        digest.update(buffer);
+        buffer.clear();
+      }
+    } finally {
+      RNFirebaseStorageFileWriter.releaseBuffer(buffer);
+      RNFirebaseStorageFileWriter.closeQuietly(input);
+    }
+
+    return Base64.encodeToString(digest.digest(), Base64.NO_WRAP);
+  }
+}
@@ -0,0 +1,399 @@
+package io.invertase.firebase.storage;
+
+import android.support.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactContext;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.google.firebase.storage.StorageTask;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import io.invertase.firebase.Utils;
+
+/**
+ * Process wide queue of storage upload and download tasks, limiting how many of
+ * each type run at once. Queued tasks start in priority order ('high', 'normal'
+ * then 'low'), first in first out within a priority.
+ * <p>
+ * Task handles are kept natively so tasks continue and can still be paused, resumed,
+ * cancelled and inspected by id after a JS reload, events are sent to the current
+ * react context.
+ */
+class RNFirebaseStorageTaskScheduler {
+  static final String UPLOAD = "upload";
+  static final String DOWNLOAD = "download";
+
+  static final String PRIORITY_HIGH = "high";
+  static final String PRIORITY_NORMAL = "normal";
+  static final String PRIORITY_LOW = "low";
+
+  static final String STATE_QUEUED = "queued";
+  static final String STATE_RUNNING = "running";
+  static final String STATE_PAUSED = "paused";
+
+  private static final String[] PRIORITIES = {PRIORITY_HIGH, PRIORITY_NORMAL, PRIORITY_LOW};
+  private static final int DEFAULT_MAX_CONCURRENT_UPLOADS = 2;
+  private static final int DEFAULT_MAX_CONCURRENT_DOWNLOADS = 4;
+
+  private static RNFirebaseStorageTaskScheduler instance;
+
+  private volatile ReactContext reactContext;
+  private final Map<String, ScheduledTask> tasks = new LinkedHashMap<>();
+  private final Map<String, TypeQueue> queues = new HashMap<>();
+  private final ThreadPoolExecutor downloadExecutor;
+
+  /**
+   * Starts a scheduled task, called when a slot is free.
+   * Returns null if the task could not be started, having rejected its promise.
+   */
+  interface Starter {
+    @Nullable
+    Handle start(String taskId);
+  }
+
+  /**
+   * A started task, either a storage SDK task or a download run on the download executor.
+   */
+  interface Handle {
+    boolean pause();
+
+    boolean resume();
+
+    boolean cancel();
+  }
+
+  /**
+   * @param task
+   * @return a handle of the storage SDK task, null if the task is null
+   */
+  @Nullable
+  static Handle wrap(@Nullable final StorageTask<?> task) {
+    if (task == null) return null;
+
+    return new Handle() {
+      @Override
+      public boolean pause() {
+        return task.pause();
+      }
+
+      @Override
+      public boolean resume() {
+        return task.resume();
+      }
+
+      @Override
+      public boolean cancel() {
+        return task.cancel();
+      }
+    };
+  }
+
+  private static class ScheduledTask {
+    private final String id;
+    private final String type;
+    private final String priority;
+    private final String appName;
+    private final String path;
+    private final Starter starter;
+    private final Promise promise;
+    private final long queuedAt = System.currentTimeMillis();
+    private String state = STATE_QUEUED;
+    private Handle task;
+
+    ScheduledTask(String id, String type, String priority, String appName, String path, Starter starter, Promise promise) {
+      this.id = id;
+      this.type = type;
+      this.priority = priority;
+      this.appName = appName;
+      this.path = path;
+      this.starter = starter;
+      this.promise = promise;
+    }
+  }
+
+  private static class TypeQueue {
+    private final Map<String, ArrayDeque<ScheduledTask>> byPriority = new HashMap<>();
+    private int maxConcurrent;
+    private int running = 0;
+
+    TypeQueue(int maxConcurrent) {
+      this.maxConcurrent = maxConcurrent;
+      for (String priority : PRIORITIES) {
+        byPriority.put(priority, new ArrayDeque<ScheduledTask>());
+      }
+    }
+
+    @Nullable ScheduledTask poll() {
+      for (String priority : PRIORITIES) {
+        ScheduledTask scheduledTask = byPriority.get(priority).pollFirst();
+        if (scheduledTask != null) return scheduledTask;
+      }
+      return null;
+    }
+
+    int queued() {
+      int queued = 0;
+      for (ArrayDeque<ScheduledTask> queue : byPriority.values()) {
+        queued += queue.size();
+      }
+      return queued;
+    }
+  }
+
+  private RNFirebaseStorageTaskScheduler() {
+    queues.put(UPLOAD, new TypeQueue(DEFAULT_MAX_CONCURRENT_UPLOADS));
+    queues.put(DOWNLOAD, new TypeQueue(DEFAULT_MAX_CONCURRENT_DOWNLOADS));
+
+    downloadExecutor = new ThreadPoolExecutor(
+      DEFAULT_MAX_CONCURRENT_DOWNLOADS,
+      DEFAULT_MAX_CONCURRENT_DOWNLOADS,
+      30,
+      TimeUnit.SECONDS,
+      new LinkedBlockingQueue<Runnable>()
+    );
+    downloadExecutor.allowCoreThreadTimeOut(true);
+  }
+
+  static synchronized RNFirebaseStorageTaskScheduler getInstance() {
+    if (instance == null) instance = new RNFirebaseStorageTaskScheduler();
+    return instance;
+  }
+
+  /**
+   * @param context the react context events of all tasks are sent to, replaced on JS reload
+   */
+  void setReactContext(ReactContext context) {
+    reactContext = context;
+  }
+
+  /**
+   * @param eventName
+   * @param body
+   */
+  void sendEvent(String eventName, WritableMap body) {
+    Utils.sendEvent(reactContext, eventName, body);
+  }
+
+  /**
+   * @param priority
+   * @return the priority if known, otherwise 'normal'
+   */
+  static String normalizePriority(@Nullable String priority) {
+    return PRIORITY_HIGH.equals(priority) || PRIORITY_LOW.equals(priority) ? priority : PRIORITY_NORMAL;
+  }
+
+  /**
+   * @param config map of 'maxConcurrentUploads' and 'maxConcurrentDownloads', at least 1
+   */
+  synchronized void configure(ReadableMap config) {
+    if (config.hasKey("maxConcurrentUploads") && !config.isNull("maxConcurrentUploads")) {
+      queues.get(UPLOAD).maxConcurrent = Math.max(1, config.getInt("maxConcurrentUploads"));
+    }
+    if (config.hasKey("maxConcurrentDownloads") && !config.isNull("maxConcurrentDownloads")) {
+      queues.get(DOWNLOAD).maxConcurrent = Math.max(1, config.getInt("maxConcurrentDownloads"));
+      setDownloadPoolSize(queues.get(DOWNLOAD).maxConcurrent);
+    }
+
+    dispatch(UPLOAD);
+    dispatch(DOWNLOAD);
+  }
+
+  /**
+   * Executor the downloads that are not storage SDK tasks (resumable and segmented) run on
+   * once the scheduler starts them, sized to 'maxConcurrentDownloads'.
+   *
+   * @return
+   */
+  Executor getDownloadExecutor() {
+    return downloadExecutor;
+  }
+
+  /**
+   * Resize the download pool, the core size must stay at or below the maximum.
+   *
+   * @param size
+   */
+  private void setDownloadPoolSize(int size) {
+    if (size > downloadExecutor.getMaximumPoolSize()) {
+      downloadExecutor.setMaximumPoolSize(size);
+      downloadExecutor.setCorePoolSize(size);
+    } else {
+      downloadExecutor.setCorePoolSize(size);
+      downloadExecutor.setMaximumPoolSize(size);
+    }
+  }
+
+  /**
+   * Queue a task, starting it straight away if a slot is free.
+   *
+   * @param taskId   unique id, a task already scheduled with the id is rejected
+   * @param type     'upload' or 'download'
+   * @param priority
+   * @param appName
+   * @param path
+   * @param starter
+   * @param promise  rejected if the task is cancelled before it started
+   */
+  synchronized void schedule(String taskId, String type, String priority, String appName, String path, Starter starter, Promise promise) {
+    if (tasks.containsKey(taskId)) {
+      promise.reject("storage/invalid-argument", "A storage task with id '" + taskId + "' is already scheduled.");
+      return;
+    }
+
+    ScheduledTask scheduledTask = new ScheduledTask(taskId, type, normalizePriority(priority), appName, path, starter, promise);
+    tasks.put(taskId, scheduledTask);
+    queues.get(type).byPriority.get(scheduledTask.priority).addLast(scheduledTask);
+    dispatch(type);
+  }
+
+  /**
+   * A started task succeeded, failed or was cancelled.
+   *
+   * @param taskId
+   */
+  synchronized void onFinished(String taskId) {
+    ScheduledTask scheduledTask = tasks.remove(taskId);
+    if (scheduledTask == null) return;
+
+    if (STATE_RUNNING.equals(scheduledTask.state)) {
+      queues.get(scheduledTask.type).running--;
+    }
+    dispatch(scheduledTask.type);
+  }
+
+  /**
+   * Pause a task, a paused task does not take up a slot.
+   *
+   * @param taskId
+   * @return false if the task is unknown or can not be paused
+   */
+  synchronized boolean pause(String taskId) {
+    ScheduledTask scheduledTask = tasks.get(taskId);
+    if (scheduledTask == null) return false;
+
+    TypeQueue queue = queues.get(scheduledTask.type);
+    switch (scheduledTask.state) {
+      case STATE_QUEUED:
+        queue.byPriority.get(scheduledTask.priority).remove(scheduledTask);
+        scheduledTask.state = STATE_PAUSED;
+        return true;
+      case STATE_RUNNING:
+        if (!scheduledTask.task.pause()) return false;
+        scheduledTask.state = STATE_PAUSED;
+        queue.running--;
+        dispatch(scheduledTask.type);
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Queue a paused task again, at the front of its priority.
+   *
+   * @param taskId
+   * @return false if the task is unknown or not paused
+   */
+  synchronized boolean resume(String taskId) {
+    ScheduledTask scheduledTask = tasks.get(taskId);
+    if (scheduledTask == null || !STATE_PAUSED.equals(scheduledTask.state)) return false;
+
+    scheduledTask.state = STATE_QUEUED;
+    queues.get(scheduledTask.type).byPriority.get(scheduledTask.priority).addFirst(scheduledTask);
+    dispatch(scheduledTask.type);
+    return true;
+  }
+
+  /**
+   * Cancel a task, a task that has not started is rejected with 'storage/cancelled',
+   * a started task fails with its cancelled error.
+   *
+   * @param taskId
+   * @return false if the task is unknown
+   */
+  synchronized boolean cancel(String taskId) {
+    ScheduledTask scheduledTask = tasks.get(taskId);
+    if (scheduledTask == null) return false;
+
+    if (scheduledTask.task != null) {
+      return scheduledTask.task.cancel();
+    }
+
+    tasks.remove(taskId);
+    queues.get(scheduledTask.type).byPriority.get(scheduledTask.priority).remove(scheduledTask);
+    scheduledTask.promise.reject("storage/cancelled", "User cancelled the operation.");
+    return true;
+  }
+
+  /**
+   * @return map of 'uploads' and 'downloads' { running, queued, maxConcurrent }
+   * and 'tasks', an array of { id, type, priority, state, appName, path, queuedAt }
+   */
+  synchronized WritableMap getState() {
+    WritableMap state = Arguments.createMap();
+    state.putMap("uploads", getQueueState(queues.get(UPLOAD)));
+    state.putMap("downloads", getQueueState(queues.get(DOWNLOAD)));
+
+    WritableArray taskArray = Arguments.createArray();
+    for (ScheduledTask scheduledTask : tasks.values()) {
+      WritableMap taskMap = Arguments.createMap();
+      taskMap.putString("id", scheduledTask.id);
+      taskMap.putString("type", scheduledTask.type);
+      taskMap.putString("priority", scheduledTask.priority);
+      taskMap.putString("state", scheduledTask.state);
+      taskMap.putString("appName", scheduledTask.appName);
+      taskMap.putString("path", scheduledTask.path);
+      taskMap.putDouble("queuedAt", scheduledTask.queuedAt);
+      taskArray.pushMap(taskMap);
+    }
+    state.putArray("tasks", taskArray);
+
+    return state;
+  }
+
+  private static WritableMap getQueueState(TypeQueue queue) {
+    WritableMap queueState = Arguments.createMap();
+    queueState.putInt("running", queue.running);
+    queueState.putInt("queued", queue.queued());
+    queueState.putInt("maxConcurrent", queue.maxConcurrent);
+    return queueState;
+  }
+
+  /**
+   * Start (or resume) queued tasks of the type while there are free slots.
+   *
+   * @param type
+   */
+  private void dispatch(String type) {
+    TypeQueue queue = queues.get(type);
+
+    while (queue.running < queue.maxConcurrent) {
+      ScheduledTask scheduledTask = queue.poll();
+      if (scheduledTask == null) return;
+
+      scheduledTask.state = STATE_RUNNING;
+      queue.running++;
+
+      if (scheduledTask.task != null) {
+        scheduledTask.task.resume();
+      } else {
+        scheduledTask.task = scheduledTask.starter.start(scheduledTask.id);
+        if (scheduledTask.task == null) {
+          queue.running--;
+          tasks.remove(scheduledTask.id);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,147 @@
+package io.invertase.firebase;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Payload shapes shared by the benchmarks, as plain Map, List and leaf values.
+ * <p>
+ * shallow - one level of 10 mixed leaves
+ * deep    - 30 nested levels (the database allows 32), 3 leaves on each
+ * wide    - 1000 children of 3 leaves each
+ * array   - a list of 1000 numbers
+ */
+public final class Payloads {
+  public static final String SHALLOW = "shallow";
+  public static final String DEEP = "deep";
+  public static final String WIDE = "wide";
+  public static final String ARRAY = "array";
+
+  private static final int DEPTH = 30;
+  private static final int WIDTH = 1000;
+
+  private Payloads() {
+  }
+
+  /**
+   * @param shape
+   * @return a Map, or a List for the array shape
+   */
+  public static Object create(String shape) {
+    switch (shape) {
+      case SHALLOW:
+        return shallow(0);
+      case DEEP:
+        return deep(DEPTH);
+      case WIDE:
+        return wide();
+      case ARRAY:
+        return array();
+      default:
+        throw new IllegalArgumentException("Unknown payload shape " + shape);
+    }
+  }
+
+  /**
+   * @param shape
+   * @return the payload, the array shape wrapped in a map under 'value'
+   */
+  @SuppressWarnings("unchecked")
+  public static Map<String, Object> createMap(String shape) {
+    Object payload = create(shape);
+    if (payload instanceof Map) return (Map<String, Object>) payload;
+
+    Map<String, Object> map = new HashMap<>();
+    map.put("value", payload);
+    return map;
+  }
+
+  /**
+   * @param shape
+   * @return the payload, the values of the map shapes as a list
+   */
+  @SuppressWarnings("unchecked")
+  public static List<Object> createList(String shape) {
+    Object payload = create(shape);
+    if (payload instanceof List) return (List<Object>) payload;
+    return new ArrayList<>(((Map<String, Object>) payload).values());
+  }
+
+  /**
+   * Flatten the leaves of a payload to '/' separated paths.
+   *
+   * @param shape
+   * @return
+   */
+  public static Map<String, Object> leaves(String shape) {
+    Map<String, Object> leaves = new HashMap<>();
+    flatten("", create(shape), leaves);
+    return leaves;
+  }
+
+  private static void flatten(String path, Object value, Map<String, Object> leaves) {
+    if (value instanceof Map) {
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+        flatten(path + "/" + entry.getKey(), entry.getValue(), leaves);
+      }
+    } else if (value instanceof List) {
+      List<?> list = (List<?>) value;
+      for (int i = 0; i < list.size(); i++) {
+        flatten(path + "/" + i, list.get(i), leaves);
+      }
+    } else {
+      leaves.put(path, value);
+    }
+  }
+
+  private static Map<String, Object> shallow(int seed) {
+    Map<String, Object> value = new HashMap<>();
+    value.put("name", "item " + seed);
+    value.put("description", "A shallow payload of mixed leaves");
+    value.put("index", (long) seed);
+    value.put("count", 1024L + seed);
+    value.put("score", 0.5 + seed);
+    value.put("ratio", 1.0 / (seed + 3));
+    value.put("active", seed % 2 == 0);
+    value.put("archived", false);
+    value.put("createdAt", 1508284800000L + seed);
+    value.put("owner", "user" + seed);
+    return value;
+  }
+
+  private static Map<String, Object> deep(int depth) {
+    Map<String, Object> value = leaf(depth);
+    for (int level = depth - 1; level > 0; level--) {
+      Map<String, Object> parent = leaf(level);
+      parent.put("next", value);
+      value = parent;
+    }
+    return value;
+  }
+
+  private static Map<String, Object> wide() {
+    Map<String, Object> value = new HashMap<>();
+    for (int i = 0; i < WIDTH; i++) {
+      value.put("child" + i, leaf(i));
+    }
+    return value;
+  }
+
+  private static List<Object> array() {
+    List<Object> value = new ArrayList<>(WIDTH);
+    for (int i = 0; i < WIDTH; i++) {
+      value.add(i % 3 == 0 ? (Object) (i + 0.5) : (Object) (long) i);
+    }
+    return value;
+  }
+
+  private static Map<String, Object> leaf(int index) {
+    Map<String, Object> value = new HashMap<>();
+    value.put("name", "child " + index);
+    value.put("index", (long) index);
+    value.put("active", index % 2 == 0);
+    return value;
+  }
+}
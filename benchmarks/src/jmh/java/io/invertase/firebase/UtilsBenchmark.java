@@ -0,0 +1,345 @@
+package io.invertase.firebase;
+
+import android.util.Log;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.bridge.WritableNativeArray;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.MutableData;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversions between snapshots, bridge maps and java values run for every event.
+ * <p>
+ * The legacy benchmarks run the two pass converter snapshots were converted with
+ * before (isArray, then buildArray or buildMap recursing through castValue), copied
+ * below, against the same payloads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UtilsBenchmark {
+  private static final String TAG = "UtilsBenchmark";
+
+  @Param({Payloads.SHALLOW, Payloads.DEEP, Payloads.WIDE, Payloads.ARRAY})
+  public String shape;
+
+  private DataSnapshot snapshot;
+  private MutableData mutableData;
+  private ReadableMap readableMap;
+  private ReadableArray readableArray;
+  private String[] leafKeys;
+  private Object[] leafValues;
+
+  @Setup
+  public void setUp() {
+    Object payload = Payloads.create(shape);
+    snapshot = new DataSnapshot("payload", payload);
+    mutableData = new MutableData("payload", payload);
+    readableMap = Arguments.makeNativeMap(Payloads.createMap(shape));
+    readableArray = Arguments.makeNativeArray(Payloads.createList(shape));
+
+    Map<String, Object> leaves = Payloads.leaves(shape);
+    leafKeys = leaves.keySet().toArray(new String[leaves.size()]);
+    leafValues = new Object[leafKeys.length];
+    for (int i = 0; i < leafKeys.length; i++) {
+      leafValues[i] = leaves.get(leafKeys[i]);
+    }
+  }
+
+  @Benchmark
+  public WritableMap snapshotToMap() {
+    return Utils.snapshotToMap(snapshot);
+  }
+
+  @Benchmark
+  public WritableMap legacySnapshotToMap() {
+    return legacySnapshotToMap(snapshot);
+  }
+
+  @Benchmark
+  public Object castMutableData() {
+    return Utils.castValue(mutableData);
+  }
+
+  @Benchmark
+  public Object legacyCastMutableData() {
+    return legacyCastValue(mutableData);
+  }
+
+  @Benchmark
+  public Map<String, Object> recursivelyDeconstructReadableMap() {
+    return Utils.recursivelyDeconstructReadableMap(readableMap);
+  }
+
+  @Benchmark
+  public List<Object> recursivelyDeconstructReadableArray() {
+    return Utils.recursivelyDeconstructReadableArray(readableArray);
+  }
+
+  @Benchmark
+  public WritableMap readableMapToWritableMap() {
+    return Utils.readableMapToWritableMap(readableMap);
+  }
+
+  /**
+   * Every leaf of the payload put into one map.
+   */
+  @Benchmark
+  public WritableMap mapPutValue() {
+    WritableMap map = Arguments.createMap();
+    for (int i = 0; i < leafKeys.length; i++) {
+      Utils.mapPutValue(leafKeys[i], leafValues[i], map);
+    }
+    return map;
+  }
+
+  // two pass converter as it was before the single pass one, kept to compare against
+
+  private static WritableMap legacySnapshotToMap(DataSnapshot dataSnapshot) {
+    WritableMap snapshot = Arguments.createMap();
+
+    snapshot.putString("key", dataSnapshot.getKey());
+    snapshot.putBoolean("exists", dataSnapshot.exists());
+    snapshot.putBoolean("hasChildren", dataSnapshot.hasChildren());
+    snapshot.putDouble("childrenCount", dataSnapshot.getChildrenCount());
+    snapshot.putArray("childKeys", legacyGetChildKeys(dataSnapshot));
+    Utils.mapPutValue("priority", dataSnapshot.getPriority(), snapshot);
+
+    if (!dataSnapshot.hasChildren()) {
+      Utils.mapPutValue("value", dataSnapshot.getValue(), snapshot);
+    } else {
+      Object value = legacyCastValue(dataSnapshot);
+      if (value instanceof WritableNativeArray) {
+        snapshot.putArray("value", (WritableArray) value);
+      } else {
+        snapshot.putMap("value", (WritableMap) value);
+      }
+    }
+
+    return snapshot;
+  }
+
+  private static WritableArray legacyGetChildKeys(DataSnapshot snapshot) {
+    WritableArray childKeys = Arguments.createArray();
+
+    if (snapshot.hasChildren()) {
+      for (DataSnapshot child : snapshot.getChildren()) {
+        childKeys.pushString(child.getKey());
+      }
+    }
+
+    return childKeys;
+  }
+
+  private static <Any> Any legacyCastValue(DataSnapshot snapshot) {
+    if (snapshot.hasChildren()) {
+      if (legacyIsArray(snapshot)) {
+        return (Any) legacyBuildArray(snapshot);
+      } else {
+        return (Any) legacyBuildMap(snapshot);
+      }
+    } else {
+      if (snapshot.getValue() != null) {
+        String type = snapshot.getValue().getClass().getName();
+        switch (type) {
+          case "java.lang.Boolean":
+          case "java.lang.Long":
+          case "java.lang.Double":
+          case "java.lang.String":
+            return (Any) (snapshot.getValue());
+          default:
+            Log.w(TAG, "Invalid type: " + type);
+            return null;
+        }
+      }
+      return null;
+    }
+  }
+
+  private static <Any> Any legacyCastValue(MutableData mutableData) {
+    if (mutableData.hasChildren()) {
+      if (legacyIsArray(mutableData)) {
+        return (Any) legacyBuildArray(mutableData);
+      } else {
+        return (Any) legacyBuildMap(mutableData);
+      }
+    } else {
+      if (mutableData.getValue() != null) {
+        String type = mutableData.getValue().getClass().getName();
+        switch (type) {
+          case "java.lang.Boolean":
+          case "java.lang.Long":
+          case "java.lang.Double":
+          case "java.lang.String":
+            return (Any) (mutableData.getValue());
+          default:
+            Log.w(TAG, "Invalid type: " + type);
+            return null;
+        }
+      }
+      return null;
+    }
+  }
+
+  private static boolean legacyIsArray(DataSnapshot snapshot) {
+    long expectedKey = -1;
+    long maxAllowedKey = (snapshot.getChildrenCount() * 2) - 1;
+    for (DataSnapshot child : snapshot.getChildren()) {
+      try {
+        long key = Long.parseLong(child.getKey());
+        if (key > expectedKey && key <= maxAllowedKey) {
+          expectedKey = key;
+        } else {
+          return false;
+        }
+      } catch (NumberFormatException ex) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean legacyIsArray(MutableData mutableData) {
+    long expectedKey = -1;
+    long maxAllowedKey = (mutableData.getChildrenCount() * 2) - 1;
+    for (MutableData child : mutableData.getChildren()) {
+      try {
+        long key = Long.parseLong(child.getKey());
+        if (key > expectedKey && key <= maxAllowedKey) {
+          expectedKey++;
+        } else {
+          return false;
+        }
+      } catch (NumberFormatException ex) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static WritableArray legacyBuildArray(DataSnapshot snapshot) {
+    long expectedKey = 0;
+    WritableArray array = Arguments.createArray();
+    for (DataSnapshot child : snapshot.getChildren()) {
+      long key = Long.parseLong(child.getKey());
+      if (key > expectedKey) {
+        for (long i = expectedKey; i < key; i++) {
+          array.pushNull();
+        }
+        expectedKey = key;
+      }
+      legacyArrayPush(legacyCastValue(child), array);
+      expectedKey++;
+    }
+    return array;
+  }
+
+  private static WritableArray legacyBuildArray(MutableData mutableData) {
+    long expectedKey = 0;
+    WritableArray array = Arguments.createArray();
+    for (MutableData child : mutableData.getChildren()) {
+      long key = Long.parseLong(child.getKey());
+      if (key > expectedKey) {
+        for (long i = expectedKey; i < key; i++) {
+          array.pushNull();
+        }
+        expectedKey = key;
+      }
+      legacyArrayPush(legacyCastValue(child), array);
+      expectedKey++;
+    }
+    return array;
+  }
+
+  private static WritableMap legacyBuildMap(DataSnapshot snapshot) {
+    WritableMap map = Arguments.createMap();
+    for (DataSnapshot child : snapshot.getChildren()) {
+      legacyMapPut(child.getKey(), legacyCastValue(child), map);
+    }
+    return map;
+  }
+
+  private static WritableMap legacyBuildMap(MutableData mutableData) {
+    WritableMap map = Arguments.createMap();
+    for (MutableData child : mutableData.getChildren()) {
+      legacyMapPut(child.getKey(), legacyCastValue(child), map);
+    }
+    return map;
+  }
+
+  private static void legacyArrayPush(Object castedChild, WritableArray array) {
+    switch (castedChild.getClass().getName()) {
+      case "java.lang.Boolean":
+        array.pushBoolean((Boolean) castedChild);
+        break;
+      case "java.lang.Long":
+        Long longVal = (Long) castedChild;
+        array.pushDouble((double) longVal);
+        break;
+      case "java.lang.Double":
+        array.pushDouble((Double) castedChild);
+        break;
+      case "java.lang.String":
+        array.pushString((String) castedChild);
+        break;
+      case "com.facebook.react.bridge.WritableNativeMap":
+        array.pushMap((WritableMap) castedChild);
+        break;
+      case "com.facebook.react.bridge.WritableNativeArray":
+        array.pushArray((WritableArray) castedChild);
+        break;
+      default:
+        Log.w(TAG, "Invalid type: " + castedChild.getClass().getName());
+        break;
+    }
+  }
+
+  private static void legacyMapPut(String key, Object castedChild, WritableMap map) {
+    switch (castedChild.getClass().getName()) {
+      case "java.lang.Boolean":
+        map.putBoolean(key, (Boolean) castedChild);
+        break;
+      case "java.lang.Long":
+        map.putDouble(key, (double) ((Long) castedChild));
+        break;
+      case "java.lang.Double":
+        map.putDouble(key, (Double) castedChild);
+        break;
+      case "java.lang.String":
+        map.putString(key, (String) castedChild);
+        break;
+      case "com.facebook.react.bridge.WritableNativeMap":
+        map.putMap(key, (WritableMap) castedChild);
+        break;
+      case "com.facebook.react.bridge.WritableNativeArray":
+        map.putArray(key, (WritableArray) castedChild);
+        break;
+      default:
+        Log.w(TAG, "Invalid type: " + castedChild.getClass().getName());
+        break;
+    }
+  }
+}
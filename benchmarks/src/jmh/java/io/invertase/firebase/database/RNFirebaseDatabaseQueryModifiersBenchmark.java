@@ -0,0 +1,165 @@
+package io.invertase.firebase.database;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.google.firebase.FirebaseApp;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.FirebaseDatabase;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.invertase.firebase.Utils;
+
+/**
+ * Query setup cost of a once() call, compiling the JS modifiers array and applying
+ * it to the query.
+ * <p>
+ * none       - no modifiers
+ * ordered    - orderByChild('ts').limitToLast(50)
+ * range      - orderByChild('ts').startAt(1000).endAt(2000, 'key').limitToFirst(20)
+ * <p>
+ * The cached benchmarks repeat one query shape, the uncached benchmark cycles
+ * through more shapes than the cache holds.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RNFirebaseDatabaseQueryModifiersBenchmark {
+  private static final int UNCACHED_SHAPES = 1024;
+
+  @Param({"none", "ordered", "range"})
+  public String modifiers;
+
+  @Param({"true", "false"})
+  public boolean signatures;
+
+  private DatabaseReference reference;
+  private ReadableArray modifiersArray;
+  private ReadableArray[] uncachedArrays;
+  private int next = 0;
+
+  @Setup
+  public void setUp() {
+    reference = FirebaseDatabase.getInstance(FirebaseApp.getInstance("[DEFAULT]")).getReference("rooms/42");
+    modifiersArray = createModifiers(modifiers, 50, signatures);
+    uncachedArrays = new ReadableArray[UNCACHED_SHAPES];
+    for (int i = 0; i < UNCACHED_SHAPES; i++) {
+      uncachedArrays[i] = createModifiers(modifiers, i + 1, signatures);
+    }
+  }
+
+  @Benchmark
+  public RNFirebaseDatabaseQueryModifiers compileCached() {
+    return RNFirebaseDatabaseQueryModifiers.compile(modifiersArray);
+  }
+
+  @Benchmark
+  public RNFirebaseDatabaseQueryModifiers compileUncached() {
+    ReadableArray array = uncachedArrays[next];
+    next = (next + 1) % UNCACHED_SHAPES;
+    return RNFirebaseDatabaseQueryModifiers.compile(array);
+  }
+
+  /**
+   * Compile, build the query key and apply the modifiers, as once() does.
+   */
+  @Benchmark
+  public void onceSetup(Blackhole blackhole) {
+    RNFirebaseDatabaseQueryModifiers compiled = RNFirebaseDatabaseQueryModifiers.compile(modifiersArray);
+    blackhole.consume("[DEFAULT]$/rooms/42" + compiled.getKey());
+    blackhole.consume(compiled.apply(reference));
+  }
+
+  /**
+   * The parse every once() call did before modifiers were compiled.
+   */
+  @Benchmark
+  public List<Object> deconstructModifiers() {
+    return Utils.recursivelyDeconstructReadableArray(modifiersArray);
+  }
+
+  private static ReadableArray createModifiers(String shape, int limit, boolean signatures) {
+    WritableArray array = Arguments.createArray();
+
+    switch (shape) {
+      case "none":
+        break;
+      case "ordered":
+        array.pushMap(orderBy("orderByChild", "ts", signatures));
+        array.pushMap(limit("limitToLast", limit, signatures));
+        break;
+      case "range":
+        array.pushMap(orderBy("orderByChild", "ts", signatures));
+        array.pushMap(filter("startAt", null, 1000, signatures));
+        array.pushMap(filter("endAt", "key", 2000, signatures));
+        array.pushMap(limit("limitToFirst", limit, signatures));
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown modifiers " + shape);
+    }
+
+    return array;
+  }
+
+  private static WritableMap orderBy(String name, String key, boolean signatures) {
+    WritableMap modifier = Arguments.createMap();
+    modifier.putString("type", "orderBy");
+    modifier.putString("name", name);
+    modifier.putString("key", key);
+    if (signatures) modifier.putString("signature", signature("orderBy", name, key, null, null, null));
+    return modifier;
+  }
+
+  private static WritableMap limit(String name, int limit, boolean signatures) {
+    WritableMap modifier = Arguments.createMap();
+    modifier.putString("type", "limit");
+    modifier.putString("name", name);
+    modifier.putInt("limit", limit);
+    if (signatures) modifier.putString("signature", signature("limit", name, null, null, null, limit));
+    return modifier;
+  }
+
+  private static WritableMap filter(String name, String key, double value, boolean signatures) {
+    WritableMap modifier = Arguments.createMap();
+    modifier.putString("type", "filter");
+    modifier.putString("name", name);
+    if (key != null) modifier.putString("key", key);
+    modifier.putString("valueType", "number");
+    modifier.putDouble("value", value);
+    if (signatures) modifier.putString("signature", signature("filter", name, key, "number", value, null));
+    return modifier;
+  }
+
+  /**
+   * The signature query.js sends, JSON.stringify([type, name, key, valueType, value, limit]).
+   */
+  private static String signature(String type, String name, String key, String valueType, Object value, Object limit) {
+    return "[" + json(type) + "," + json(name) + "," + json(key) + "," + json(valueType) + "," + json(value) + "," + json(limit) + "]";
+  }
+
+  private static String json(Object value) {
+    if (value == null) return "null";
+    if (value instanceof String) return "\"" + value + "\"";
+    if (value instanceof Double && (Double) value == Math.rint((Double) value)) return String.valueOf(((Double) value).longValue());
+    return String.valueOf(value);
+  }
+}
@@ -0,0 +1,141 @@
+package io.invertase.firebase.database;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContext;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableMap;
+import com.google.firebase.FirebaseApp;
+import com.google.firebase.database.FirebaseDatabase;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Latency of an increment, from the bridge call until its result is sent back, run
+ * as transactionApply({ type: 'increment' }) and as a transaction() update function.
+ * <p>
+ * Both run against the fake database, doTransaction on its run loop thread and the
+ * result on the main looper. The update function is answered by a single thread
+ * standing in for the JS thread, jsLatencyMicros is how long it takes to get to an
+ * update event, 0 for an idle JS thread.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RNFirebaseDatabaseTransactionBenchmark {
+  private static final String APP_NAME = "transactionBenchmark";
+  private static final String PATH = "counters/likes";
+
+  @Param({"0", "1000"})
+  public int jsLatencyMicros;
+
+  private RNFirebaseDatabase module;
+  private ExecutorService js;
+  private ReadableMap incrementOp;
+  private final Semaphore completed = new Semaphore(0);
+  private int nextTransactionId = 0;
+
+  private final Promise promise = new Promise() {
+    @Override
+    public void resolve(Object value) {
+      completed.release();
+    }
+
+    @Override
+    public void reject(String code, String message) {
+      throw new IllegalStateException(code + ": " + message);
+    }
+
+    @Override
+    public void reject(String code, Throwable e) {
+      throw new IllegalStateException(code, e);
+    }
+
+    @Override
+    public void reject(String code, String message, Throwable e) {
+      throw new IllegalStateException(code + ": " + message, e);
+    }
+
+    @Override
+    public void reject(Throwable e) {
+      throw new IllegalStateException(e);
+    }
+  };
+
+  @Setup
+  public void setUp() {
+    FirebaseDatabase.getInstance(FirebaseApp.getInstance(APP_NAME));
+    ReactApplicationContext context = new ReactApplicationContext();
+    module = new RNFirebaseDatabase(context);
+    js = Executors.newSingleThreadExecutor();
+
+    WritableMap op = Arguments.createMap();
+    op.putString("type", "increment");
+    op.putInt("value", 1);
+    incrementOp = op;
+
+    context.setEventListener(new ReactContext.EventListener() {
+      @Override
+      public void onEvent(ReactContext.Event event) {
+        if (!"database_transaction_event".equals(event.name)) return;
+        final ReadableMap body = (ReadableMap) event.body;
+
+        if (!"update".equals(body.getString("type"))) {
+          completed.release();
+          return;
+        }
+
+        js.execute(new Runnable() {
+          @Override
+          public void run() {
+            if (jsLatencyMicros > 0) LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(jsLatencyMicros));
+            double current = body.hasKey("value") && !body.isNull("value") ? body.getDouble("value") : 0;
+
+            WritableMap updates = Arguments.createMap();
+            updates.putDouble("value", current + 1);
+            updates.putBoolean("abort", false);
+            module.transactionTryCommit(APP_NAME, body.getInt("id"), updates);
+          }
+        });
+      }
+    });
+  }
+
+  @TearDown
+  public void tearDown() {
+    js.shutdownNow();
+  }
+
+  @Benchmark
+  public void transactionApply() throws InterruptedException {
+    module.transactionApply(APP_NAME, PATH, incrementOp, true, promise);
+    completed.acquire();
+  }
+
+  @Benchmark
+  public void jsUpdateFunction() throws InterruptedException {
+    module.transactionStart(APP_NAME, PATH, nextTransactionId++, true);
+    completed.acquire();
+  }
+}
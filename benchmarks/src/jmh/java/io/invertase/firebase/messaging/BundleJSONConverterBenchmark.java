@@ -0,0 +1,85 @@
+package io.invertase.firebase.messaging;
+
+import android.os.Bundle;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.invertase.firebase.Payloads;
+
+/**
+ * Bundle and JSON conversions of message data, arrays as bundles only support
+ * lists of strings.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BundleJSONConverterBenchmark {
+  @Param({Payloads.SHALLOW, Payloads.DEEP, Payloads.WIDE, Payloads.ARRAY})
+  public String shape;
+
+  private Bundle bundle;
+  private JSONObject json;
+
+  @Setup
+  public void setUp() throws JSONException {
+    bundle = toBundle(Payloads.createMap(shape));
+    json = BundleJSONConverter.convertToJSON(bundle);
+  }
+
+  @Benchmark
+  public JSONObject convertToJSON() throws JSONException {
+    return BundleJSONConverter.convertToJSON(bundle);
+  }
+
+  @Benchmark
+  public Bundle convertToBundle() throws JSONException {
+    return BundleJSONConverter.convertToBundle(json);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Bundle toBundle(Map<String, Object> map) {
+    Bundle bundle = new Bundle();
+    for (Map.Entry<String, Object> entry : map.entrySet()) {
+      String key = entry.getKey();
+      Object value = entry.getValue();
+      if (value instanceof Map) {
+        bundle.putBundle(key, toBundle((Map<String, Object>) value));
+      } else if (value instanceof List) {
+        ArrayList<String> strings = new ArrayList<>();
+        for (Object item : (List<Object>) value) {
+          strings.add(String.valueOf(item));
+        }
+        bundle.putStringArrayList(key, strings);
+      } else if (value instanceof Long) {
+        bundle.putLong(key, (Long) value);
+      } else if (value instanceof Double) {
+        bundle.putDouble(key, (Double) value);
+      } else if (value instanceof Boolean) {
+        bundle.putBoolean(key, (Boolean) value);
+      } else {
+        bundle.putString(key, (String) value);
+      }
+    }
+    return bundle;
+  }
+}
@@ -0,0 +1,62 @@
+package io.invertase.firebase.storage;
+
+import android.net.Uri;
+
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.WritableMap;
+import com.google.firebase.storage.StorageMetadata;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Metadata conversion sent with every storage metadata result and upload event,
+ * by the number of custom metadata entries.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RNFirebaseStorageBenchmark {
+  @Param({"0", "10", "100"})
+  public int customMetadata;
+
+  private RNFirebaseStorage storage;
+  private StorageMetadata metadata;
+
+  @Setup
+  public void setUp() {
+    storage = new RNFirebaseStorage(new ReactApplicationContext());
+
+    StorageMetadata.Builder builder = new StorageMetadata.Builder()
+      .setObject("app.appspot.com", "images/photo.jpg", "1508284800000000", "1", 1048576, "XrY7u+Ae7tCTyyK7j1rNww==")
+      .setTimes(1508284800000L, 1508284801000L)
+      .setContentType("image/jpeg")
+      .setCacheControl("public, max-age=3600")
+      .addDownloadUrl(Uri.parse("https://firebasestorage.googleapis.com/v0/b/app.appspot.com/o/images%2Fphoto.jpg?alt=media"));
+
+    for (int i = 0; i < customMetadata; i++) {
+      builder.setCustomMetadata("key" + i, "value " + i);
+    }
+
+    metadata = builder.build();
+  }
+
+  @Benchmark
+  public WritableMap getMetadataAsMap() {
+    return storage.getMetadataAsMap(metadata);
+  }
+}
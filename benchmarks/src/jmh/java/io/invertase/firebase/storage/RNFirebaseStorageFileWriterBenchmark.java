@@ -0,0 +1,125 @@
+package io.invertase.firebase.storage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to write a 32MB download to disk by the size of the buffer it is written
+ * through, reading from an in-memory stream so only the write side is measured.
+ * <p>
+ * memory  - reads return as much as is asked for
+ * network - reads return at most 16KB, as a socket stream does
+ * <p>
+ * legacyCopy is the 1KB byte[] loop into a FileOutputStream that downloadFile used
+ * before, writing straight to the target path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RNFirebaseStorageFileWriterBenchmark {
+  private static final int PAYLOAD_SIZE = 32 * 1024 * 1024;
+  private static final int NETWORK_READ_SIZE = 16 * 1024;
+
+  @Param({"memory", "network"})
+  public String source;
+
+  private byte[] payload;
+  private File directory;
+  private String target;
+
+  /**
+   * The buffer size only applies to write(), the legacy copy always used 1KB.
+   */
+  @State(Scope.Benchmark)
+  public static class Buffer {
+    @Param({"8192", "65536", "262144", "1048576", "4194304"})
+    public int bufferSize;
+
+    private RNFirebaseStorageFileWriter writer;
+
+    @Setup
+    public void setUp() {
+      writer = new RNFirebaseStorageFileWriter(bufferSize);
+    }
+  }
+
+  @Setup
+  public void setUp() throws IOException {
+    payload = new byte[PAYLOAD_SIZE];
+    new Random(0).nextBytes(payload);
+    directory = Files.createTempDirectory("rnfirebase-writer").toFile();
+    target = new File(directory, "video.mp4").getPath();
+  }
+
+  @TearDown
+  public void tearDown() {
+    File[] files = directory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        // noinspection ResultOfMethodCallIgnored
+        file.delete();
+      }
+    }
+    // noinspection ResultOfMethodCallIgnored
+    directory.delete();
+  }
+
+  @Benchmark
+  public long write(Buffer buffer) throws IOException {
+    return buffer.writer.write(createStream(), target);
+  }
+
+  @Benchmark
+  public long legacyCopy() throws IOException {
+    InputStream inputStream = createStream();
+    FileOutputStream output = new FileOutputStream(target);
+    byte[] buffer = new byte[1024];
+    long written = 0;
+    int len;
+
+    try {
+      while ((len = inputStream.read(buffer)) != -1) {
+        output.write(buffer, 0, len);
+        written += len;
+      }
+    } finally {
+      output.close();
+      inputStream.close();
+    }
+
+    return written;
+  }
+
+  private InputStream createStream() {
+    if ("memory".equals(source)) return new ByteArrayInputStream(payload);
+
+    return new ByteArrayInputStream(payload) {
+      @Override
+      public synchronized int read(byte[] b, int off, int len) {
+        return super.read(b, off, Math.min(len, NETWORK_READ_SIZE));
+      }
+    };
+  }
+}
@@ -0,0 +1,13 @@
+package android.content;
+
+import android.database.Cursor;
+import android.net.Uri;
+
+/**
+ * JVM fake of the content resolver, there are no content providers.
+ */
+public class ContentResolver {
+  public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+    return null;
+  }
+}
@@ -0,0 +1,28 @@
+package android.content;
+
+import java.io.File;
+
+/**
+ * JVM fake of the Android context, app directories are under the JVM temp directory.
+ */
+public abstract class Context {
+  public static final int MODE_PRIVATE = 0;
+
+  private final ContentResolver contentResolver = new ContentResolver();
+
+  public File getFilesDir() {
+    return new File(System.getProperty("java.io.tmpdir"), "files");
+  }
+
+  public File getCacheDir() {
+    return new File(System.getProperty("java.io.tmpdir"), "cache");
+  }
+
+  public File getExternalFilesDir(String type) {
+    return new File(System.getProperty("java.io.tmpdir"), "external");
+  }
+
+  public ContentResolver getContentResolver() {
+    return contentResolver;
+  }
+}
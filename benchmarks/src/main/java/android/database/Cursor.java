@@ -0,0 +1,14 @@
+package android.database;
+
+/**
+ * JVM fake of a content provider query result.
+ */
+public interface Cursor {
+  int getColumnIndexOrThrow(String columnName);
+
+  boolean moveToFirst();
+
+  String getString(int columnIndex);
+
+  void close();
+}
@@ -0,0 +1,40 @@
+package android.net;
+
+import java.net.URI;
+
+/**
+ * JVM fake of the Android uri, backed by java.net.URI.
+ */
+public class Uri {
+  private final URI uri;
+
+  private Uri(URI uri) {
+    this.uri = uri;
+  }
+
+  public static Uri parse(String uriString) {
+    return new Uri(URI.create(uriString));
+  }
+
+  public static Uri fromFile(java.io.File file) {
+    return new Uri(file.toURI());
+  }
+
+  public String getScheme() {
+    return uri.getScheme();
+  }
+
+  public String getPath() {
+    return uri.getPath();
+  }
+
+  public String getLastPathSegment() {
+    String path = uri.getPath();
+    return path == null ? null : path.substring(path.lastIndexOf('/') + 1);
+  }
+
+  @Override
+  public String toString() {
+    return uri.toString();
+  }
+}
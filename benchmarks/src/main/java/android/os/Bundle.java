@@ -0,0 +1,56 @@
+package android.os;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Set;
+
+/**
+ * JVM fake of the Android bundle, backed by a HashMap.
+ */
+public final class Bundle {
+  private final HashMap<String, Object> values = new HashMap<>();
+
+  public Set<String> keySet() {
+    return values.keySet();
+  }
+
+  public int size() {
+    return values.size();
+  }
+
+  public boolean containsKey(String key) {
+    return values.containsKey(key);
+  }
+
+  public Object get(String key) {
+    return values.get(key);
+  }
+
+  public void putBoolean(String key, boolean value) {
+    values.put(key, value);
+  }
+
+  public void putInt(String key, int value) {
+    values.put(key, value);
+  }
+
+  public void putLong(String key, long value) {
+    values.put(key, value);
+  }
+
+  public void putDouble(String key, double value) {
+    values.put(key, value);
+  }
+
+  public void putString(String key, String value) {
+    values.put(key, value);
+  }
+
+  public void putStringArrayList(String key, ArrayList<String> value) {
+    values.put(key, value);
+  }
+
+  public void putBundle(String key, Bundle value) {
+    values.put(key, value);
+  }
+}
@@ -0,0 +1,24 @@
+package android.os;
+
+import java.io.File;
+
+/**
+ * JVM fake of the Android environment, external storage is the JVM temp directory.
+ */
+public class Environment {
+  public static final String MEDIA_MOUNTED = "mounted";
+  public static final String MEDIA_MOUNTED_READ_ONLY = "mounted_ro";
+  public static final String DIRECTORY_PICTURES = "Pictures";
+
+  public static String getExternalStorageState() {
+    return MEDIA_MOUNTED;
+  }
+
+  public static File getExternalStorageDirectory() {
+    return new File(System.getProperty("java.io.tmpdir"));
+  }
+
+  public static File getExternalStoragePublicDirectory(String type) {
+    return new File(getExternalStorageDirectory(), type);
+  }
+}
@@ -0,0 +1,69 @@
+package android.os;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JVM fake of a handler, runnables are scheduled on the thread of its looper and
+ * can be removed until they have run. Exceptions thrown by a runnable are passed
+ * to the uncaught exception handler of the looper thread.
+ */
+public class Handler {
+  private final Looper looper;
+  private final Map<Runnable, List<Future<?>>> pending = new HashMap<>();
+
+  public Handler(Looper looper) {
+    this.looper = looper;
+  }
+
+  public final Looper getLooper() {
+    return looper;
+  }
+
+  public final boolean post(Runnable runnable) {
+    return postDelayed(runnable, 0);
+  }
+
+  public final boolean postDelayed(final Runnable runnable, long delayMillis) {
+    synchronized (pending) {
+      final Future<?>[] scheduled = new Future<?>[1];
+      scheduled[0] = looper.queue.schedule(new Runnable() {
+        @Override
+        public void run() {
+          synchronized (pending) {
+            List<Future<?>> futures = pending.get(runnable);
+            if (futures == null || !futures.remove(scheduled[0])) return;
+            if (futures.isEmpty()) pending.remove(runnable);
+          }
+
+          try {
+            runnable.run();
+          } catch (RuntimeException | Error e) {
+            Thread thread = Thread.currentThread();
+            thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+          }
+        }
+      }, Math.max(0, delayMillis), TimeUnit.MILLISECONDS);
+
+      List<Future<?>> futures = pending.get(runnable);
+      if (futures == null) {
+        futures = new ArrayList<>(1);
+        pending.put(runnable, futures);
+      }
+      futures.add(scheduled[0]);
+    }
+    return true;
+  }
+
+  public final void removeCallbacks(Runnable runnable) {
+    synchronized (pending) {
+      List<Future<?>> futures = pending.remove(runnable);
+      if (futures == null) return;
+      for (Future<?> future : futures) future.cancel(false);
+    }
+  }
+}
@@ -0,0 +1,39 @@
+package android.os;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * JVM fake of a looper, a single thread running the messages posted to its handlers.
+ */
+public final class Looper {
+  private static final Looper mainLooper = new Looper("main");
+
+  final ScheduledExecutorService queue;
+  private volatile Thread thread;
+
+  private Looper(final String name) {
+    queue = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread looperThread = new Thread(runnable, name);
+        looperThread.setDaemon(true);
+        thread = looperThread;
+        return looperThread;
+      }
+    });
+  }
+
+  public static Looper getMainLooper() {
+    return mainLooper;
+  }
+
+  public static Looper myLooper() {
+    return Thread.currentThread() == mainLooper.thread ? mainLooper : null;
+  }
+
+  public Thread getThread() {
+    return thread;
+  }
+}
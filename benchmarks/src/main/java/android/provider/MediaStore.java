@@ -0,0 +1,12 @@
+package android.provider;
+
+/**
+ * JVM fake of the media store columns.
+ */
+public final class MediaStore {
+  public static final class Images {
+    public static final class Media {
+      public static final String DATA = "_data";
+    }
+  }
+}
@@ -0,0 +1,82 @@
+package com.facebook.react.bridge;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JVM fake of the React Native argument factory.
+ */
+public class Arguments {
+  public static WritableMap createMap() {
+    return new WritableNativeMap();
+  }
+
+  public static WritableArray createArray() {
+    return new WritableNativeArray();
+  }
+
+  /**
+   * Convert a java Map, List or leaf value tree to a WritableNativeMap, as
+   * makeNativeMap does on the device.
+   *
+   * @param map
+   * @return
+   */
+  public static WritableMap makeNativeMap(Map<String, Object> map) {
+    WritableMap writableMap = createMap();
+    for (Map.Entry<String, Object> entry : map.entrySet()) {
+      putValue(writableMap, entry.getKey(), entry.getValue());
+    }
+    return writableMap;
+  }
+
+  /**
+   * @param list
+   * @return
+   */
+  public static WritableArray makeNativeArray(List<?> list) {
+    WritableArray writableArray = createArray();
+    for (Object value : list) {
+      pushValue(writableArray, value);
+    }
+    return writableArray;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static void putValue(WritableMap map, String key, Object value) {
+    if (value == null) {
+      map.putNull(key);
+    } else if (value instanceof Boolean) {
+      map.putBoolean(key, (Boolean) value);
+    } else if (value instanceof Number) {
+      map.putDouble(key, ((Number) value).doubleValue());
+    } else if (value instanceof String) {
+      map.putString(key, (String) value);
+    } else if (value instanceof Map) {
+      map.putMap(key, makeNativeMap((Map<String, Object>) value));
+    } else if (value instanceof List) {
+      map.putArray(key, makeNativeArray((List<?>) value));
+    } else {
+      throw new IllegalArgumentException("Could not convert " + value.getClass());
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static void pushValue(WritableArray array, Object value) {
+    if (value == null) {
+      array.pushNull();
+    } else if (value instanceof Boolean) {
+      array.pushBoolean((Boolean) value);
+    } else if (value instanceof Number) {
+      array.pushDouble(((Number) value).doubleValue());
+    } else if (value instanceof String) {
+      array.pushString((String) value);
+    } else if (value instanceof Map) {
+      array.pushMap(makeNativeMap((Map<String, Object>) value));
+    } else if (value instanceof List) {
+      array.pushArray(makeNativeArray((List<?>) value));
+    } else {
+      throw new IllegalArgumentException("Could not convert " + value.getClass());
+    }
+  }
+}
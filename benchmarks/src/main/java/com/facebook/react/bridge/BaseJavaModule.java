@@ -0,0 +1,18 @@
+package com.facebook.react.bridge;
+
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+/**
+ * JVM fake of the base class of native modules.
+ */
+public abstract class BaseJavaModule implements NativeModule {
+  @Nullable
+  public Map<String, Object> getConstants() {
+    return null;
+  }
+
+  public void onCatalystInstanceDestroy() {
+  }
+}
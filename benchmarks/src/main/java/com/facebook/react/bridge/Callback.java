@@ -0,0 +1,8 @@
+package com.facebook.react.bridge;
+
+/**
+ * JVM fake of a JS callback.
+ */
+public interface Callback {
+  void invoke(Object... args);
+}
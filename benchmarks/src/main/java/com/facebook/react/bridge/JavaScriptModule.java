@@ -0,0 +1,7 @@
+package com.facebook.react.bridge;
+
+/**
+ * JVM fake of a JS module interface.
+ */
+public interface JavaScriptModule {
+}
@@ -0,0 +1,12 @@
+package com.facebook.react.bridge;
+
+/**
+ * JVM fake of the host lifecycle listener.
+ */
+public interface LifecycleEventListener {
+  void onHostResume();
+
+  void onHostPause();
+
+  void onHostDestroy();
+}
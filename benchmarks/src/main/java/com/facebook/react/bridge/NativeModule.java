@@ -0,0 +1,8 @@
+package com.facebook.react.bridge;
+
+/**
+ * JVM fake of a native module.
+ */
+public interface NativeModule {
+  String getName();
+}
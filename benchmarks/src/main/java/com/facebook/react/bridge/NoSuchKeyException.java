@@ -0,0 +1,10 @@
+package com.facebook.react.bridge;
+
+/**
+ * JVM fake of the exception thrown reading a missing or null key as a primitive.
+ */
+public class NoSuchKeyException extends RuntimeException {
+  public NoSuchKeyException(String name) {
+    super(name);
+  }
+}
@@ -0,0 +1,10 @@
+package com.facebook.react.bridge;
+
+/**
+ * JVM fake of the exception thrown putting a map or array into a second parent.
+ */
+public class ObjectAlreadyConsumedException extends RuntimeException {
+  public ObjectAlreadyConsumedException(String detailMessage) {
+    super(detailMessage);
+  }
+}
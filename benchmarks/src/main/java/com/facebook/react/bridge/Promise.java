@@ -0,0 +1,16 @@
+package com.facebook.react.bridge;
+
+/**
+ * JVM fake of a JS promise.
+ */
+public interface Promise {
+  void resolve(Object value);
+
+  void reject(String code, String message);
+
+  void reject(String code, Throwable e);
+
+  void reject(String code, String message, Throwable e);
+
+  void reject(Throwable e);
+}
@@ -0,0 +1,7 @@
+package com.facebook.react.bridge;
+
+/**
+ * JVM fake of the application react context.
+ */
+public class ReactApplicationContext extends ReactContext {
+}
@@ -0,0 +1,85 @@
+package com.facebook.react.bridge;
+
+import android.content.Context;
+
+import com.facebook.react.modules.core.DeviceEventManagerModule;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * JVM fake of the react context, events emitted through the device event
+ * emitter are recorded in order and can be read back by tests, or handed to
+ * an event listener standing in for JS.
+ */
+public class ReactContext extends Context {
+  private final List<Event> events = new ArrayList<>();
+  private volatile EventListener eventListener;
+
+  /**
+   * An event emitted to JS.
+   */
+  public static class Event {
+    public final String name;
+    public final Object body;
+
+    Event(String name, Object body) {
+      this.name = name;
+      this.body = body;
+    }
+  }
+
+  /**
+   * Receives the events emitted to JS on the emitting thread.
+   */
+  public interface EventListener {
+    void onEvent(Event event);
+  }
+
+  private final DeviceEventManagerModule.RCTDeviceEventEmitter emitter = new DeviceEventManagerModule.RCTDeviceEventEmitter() {
+    @Override
+    public void emit(String eventName, Object data) {
+      Event event = new Event(eventName, data);
+      synchronized (events) {
+        events.add(event);
+      }
+
+      EventListener listener = eventListener;
+      if (listener != null) listener.onEvent(event);
+    }
+  };
+
+  @SuppressWarnings("unchecked")
+  public <T extends JavaScriptModule> T getJSModule(Class<T> jsInterface) {
+    if (jsInterface == DeviceEventManagerModule.RCTDeviceEventEmitter.class) {
+      return (T) emitter;
+    }
+    throw new UnsupportedOperationException(jsInterface.getName());
+  }
+
+  public boolean hasActiveCatalystInstance() {
+    return true;
+  }
+
+  public void addLifecycleEventListener(LifecycleEventListener listener) {
+  }
+
+  /**
+   * @return a copy of the events emitted so far
+   */
+  public List<Event> getEmittedEvents() {
+    synchronized (events) {
+      return new ArrayList<>(events);
+    }
+  }
+
+  public void setEventListener(EventListener listener) {
+    eventListener = listener;
+  }
+
+  public void clearEmittedEvents() {
+    synchronized (events) {
+      events.clear();
+    }
+  }
+}
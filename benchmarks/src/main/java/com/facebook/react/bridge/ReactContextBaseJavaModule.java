@@ -0,0 +1,16 @@
+package com.facebook.react.bridge;
+
+/**
+ * JVM fake of the base class of native modules that need the react context.
+ */
+public abstract class ReactContextBaseJavaModule extends BaseJavaModule {
+  private final ReactApplicationContext reactApplicationContext;
+
+  public ReactContextBaseJavaModule(ReactApplicationContext reactContext) {
+    reactApplicationContext = reactContext;
+  }
+
+  protected final ReactApplicationContext getReactApplicationContext() {
+    return reactApplicationContext;
+  }
+}
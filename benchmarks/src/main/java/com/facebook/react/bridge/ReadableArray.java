@@ -0,0 +1,28 @@
+package com.facebook.react.bridge;
+
+import java.util.ArrayList;
+
+/**
+ * JVM fake of the React Native readable array.
+ */
+public interface ReadableArray {
+  int size();
+
+  boolean isNull(int index);
+
+  boolean getBoolean(int index);
+
+  double getDouble(int index);
+
+  int getInt(int index);
+
+  String getString(int index);
+
+  ReadableArray getArray(int index);
+
+  ReadableMap getMap(int index);
+
+  ReadableType getType(int index);
+
+  ArrayList<Object> toArrayList();
+}
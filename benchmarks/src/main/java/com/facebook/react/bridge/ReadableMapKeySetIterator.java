@@ -0,0 +1,10 @@
+package com.facebook.react.bridge;
+
+/**
+ * JVM fake of the React Native map key iterator.
+ */
+public interface ReadableMapKeySetIterator {
+  boolean hasNextKey();
+
+  String nextKey();
+}
@@ -0,0 +1,13 @@
+package com.facebook.react.bridge;
+
+/**
+ * JVM fake of the React Native bridge value types.
+ */
+public enum ReadableType {
+  Null,
+  Boolean,
+  Number,
+  String,
+  Map,
+  Array
+}
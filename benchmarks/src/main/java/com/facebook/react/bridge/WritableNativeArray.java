@@ -0,0 +1,116 @@
+package com.facebook.react.bridge;
+
+import java.util.ArrayList;
+
+/**
+ * JVM fake of the native backed array, values are kept in an ArrayList as the
+ * bridge types: Boolean, Double, String, WritableNativeMap or WritableNativeArray.
+ */
+public class WritableNativeArray implements WritableArray {
+  private final ArrayList<Object> values = new ArrayList<>();
+  boolean consumed = false;
+
+  @Override
+  public int size() {
+    return values.size();
+  }
+
+  @Override
+  public boolean isNull(int index) {
+    return values.get(index) == null;
+  }
+
+  @Override
+  public boolean getBoolean(int index) {
+    return (Boolean) values.get(index);
+  }
+
+  @Override
+  public double getDouble(int index) {
+    return ((Number) values.get(index)).doubleValue();
+  }
+
+  @Override
+  public int getInt(int index) {
+    return ((Number) values.get(index)).intValue();
+  }
+
+  @Override
+  public String getString(int index) {
+    return (String) values.get(index);
+  }
+
+  @Override
+  public ReadableArray getArray(int index) {
+    return (ReadableArray) values.get(index);
+  }
+
+  @Override
+  public ReadableMap getMap(int index) {
+    return (ReadableMap) values.get(index);
+  }
+
+  @Override
+  public ReadableType getType(int index) {
+    return WritableNativeMap.typeOf(values.get(index));
+  }
+
+  @Override
+  public ArrayList<Object> toArrayList() {
+    ArrayList<Object> list = new ArrayList<>(values.size());
+    for (Object value : values) {
+      list.add(WritableNativeMap.toJavaValue(value));
+    }
+    return list;
+  }
+
+  @Override
+  public void pushNull() {
+    values.add(null);
+  }
+
+  @Override
+  public void pushBoolean(boolean value) {
+    values.add(value);
+  }
+
+  @Override
+  public void pushDouble(double value) {
+    values.add(value);
+  }
+
+  @Override
+  public void pushInt(int value) {
+    values.add((double) value);
+  }
+
+  @Override
+  public void pushString(String value) {
+    values.add(value);
+  }
+
+  @Override
+  public void pushArray(WritableArray array) {
+    values.add(WritableNativeMap.consume(array));
+  }
+
+  @Override
+  public void pushMap(WritableMap map) {
+    values.add(WritableNativeMap.consume(map));
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    return other instanceof WritableNativeArray && values.equals(((WritableNativeArray) other).values);
+  }
+
+  @Override
+  public int hashCode() {
+    return values.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return values.toString();
+  }
+}
@@ -0,0 +1,211 @@
+package com.facebook.react.bridge;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * JVM fake of the native backed map, values are kept in a LinkedHashMap as the
+ * bridge types: Boolean, Double, String, WritableNativeMap or WritableNativeArray.
+ * <p>
+ * Like the real map, a map can only be consumed once it has been put into another.
+ */
+public class WritableNativeMap implements WritableMap {
+  private final LinkedHashMap<String, Object> values = new LinkedHashMap<>();
+  boolean consumed = false;
+
+  @Override
+  public boolean hasKey(String name) {
+    return values.containsKey(name);
+  }
+
+  @Override
+  public boolean isNull(String name) {
+    return values.get(name) == null;
+  }
+
+  @Override
+  public boolean getBoolean(String name) {
+    return (Boolean) get(name);
+  }
+
+  @Override
+  public double getDouble(String name) {
+    return ((Number) get(name)).doubleValue();
+  }
+
+  @Override
+  public int getInt(String name) {
+    return ((Number) get(name)).intValue();
+  }
+
+  @Override
+  public String getString(String name) {
+    return (String) values.get(name);
+  }
+
+  @Override
+  public ReadableArray getArray(String name) {
+    return (ReadableArray) values.get(name);
+  }
+
+  @Override
+  public ReadableMap getMap(String name) {
+    return (ReadableMap) values.get(name);
+  }
+
+  @Override
+  public ReadableType getType(String name) {
+    if (!values.containsKey(name)) {
+      throw new NoSuchKeyException(name);
+    }
+    return typeOf(values.get(name));
+  }
+
+  @Override
+  public ReadableMapKeySetIterator keySetIterator() {
+    final Iterator<String> keys = values.keySet().iterator();
+    return new ReadableMapKeySetIterator() {
+      @Override
+      public boolean hasNextKey() {
+        return keys.hasNext();
+      }
+
+      @Override
+      public String nextKey() {
+        return keys.next();
+      }
+    };
+  }
+
+  @Override
+  public HashMap<String, Object> toHashMap() {
+    HashMap<String, Object> hashMap = new HashMap<>();
+    for (Map.Entry<String, Object> entry : values.entrySet()) {
+      hashMap.put(entry.getKey(), toJavaValue(entry.getValue()));
+    }
+    return hashMap;
+  }
+
+  @Override
+  public void putNull(String key) {
+    values.put(key, null);
+  }
+
+  @Override
+  public void putBoolean(String key, boolean value) {
+    values.put(key, value);
+  }
+
+  @Override
+  public void putDouble(String key, double value) {
+    values.put(key, value);
+  }
+
+  @Override
+  public void putInt(String key, int value) {
+    values.put(key, (double) value);
+  }
+
+  @Override
+  public void putString(String key, String value) {
+    values.put(key, value);
+  }
+
+  @Override
+  public void putArray(String key, WritableArray value) {
+    values.put(key, consume(value));
+  }
+
+  @Override
+  public void putMap(String key, WritableMap value) {
+    values.put(key, consume(value));
+  }
+
+  @Override
+  public void merge(ReadableMap source) {
+    ReadableMapKeySetIterator iterator = source.keySetIterator();
+    while (iterator.hasNextKey()) {
+      String key = iterator.nextKey();
+      switch (source.getType(key)) {
+        case Null:
+          putNull(key);
+          break;
+        case Boolean:
+          putBoolean(key, source.getBoolean(key));
+          break;
+        case Number:
+          putDouble(key, source.getDouble(key));
+          break;
+        case String:
+          putString(key, source.getString(key));
+          break;
+        case Map:
+          values.put(key, source.getMap(key));
+          break;
+        case Array:
+          values.put(key, source.getArray(key));
+          break;
+      }
+    }
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    return other instanceof WritableNativeMap && values.equals(((WritableNativeMap) other).values);
+  }
+
+  @Override
+  public int hashCode() {
+    return values.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return values.toString();
+  }
+
+  private Object get(String name) {
+    Object value = values.get(name);
+    if (value == null) {
+      throw new NoSuchKeyException(name);
+    }
+    return value;
+  }
+
+  /**
+   * Mark a map or array as consumed, it is an error to put one into two parents.
+   *
+   * @param value
+   * @return
+   */
+  static Object consume(Object value) {
+    if (value instanceof WritableNativeMap) {
+      WritableNativeMap map = (WritableNativeMap) value;
+      if (map.consumed) throw new ObjectAlreadyConsumedException("Map already consumed");
+      map.consumed = true;
+    } else if (value instanceof WritableNativeArray) {
+      WritableNativeArray array = (WritableNativeArray) value;
+      if (array.consumed) throw new ObjectAlreadyConsumedException("Array already consumed");
+      array.consumed = true;
+    }
+    return value;
+  }
+
+  static ReadableType typeOf(Object value) {
+    if (value == null) return ReadableType.Null;
+    if (value instanceof Boolean) return ReadableType.Boolean;
+    if (value instanceof Number) return ReadableType.Number;
+    if (value instanceof String) return ReadableType.String;
+    if (value instanceof ReadableMap) return ReadableType.Map;
+    if (value instanceof ReadableArray) return ReadableType.Array;
+    throw new IllegalArgumentException("Invalid type: " + value.getClass().getName());
+  }
+
+  static Object toJavaValue(Object value) {
+    if (value instanceof ReadableMap) return ((ReadableMap) value).toHashMap();
+    if (value instanceof ReadableArray) return ((ReadableArray) value).toArrayList();
+    return value;
+  }
+}
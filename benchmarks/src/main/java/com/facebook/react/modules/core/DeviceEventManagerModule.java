@@ -0,0 +1,12 @@
+package com.facebook.react.modules.core;
+
+import com.facebook.react.bridge.JavaScriptModule;
+
+/**
+ * JVM fake of the device event module.
+ */
+public class DeviceEventManagerModule {
+  public interface RCTDeviceEventEmitter extends JavaScriptModule {
+    void emit(String eventName, Object data);
+  }
+}
@@ -0,0 +1,10 @@
+package com.google.android.gms.tasks;
+
+import android.support.annotation.NonNull;
+
+/**
+ * JVM fake of the task completion listener.
+ */
+public interface OnCompleteListener<TResult> {
+  void onComplete(@NonNull Task<TResult> task);
+}
@@ -0,0 +1,10 @@
+package com.google.android.gms.tasks;
+
+import android.support.annotation.NonNull;
+
+/**
+ * JVM fake of the task failure listener.
+ */
+public interface OnFailureListener {
+  void onFailure(@NonNull Exception e);
+}
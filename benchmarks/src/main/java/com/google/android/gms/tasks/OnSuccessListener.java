@@ -0,0 +1,8 @@
+package com.google.android.gms.tasks;
+
+/**
+ * JVM fake of the task success listener.
+ */
+public interface OnSuccessListener<TResult> {
+  void onSuccess(TResult result);
+}
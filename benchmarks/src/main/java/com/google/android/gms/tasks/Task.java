@@ -0,0 +1,20 @@
+package com.google.android.gms.tasks;
+
+/**
+ * JVM fake of a Play services task.
+ */
+public abstract class Task<TResult> {
+  public abstract boolean isComplete();
+
+  public abstract boolean isSuccessful();
+
+  public abstract TResult getResult();
+
+  public abstract Exception getException();
+
+  public abstract Task<TResult> addOnSuccessListener(OnSuccessListener<? super TResult> listener);
+
+  public abstract Task<TResult> addOnFailureListener(OnFailureListener listener);
+
+  public abstract Task<TResult> addOnCompleteListener(OnCompleteListener<TResult> listener);
+}
@@ -0,0 +1,30 @@
+package com.google.firebase;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * JVM fake of a Firebase app, apps are created on first use by name.
+ */
+public class FirebaseApp {
+  private static final Map<String, FirebaseApp> apps = new HashMap<>();
+
+  private final String name;
+
+  private FirebaseApp(String name) {
+    this.name = name;
+  }
+
+  public static synchronized FirebaseApp getInstance(String name) {
+    FirebaseApp app = apps.get(name);
+    if (app == null) {
+      app = new FirebaseApp(name);
+      apps.put(name, app);
+    }
+    return app;
+  }
+
+  public String getName() {
+    return name;
+  }
+}
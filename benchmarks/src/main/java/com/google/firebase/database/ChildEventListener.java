@@ -0,0 +1,16 @@
+package com.google.firebase.database;
+
+/**
+ * JVM fake of a child event listener.
+ */
+public interface ChildEventListener {
+  void onChildAdded(DataSnapshot dataSnapshot, String previousChildName);
+
+  void onChildChanged(DataSnapshot dataSnapshot, String previousChildName);
+
+  void onChildRemoved(DataSnapshot dataSnapshot);
+
+  void onChildMoved(DataSnapshot dataSnapshot, String previousChildName);
+
+  void onCancelled(DatabaseError databaseError);
+}
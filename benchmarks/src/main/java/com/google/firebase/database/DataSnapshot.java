@@ -0,0 +1,125 @@
+package com.google.firebase.database;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JVM fake of an immutable snapshot, built from a tree of Map, List and leaf values.
+ * <p>
+ * Children are built once when the snapshot is created, so conversions measured
+ * against a snapshot only allocate what the conversion itself allocates.
+ */
+public class DataSnapshot {
+  private final String key;
+  private final Object leaf;
+  private final Object priority;
+  private final List<String> childKeys;
+  private final List<DataSnapshot> children;
+
+  /**
+   * @param key   null for the root
+   * @param value Map, List, leaf value or null
+   */
+  public DataSnapshot(String key, Object value) {
+    this(key, value, null);
+  }
+
+  /**
+   * @param key
+   * @param value
+   * @param priority
+   */
+  public DataSnapshot(String key, Object value, Object priority) {
+    this.key = key;
+    this.priority = priority;
+
+    Map<String, Object> values = Values.childrenOf(value);
+    if (values == null) {
+      leaf = Values.normalizeLeaf(value);
+      childKeys = Collections.emptyList();
+      children = Collections.emptyList();
+      return;
+    }
+
+    List<String> keys = new ArrayList<>(values.keySet());
+    Collections.sort(keys, Values.KEY_ORDER);
+    List<DataSnapshot> nodes = new ArrayList<>(keys.size());
+    List<String> existingKeys = new ArrayList<>(keys.size());
+    for (String childKey : keys) {
+      DataSnapshot child = new DataSnapshot(childKey, values.get(childKey));
+      if (child.exists()) {
+        existingKeys.add(childKey);
+        nodes.add(child);
+      }
+    }
+
+    leaf = null;
+    childKeys = existingKeys;
+    children = nodes;
+  }
+
+  public String getKey() {
+    return key;
+  }
+
+  public boolean exists() {
+    return leaf != null || !children.isEmpty();
+  }
+
+  public boolean hasChildren() {
+    return !children.isEmpty();
+  }
+
+  public long getChildrenCount() {
+    return children.size();
+  }
+
+  public Iterable<DataSnapshot> getChildren() {
+    return children;
+  }
+
+  public boolean hasChild(String path) {
+    return child(path).exists();
+  }
+
+  public DataSnapshot child(String path) {
+    DataSnapshot node = this;
+    for (String segment : path.split("/")) {
+      if (segment.isEmpty()) continue;
+      int index = Collections.binarySearch(node.childKeys, segment, Values.KEY_ORDER);
+      if (index < 0) return new DataSnapshot(lastSegment(path), null);
+      node = node.children.get(index);
+    }
+    return node;
+  }
+
+  public Object getValue() {
+    if (children.isEmpty()) return leaf;
+
+    List<Object> values = new ArrayList<>(children.size());
+    for (DataSnapshot child : children) {
+      values.add(child.getValue());
+    }
+    return Values.toValue(childKeys, values);
+  }
+
+  public Object getValue(boolean useExportFormat) {
+    return getValue();
+  }
+
+  public Object getPriority() {
+    return priority;
+  }
+
+  private static String lastSegment(String path) {
+    String trimmed = path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+    return trimmed.substring(trimmed.lastIndexOf('/') + 1);
+  }
+
+  @Override
+  public String toString() {
+    return "DataSnapshot { key = " + key + ", value = " + getValue() + " }";
+  }
+}
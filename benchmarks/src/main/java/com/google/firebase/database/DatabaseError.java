@@ -0,0 +1,82 @@
+package com.google.firebase.database;
+
+/**
+ * JVM fake of a database error, the codes match the SDK.
+ */
+public class DatabaseError {
+  public static final int DATA_STALE = -1;
+  public static final int OPERATION_FAILED = -2;
+  public static final int PERMISSION_DENIED = -3;
+  public static final int DISCONNECTED = -4;
+  public static final int EXPIRED_TOKEN = -6;
+  public static final int INVALID_TOKEN = -7;
+  public static final int MAX_RETRIES = -8;
+  public static final int OVERRIDDEN_BY_SET = -9;
+  public static final int UNAVAILABLE = -10;
+  public static final int USER_CODE_EXCEPTION = -11;
+  public static final int NETWORK_ERROR = -24;
+  public static final int WRITE_CANCELED = -25;
+  public static final int UNKNOWN_ERROR = -999;
+
+  private final int code;
+  private final String message;
+  private final String details;
+
+  private DatabaseError(int code, String message, String details) {
+    this.code = code;
+    this.message = message;
+    this.details = details == null ? "" : details;
+  }
+
+  public static DatabaseError fromCode(int code) {
+    return new DatabaseError(code, messageForCode(code), null);
+  }
+
+  public static DatabaseError fromException(Throwable e) {
+    return new DatabaseError(USER_CODE_EXCEPTION, messageForCode(USER_CODE_EXCEPTION) + ": " + e.getMessage(), null);
+  }
+
+  public int getCode() {
+    return code;
+  }
+
+  public String getMessage() {
+    return message;
+  }
+
+  public String getDetails() {
+    return details;
+  }
+
+  public DatabaseException toException() {
+    return new DatabaseException("Firebase Database error: " + message);
+  }
+
+  private static String messageForCode(int code) {
+    switch (code) {
+      case DATA_STALE:
+        return "The transaction needs to be run again with current data";
+      case OPERATION_FAILED:
+        return "The server indicated that this operation failed";
+      case PERMISSION_DENIED:
+        return "Permission denied";
+      case DISCONNECTED:
+        return "The operation had to be aborted due to a network disconnect";
+      case MAX_RETRIES:
+        return "The transaction had too many retries";
+      case OVERRIDDEN_BY_SET:
+        return "The transaction was overridden by a subsequent set";
+      case USER_CODE_EXCEPTION:
+        return "User code called from the Firebase Database runloop threw an exception";
+      case WRITE_CANCELED:
+        return "The write was canceled by the user.";
+      default:
+        return "Unknown error";
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "DatabaseError: " + message;
+  }
+}
@@ -0,0 +1,14 @@
+package com.google.firebase.database;
+
+/**
+ * JVM fake of a database exception.
+ */
+public class DatabaseException extends RuntimeException {
+  public DatabaseException(String message) {
+    super(message);
+  }
+
+  public DatabaseException(String message, Throwable cause) {
+    super(message, cause);
+  }
+}
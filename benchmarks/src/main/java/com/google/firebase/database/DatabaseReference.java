@@ -0,0 +1,75 @@
+package com.google.firebase.database;
+
+import java.util.Map;
+
+/**
+ * JVM fake of a database reference, a query without modifiers at a path.
+ */
+public class DatabaseReference extends Query {
+  DatabaseReference(FirebaseDatabase database, String path) {
+    super(database, path);
+  }
+
+  public interface CompletionListener {
+    void onComplete(DatabaseError error, DatabaseReference ref);
+  }
+
+  public DatabaseReference child(String pathString) {
+    return new DatabaseReference(database, Paths.child(path, pathString));
+  }
+
+  public DatabaseReference getParent() {
+    if (path.isEmpty()) return null;
+    int index = path.lastIndexOf('/');
+    return new DatabaseReference(database, index < 0 ? "" : path.substring(0, index));
+  }
+
+  public DatabaseReference getRoot() {
+    return new DatabaseReference(database, "");
+  }
+
+  public FirebaseDatabase getDatabase() {
+    return database;
+  }
+
+  public String getKey() {
+    return path.isEmpty() ? null : path.substring(path.lastIndexOf('/') + 1);
+  }
+
+  public void setValue(Object value, CompletionListener listener) {
+    database.setValue(this, value, false, null, listener);
+  }
+
+  public void setValue(Object value, Object priority, CompletionListener listener) {
+    database.setValue(this, value, true, priority, listener);
+  }
+
+  public void setPriority(Object priority, CompletionListener listener) {
+    database.setPriority(this, priority, listener);
+  }
+
+  public void updateChildren(Map<String, Object> update, CompletionListener listener) {
+    database.updateChildren(this, update, listener);
+  }
+
+  public void removeValue(CompletionListener listener) {
+    database.setValue(this, null, false, null, listener);
+  }
+
+  public OnDisconnect onDisconnect() {
+    return new OnDisconnect(this);
+  }
+
+  public void runTransaction(Transaction.Handler handler) {
+    runTransaction(handler, true);
+  }
+
+  public void runTransaction(Transaction.Handler handler, boolean fireLocalEvents) {
+    database.runTransaction(this, handler);
+  }
+
+  @Override
+  public String toString() {
+    return "DatabaseReference { path = /" + path + " }";
+  }
+}
@@ -0,0 +1,507 @@
+package com.google.firebase.database;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.google.firebase.FirebaseApp;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * JVM fake of the database of an app, an in memory tree served like the SDK does:
+ * <p>
+ * - data is only touched on a single run loop thread, doTransaction included, so a
+ * transaction that blocks in doTransaction holds up every other operation
+ * - listener events, write acks and transaction results are posted to the main looper
+ * - a transaction attempt is rejected and run again if the value at its path was
+ * changed by another client while it ran, see simulateRemoteSet
+ * - the client is always connected, '.info/connected' is true, but goOffline holds
+ * single value reads until goOnline, as the SDK does for data it has not cached
+ */
+public class FirebaseDatabase {
+  static final int MAX_TRANSACTION_RETRIES = 25;
+
+  private static final Map<String, FirebaseDatabase> instances = new HashMap<>();
+
+  private final FirebaseApp app;
+  private final ExecutorService runLoop;
+  private final Handler mainHandler = new Handler(Looper.getMainLooper());
+  private final Queue<Map.Entry<String, Object>> remoteWrites = new ConcurrentLinkedQueue<>();
+
+  // run loop only
+  private final MutableData data = new MutableData(null, null);
+  private final MutableData info = new MutableData(null, null);
+  private final Map<String, Object> priorities = new HashMap<>();
+  private final List<Registration> registrations = new ArrayList<>();
+  private final List<Registration> heldReads = new ArrayList<>();
+  private boolean offline = false;
+
+  private FirebaseDatabase(final FirebaseApp app) {
+    this.app = app;
+    runLoop = Executors.newSingleThreadExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "FirebaseDatabaseWorker-" + app.getName());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    info.child("connected").setValue(true);
+  }
+
+  public static synchronized FirebaseDatabase getInstance(FirebaseApp app) {
+    FirebaseDatabase database = instances.get(app.getName());
+    if (database == null) {
+      database = new FirebaseDatabase(app);
+      instances.put(app.getName(), database);
+    }
+    return database;
+  }
+
+  public FirebaseApp getApp() {
+    return app;
+  }
+
+  public DatabaseReference getReference() {
+    return new DatabaseReference(this, "");
+  }
+
+  public DatabaseReference getReference(String path) {
+    return new DatabaseReference(this, Paths.normalize(path));
+  }
+
+  public void goOnline() {
+    runLoop.execute(new Runnable() {
+      @Override
+      public void run() {
+        offline = false;
+        for (Registration registration : heldReads) {
+          registration.last = snapshot(registration.query.path);
+          dispatchInitial(registration);
+        }
+        heldReads.clear();
+      }
+    });
+  }
+
+  public void goOffline() {
+    runLoop.execute(new Runnable() {
+      @Override
+      public void run() {
+        offline = true;
+      }
+    });
+  }
+
+  public void purgeOutstandingWrites() {
+  }
+
+  public synchronized void setPersistenceEnabled(boolean isEnabled) {
+  }
+
+  public synchronized void setPersistenceCacheSizeBytes(long cacheSizeInBytes) {
+  }
+
+  /**
+   * Queue a write from another client, it is applied before the next run loop
+   * operation and before a transaction attempt that is running commits.
+   *
+   * @param path
+   * @param value
+   */
+  public void simulateRemoteSet(String path, Object value) {
+    remoteWrites.add(new AbstractMap.SimpleImmutableEntry<>(Paths.normalize(path), value));
+    runLoop.execute(new Runnable() {
+      @Override
+      public void run() {
+        applyRemoteWrites();
+      }
+    });
+  }
+
+  /**
+   * Wait for the operations queued on the run loop so far.
+   *
+   * @return the number of listeners registered, single value reads held offline included
+   */
+  public int getListenerCount() {
+    return onRunLoop(new Callable<Integer>() {
+      @Override
+      public Integer call() {
+        return registrations.size() + heldReads.size();
+      }
+    });
+  }
+
+  /**
+   * Read a value on the run loop, bypassing listeners.
+   *
+   * @param path
+   * @return
+   */
+  public Object getValue(final String path) {
+    return onRunLoop(new Callable<Object>() {
+      @Override
+      public Object call() {
+        return read(Paths.normalize(path));
+      }
+    });
+  }
+
+  void addListener(final Query query, final Object listener, final boolean once) {
+    runLoop.execute(new Runnable() {
+      @Override
+      public void run() {
+        Registration registration = new Registration(query, listener);
+        if (once && offline) {
+          heldReads.add(registration);
+          return;
+        }
+
+        registration.last = snapshot(query.path);
+        if (!once) registrations.add(registration);
+        dispatchInitial(registration);
+      }
+    });
+  }
+
+  void removeListener(final Query query, final Object listener) {
+    runLoop.execute(new Runnable() {
+      @Override
+      public void run() {
+        remove(registrations, query, listener);
+        remove(heldReads, query, listener);
+      }
+    });
+  }
+
+  private static void remove(List<Registration> list, Query query, Object listener) {
+    Iterator<Registration> iterator = list.iterator();
+    while (iterator.hasNext()) {
+      Registration registration = iterator.next();
+      if (registration.listener == listener && registration.query.path.equals(query.path)) {
+        registration.removed = true;
+        iterator.remove();
+      }
+    }
+  }
+
+  void setValue(final DatabaseReference reference, final Object value, final boolean hasPriority, final Object priority, final DatabaseReference.CompletionListener listener) {
+    runLoop.execute(new Runnable() {
+      @Override
+      public void run() {
+        applyRemoteWrites();
+        write(reference.path, value);
+        if (hasPriority) setPriorityAt(reference.path, priority);
+        notifyListeners(reference.path);
+        complete(listener, null, reference);
+      }
+    });
+  }
+
+  void setPriority(final DatabaseReference reference, final Object priority, final DatabaseReference.CompletionListener listener) {
+    runLoop.execute(new Runnable() {
+      @Override
+      public void run() {
+        applyRemoteWrites();
+        setPriorityAt(reference.path, priority);
+        notifyListeners(reference.path);
+        complete(listener, null, reference);
+      }
+    });
+  }
+
+  void updateChildren(final DatabaseReference reference, final Map<String, Object> update, final DatabaseReference.CompletionListener listener) {
+    runLoop.execute(new Runnable() {
+      @Override
+      public void run() {
+        applyRemoteWrites();
+        for (Map.Entry<String, Object> entry : update.entrySet()) {
+          write(Paths.child(reference.path, entry.getKey()), entry.getValue());
+        }
+        notifyListeners(reference.path);
+        complete(listener, null, reference);
+      }
+    });
+  }
+
+  void acknowledge(final DatabaseReference reference, final DatabaseReference.CompletionListener listener) {
+    runLoop.execute(new Runnable() {
+      @Override
+      public void run() {
+        complete(listener, null, reference);
+      }
+    });
+  }
+
+  void runTransaction(final DatabaseReference reference, final Transaction.Handler handler) {
+    runLoop.execute(new Runnable() {
+      @Override
+      public void run() {
+        String path = reference.path;
+
+        for (int attempt = 0; attempt < MAX_TRANSACTION_RETRIES; attempt++) {
+          applyRemoteWrites();
+          Object current = read(path);
+          Transaction.Result result;
+
+          try {
+            result = handler.doTransaction(new MutableData(reference.getKey(), current));
+          } catch (RuntimeException e) {
+            completeTransaction(handler, DatabaseError.fromException(e), false, snapshot(path));
+            return;
+          }
+
+          if (!result.isSuccess()) {
+            completeTransaction(handler, null, false, snapshot(path));
+            return;
+          }
+
+          // the server rejects the attempt when the value changed whilst it ran
+          applyRemoteWrites();
+          if (!equal(current, read(path))) continue;
+
+          write(path, result.getData().getValue());
+          notifyListeners(path);
+          completeTransaction(handler, null, true, snapshot(path));
+          return;
+        }
+
+        completeTransaction(handler, DatabaseError.fromCode(DatabaseError.MAX_RETRIES), false, null);
+      }
+    });
+  }
+
+  private void applyRemoteWrites() {
+    Map.Entry<String, Object> remoteWrite;
+    while ((remoteWrite = remoteWrites.poll()) != null) {
+      write(remoteWrite.getKey(), remoteWrite.getValue());
+      notifyListeners(remoteWrite.getKey());
+    }
+  }
+
+  private Object read(String path) {
+    if (isWithin(path, ".info")) {
+      String infoPath = path.substring(".info".length());
+      return info.hasChild(infoPath) ? info.child(infoPath).getValue() : null;
+    }
+    return data.hasChild(path) ? data.child(path).getValue() : null;
+  }
+
+  private DataSnapshot snapshot(String path) {
+    int index = path.lastIndexOf('/');
+    String key = path.isEmpty() ? null : path.substring(index + 1);
+    return new DataSnapshot(key, read(path), priorities.get(path));
+  }
+
+  private void write(String path, Object value) {
+    data.child(path).setValue(resolveServerValues(value));
+
+    Iterator<String> iterator = priorities.keySet().iterator();
+    while (iterator.hasNext()) {
+      String priorityPath = iterator.next();
+      if (isWithin(priorityPath, path) && !data.hasChild(priorityPath)) iterator.remove();
+    }
+  }
+
+  private void setPriorityAt(String path, Object priority) {
+    if (priority == null) {
+      priorities.remove(path);
+    } else {
+      priorities.put(path, priority);
+    }
+  }
+
+  private void notifyListeners(String changedPath) {
+    for (Registration registration : new ArrayList<>(registrations)) {
+      String path = registration.query.path;
+      if (!isWithin(path, changedPath) && !isWithin(changedPath, path)) continue;
+
+      DataSnapshot previous = registration.last;
+      DataSnapshot next = snapshot(path);
+      registration.last = next;
+      dispatchChanges(registration, previous, next);
+    }
+  }
+
+  private void dispatchInitial(final Registration registration) {
+    final DataSnapshot snapshot = registration.last;
+
+    if (registration.listener instanceof ValueEventListener) {
+      post(registration, new Runnable() {
+        @Override
+        public void run() {
+          ((ValueEventListener) registration.listener).onDataChange(snapshot);
+        }
+      });
+      return;
+    }
+
+    String previousKey = null;
+    for (final DataSnapshot child : snapshot.getChildren()) {
+      final String previousChildName = previousKey;
+      post(registration, new Runnable() {
+        @Override
+        public void run() {
+          ((ChildEventListener) registration.listener).onChildAdded(child, previousChildName);
+        }
+      });
+      previousKey = child.getKey();
+    }
+  }
+
+  private void dispatchChanges(final Registration registration, DataSnapshot previous, final DataSnapshot next) {
+    if (registration.listener instanceof ValueEventListener) {
+      if (sameSnapshot(previous, next)) return;
+      post(registration, new Runnable() {
+        @Override
+        public void run() {
+          ((ValueEventListener) registration.listener).onDataChange(next);
+        }
+      });
+      return;
+    }
+
+    final ChildEventListener listener = (ChildEventListener) registration.listener;
+    Map<String, DataSnapshot> previousChildren = new LinkedHashMap<>();
+    for (DataSnapshot child : previous.getChildren()) previousChildren.put(child.getKey(), child);
+
+    for (final DataSnapshot child : previous.getChildren()) {
+      if (next.hasChild(child.getKey())) continue;
+      post(registration, new Runnable() {
+        @Override
+        public void run() {
+          listener.onChildRemoved(child);
+        }
+      });
+    }
+
+    String previousKey = null;
+    for (final DataSnapshot child : next.getChildren()) {
+      final String previousChildName = previousKey;
+      final DataSnapshot previousChild = previousChildren.get(child.getKey());
+      previousKey = child.getKey();
+
+      if (previousChild == null) {
+        post(registration, new Runnable() {
+          @Override
+          public void run() {
+            listener.onChildAdded(child, previousChildName);
+          }
+        });
+      } else if (!sameSnapshot(previousChild, child)) {
+        post(registration, new Runnable() {
+          @Override
+          public void run() {
+            listener.onChildChanged(child, previousChildName);
+          }
+        });
+      }
+    }
+  }
+
+  private void post(final Registration registration, final Runnable event) {
+    mainHandler.post(new Runnable() {
+      @Override
+      public void run() {
+        if (!registration.removed) event.run();
+      }
+    });
+  }
+
+  private void complete(final DatabaseReference.CompletionListener listener, final DatabaseError error, final DatabaseReference reference) {
+    if (listener == null) return;
+    mainHandler.post(new Runnable() {
+      @Override
+      public void run() {
+        listener.onComplete(error, reference);
+      }
+    });
+  }
+
+  private void completeTransaction(final Transaction.Handler handler, final DatabaseError error, final boolean committed, final DataSnapshot snapshot) {
+    mainHandler.post(new Runnable() {
+      @Override
+      public void run() {
+        handler.onComplete(error, committed, snapshot);
+      }
+    });
+  }
+
+  private <T> T onRunLoop(Callable<T> callable) {
+    try {
+      return runLoop.submit(callable).get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  private static boolean sameSnapshot(DataSnapshot previous, DataSnapshot next) {
+    return equal(previous.getValue(), next.getValue()) && equal(previous.getPriority(), next.getPriority());
+  }
+
+  private static boolean equal(Object left, Object right) {
+    return left == null ? right == null : left.equals(right);
+  }
+
+  /**
+   * @param path
+   * @param ancestor
+   * @return true if the path is the ancestor or one of its descendants
+   */
+  private static boolean isWithin(String path, String ancestor) {
+    return ancestor.isEmpty() || path.equals(ancestor) || path.startsWith(ancestor + "/");
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Object resolveServerValues(Object value) {
+    if (ServerValue.TIMESTAMP.equals(value)) return System.currentTimeMillis();
+
+    if (value instanceof Map) {
+      Map<String, Object> resolved = new HashMap<>();
+      for (Map.Entry<String, Object> entry : ((Map<String, Object>) value).entrySet()) {
+        resolved.put(entry.getKey(), resolveServerValues(entry.getValue()));
+      }
+      return resolved;
+    }
+
+    if (value instanceof List) {
+      List<Object> resolved = new ArrayList<>();
+      for (Object item : (List<Object>) value) resolved.add(resolveServerValues(item));
+      return resolved;
+    }
+
+    return value;
+  }
+
+  /**
+   * A listener registered for a query.
+   */
+  private static class Registration {
+    private final Query query;
+    private final Object listener;
+    private DataSnapshot last;
+    private volatile boolean removed;
+
+    Registration(Query query, Object listener) {
+      this.query = query;
+      this.listener = listener;
+    }
+  }
+}
@@ -0,0 +1,123 @@
+package com.google.firebase.database;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * JVM fake of the mutable data handed to Transaction.Handler.doTransaction,
+ * a tree of nodes that are created on first access by child(path).
+ */
+public class MutableData {
+  private final String key;
+  private Object leaf;
+  private Object priority;
+  private final TreeMap<String, MutableData> children = new TreeMap<>(Values.KEY_ORDER);
+
+  /**
+   * @param key   null for the root
+   * @param value Map, List, leaf value or null
+   */
+  public MutableData(String key, Object value) {
+    this.key = key;
+    setValue(value);
+  }
+
+  public String getKey() {
+    return key;
+  }
+
+  public boolean hasChildren() {
+    return getChildrenCount() > 0;
+  }
+
+  public long getChildrenCount() {
+    long count = 0;
+    for (MutableData child : children.values()) {
+      if (!child.isEmpty()) count++;
+    }
+    return count;
+  }
+
+  public Iterable<MutableData> getChildren() {
+    List<MutableData> existing = new ArrayList<>(children.size());
+    for (MutableData child : children.values()) {
+      if (!child.isEmpty()) existing.add(child);
+    }
+    return existing;
+  }
+
+  public boolean hasChild(String path) {
+    MutableData node = this;
+    for (String segment : path.split("/")) {
+      if (segment.isEmpty()) continue;
+      node = node.children.get(segment);
+      if (node == null) return false;
+    }
+    return !node.isEmpty();
+  }
+
+  public MutableData child(String path) {
+    MutableData node = this;
+    for (String segment : path.split("/")) {
+      if (segment.isEmpty()) continue;
+      MutableData child = node.children.get(segment);
+      if (child == null) {
+        child = new MutableData(segment, null);
+        node.leaf = null;
+        node.children.put(segment, child);
+      }
+      node = child;
+    }
+    return node;
+  }
+
+  public Object getValue() {
+    if (!hasChildren()) return leaf;
+
+    List<String> keys = new ArrayList<>(children.size());
+    List<Object> values = new ArrayList<>(children.size());
+    for (MutableData child : getChildren()) {
+      keys.add(child.key);
+      values.add(child.getValue());
+    }
+    return Values.toValue(keys, values);
+  }
+
+  public void setValue(Object value) {
+    children.clear();
+
+    Map<String, Object> values = Values.childrenOf(value);
+    if (values == null) {
+      leaf = Values.normalizeLeaf(value);
+      return;
+    }
+
+    leaf = null;
+    for (Map.Entry<String, Object> entry : values.entrySet()) {
+      children.put(entry.getKey(), new MutableData(entry.getKey(), entry.getValue()));
+    }
+  }
+
+  public Object getPriority() {
+    return priority;
+  }
+
+  public void setPriority(Object priority) {
+    this.priority = priority;
+  }
+
+  private boolean isEmpty() {
+    if (leaf != null) return false;
+    for (MutableData child : children.values()) {
+      if (!child.isEmpty()) return false;
+    }
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    return "MutableData { key = " + key + ", value = " + getValue() + " }";
+  }
+}
@@ -0,0 +1,35 @@
+package com.google.firebase.database;
+
+import java.util.Map;
+
+/**
+ * JVM fake of the writes queued for a disconnect, the client never disconnects so
+ * they are only acknowledged.
+ */
+public class OnDisconnect {
+  private final DatabaseReference reference;
+
+  OnDisconnect(DatabaseReference reference) {
+    this.reference = reference;
+  }
+
+  public void setValue(Object value, DatabaseReference.CompletionListener listener) {
+    reference.database.acknowledge(reference, listener);
+  }
+
+  public void setValue(Object value, Object priority, DatabaseReference.CompletionListener listener) {
+    reference.database.acknowledge(reference, listener);
+  }
+
+  public void updateChildren(Map<String, Object> update, DatabaseReference.CompletionListener listener) {
+    reference.database.acknowledge(reference, listener);
+  }
+
+  public void removeValue(DatabaseReference.CompletionListener listener) {
+    reference.database.acknowledge(reference, listener);
+  }
+
+  public void cancel(DatabaseReference.CompletionListener listener) {
+    reference.database.acknowledge(reference, listener);
+  }
+}
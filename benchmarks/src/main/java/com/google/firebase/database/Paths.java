@@ -0,0 +1,27 @@
+package com.google.firebase.database;
+
+/**
+ * Path handling shared by the JVM database fakes, paths are '/' separated without
+ * leading or trailing slashes, the root being ''.
+ */
+final class Paths {
+  private Paths() {
+  }
+
+  static String normalize(String path) {
+    StringBuilder normalized = new StringBuilder();
+    for (String segment : path.split("/")) {
+      if (segment.isEmpty()) continue;
+      if (normalized.length() > 0) normalized.append('/');
+      normalized.append(segment);
+    }
+    return normalized.toString();
+  }
+
+  static String child(String parent, String child) {
+    String normalizedChild = normalize(child);
+    if (parent.isEmpty()) return normalizedChild;
+    if (normalizedChild.isEmpty()) return parent;
+    return parent + "/" + normalizedChild;
+  }
+}
@@ -0,0 +1,175 @@
+package com.google.firebase.database;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * JVM fake of a query, an immutable path and list of the modifiers applied to it.
+ * <p>
+ * Listeners are registered with the database of the query, the modifiers do not
+ * filter the data they receive.
+ */
+public class Query {
+  final FirebaseDatabase database;
+  final String path;
+  private final List<String> modifiers;
+
+  Query(FirebaseDatabase database, String path) {
+    this(database, path, Collections.<String>emptyList());
+  }
+
+  private Query(FirebaseDatabase database, String path, List<String> modifiers) {
+    this.database = database;
+    this.path = path;
+    this.modifiers = modifiers;
+  }
+
+  public String getPath() {
+    return path;
+  }
+
+  /**
+   * @return the modifiers in the order they were applied, e.g. 'limitToLast(50)'
+   */
+  public List<String> getModifiers() {
+    return modifiers;
+  }
+
+  public DatabaseReference getRef() {
+    return new DatabaseReference(database, path);
+  }
+
+  public ValueEventListener addValueEventListener(ValueEventListener listener) {
+    database.addListener(this, listener, false);
+    return listener;
+  }
+
+  public ChildEventListener addChildEventListener(ChildEventListener listener) {
+    database.addListener(this, listener, false);
+    return listener;
+  }
+
+  public void addListenerForSingleValueEvent(ValueEventListener listener) {
+    database.addListener(this, listener, true);
+  }
+
+  public void removeEventListener(ValueEventListener listener) {
+    database.removeListener(this, listener);
+  }
+
+  public void removeEventListener(ChildEventListener listener) {
+    database.removeListener(this, listener);
+  }
+
+  public void keepSynced(boolean keepSynced) {
+  }
+
+  public Query orderByKey() {
+    return with("orderByKey()");
+  }
+
+  public Query orderByPriority() {
+    return with("orderByPriority()");
+  }
+
+  public Query orderByValue() {
+    return with("orderByValue()");
+  }
+
+  public Query orderByChild(String path) {
+    return with("orderByChild(" + path + ")");
+  }
+
+  public Query limitToFirst(int limit) {
+    return with("limitToFirst(" + limit + ")");
+  }
+
+  public Query limitToLast(int limit) {
+    return with("limitToLast(" + limit + ")");
+  }
+
+  public Query startAt(String value) {
+    return with("startAt(" + value + ")");
+  }
+
+  public Query startAt(double value) {
+    return with("startAt(" + value + ")");
+  }
+
+  public Query startAt(boolean value) {
+    return with("startAt(" + value + ")");
+  }
+
+  public Query startAt(String value, String key) {
+    return with("startAt(" + value + ", " + key + ")");
+  }
+
+  public Query startAt(double value, String key) {
+    return with("startAt(" + value + ", " + key + ")");
+  }
+
+  public Query startAt(boolean value, String key) {
+    return with("startAt(" + value + ", " + key + ")");
+  }
+
+  public Query endAt(String value) {
+    return with("endAt(" + value + ")");
+  }
+
+  public Query endAt(double value) {
+    return with("endAt(" + value + ")");
+  }
+
+  public Query endAt(boolean value) {
+    return with("endAt(" + value + ")");
+  }
+
+  public Query endAt(String value, String key) {
+    return with("endAt(" + value + ", " + key + ")");
+  }
+
+  public Query endAt(double value, String key) {
+    return with("endAt(" + value + ", " + key + ")");
+  }
+
+  public Query endAt(boolean value, String key) {
+    return with("endAt(" + value + ", " + key + ")");
+  }
+
+  public Query equalTo(String value) {
+    return with("equalTo(" + value + ")");
+  }
+
+  public Query equalTo(double value) {
+    return with("equalTo(" + value + ")");
+  }
+
+  public Query equalTo(boolean value) {
+    return with("equalTo(" + value + ")");
+  }
+
+  public Query equalTo(String value, String key) {
+    return with("equalTo(" + value + ", " + key + ")");
+  }
+
+  public Query equalTo(double value, String key) {
+    return with("equalTo(" + value + ", " + key + ")");
+  }
+
+  public Query equalTo(boolean value, String key) {
+    return with("equalTo(" + value + ", " + key + ")");
+  }
+
+  private Query with(String modifier) {
+    List<String> applied = new ArrayList<>(modifiers.size() + 1);
+    applied.addAll(modifiers);
+    applied.add(modifier);
+    return new Query(database, path, Collections.unmodifiableList(applied));
+  }
+
+  @Override
+  public String toString() {
+    return "Query { path = " + path + ", modifiers = " + modifiers + " }";
+  }
+}
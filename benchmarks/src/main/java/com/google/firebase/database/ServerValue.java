@@ -0,0 +1,14 @@
+package com.google.firebase.database;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * JVM fake of the server value placeholders.
+ */
+public class ServerValue {
+  public static final Map<String, String> TIMESTAMP = Collections.singletonMap(".sv", "timestamp");
+
+  private ServerValue() {
+  }
+}
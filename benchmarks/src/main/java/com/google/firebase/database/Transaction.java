@@ -0,0 +1,41 @@
+package com.google.firebase.database;
+
+/**
+ * JVM fake of a transaction, see FirebaseDatabase for how attempts are run.
+ */
+public class Transaction {
+  private Transaction() {
+  }
+
+  public interface Handler {
+    Result doTransaction(MutableData currentData);
+
+    void onComplete(DatabaseError error, boolean committed, DataSnapshot currentData);
+  }
+
+  public static class Result {
+    private final boolean success;
+    private final MutableData data;
+
+    private Result(boolean success, MutableData data) {
+      this.success = success;
+      this.data = data;
+    }
+
+    public boolean isSuccess() {
+      return success;
+    }
+
+    MutableData getData() {
+      return data;
+    }
+  }
+
+  public static Result abort() {
+    return new Result(false, null);
+  }
+
+  public static Result success(MutableData resultData) {
+    return new Result(true, resultData);
+  }
+}
@@ -0,0 +1,10 @@
+package com.google.firebase.database;
+
+/**
+ * JVM fake of a value event listener.
+ */
+public interface ValueEventListener {
+  void onDataChange(DataSnapshot dataSnapshot);
+
+  void onCancelled(DatabaseError databaseError);
+}
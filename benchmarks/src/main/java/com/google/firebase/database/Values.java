@@ -0,0 +1,131 @@
+package com.google.firebase.database;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Value handling shared by the JVM fakes of DataSnapshot and MutableData.
+ */
+final class Values {
+  /**
+   * Database key order, keys that are 32 bit integers first in numeric order, then
+   * the other keys in string order.
+   */
+  static final Comparator<String> KEY_ORDER = new Comparator<String>() {
+    @Override
+    public int compare(String left, String right) {
+      Integer leftIndex = parseIndex(left);
+      Integer rightIndex = parseIndex(right);
+      if (leftIndex != null && rightIndex != null) return leftIndex.compareTo(rightIndex);
+      if (leftIndex != null) return -1;
+      if (rightIndex != null) return 1;
+      return left.compareTo(right);
+    }
+  };
+
+  private Values() {
+  }
+
+  static Integer parseIndex(String key) {
+    if (key.isEmpty() || key.length() > 10) return null;
+    for (int i = 0; i < key.length(); i++) {
+      char c = key.charAt(i);
+      if ((c < '0' || c > '9') && !(i == 0 && c == '-' && key.length() > 1)) return null;
+    }
+    if (key.length() > 1 && (key.charAt(0) == '0' || key.startsWith("-0"))) return null;
+    long index = Long.parseLong(key);
+    return index < Integer.MIN_VALUE || index > Integer.MAX_VALUE ? null : (int) index;
+  }
+
+  /**
+   * Leaf values as the SDK returns them, whole numbers as Long and other numbers as Double.
+   *
+   * @param value
+   * @return
+   */
+  static Object normalizeLeaf(Object value) {
+    if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+      return ((Number) value).longValue();
+    }
+    if (value instanceof Float) {
+      return ((Number) value).doubleValue();
+    }
+    if (value instanceof Double) {
+      double number = (Double) value;
+      if (number == Math.rint(number) && !Double.isInfinite(number) && Math.abs(number) <= Long.MAX_VALUE) {
+        return (long) number;
+      }
+    }
+    if (value == null || value instanceof Long || value instanceof Double || value instanceof Boolean || value instanceof String) {
+      return value;
+    }
+    throw new DatabaseException("Failed to parse node with class " + value.getClass());
+  }
+
+  /**
+   * The children of a Map or List value by key, null values are dropped.
+   *
+   * @param value
+   * @return null if the value is a leaf
+   */
+  static Map<String, Object> childrenOf(Object value) {
+    if (value instanceof Map) {
+      Map<String, Object> children = new HashMap<>();
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+        if (entry.getValue() != null) children.put(String.valueOf(entry.getKey()), entry.getValue());
+      }
+      return children;
+    }
+
+    if (value instanceof List) {
+      List<?> list = (List<?>) value;
+      Map<String, Object> children = new HashMap<>();
+      for (int i = 0; i < list.size(); i++) {
+        if (list.get(i) != null) children.put(String.valueOf(i), list.get(i));
+      }
+      return children;
+    }
+
+    return null;
+  }
+
+  /**
+   * Build the value of a node with children as the SDK does, a List when the keys
+   * are integers and at least half of the indexes up to the largest are used,
+   * otherwise a Map.
+   *
+   * @param keys   child keys in key order
+   * @param values child values in the same order
+   * @return
+   */
+  static Object toValue(List<String> keys, List<Object> values) {
+    int maxIndex = -1;
+    boolean array = true;
+    for (String key : keys) {
+      Integer index = parseIndex(key);
+      if (index == null || index < 0) {
+        array = false;
+        break;
+      }
+      maxIndex = Math.max(maxIndex, index);
+    }
+
+    if (array && !keys.isEmpty() && maxIndex < 2 * keys.size()) {
+      List<Object> list = new ArrayList<>(maxIndex + 1);
+      for (int i = 0; i <= maxIndex; i++) list.add(null);
+      for (int i = 0; i < keys.size(); i++) {
+        list.set(Integer.parseInt(keys.get(i)), values.get(i));
+      }
+      return list;
+    }
+
+    Map<String, Object> map = new HashMap<>();
+    for (int i = 0; i < keys.size(); i++) {
+      map.put(keys.get(i), values.get(i));
+    }
+    return map;
+  }
+}
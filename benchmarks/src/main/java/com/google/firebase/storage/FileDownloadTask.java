@@ -0,0 +1,16 @@
+package com.google.firebase.storage;
+
+/**
+ * JVM fake of a file download task.
+ */
+public class FileDownloadTask extends StorageTask<FileDownloadTask.TaskSnapshot> {
+  public class TaskSnapshot extends StorageTask<FileDownloadTask.TaskSnapshot>.SnapshotBase {
+    public long getBytesTransferred() {
+      return 0;
+    }
+
+    public long getTotalByteCount() {
+      return 0;
+    }
+  }
+}
@@ -0,0 +1,47 @@
+package com.google.firebase.storage;
+
+import com.google.firebase.FirebaseApp;
+
+/**
+ * JVM fake of the storage service of an app.
+ */
+public class FirebaseStorage {
+  private final FirebaseApp app;
+  private long maxDownloadRetryTimeMillis = 600000;
+  private long maxOperationRetryTimeMillis = 120000;
+  private long maxUploadRetryTimeMillis = 600000;
+
+  private FirebaseStorage(FirebaseApp app) {
+    this.app = app;
+  }
+
+  public static FirebaseStorage getInstance(FirebaseApp app) {
+    return new FirebaseStorage(app);
+  }
+
+  public StorageReference getReference(String location) {
+    return new StorageReference(app.getName() + ".appspot.com", location);
+  }
+
+  public StorageReference getReferenceFromUrl(String fullUrl) {
+    String withoutScheme = fullUrl.substring(fullUrl.indexOf("://") + 3);
+    int slash = withoutScheme.indexOf('/');
+    return new StorageReference(withoutScheme.substring(0, slash), withoutScheme.substring(slash));
+  }
+
+  public long getMaxDownloadRetryTimeMillis() {
+    return maxDownloadRetryTimeMillis;
+  }
+
+  public void setMaxDownloadRetryTimeMillis(long maxTransferRetryMillis) {
+    maxDownloadRetryTimeMillis = maxTransferRetryMillis;
+  }
+
+  public void setMaxOperationRetryTimeMillis(long maxTransferRetryMillis) {
+    maxOperationRetryTimeMillis = maxTransferRetryMillis;
+  }
+
+  public void setMaxUploadRetryTimeMillis(long maxTransferRetryMillis) {
+    maxUploadRetryTimeMillis = maxTransferRetryMillis;
+  }
+}
@@ -0,0 +1,8 @@
+package com.google.firebase.storage;
+
+/**
+ * JVM fake of the storage task pause listener.
+ */
+public interface OnPausedListener<TProgress> {
+  void onPaused(TProgress state);
+}
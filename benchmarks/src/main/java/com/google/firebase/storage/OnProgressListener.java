@@ -0,0 +1,8 @@
+package com.google.firebase.storage;
+
+/**
+ * JVM fake of the storage task progress listener.
+ */
+public interface OnProgressListener<TProgress> {
+  void onProgress(TProgress state);
+}
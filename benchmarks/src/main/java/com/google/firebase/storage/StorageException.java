@@ -0,0 +1,33 @@
+package com.google.firebase.storage;
+
+/**
+ * JVM fake of a storage error.
+ */
+public class StorageException extends Exception {
+  public static final int ERROR_UNKNOWN = -13000;
+  public static final int ERROR_OBJECT_NOT_FOUND = -13010;
+  public static final int ERROR_BUCKET_NOT_FOUND = -13011;
+  public static final int ERROR_PROJECT_NOT_FOUND = -13012;
+  public static final int ERROR_QUOTA_EXCEEDED = -13013;
+  public static final int ERROR_NOT_AUTHENTICATED = -13020;
+  public static final int ERROR_NOT_AUTHORIZED = -13021;
+  public static final int ERROR_RETRY_LIMIT_EXCEEDED = -13030;
+  public static final int ERROR_INVALID_CHECKSUM = -13031;
+  public static final int ERROR_CANCELED = -13040;
+
+  private final int errorCode;
+  private final int httpResultCode;
+
+  public StorageException(int errorCode, int httpResultCode) {
+    this.errorCode = errorCode;
+    this.httpResultCode = httpResultCode;
+  }
+
+  public int getErrorCode() {
+    return errorCode;
+  }
+
+  public int getHttpResultCode() {
+    return httpResultCode;
+  }
+}
@@ -0,0 +1,163 @@
+package com.google.firebase.storage;
+
+import android.net.Uri;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * JVM fake of object metadata, every field can be set through the builder.
+ */
+public class StorageMetadata {
+  private String bucket;
+  private String generation;
+  private String metadataGeneration;
+  private String path;
+  private String name;
+  private long sizeBytes;
+  private long creationTimeMillis;
+  private long updatedTimeMillis;
+  private String md5Hash;
+  private String cacheControl;
+  private String contentDisposition;
+  private String contentEncoding;
+  private String contentLanguage;
+  private String contentType;
+  private final List<Uri> downloadUrls = new ArrayList<>();
+  private final Map<String, String> customMetadata = new LinkedHashMap<>();
+
+  public static class Builder {
+    private final StorageMetadata metadata = new StorageMetadata();
+
+    public Builder setCustomMetadata(String key, String value) {
+      metadata.customMetadata.put(key, value);
+      return this;
+    }
+
+    public Builder setCacheControl(String cacheControl) {
+      metadata.cacheControl = cacheControl;
+      return this;
+    }
+
+    public Builder setContentDisposition(String contentDisposition) {
+      metadata.contentDisposition = contentDisposition;
+      return this;
+    }
+
+    public Builder setContentEncoding(String contentEncoding) {
+      metadata.contentEncoding = contentEncoding;
+      return this;
+    }
+
+    public Builder setContentLanguage(String contentLanguage) {
+      metadata.contentLanguage = contentLanguage;
+      return this;
+    }
+
+    public Builder setContentType(String contentType) {
+      metadata.contentType = contentType;
+      return this;
+    }
+
+    /**
+     * Server assigned fields, only settable on the JVM fake.
+     */
+    public Builder setObject(String bucket, String path, String generation, String metadataGeneration, long sizeBytes, String md5Hash) {
+      metadata.bucket = bucket;
+      metadata.path = path;
+      metadata.name = path.substring(path.lastIndexOf('/') + 1);
+      metadata.generation = generation;
+      metadata.metadataGeneration = metadataGeneration;
+      metadata.sizeBytes = sizeBytes;
+      metadata.md5Hash = md5Hash;
+      return this;
+    }
+
+    public Builder setTimes(long creationTimeMillis, long updatedTimeMillis) {
+      metadata.creationTimeMillis = creationTimeMillis;
+      metadata.updatedTimeMillis = updatedTimeMillis;
+      return this;
+    }
+
+    public Builder addDownloadUrl(Uri uri) {
+      metadata.downloadUrls.add(uri);
+      return this;
+    }
+
+    public StorageMetadata build() {
+      return metadata;
+    }
+  }
+
+  public String getBucket() {
+    return bucket;
+  }
+
+  public String getGeneration() {
+    return generation;
+  }
+
+  public String getMetadataGeneration() {
+    return metadataGeneration;
+  }
+
+  public String getPath() {
+    return path;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public long getSizeBytes() {
+    return sizeBytes;
+  }
+
+  public long getCreationTimeMillis() {
+    return creationTimeMillis;
+  }
+
+  public long getUpdatedTimeMillis() {
+    return updatedTimeMillis;
+  }
+
+  public String getMd5Hash() {
+    return md5Hash;
+  }
+
+  public String getCacheControl() {
+    return cacheControl;
+  }
+
+  public String getContentDisposition() {
+    return contentDisposition;
+  }
+
+  public String getContentEncoding() {
+    return contentEncoding;
+  }
+
+  public String getContentLanguage() {
+    return contentLanguage;
+  }
+
+  public String getContentType() {
+    return contentType;
+  }
+
+  public List<Uri> getDownloadUrls() {
+    return Collections.unmodifiableList(downloadUrls);
+  }
+
+  public Set<String> getCustomMetadataKeys() {
+    return customMetadata.keySet();
+  }
+
+  public String getCustomMetadata(String key) {
+    return customMetadata.get(key);
+  }
+}
@@ -0,0 +1,64 @@
+package com.google.firebase.storage;
+
+import android.net.Uri;
+
+import com.google.android.gms.tasks.Task;
+
+import java.io.File;
+
+/**
+ * JVM fake of a storage reference, operations need the network and are not supported.
+ */
+public class StorageReference {
+  private final String bucket;
+  private final String path;
+
+  StorageReference(String bucket, String path) {
+    this.bucket = bucket;
+    this.path = path.startsWith("/") ? path : "/" + path;
+  }
+
+  public String getBucket() {
+    return bucket;
+  }
+
+  public String getPath() {
+    return path;
+  }
+
+  public String getName() {
+    return path.substring(path.lastIndexOf('/') + 1);
+  }
+
+  public Task<Void> delete() {
+    throw new UnsupportedOperationException();
+  }
+
+  public Task<Uri> getDownloadUrl() {
+    throw new UnsupportedOperationException();
+  }
+
+  public Task<StorageMetadata> getMetadata() {
+    throw new UnsupportedOperationException();
+  }
+
+  public Task<StorageMetadata> updateMetadata(StorageMetadata metadata) {
+    throw new UnsupportedOperationException();
+  }
+
+  public StreamDownloadTask getStream() {
+    throw new UnsupportedOperationException();
+  }
+
+  public StreamDownloadTask getStream(StreamDownloadTask.StreamProcessor processor) {
+    throw new UnsupportedOperationException();
+  }
+
+  public FileDownloadTask getFile(File destinationFile) {
+    throw new UnsupportedOperationException();
+  }
+
+  public UploadTask putFile(Uri uri, StorageMetadata metadata) {
+    throw new UnsupportedOperationException();
+  }
+}
@@ -0,0 +1,102 @@
+package com.google.firebase.storage;
+
+import com.google.android.gms.tasks.OnCompleteListener;
+import com.google.android.gms.tasks.OnFailureListener;
+import com.google.android.gms.tasks.OnSuccessListener;
+import com.google.android.gms.tasks.Task;
+
+/**
+ * JVM fake of a storage task, storage tasks need the network and can not be
+ * run on the JVM.
+ */
+public abstract class StorageTask<TResult extends StorageTask.ProvideError> extends Task<TResult> {
+  public interface ProvideError {
+    Exception getError();
+  }
+
+  public class SnapshotBase implements ProvideError {
+    @Override
+    public Exception getError() {
+      return null;
+    }
+
+    public StorageReference getStorage() {
+      throw new UnsupportedOperationException();
+    }
+
+    public StorageTask<TResult> getTask() {
+      return StorageTask.this;
+    }
+  }
+
+  public boolean isInProgress() {
+    return false;
+  }
+
+  public boolean isPaused() {
+    return false;
+  }
+
+  @Override
+  public boolean isComplete() {
+    return false;
+  }
+
+  @Override
+  public boolean isSuccessful() {
+    return false;
+  }
+
+  public boolean isCanceled() {
+    return false;
+  }
+
+  @Override
+  public TResult getResult() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public Exception getException() {
+    return null;
+  }
+
+  public boolean pause() {
+    return false;
+  }
+
+  public boolean resume() {
+    return false;
+  }
+
+  public boolean cancel() {
+    return false;
+  }
+
+  public TResult getSnapshot() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public StorageTask<TResult> addOnSuccessListener(OnSuccessListener<? super TResult> listener) {
+    return this;
+  }
+
+  @Override
+  public StorageTask<TResult> addOnFailureListener(OnFailureListener listener) {
+    return this;
+  }
+
+  @Override
+  public StorageTask<TResult> addOnCompleteListener(OnCompleteListener<TResult> listener) {
+    return this;
+  }
+
+  public StorageTask<TResult> addOnProgressListener(OnProgressListener<? super TResult> listener) {
+    return this;
+  }
+
+  public StorageTask<TResult> addOnPausedListener(OnPausedListener<? super TResult> listener) {
+    return this;
+  }
+}
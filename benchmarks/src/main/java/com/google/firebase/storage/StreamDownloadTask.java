@@ -0,0 +1,27 @@
+package com.google.firebase.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * JVM fake of a stream download task.
+ */
+public class StreamDownloadTask extends StorageTask<StreamDownloadTask.TaskSnapshot> {
+  public interface StreamProcessor {
+    void doInBackground(TaskSnapshot state, InputStream stream) throws IOException;
+  }
+
+  public class TaskSnapshot extends StorageTask<StreamDownloadTask.TaskSnapshot>.SnapshotBase {
+    public long getBytesTransferred() {
+      return 0;
+    }
+
+    public long getTotalByteCount() {
+      return 0;
+    }
+
+    public InputStream getStream() {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
@@ -0,0 +1,26 @@
+package com.google.firebase.storage;
+
+import android.net.Uri;
+
+/**
+ * JVM fake of an upload task.
+ */
+public class UploadTask extends StorageTask<UploadTask.TaskSnapshot> {
+  public class TaskSnapshot extends StorageTask<UploadTask.TaskSnapshot>.SnapshotBase {
+    public long getBytesTransferred() {
+      return 0;
+    }
+
+    public long getTotalByteCount() {
+      return 0;
+    }
+
+    public Uri getDownloadUrl() {
+      return null;
+    }
+
+    public StorageMetadata getMetadata() {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,396 @@
+package io.invertase.firebase;
+
+import android.util.Log;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.MutableData;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Property based checks of the iterative castValue against the recursive converter it
+ * replaced, on random trees of sparse arrays, integer like keys and mixed leaves.
+ * <p>
+ * Every tree is built from a seeded Random, a failure names the seed to reproduce it.
+ */
+public class UtilsTest {
+  private static final String TAG = "UtilsTest";
+  private static final int RUNS = 2000;
+
+  private static final String[] STRING_KEYS = {"a", "b", "name", "1a", "a1", "-", "key with spaces", "été", "z"};
+  private static final String[] STRING_LEAVES = {"", "a", "0", "1", "true", "null", "☃", "line\nbreak"};
+
+  @Test
+  public void castValueMatchesTheRecursiveConverter() {
+    for (int seed = 0; seed < RUNS; seed++) {
+      Random random = new Random(seed);
+      int maxDepth = 1 + random.nextInt(12);
+      Object value = randomTree(random, maxDepth);
+      DataSnapshot snapshot = new DataSnapshot("root", value);
+
+      if (levels(snapshot) > maxDepth) continue;
+
+      Object expected = baselineCastValue(snapshot);
+      Object actual = Utils.castValue(snapshot, new Utils.ConversionOptions(maxDepth, 0));
+      assertEquals("seed " + seed + ": " + value, expected, actual);
+    }
+  }
+
+  @Test
+  public void mutableDataMatchesTheSnapshotConversion() {
+    for (int seed = 0; seed < RUNS; seed++) {
+      Random random = new Random(seed);
+      int maxDepth = 1 + random.nextInt(12);
+      Object value = randomTree(random, maxDepth);
+      DataSnapshot snapshot = new DataSnapshot("root", value);
+
+      if (levels(snapshot) > maxDepth) continue;
+
+      Utils.ConversionOptions options = new Utils.ConversionOptions(maxDepth, 0);
+      Object expected = Utils.castValue(snapshot, options);
+      Object actual = Utils.castValue(new MutableData("root", value), options);
+      assertEquals("seed " + seed + ": " + value, expected, actual);
+    }
+  }
+
+  /**
+   * Trees exactly at the max depth convert, one level deeper they throw with the
+   * path of the first node that is too deep.
+   */
+  @Test
+  public void castValueThrowsOnlyPastTheMaxDepth() {
+    for (int seed = 0; seed < RUNS; seed++) {
+      Random random = new Random(seed);
+      int maxDepth = 1 + random.nextInt(12);
+      Object atMaxDepth = nest(random, randomLeaves(random), maxDepth - 1);
+      Object pastMaxDepth = nest(random, randomLeaves(random), maxDepth);
+      Utils.ConversionOptions options = new Utils.ConversionOptions(maxDepth, 0);
+
+      DataSnapshot snapshot = new DataSnapshot("root", atMaxDepth);
+      assertEquals("seed " + seed, maxDepth, levels(snapshot));
+      assertEquals("seed " + seed, (Object) baselineCastValue(snapshot), Utils.castValue(snapshot, options));
+
+      snapshot = new DataSnapshot("root", pastMaxDepth);
+      assertEquals("seed " + seed, maxDepth + 1, levels(snapshot));
+      assertMaxDepthExceeded("seed " + seed, snapshot, maxDepth, options);
+
+      try {
+        Utils.castValue(new MutableData("root", pastMaxDepth), options);
+        fail("seed " + seed + ": expected MaxDepthExceededException");
+      } catch (Utils.MaxDepthExceededException e) {
+        assertEquals(maxDepth, e.getMaxDepth());
+      }
+    }
+  }
+
+  @Test
+  public void randomTreesPastTheMaxDepthThrow() {
+    int thrown = 0;
+
+    for (int seed = 0; seed < RUNS; seed++) {
+      Random random = new Random(seed);
+      int maxDepth = 1 + random.nextInt(12);
+      Object value = randomTree(random, maxDepth + 2);
+      DataSnapshot snapshot = new DataSnapshot("root", value);
+
+      if (levels(snapshot) <= maxDepth) continue;
+
+      assertMaxDepthExceeded("seed " + seed, snapshot, maxDepth, new Utils.ConversionOptions(maxDepth, 0));
+      thrown++;
+    }
+
+    assertTrue(thrown > RUNS / 10);
+  }
+
+  @Test
+  public void maxDepthExceededErrorMap() {
+    Utils.MaxDepthExceededException exception = new Utils.MaxDepthExceededException("a/0/b", 3);
+    WritableMap error = exception.toMap();
+
+    assertEquals("database/max-depth-exceeded", Utils.MaxDepthExceededException.CODE);
+    assertEquals(Utils.MaxDepthExceededException.CODE, error.getString("code"));
+    assertEquals(exception.getMessage(), error.getString("message"));
+    assertEquals("a/0/b", error.getString("path"));
+    assertEquals(3, error.getInt("maxDepth"));
+  }
+
+  private static void assertMaxDepthExceeded(String message, DataSnapshot snapshot, int maxDepth, Utils.ConversionOptions options) {
+    try {
+      Utils.castValue(snapshot, options);
+      fail(message + ": expected MaxDepthExceededException");
+    } catch (Utils.MaxDepthExceededException e) {
+      assertEquals(message, maxDepth, e.getMaxDepth());
+      assertEquals(message, Utils.MaxDepthExceededException.CODE, e.toMap().getString("code"));
+
+      // the path leads through maxDepth nodes to a node that still has children
+      String[] keys = e.getPath().split("/");
+      assertEquals(message + ": " + e.getPath(), maxDepth, keys.length);
+      DataSnapshot node = snapshot;
+      for (String key : keys) {
+        node = getChild(node, key);
+        assertNotNull(message + ": " + e.getPath(), node);
+      }
+      assertTrue(message + ": " + e.getPath(), node.hasChildren());
+    }
+  }
+
+  private static DataSnapshot getChild(DataSnapshot snapshot, String key) {
+    for (DataSnapshot child : snapshot.getChildren()) {
+      if (child.getKey().equals(key)) return child;
+    }
+    return null;
+  }
+
+  /**
+   * @param snapshot
+   * @return how many levels of nodes with children the snapshot has
+   */
+  private static int levels(DataSnapshot snapshot) {
+    int levels = 0;
+    for (DataSnapshot child : snapshot.getChildren()) {
+      levels = Math.max(levels, levels(child));
+    }
+    return snapshot.hasChildren() ? levels + 1 : 0;
+  }
+
+  /**
+   * Wrap a value in levels of single child maps and arrays.
+   */
+  private static Object nest(Random random, Object value, int levels) {
+    for (int i = 0; i < levels; i++) {
+      if (random.nextBoolean()) {
+        List<Object> list = new ArrayList<>();
+        list.add(randomLeaf(random));
+        list.add(value);
+        value = list;
+      } else {
+        Map<String, Object> map = new HashMap<>();
+        map.put(randomKey(random), randomLeaf(random));
+        map.put("next", value);
+        value = map;
+      }
+    }
+    return value;
+  }
+
+  /**
+   * A Map or List of one to four leaves.
+   */
+  private static Object randomLeaves(Random random) {
+    int size = 1 + random.nextInt(4);
+    if (random.nextBoolean()) {
+      List<Object> list = new ArrayList<>();
+      for (int i = 0; i < size; i++) list.add(randomLeaf(random));
+      return list;
+    }
+
+    Map<String, Object> map = new HashMap<>();
+    for (int i = 0; i < size; i++) map.put(randomKey(random), randomLeaf(random));
+    return map;
+  }
+
+  /**
+   * A random Map, List or leaf, nested at most the given levels.
+   */
+  private static Object randomTree(Random random, int levels) {
+    if (levels == 0 || random.nextInt(5) == 0) return randomLeaf(random);
+
+    int size = 1 + random.nextInt(8);
+    switch (random.nextInt(4)) {
+      case 0:
+        // dense or sparse array, nulls leave gaps
+        List<Object> list = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+          list.add(random.nextInt(3) == 0 ? null : randomChild(random, levels));
+        }
+        return list;
+      case 1:
+        // integer keys, sparse enough to be a map at times
+        Map<String, Object> sparse = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+          sparse.put(String.valueOf(random.nextInt(size * 3)), randomChild(random, levels));
+        }
+        return sparse;
+      default:
+        Map<String, Object> map = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+          map.put(randomKey(random), randomChild(random, levels));
+        }
+        return map;
+    }
+  }
+
+  private static Object randomChild(Random random, int levels) {
+    return random.nextInt(3) == 0 ? randomTree(random, levels - 1) : randomLeaf(random);
+  }
+
+  /**
+   * Integer like keys, with leading zeros or signs, or plain strings.
+   */
+  private static String randomKey(Random random) {
+    switch (random.nextInt(7)) {
+      case 0:
+      case 1:
+        return String.valueOf(random.nextInt(10));
+      case 2:
+        return "0" + random.nextInt(10);
+      case 3:
+        return "-" + random.nextInt(10);
+      case 4:
+        return "+" + random.nextInt(10);
+      case 5:
+        return String.valueOf(Long.MAX_VALUE - random.nextInt(10));
+      default:
+        return STRING_KEYS[random.nextInt(STRING_KEYS.length)];
+    }
+  }
+
+  private static Object randomLeaf(Random random) {
+    switch (random.nextInt(7)) {
+      case 0:
+        return random.nextBoolean();
+      case 1:
+        return (long) random.nextInt(1000) - 500;
+      case 2:
+        return random.nextBoolean() ? Long.MAX_VALUE : Long.MIN_VALUE;
+      case 3:
+        return random.nextDouble() * 1000 - 500;
+      case 4:
+        return (double) random.nextInt(100);
+      default:
+        return STRING_LEAVES[random.nextInt(STRING_LEAVES.length)];
+    }
+  }
+
+  // recursive converter as it was before the iterative one, kept to compare against
+
+  private static <Any> Any baselineCastValue(DataSnapshot snapshot) {
+    if (snapshot.hasChildren()) {
+      if (baselineIsArray(snapshot)) {
+        return (Any) baselineBuildArray(snapshot);
+      } else {
+        return (Any) baselineBuildMap(snapshot);
+      }
+    } else {
+      if (snapshot.getValue() != null) {
+        String type = snapshot.getValue().getClass().getName();
+        switch (type) {
+          case "java.lang.Boolean":
+          case "java.lang.Long":
+          case "java.lang.Double":
+          case "java.lang.String":
+            return (Any) (snapshot.getValue());
+          default:
+            Log.w(TAG, "Invalid type: " + type);
+            return null;
+        }
+      }
+      return null;
+    }
+  }
+
+  private static boolean baselineIsArray(DataSnapshot snapshot) {
+    long expectedKey = -1;
+    long maxAllowedKey = (snapshot.getChildrenCount() * 2) - 1;
+    for (DataSnapshot child : snapshot.getChildren()) {
+      try {
+        long key = Long.parseLong(child.getKey());
+        if (key > expectedKey && key <= maxAllowedKey) {
+          expectedKey = key;
+        } else {
+          return false;
+        }
+      } catch (NumberFormatException ex) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static <Any> WritableArray baselineBuildArray(DataSnapshot snapshot) {
+    long expectedKey = 0;
+    WritableArray array = Arguments.createArray();
+    for (DataSnapshot child : snapshot.getChildren()) {
+      long key = Long.parseLong(child.getKey());
+      if (key > expectedKey) {
+        for (long i = expectedKey; i < key; i++) {
+          array.pushNull();
+        }
+        expectedKey = key;
+      }
+      Any castedChild = baselineCastValue(child);
+      switch (castedChild.getClass().getName()) {
+        case "java.lang.Boolean":
+          array.pushBoolean((Boolean) castedChild);
+          break;
+        case "java.lang.Long":
+          Long longVal = (Long) castedChild;
+          array.pushDouble((double) longVal);
+          break;
+        case "java.lang.Double":
+          array.pushDouble((Double) castedChild);
+          break;
+        case "java.lang.String":
+          array.pushString((String) castedChild);
+          break;
+        case "com.facebook.react.bridge.WritableNativeMap":
+          array.pushMap((WritableMap) castedChild);
+          break;
+        case "com.facebook.react.bridge.WritableNativeArray":
+          array.pushArray((WritableArray) castedChild);
+          break;
+        default:
+          Log.w(TAG, "Invalid type: " + castedChild.getClass().getName());
+          break;
+      }
+      expectedKey++;
+    }
+    return array;
+  }
+
+  private static <Any> WritableMap baselineBuildMap(DataSnapshot snapshot) {
+    WritableMap map = Arguments.createMap();
+    for (DataSnapshot child : snapshot.getChildren()) {
+      Any castedChild = baselineCastValue(child);
+
+      switch (castedChild.getClass().getName()) {
+        case "java.lang.Boolean":
+          map.putBoolean(child.getKey(), (Boolean) castedChild);
+          break;
+        case "java.lang.Long":
+          map.putDouble(child.getKey(), (double) ((Long) castedChild));
+          break;
+        case "java.lang.Double":
+          map.putDouble(child.getKey(), (Double) castedChild);
+          break;
+        case "java.lang.String":
+          map.putString(child.getKey(), (String) castedChild);
+          break;
+        case "com.facebook.react.bridge.WritableNativeMap":
+          map.putMap(child.getKey(), (WritableMap) castedChild);
+          break;
+        case "com.facebook.react.bridge.WritableNativeArray":
+          map.putArray(child.getKey(), (WritableArray) castedChild);
+          break;
+        default:
+          Log.w(TAG, "Invalid type: " + castedChild.getClass().getName());
+          break;
+      }
+    }
+    return map;
+  }
+}
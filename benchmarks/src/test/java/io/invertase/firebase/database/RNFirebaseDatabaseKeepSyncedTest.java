@@ -0,0 +1,136 @@
+package io.invertase.firebase.database;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReadableArray;
+import com.google.firebase.FirebaseApp;
+import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.Query;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.invertase.firebase.Utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Keep synced reports against the fake database, which holds single value reads
+ * while offline as the SDK does for data it has not cached.
+ */
+public class RNFirebaseDatabaseKeepSyncedTest {
+  private static final AtomicInteger apps = new AtomicInteger();
+  private static final long TIMEOUT = 200;
+
+  private String appName;
+  private FirebaseDatabase database;
+  private RNFirebaseDatabaseKeepSynced keepSynced;
+
+  @Before
+  public void setUp() {
+    appName = "keepSynced" + apps.incrementAndGet();
+    database = FirebaseDatabase.getInstance(FirebaseApp.getInstance(appName));
+    keepSynced = new RNFirebaseDatabaseKeepSynced(TIMEOUT);
+
+    Map<String, Object> room = new HashMap<>();
+    room.put("title", "room a");
+    room.put("members", 12L);
+    database.simulateRemoteSet("rooms/a", room);
+    database.simulateRemoteSet("rooms/b", "room b");
+  }
+
+  @Test
+  public void reportsTheSizeOfEveryQuery() throws InterruptedException {
+    keep("rooms/a");
+    keep("rooms/b");
+
+    ReportPromise promise = new ReportPromise();
+    keepSynced.report(appName, Utils.ConversionOptions.DEFAULT_MAX_DEPTH, promise);
+    ReadableArray report = promise.await();
+
+    assertEquals(2, report.size());
+    assertEquals("rooms/a", report.getMap(0).getString("path"));
+    assertFalse(report.getMap(0).isNull("bytes"));
+    assertTrue(report.getMap(0).getDouble("bytes") > report.getMap(1).getDouble("bytes"));
+  }
+
+  @Test
+  public void readsPendingOfflineAreReportedWithNullBytes() throws InterruptedException {
+    keep("rooms/a");
+    keep("rooms/b");
+    int idleListeners = database.getListenerCount();
+    database.goOffline();
+
+    ReportPromise promise = new ReportPromise();
+    long start = System.nanoTime();
+    keepSynced.report(appName, Utils.ConversionOptions.DEFAULT_MAX_DEPTH, promise);
+    ReadableArray report = promise.await();
+
+    assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= TIMEOUT);
+    assertEquals(2, report.size());
+    assertTrue(report.getMap(0).isNull("bytes"));
+    assertTrue(report.getMap(1).isNull("bytes"));
+
+    // the pending reads are removed, coming back online does not settle the report again
+    assertEquals(idleListeners, database.getListenerCount());
+    database.goOnline();
+    // waits for the run loop, then for anything it posted to the main looper
+    database.getListenerCount();
+    Thread.sleep(TIMEOUT);
+    assertEquals(1, promise.resolved.get());
+  }
+
+  private void keep(String path) {
+    Query query = database.getReference(path);
+    keepSynced.keepSynced(appName, path, RNFirebaseDatabaseRegistry.buildQueryKey(appName, path, RNFirebaseDatabaseQueryModifiers.compile(Arguments.createArray())), query, true);
+  }
+
+  /**
+   * Captures the report a promise is resolved with.
+   */
+  private static class ReportPromise implements Promise {
+    private final CountDownLatch latch = new CountDownLatch(1);
+    private final AtomicInteger resolved = new AtomicInteger();
+    private volatile ReadableArray report;
+
+    ReadableArray await() throws InterruptedException {
+      assertTrue(latch.await(5, TimeUnit.SECONDS));
+      return report;
+    }
+
+    @Override
+    public void resolve(Object value) {
+      report = (ReadableArray) value;
+      resolved.incrementAndGet();
+      latch.countDown();
+    }
+
+    @Override
+    public void reject(String code, String message) {
+      throw new AssertionError(code + ": " + message);
+    }
+
+    @Override
+    public void reject(String code, Throwable e) {
+      throw new AssertionError(code, e);
+    }
+
+    @Override
+    public void reject(String code, String message, Throwable e) {
+      throw new AssertionError(code + ": " + message, e);
+    }
+
+    @Override
+    public void reject(Throwable e) {
+      throw new AssertionError(e);
+    }
+  }
+}
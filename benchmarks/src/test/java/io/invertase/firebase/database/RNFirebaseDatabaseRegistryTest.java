@@ -0,0 +1,358 @@
+package io.invertase.firebase.database;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContext;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.google.firebase.FirebaseApp;
+import com.google.firebase.database.FirebaseDatabase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.invertase.firebase.Utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Hammers on() and off() through RNFirebaseDatabase from many threads, as bridge
+ * calls and listener callbacks do, and checks the registry neither leaks nor
+ * loses native listeners.
+ */
+public class RNFirebaseDatabaseRegistryTest {
+  private static final AtomicInteger apps = new AtomicInteger();
+  private static final String[] PATHS = {"tests/registry/a", "tests/registry/b", "/tests/registry/c/", "tests/registry/d"};
+
+  private final List<Throwable> uncaught = Collections.synchronizedList(new ArrayList<Throwable>());
+  private Thread.UncaughtExceptionHandler defaultHandler;
+  private String appName;
+  private FirebaseDatabase database;
+  private ReactApplicationContext context;
+  private RNFirebaseDatabase module;
+  private int idleListeners;
+
+  @Before
+  public void setUp() {
+    defaultHandler = Thread.getDefaultUncaughtExceptionHandler();
+    Thread.setDefaultUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+      @Override
+      public void uncaughtException(Thread thread, Throwable e) {
+        uncaught.add(e);
+      }
+    });
+
+    appName = "registry" + apps.incrementAndGet();
+    database = FirebaseDatabase.getInstance(FirebaseApp.getInstance(appName));
+    context = new ReactApplicationContext();
+    module = new RNFirebaseDatabase(context);
+
+    // the first attach also starts monitoring the connection of the app
+    module.on(appName, props("warmup", PATHS[0], "value", false, false));
+    module.off("", "warmup");
+    idleListeners = database.getListenerCount();
+  }
+
+  @After
+  public void tearDown() {
+    Thread.setDefaultUncaughtExceptionHandler(defaultHandler);
+  }
+
+  @Test
+  public void concurrentOnAndOffDoNotLeakListeners() throws Exception {
+    final int threads = 8;
+    final int iterations = 500;
+    ExecutorService bridge = Executors.newFixedThreadPool(threads);
+    List<Future<List<String>>> futures = new ArrayList<>();
+
+    for (int t = 0; t < threads; t++) {
+      final int thread = t;
+      futures.add(bridge.submit(new Callable<List<String>>() {
+        @Override
+        public List<String> call() {
+          Random random = new Random(thread);
+          List<String> attached = new ArrayList<>();
+
+          for (int i = 0; i < iterations; i++) {
+            String key = "t" + thread + "-" + i;
+            String path = PATHS[random.nextInt(PATHS.length)];
+            String eventType = random.nextBoolean() ? "value" : "child_added";
+            module.on(appName, props(key, path, eventType, random.nextBoolean(), random.nextInt(4) == 0));
+            attached.add(key);
+
+            // detach some registrations straight away, some later, some twice
+            if (random.nextBoolean()) {
+              String detached = attached.remove(random.nextInt(attached.size()));
+              module.off("", detached);
+              if (random.nextInt(10) == 0) module.off("", detached);
+            }
+            if (random.nextInt(20) == 0) module.off("", "unknown-" + key);
+          }
+
+          return attached;
+        }
+      }));
+    }
+
+    List<String> remaining = new ArrayList<>();
+    for (Future<List<String>> future : futures) remaining.addAll(future.get(60, TimeUnit.SECONDS));
+    assertTrue(database.getListenerCount() > idleListeners);
+
+    // detach the rest from other threads than the ones that attached them
+    Collections.shuffle(remaining, new Random(0));
+    List<Future<?>> detaches = new ArrayList<>();
+    for (final String key : remaining) {
+      detaches.add(bridge.submit(new Runnable() {
+        @Override
+        public void run() {
+          module.off("", key);
+        }
+      }));
+    }
+    for (Future<?> detach : detaches) detach.get(60, TimeUnit.SECONDS);
+    bridge.shutdown();
+
+    assertEquals(idleListeners, database.getListenerCount());
+    awaitMainLooper();
+    assertEquals(Collections.emptyList(), uncaught);
+  }
+
+  @Test
+  public void identicalQueriesShareOneNativeListener() throws Exception {
+    final int registrations = 50;
+    final Set<Integer> received = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+    final CountDownLatch allReceived = new CountDownLatch(registrations);
+
+    context.setEventListener(new ReactContext.EventListener() {
+      @Override
+      public void onEvent(ReactContext.Event event) {
+        if (!"database_sync_event".equals(event.name)) return;
+        ReadableMap body = (ReadableMap) event.body;
+        List<Integer> ids = new ArrayList<>();
+        if (body.hasKey("id")) ids.add(body.getInt("id"));
+        if (body.hasKey("ids")) {
+          ReadableArray array = body.getArray("ids");
+          for (int i = 0; i < array.size(); i++) ids.add(array.getInt(i));
+        }
+        for (Integer id : ids) {
+          if (received.add(id)) allReceived.countDown();
+        }
+      }
+    });
+
+    // the same query, with the path spelt differently, from many threads at once
+    final CountDownLatch start = new CountDownLatch(1);
+    ExecutorService bridge = Executors.newFixedThreadPool(registrations);
+    List<Future<?>> attaches = new ArrayList<>();
+    for (int i = 0; i < registrations; i++) {
+      final int id = i;
+      attaches.add(bridge.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          start.await();
+          module.on(appName, props("shared-" + id, id % 2 == 0 ? "tests/registry/shared" : "/tests/registry/shared/", "value", false, false));
+          return null;
+        }
+      }));
+    }
+    start.countDown();
+    for (Future<?> attach : attaches) attach.get(60, TimeUnit.SECONDS);
+
+    // every registration gets the current value once, whether it created or joined the listener
+    assertTrue("registrations missed their first event", allReceived.await(10, TimeUnit.SECONDS));
+    assertEquals(idleListeners + 1, database.getListenerCount());
+
+    List<Future<?>> detaches = new ArrayList<>();
+    for (int i = 0; i < registrations; i++) {
+      final int id = i;
+      detaches.add(bridge.submit(new Runnable() {
+        @Override
+        public void run() {
+          module.off("", "shared-" + id);
+        }
+      }));
+    }
+    for (Future<?> detach : detaches) detach.get(60, TimeUnit.SECONDS);
+    bridge.shutdown();
+
+    assertEquals(idleListeners, database.getListenerCount());
+    awaitMainLooper();
+    assertEquals(Collections.emptyList(), uncaught);
+  }
+
+  @Test
+  public void registrationDetachedWhileJoiningIsNotMoved() throws Exception {
+    final String path = "tests/registry/joining";
+    final CountDownLatch joinerReceived = new CountDownLatch(1);
+    RNFirebaseDatabaseRegistry registry = new RNFirebaseDatabaseRegistry(context, new RNFirebaseDatabaseSnapshotCache(), new RNFirebaseDatabaseMetrics(), new RNFirebaseDatabaseConversionSettings());
+
+    // the first attach also starts monitoring the connection of the app
+    registry.attach(appName, "tests/registry/warmup", Arguments.createArray(), "value", props("warmup", "tests/registry/warmup", "value", false, false).getMap("registration"), null, false, null);
+    registry.detach("warmup");
+    int idle = database.getListenerCount();
+
+    context.setEventListener(new ReactContext.EventListener() {
+      @Override
+      public void onEvent(ReactContext.Event event) {
+        ReadableMap body = (ReadableMap) event.body;
+        if ("database_sync_event".equals(event.name) && body.hasKey("id") && body.getInt("id") == 2) {
+          joinerReceived.countDown();
+        }
+      }
+    });
+
+    registry.attach(appName, path, Arguments.createArray(), "value", props("shared-1", path, "value", false, false).getMap("registration"), null, false, null);
+    awaitMainLooper();
+
+    // hold the lock of the query so the main looper stops between sending the
+    // current value to the joining registration and moving it, then detach it
+    Object lock = registry.lockFor(RNFirebaseDatabaseRegistry.buildQueryKey(appName, path, RNFirebaseDatabaseQueryModifiers.compile(Arguments.createArray())));
+    Thread mainThread = Looper.getMainLooper().getThread();
+    synchronized (lock) {
+      registry.attach(appName, path, Arguments.createArray(), "value", props("shared-2", path, "value", false, false).getMap("registration"), null, false, null);
+      assertTrue("joining registration missed its first event", joinerReceived.await(10, TimeUnit.SECONDS));
+
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+      while (mainThread.getState() != Thread.State.BLOCKED) {
+        assertTrue("main looper did not wait for the lock", System.nanoTime() < deadline);
+        Thread.sleep(1);
+      }
+
+      registry.detach("shared-2");
+    }
+    awaitMainLooper();
+
+    assertEquals(idle + 1, database.getListenerCount());
+    registry.detach("shared-1");
+    assertEquals(idle, database.getListenerCount());
+    assertEquals(Collections.emptyList(), uncaught);
+  }
+
+  @Test
+  public void maxDepthErrorDetachesSharedRegistrationsFromTheRegistry() throws Exception {
+    final String path = "tests/registry/deep";
+    final List<String> errors = Collections.synchronizedList(new ArrayList<String>());
+    final CountDownLatch errored = new CountDownLatch(2);
+    RNFirebaseDatabaseConversionSettings settings = new RNFirebaseDatabaseConversionSettings();
+    settings.setMaxDepth(appName, 5);
+    RNFirebaseDatabaseRegistry registry = new RNFirebaseDatabaseRegistry(context, new RNFirebaseDatabaseSnapshotCache(), new RNFirebaseDatabaseMetrics(), settings);
+
+    // the first attach also starts monitoring the connection of the app
+    registry.attach(appName, "tests/registry/warmup", Arguments.createArray(), "value", props("warmup", "tests/registry/warmup", "value", false, false).getMap("registration"), null, false, null);
+    registry.detach("warmup");
+    int idle = database.getListenerCount();
+
+    context.setEventListener(new ReactContext.EventListener() {
+      @Override
+      public void onEvent(ReactContext.Event event) {
+        ReadableMap body = (ReadableMap) event.body;
+        if ("database_sync_event".equals(event.name) && body.hasKey("error")) {
+          errors.add(body.getMap("error").getString("code"));
+          errored.countDown();
+        }
+      }
+    });
+
+    registry.attach(appName, path, Arguments.createArray(), "value", props("shared-1", path, "value", false, false).getMap("registration"), null, false, null);
+    registry.attach(appName, path, Arguments.createArray(), "value", props("shared-2", path, "value", false, false).getMap("registration"), null, false, null);
+    RNFirebaseDatabaseReference reference = registry.get(appName, path, Arguments.createArray());
+
+    Map<String, Object> deep = new HashMap<>();
+    Map<String, Object> level = deep;
+    for (int i = 0; i < 10; i++) {
+      Map<String, Object> child = new HashMap<>();
+      level.put("child", child);
+      level = child;
+    }
+    level.put("leaf", true);
+    database.simulateRemoteSet(path, deep);
+
+    assertTrue("registrations were not sent the error", errored.await(10, TimeUnit.SECONDS));
+    awaitMainLooper();
+
+    assertEquals(Arrays.asList(Utils.MaxDepthExceededException.CODE, Utils.MaxDepthExceededException.CODE), errors);
+    assertEquals(idle, database.getListenerCount());
+    // the reference was dropped from the registry with its last registration
+    assertNotSame(reference, registry.get(appName, path, Arguments.createArray()));
+    assertEquals(Collections.emptyList(), uncaught);
+  }
+
+  /**
+   * The props JS passes to on(), registrations with options get their own native listener.
+   *
+   * @param key
+   * @param path
+   * @param eventType
+   * @param diff
+   * @param limited
+   * @return
+   */
+  private ReadableMap props(String key, String path, String eventType, boolean diff, boolean limited) {
+    WritableArray modifiers = Arguments.createArray();
+    if (limited) {
+      WritableMap orderBy = Arguments.createMap();
+      orderBy.putString("type", "orderBy");
+      orderBy.putString("name", "orderByKey");
+      modifiers.pushMap(orderBy);
+
+      WritableMap limit = Arguments.createMap();
+      limit.putString("type", "limit");
+      limit.putString("name", "limitToLast");
+      limit.putInt("limit", 10);
+      modifiers.pushMap(limit);
+    }
+
+    WritableMap registration = Arguments.createMap();
+    registration.putString("eventRegistrationKey", key);
+    registration.putString("registrationCancellationKey", key + "$cancelled");
+    registration.putString("key", path);
+    if (key.startsWith("shared-")) registration.putInt("id", Integer.parseInt(key.substring("shared-".length())));
+
+    WritableMap props = Arguments.createMap();
+    props.putString("path", path);
+    props.putArray("modifiers", modifiers);
+    props.putString("eventType", eventType);
+    props.putMap("registration", registration);
+    props.putBoolean("diff", diff && "value".equals(eventType));
+    return props;
+  }
+
+  /**
+   * Wait for the events posted to the main looper so far.
+   */
+  private static void awaitMainLooper() throws InterruptedException {
+    final CountDownLatch done = new CountDownLatch(1);
+    new Handler(Looper.getMainLooper()).post(new Runnable() {
+      @Override
+      public void run() {
+        done.countDown();
+      }
+    });
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+  }
+}
@@ -0,0 +1,119 @@
+package io.invertase.firebase.database;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.google.firebase.FirebaseApp;
+import com.google.firebase.database.FirebaseDatabase;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Write batches through RNFirebaseDatabase against the fake database.
+ */
+public class RNFirebaseDatabaseWriteBatchTest {
+  private static final AtomicInteger apps = new AtomicInteger();
+
+  private String appName;
+  private FirebaseDatabase database;
+  private RNFirebaseDatabase module;
+
+  @Before
+  public void setUp() {
+    appName = "writeBatch" + apps.incrementAndGet();
+    database = FirebaseDatabase.getInstance(FirebaseApp.getInstance(appName));
+    module = new RNFirebaseDatabase(new ReactApplicationContext());
+  }
+
+  @Test
+  public void recordsOneWriteAckPerGroup() throws InterruptedException {
+    WritableArray ops = Arguments.createArray();
+    ops.pushMap(op("set", "batch/a/b", 1));
+    ops.pushMap(op("set", "batch/c", 2));
+    // a descendant of a path already written starts a second group
+    ops.pushMap(op("set", "batch/c/d", 3));
+    // an empty update writes nothing
+    WritableMap emptyUpdate = Arguments.createMap();
+    emptyUpdate.putString("type", "update");
+    emptyUpdate.putString("path", "batch/e");
+    emptyUpdate.putMap("value", Arguments.createMap());
+    ops.pushMap(emptyUpdate);
+
+    ResultPromise results = new ResultPromise();
+    module.writeBatch(appName, ops, results);
+
+    ReadableArray errors = (ReadableArray) results.await();
+    assertEquals(4, errors.size());
+    for (int i = 0; i < errors.size(); i++) {
+      assertTrue(errors.isNull(i));
+    }
+    assertEquals(3L, database.getValue("batch/c/d"));
+
+    ResultPromise metrics = new ResultPromise();
+    module.getMetrics(appName, metrics);
+    ReadableMap writeAck = ((ReadableMap) metrics.await()).getMap("writeAck");
+    assertEquals(2, (int) writeAck.getDouble("count"));
+  }
+
+  private static WritableMap op(String type, String path, double value) {
+    WritableMap wrapped = Arguments.createMap();
+    wrapped.putDouble("value", value);
+
+    WritableMap op = Arguments.createMap();
+    op.putString("type", type);
+    op.putString("path", path);
+    op.putMap("value", wrapped);
+    return op;
+  }
+
+  /**
+   * Captures the value a promise is resolved with.
+   */
+  private static class ResultPromise implements Promise {
+    private final CountDownLatch latch = new CountDownLatch(1);
+    private volatile Object value;
+
+    Object await() throws InterruptedException {
+      assertTrue(latch.await(5, TimeUnit.SECONDS));
+      return value;
+    }
+
+    @Override
+    public void resolve(Object value) {
+      this.value = value;
+      latch.countDown();
+    }
+
+    @Override
+    public void reject(String code, String message) {
+      throw new AssertionError(code + ": " + message);
+    }
+
+    @Override
+    public void reject(String code, Throwable e) {
+      throw new AssertionError(code, e);
+    }
+
+    @Override
+    public void reject(String code, String message, Throwable e) {
+      throw new AssertionError(code + ": " + message, e);
+    }
+
+    @Override
+    public void reject(Throwable e) {
+      throw new AssertionError(e);
+    }
+  }
+}
@@ -0,0 +1,316 @@
+package io.invertase.firebase.database;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContext;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableMap;
+import com.google.firebase.FirebaseApp;
+import com.google.firebase.database.FirebaseDatabase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.invertase.firebase.Utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives transactions through RNFirebaseDatabase against the fake database, which
+ * runs doTransaction on a single run loop thread as the SDK does. A single thread
+ * executor stands in for the JS thread and answers the transaction events the
+ * way lib/modules/database/transaction.js does.
+ */
+public class RNFirebaseTransactionHandlerTest {
+  private static final AtomicInteger apps = new AtomicInteger();
+
+  private String appName;
+  private FirebaseDatabase database;
+  private ReactApplicationContext context;
+  private RNFirebaseDatabase module;
+  private ExecutorService js;
+
+  @Before
+  public void setUp() {
+    appName = "transactions" + apps.incrementAndGet();
+    database = FirebaseDatabase.getInstance(FirebaseApp.getInstance(appName));
+    context = new ReactApplicationContext();
+    module = new RNFirebaseDatabase(context);
+    js = Executors.newSingleThreadExecutor();
+  }
+
+  @After
+  public void tearDown() {
+    js.shutdownNow();
+  }
+
+  @Test
+  public void concurrentTransactionsAllCommit() throws Exception {
+    final int transactions = 200;
+    final int counters = 10;
+    final Map<Integer, String> paths = new ConcurrentHashMap<>();
+    final Map<Integer, Map<String, Object>> results = new ConcurrentHashMap<>();
+    final Map<String, AtomicInteger> remoteIncrements = new ConcurrentHashMap<>();
+    final AtomicInteger updates = new AtomicInteger();
+    final AtomicInteger retriesWithFullValue = new AtomicInteger();
+    final CountDownLatch completed = new CountDownLatch(transactions);
+
+    for (int i = 0; i < counters; i++) remoteIncrements.put(counterPath(i), new AtomicInteger());
+
+    respond(new Js() {
+      private final Map<Integer, Object> lastValues = new HashMap<>();
+      private final Map<Integer, Integer> attempts = new HashMap<>();
+
+      @Override
+      public void onUpdate(int id, Map<String, Object> event) {
+        updates.incrementAndGet();
+        int attempt = attempts.containsKey(id) ? attempts.get(id) + 1 : 0;
+        attempts.put(id, attempt);
+
+        if (attempt > 0 && event.containsKey("value")) retriesWithFullValue.incrementAndGet();
+        Object current = currentValue(lastValues.get(id), event);
+        long next = current == null ? 1 : ((Number) current).longValue() + 1;
+
+        // every tenth transaction is raced by another client once
+        if (id % 10 == 0 && attempt == 0) {
+          String path = paths.get(id);
+          remoteIncrements.get(path).incrementAndGet();
+          database.simulateRemoteSet(path, next);
+        }
+
+        lastValues.put(id, next);
+        commit(id, next, false);
+      }
+
+      @Override
+      public void onResult(int id, Map<String, Object> event) {
+        results.put(id, event);
+        completed.countDown();
+      }
+    });
+
+    // bridge calls arrive from several threads at once
+    ExecutorService bridge = Executors.newFixedThreadPool(8);
+    for (int i = 0; i < transactions; i++) {
+      final int id = i;
+      paths.put(id, counterPath(id % counters));
+      bridge.execute(new Runnable() {
+        @Override
+        public void run() {
+          module.transactionStart(appName, paths.get(id), id, true);
+        }
+      });
+    }
+    bridge.shutdown();
+
+    assertTrue("transactions did not complete", completed.await(60, TimeUnit.SECONDS));
+
+    for (int i = 0; i < transactions; i++) {
+      Map<String, Object> result = results.get(i);
+      assertEquals("complete", result.get("type"));
+      assertEquals(true, result.get("committed"));
+      assertEquals(false, result.get("timeout"));
+    }
+
+    for (int i = 0; i < counters; i++) {
+      String path = counterPath(i);
+      long expected = transactions / counters + remoteIncrements.get(path).get();
+      assertEquals(expected, database.getValue(path));
+    }
+
+    // every raced transaction ran again and its retry only carried a patch
+    assertEquals(transactions + transactions / 10, updates.get());
+    assertEquals(0, retriesWithFullValue.get());
+  }
+
+  @Test
+  public void transactionTimesOutWhenJsDoesNotRespond() throws Exception {
+    final CountDownLatch completed = new CountDownLatch(1);
+    final Map<String, Object> result = new HashMap<>();
+
+    module.setTransactionTimeout(appName, 100);
+    respond(new Js() {
+      @Override
+      public void onUpdate(int id, Map<String, Object> event) {
+      }
+
+      @Override
+      public void onResult(int id, Map<String, Object> event) {
+        result.putAll(event);
+        completed.countDown();
+      }
+    });
+
+    long start = System.nanoTime();
+    module.transactionStart(appName, "tests/timeout", 1, true);
+
+    assertTrue(completed.await(5, TimeUnit.SECONDS));
+    assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+    assertEquals("error", result.get("type"));
+    assertEquals(true, result.get("timeout"));
+    assertEquals(false, result.get("committed"));
+    assertEquals("DATABASE/INTERNAL-TIMEOUT", ((Map<?, ?>) result.get("error")).get("code"));
+  }
+
+  @Test
+  public void transactionAbortedByJsDoesNotCommit() throws Exception {
+    final CountDownLatch completed = new CountDownLatch(1);
+    final Map<String, Object> result = new HashMap<>();
+
+    respond(new Js() {
+      @Override
+      public void onUpdate(int id, Map<String, Object> event) {
+        commit(id, null, true);
+      }
+
+      @Override
+      public void onResult(int id, Map<String, Object> event) {
+        result.putAll(event);
+        completed.countDown();
+      }
+    });
+
+    module.transactionStart(appName, "tests/abort", 1, true);
+
+    assertTrue(completed.await(5, TimeUnit.SECONDS));
+    assertEquals("complete", result.get("type"));
+    assertEquals(false, result.get("committed"));
+    assertEquals(null, ((Map<?, ?>) result.get("snapshot")).get("value"));
+    assertEquals(null, database.getValue("tests/abort"));
+  }
+
+  @Test
+  public void lateCommitAfterTimeoutIsIgnored() throws Exception {
+    final CountDownLatch completed = new CountDownLatch(1);
+
+    module.setTransactionTimeout(appName, 50);
+    respond(new Js() {
+      @Override
+      public void onUpdate(final int id, Map<String, Object> event) {
+        try {
+          Thread.sleep(200);
+        } catch (InterruptedException e) {
+          return;
+        }
+        commit(id, 1, false);
+      }
+
+      @Override
+      public void onResult(int id, Map<String, Object> event) {
+        completed.countDown();
+      }
+    });
+
+    module.transactionStart(appName, "tests/late", 1, true);
+
+    assertTrue(completed.await(5, TimeUnit.SECONDS));
+    Thread.sleep(300);
+    assertEquals(null, database.getValue("tests/late"));
+  }
+
+  private static String counterPath(int counter) {
+    return "tests/counters/c" + counter;
+  }
+
+  private void commit(int id, Object value, boolean abort) {
+    WritableMap updates = Arguments.createMap();
+    Utils.mapPutValue("value", value, updates);
+    updates.putBoolean("abort", abort);
+    module.transactionTryCommit(appName, id, updates);
+  }
+
+  /**
+   * Forward transaction events to the JS stand-in on its own thread.
+   *
+   * @param handler
+   */
+  private void respond(final Js handler) {
+    context.setEventListener(new ReactContext.EventListener() {
+      @Override
+      public void onEvent(ReactContext.Event event) {
+        if (!"database_transaction_event".equals(event.name)) return;
+
+        final Map<String, Object> body = Utils.recursivelyDeconstructReadableMap((ReadableMap) event.body);
+        final int id = ((Number) body.get("id")).intValue();
+
+        js.execute(new Runnable() {
+          @Override
+          public void run() {
+            if ("update".equals(body.get("type"))) {
+              handler.onUpdate(id, body);
+            } else {
+              handler.onResult(id, body);
+            }
+          }
+        });
+      }
+    });
+  }
+
+  /**
+   * The value an update event describes, given the value last committed by JS.
+   *
+   * @param committed
+   * @param event
+   * @return
+   */
+  @SuppressWarnings("unchecked")
+  private static Object currentValue(Object committed, Map<String, Object> event) {
+    if (Boolean.TRUE.equals(event.get("unchanged"))) return committed;
+    if (!event.containsKey("patch")) return event.get("value");
+
+    Map<String, Object> patch = (Map<String, Object>) event.get("patch");
+    Object patched = committed;
+    List<Object> upserts = new ArrayList<>((List<Object>) patch.get("changed"));
+    upserts.addAll((List<Object>) patch.get("added"));
+
+    for (Object upsert : upserts) {
+      Map<String, Object> change = (Map<String, Object>) upsert;
+      String path = (String) change.get("path");
+      patched = path.isEmpty() ? change.get("value") : setIn(patched, path.split("/"), 0, change.get("value"));
+    }
+
+    for (Object removed : (List<Object>) patch.get("removed")) {
+      patched = setIn(patched, ((String) removed).split("/"), 0, null);
+    }
+
+    return patched;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Object setIn(Object value, String[] keys, int index, Object leaf) {
+    Map<String, Object> copy = value instanceof Map ? new HashMap<>((Map<String, Object>) value) : new HashMap<String, Object>();
+    if (index == keys.length - 1) {
+      if (leaf == null) {
+        copy.remove(keys[index]);
+      } else {
+        copy.put(keys[index], leaf);
+      }
+    } else {
+      copy.put(keys[index], setIn(copy.get(keys[index]), keys, index + 1, leaf));
+    }
+    return copy;
+  }
+
+  /**
+   * The JS side of a transaction, called on the JS thread.
+   */
+  private interface Js {
+    void onUpdate(int id, Map<String, Object> event);
+
+    void onResult(int id, Map<String, Object> event);
+  }
+}
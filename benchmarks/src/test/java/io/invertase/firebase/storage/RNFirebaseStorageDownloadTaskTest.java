@@ -0,0 +1,123 @@
+package io.invertase.firebase.storage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Cancelling the scheduler handle of a resumable download against an in-process
+ * range server sending the object slowly.
+ */
+public class RNFirebaseStorageDownloadTaskTest {
+  private static final int SIZE = 4 * 1024 * 1024;
+  private static final String GENERATION = "1500000000000000";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private RNFirebaseStorageRangeServer server;
+  private ExecutorService executor;
+  private String localPath;
+
+  @Before
+  public void setUp() throws IOException {
+    byte[] payload = new byte[SIZE];
+    new Random(1).nextBytes(payload);
+    server = new RNFirebaseStorageRangeServer(payload, "\"v1\"");
+    server.throttle(64 * 1024, 20);
+    executor = Executors.newSingleThreadExecutor();
+    localPath = new File(folder.getRoot(), "video.mp4").getPath();
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+    server.stop();
+  }
+
+  @Test
+  public void cancelInterruptsTheDownloadAndFreesTheThread() throws Exception {
+    Listener listener = new Listener();
+    RNFirebaseStorageDownloadTask task = new RNFirebaseStorageDownloadTask(listener);
+
+    task.start(executor, download(task));
+    assertTrue(listener.started.await(10, TimeUnit.SECONDS));
+
+    assertTrue(task.cancel());
+    assertFalse(task.cancel());
+
+    // the interrupted download gives the thread back long before the object is sent
+    Future<?> next = executor.submit(new Runnable() {
+      @Override
+      public void run() {
+      }
+    });
+    next.get(5, TimeUnit.SECONDS);
+
+    assertEquals(1, listener.failures.get());
+    assertTrue(listener.failure instanceof RNFirebaseStorageDownloadTask.CancelledException);
+    assertEquals(0, listener.successes.get());
+    assertTrue(RNFirebaseStorageDownloadCheckpoint.partFile(localPath).isFile());
+  }
+
+  @Test
+  public void cancelBeforeStartNeverRunsTheDownload() throws Exception {
+    Listener listener = new Listener();
+    RNFirebaseStorageDownloadTask task = new RNFirebaseStorageDownloadTask(listener);
+
+    assertTrue(task.cancel());
+    task.start(executor, download(task));
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+
+    assertEquals(1, listener.failures.get());
+    assertEquals(0, server.getRequests().size());
+    assertFalse(new File(localPath).exists());
+  }
+
+  private Runnable download(RNFirebaseStorageDownloadTask task) {
+    return new RNFirebaseStorageResumableDownload(server.getUrl(), localPath, GENERATION, SIZE, RNFirebaseStorageFileWriter.DEFAULT_BUFFER_SIZE, task);
+  }
+
+  /**
+   * Counts the callbacks, made from the executor or the cancelling thread.
+   */
+  private static class Listener implements RNFirebaseStorageDownloadListener {
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final AtomicInteger successes = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+    private volatile Exception failure;
+
+    @Override
+    public void onProgress(long bytesTransferred, long totalBytes) {
+      if (bytesTransferred > 0) started.countDown();
+    }
+
+    @Override
+    public void onSuccess(long totalBytes) {
+      successes.incrementAndGet();
+    }
+
+    @Override
+    public void onFailure(Exception exception) {
+      failure = exception;
+      failures.incrementAndGet();
+    }
+  }
+}
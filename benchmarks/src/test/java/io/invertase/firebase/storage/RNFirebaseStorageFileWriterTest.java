@@ -0,0 +1,125 @@
+package io.invertase.firebase.storage;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RNFirebaseStorageFileWriterTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void writesTheWholeStreamThroughAnyBufferSize() throws IOException {
+    byte[] payload = payload(3 * RNFirebaseStorageFileWriter.MIN_BUFFER_SIZE + 17);
+
+    for (int bufferSize : new int[]{1, RNFirebaseStorageFileWriter.MIN_BUFFER_SIZE, RNFirebaseStorageFileWriter.DEFAULT_BUFFER_SIZE}) {
+      File target = new File(folder.getRoot(), "nested/dir/file-" + bufferSize + ".bin");
+      long written = new RNFirebaseStorageFileWriter(bufferSize).write(new TrickleInputStream(payload), target.getPath());
+
+      assertEquals(payload.length, written);
+      assertArrayEquals(payload, Files.readAllBytes(target.toPath()));
+    }
+
+    assertEquals(Arrays.asList("file-1.bin", "file-262144.bin", "file-8192.bin"), sortedNames(new File(folder.getRoot(), "nested/dir")));
+  }
+
+  @Test
+  public void replacesAnExistingTarget() throws IOException {
+    File target = folder.newFile("photo.jpg");
+    Files.write(target.toPath(), payload(100));
+    byte[] payload = payload(50);
+
+    new RNFirebaseStorageFileWriter(RNFirebaseStorageFileWriter.DEFAULT_BUFFER_SIZE).write(new ByteArrayInputStream(payload), target.getPath());
+
+    assertArrayEquals(payload, Files.readAllBytes(target.toPath()));
+    assertEquals(Arrays.asList("photo.jpg"), sortedNames(folder.getRoot()));
+  }
+
+  @Test
+  public void failedStreamLeavesTheTargetUntouched() throws IOException {
+    File target = folder.newFile("photo.jpg");
+    byte[] previous = payload(100);
+    Files.write(target.toPath(), previous);
+    FailingInputStream inputStream = new FailingInputStream(payload(RNFirebaseStorageFileWriter.MIN_BUFFER_SIZE * 3));
+
+    try {
+      new RNFirebaseStorageFileWriter(RNFirebaseStorageFileWriter.MIN_BUFFER_SIZE).write(inputStream, target.getPath());
+      fail("the stream failure was not thrown");
+    } catch (IOException e) {
+      assertEquals("connection reset", e.getMessage());
+    }
+
+    assertTrue(inputStream.closed);
+    assertArrayEquals(previous, Files.readAllBytes(target.toPath()));
+    assertEquals(Arrays.asList("photo.jpg"), sortedNames(folder.getRoot()));
+  }
+
+  private static byte[] payload(int size) {
+    byte[] payload = new byte[size];
+    new Random(size).nextBytes(payload);
+    return payload;
+  }
+
+  private static List<String> sortedNames(File directory) {
+    String[] names = directory.list();
+    Arrays.sort(names);
+    return Arrays.asList(names);
+  }
+
+  /**
+   * Returns at most 1000 bytes per read, as a network stream does.
+   */
+  private static class TrickleInputStream extends ByteArrayInputStream {
+    TrickleInputStream(byte[] buf) {
+      super(buf);
+    }
+
+    @Override
+    public synchronized int read(byte[] b, int off, int len) {
+      return super.read(b, off, Math.min(len, 1000));
+    }
+  }
+
+  /**
+   * Fails before the last buffer of data is read, after the first ones were written.
+   */
+  private static class FailingInputStream extends InputStream {
+    private final ByteArrayInputStream data;
+    private boolean closed;
+
+    FailingInputStream(byte[] payload) {
+      data = new ByteArrayInputStream(payload);
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] single = new byte[1];
+      return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (data.available() < RNFirebaseStorageFileWriter.MIN_BUFFER_SIZE) throw new IOException("connection reset");
+      return data.read(b, off, len);
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+  }
+}
@@ -0,0 +1,151 @@
+package io.invertase.firebase.storage;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableMap;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RNFirebaseStorageProgressThrottleTest {
+  private static final long HOUR = 60 * 60 * 1000;
+  private static final long TOTAL = 10000;
+
+  private final RNFirebaseStorageProgressThrottle.Stats stats = new RNFirebaseStorageProgressThrottle.Stats();
+
+  @Test
+  public void defaultPolicySendsEveryUpdate() {
+    RNFirebaseStorageProgressThrottle throttle = new RNFirebaseStorageProgressThrottle(RNFirebaseStorageProgressThrottle.Policy.DEFAULT, stats);
+
+    for (long bytes = 0; bytes <= TOTAL; bytes += 100) {
+      assertTrue(throttle.shouldEmit("running", bytes, TOTAL));
+    }
+
+    assertStats(101, 0);
+  }
+
+  @Test
+  public void intervalSuppressesUpdatesInBetween() {
+    RNFirebaseStorageProgressThrottle throttle = throttle(HOUR, 0, 0);
+
+    assertTrue(throttle.shouldEmit("running", 0, TOTAL));
+    for (long bytes = 1000; bytes < TOTAL; bytes += 1000) {
+      assertFalse(throttle.shouldEmit("running", bytes, TOTAL));
+    }
+
+    assertStats(1, 9);
+  }
+
+  @Test
+  public void intervalPassesAfterTheDelay() throws InterruptedException {
+    RNFirebaseStorageProgressThrottle throttle = throttle(20, 0, 0);
+
+    assertTrue(throttle.shouldEmit("running", 0, TOTAL));
+    assertFalse(throttle.shouldEmit("running", 1000, TOTAL));
+    Thread.sleep(30);
+    assertTrue(throttle.shouldEmit("running", 2000, TOTAL));
+
+    assertStats(2, 1);
+  }
+
+  @Test
+  public void minBytesAndPercentStepMustAllPass() {
+    // 10% but not 1500 bytes
+    RNFirebaseStorageProgressThrottle bytesLimited = throttle(0, 1500, 10);
+    assertTrue(bytesLimited.shouldEmit("running", 0, TOTAL));
+    assertFalse(bytesLimited.shouldEmit("running", 1000, TOTAL));
+    assertTrue(bytesLimited.shouldEmit("running", 1500, TOTAL));
+
+    // 500 bytes but not 10%
+    RNFirebaseStorageProgressThrottle percentLimited = throttle(0, 500, 10);
+    assertTrue(percentLimited.shouldEmit("running", 0, TOTAL));
+    assertFalse(percentLimited.shouldEmit("running", 600, TOTAL));
+    assertTrue(percentLimited.shouldEmit("running", 1000, TOTAL));
+
+    // without a known total only minBytes applies
+    RNFirebaseStorageProgressThrottle unknownTotal = throttle(0, 1500, 10);
+    assertTrue(unknownTotal.shouldEmit("running", 0, -1));
+    assertFalse(unknownTotal.shouldEmit("running", 1000, -1));
+    assertTrue(unknownTotal.shouldEmit("running", 1500, -1));
+
+    assertStats(6, 3);
+  }
+
+  @Test
+  public void stateTransitionsAndCompletionAlwaysEmit() {
+    RNFirebaseStorageProgressThrottle throttle = throttle(HOUR, TOTAL, 100);
+
+    assertTrue(throttle.shouldEmit("running", 0, TOTAL));
+    assertFalse(throttle.shouldEmit("running", 1000, TOTAL));
+    assertTrue(throttle.shouldEmit("paused", 1000, TOTAL));
+    assertFalse(throttle.shouldEmit("paused", 1000, TOTAL));
+    assertTrue(throttle.shouldEmit("running", 1000, TOTAL));
+    assertFalse(throttle.shouldEmit("running", 9999, TOTAL));
+    assertTrue(throttle.shouldEmit("running", TOTAL, TOTAL));
+    // completion is only sent once
+    assertFalse(throttle.shouldEmit("running", TOTAL, TOTAL));
+    assertTrue(throttle.shouldEmit("success", TOTAL, TOTAL));
+
+    assertStats(5, 4);
+  }
+
+  @Test
+  public void forcedUpdatesAreCountedAsEmitted() {
+    RNFirebaseStorageProgressThrottle throttle = throttle(HOUR, 0, 0);
+
+    assertTrue(throttle.shouldEmit("running", 0, TOTAL));
+    throttle.forceEmit("paused", 1000);
+    // the forced update is the last one sent, so resuming is a state change
+    assertFalse(throttle.shouldEmit("paused", 1000, TOTAL));
+    assertTrue(throttle.shouldEmit("running", 1000, TOTAL));
+    assertFalse(throttle.shouldEmit("running", 2000, TOTAL));
+
+    assertStats(3, 2);
+  }
+
+  @Test
+  public void statsAreSharedByTasksAndReset() {
+    RNFirebaseStorageProgressThrottle first = throttle(HOUR, 0, 0);
+    RNFirebaseStorageProgressThrottle second = throttle(HOUR, 0, 0);
+
+    first.shouldEmit("running", 0, TOTAL);
+    first.shouldEmit("running", 1000, TOTAL);
+    second.shouldEmit("running", 0, TOTAL);
+    assertStats(2, 1);
+
+    stats.reset();
+    assertStats(0, 0);
+  }
+
+  @Test
+  public void policyClampsOptions() {
+    WritableMap options = Arguments.createMap();
+    options.putDouble("interval", -100);
+    options.putDouble("percentStep", 250);
+    RNFirebaseStorageProgressThrottle throttle = new RNFirebaseStorageProgressThrottle(RNFirebaseStorageProgressThrottle.Policy.fromMap(options), stats);
+
+    // a negative interval is 0, a step over 100% only leaves the completion
+    assertTrue(throttle.shouldEmit("running", 0, TOTAL));
+    assertFalse(throttle.shouldEmit("running", 9999, TOTAL));
+    assertTrue(throttle.shouldEmit("running", TOTAL, TOTAL));
+
+    assertStats(2, 1);
+  }
+
+  private RNFirebaseStorageProgressThrottle throttle(long interval, long minBytes, double percentStep) {
+    WritableMap options = Arguments.createMap();
+    options.putDouble("interval", interval);
+    options.putDouble("minBytes", minBytes);
+    options.putDouble("percentStep", percentStep);
+    return new RNFirebaseStorageProgressThrottle(RNFirebaseStorageProgressThrottle.Policy.fromMap(options), stats);
+  }
+
+  private void assertStats(long emitted, long suppressed) {
+    ReadableMap map = stats.toMap();
+    assertEquals(emitted, (long) map.getDouble("emitted"));
+    assertEquals(suppressed, (long) map.getDouble("suppressed"));
+  }
+}
@@ -0,0 +1,177 @@
+package io.invertase.firebase.storage;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * In-process stand-in for the storage download URL, serving one object with an
+ * ETag and answering Range requests with 206, or 200 and the whole object when
+ * If-Range no longer matches.
+ * <p>
+ * dropAfter() cuts the next response off after some bytes of its body, as a lost
+ * connection does, failRange() answers the range starting at a byte with an error
+ * and throttle() sends bodies slowly.
+ */
+class RNFirebaseStorageRangeServer {
+  /**
+   * A request as received and answered
+   */
+  static class Request {
+    final String range;
+    final String ifRange;
+    final int status;
+    final long bytesSent;
+
+    Request(String range, String ifRange, int status, long bytesSent) {
+      this.range = range;
+      this.ifRange = ifRange;
+      this.status = status;
+      this.bytesSent = bytesSent;
+    }
+  }
+
+  private final HttpServer server;
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+  private final List<Request> requests = Collections.synchronizedList(new ArrayList<Request>());
+  private volatile byte[] payload;
+  private volatile String etag;
+  private volatile long dropAfter = -1;
+  private volatile long failStart = -1;
+  private volatile int failStatus;
+  private volatile int chunkSize = Integer.MAX_VALUE;
+  private volatile long pauseMillis;
+
+  RNFirebaseStorageRangeServer(byte[] payload, String etag) throws IOException {
+    this.payload = payload;
+    this.etag = etag;
+
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.setExecutor(executor);
+    server.createContext("/", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        serve(exchange);
+      }
+    });
+    server.start();
+  }
+
+  String getUrl() {
+    return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/o/object";
+  }
+
+  /**
+   * Replace the object, as an upload to the same path does.
+   *
+   * @param payload
+   * @param etag
+   */
+  void setObject(byte[] payload, String etag) {
+    this.payload = payload;
+    this.etag = etag;
+  }
+
+  /**
+   * Close the connection of the next response after this many bytes of its body.
+   *
+   * @param bytes
+   */
+  void dropAfter(long bytes) {
+    dropAfter = bytes;
+  }
+
+  /**
+   * Answer every request for the range starting at this byte with an error status.
+   *
+   * @param start
+   * @param status
+   */
+  void failRange(long start, int status) {
+    failStatus = status;
+    failStart = start;
+  }
+
+  /**
+   * Send response bodies in chunks with a pause after each.
+   *
+   * @param chunkSize
+   * @param pauseMillis
+   */
+  void throttle(int chunkSize, long pauseMillis) {
+    this.chunkSize = chunkSize;
+    this.pauseMillis = pauseMillis;
+  }
+
+  List<Request> getRequests() {
+    synchronized (requests) {
+      return new ArrayList<>(requests);
+    }
+  }
+
+  void stop() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  private void serve(HttpExchange exchange) throws IOException {
+    byte[] body = payload;
+    String range = exchange.getRequestHeaders().getFirst("Range");
+    String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+    int start = 0;
+    int end = body.length - 1;
+    int status = 200;
+
+    exchange.getResponseHeaders().set("ETag", etag);
+
+    if (range != null && (ifRange == null || ifRange.equals(etag))) {
+      // bytes=<start>-[<end>]
+      String[] bounds = range.substring("bytes=".length()).split("-", -1);
+      start = Integer.parseInt(bounds[0]);
+      if (!bounds[1].isEmpty()) end = Math.min(end, Integer.parseInt(bounds[1]));
+      status = 206;
+      exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + body.length);
+    }
+
+    if (start == failStart) {
+      exchange.sendResponseHeaders(failStatus, -1);
+      requests.add(new Request(range, ifRange, failStatus, 0));
+      exchange.close();
+      return;
+    }
+
+    int length = end - start + 1;
+    long drop = dropAfter;
+    dropAfter = -1;
+    int limit = drop >= 0 ? (int) Math.min(drop, length) : length;
+    int sent = 0;
+
+    exchange.sendResponseHeaders(status, length);
+    OutputStream output = exchange.getResponseBody();
+    try {
+      while (sent < limit) {
+        int chunk = Math.min(chunkSize, limit - sent);
+        output.write(body, start + sent, chunk);
+        output.flush();
+        sent += chunk;
+        if (pauseMillis > 0 && sent < limit) Thread.sleep(pauseMillis);
+      }
+    } catch (IOException | InterruptedException e) {
+      // the client went away
+    } finally {
+      requests.add(new Request(range, ifRange, status, sent));
+      // closing short of the content length drops the connection
+      exchange.close();
+    }
+  }
+}
@@ -0,0 +1,167 @@
+package io.invertase.firebase.storage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Resumable downloads against an in-process range server that drops connections
+ * and replaces the object between attempts.
+ */
+public class RNFirebaseStorageResumableDownloadTest {
+  private static final int SIZE = 4 * 1024 * 1024 + 123;
+  private static final String GENERATION = "1500000000000000";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private byte[] payload;
+  private RNFirebaseStorageRangeServer server;
+  private String localPath;
+
+  @Before
+  public void setUp() throws IOException {
+    payload = payload(SIZE, 1);
+    server = new RNFirebaseStorageRangeServer(payload, "\"v1\"");
+    localPath = new File(folder.getRoot(), "downloads/video.mp4").getPath();
+  }
+
+  @After
+  public void tearDown() {
+    server.stop();
+  }
+
+  @Test
+  public void droppedConnectionResumesFromTheCheckpoint() throws IOException {
+    server.dropAfter(SIZE / 2);
+
+    Listener failed = download();
+
+    assertTrue(failed.failure instanceof IOException);
+    assertTrue(RNFirebaseStorageDownloadCheckpoint.partFile(localPath).isFile());
+    assertEquals(Arrays.asList("video.mp4.checkpoint", "video.mp4.part"), sortedNames(new File(localPath).getParentFile()));
+
+    // checkpointed every 1MB, never past the bytes received
+    long offset = RNFirebaseStorageDownloadCheckpoint.load(localPath, GENERATION, SIZE).offset;
+    assertTrue(offset >= 1024 * 1024 && offset <= SIZE / 2);
+
+    Listener resumed = download();
+
+    assertNull(resumed.failure);
+    assertEquals(SIZE, resumed.totalBytes);
+    assertEquals(SIZE, resumed.bytesTransferred);
+    assertArrayEquals(payload, Files.readAllBytes(new File(localPath).toPath()));
+    assertEquals(Arrays.asList("video.mp4"), sortedNames(new File(localPath).getParentFile()));
+
+    List<RNFirebaseStorageRangeServer.Request> requests = server.getRequests();
+    assertEquals(2, requests.size());
+    assertNull(requests.get(0).range);
+    assertEquals("bytes=" + offset + "-", requests.get(1).range);
+    assertEquals("\"v1\"", requests.get(1).ifRange);
+    assertEquals(HttpURLConnection.HTTP_PARTIAL, requests.get(1).status);
+    assertEquals(SIZE - offset, requests.get(1).bytesSent);
+  }
+
+  @Test
+  public void ifRangeMismatchRestartsFromZero() throws IOException {
+    server.dropAfter(SIZE / 2);
+    download();
+    long offset = RNFirebaseStorageDownloadCheckpoint.load(localPath, GENERATION, SIZE).offset;
+    assertTrue(offset > 0);
+
+    // rewritten in place, the checkpoint generation still matches but the ETag does not
+    byte[] replaced = payload(SIZE, 2);
+    server.setObject(replaced, "\"v2\"");
+
+    Listener restarted = download();
+
+    assertNull(restarted.failure);
+    assertEquals(SIZE, restarted.totalBytes);
+    assertArrayEquals(replaced, Files.readAllBytes(new File(localPath).toPath()));
+    assertEquals(Arrays.asList("video.mp4"), sortedNames(new File(localPath).getParentFile()));
+
+    List<RNFirebaseStorageRangeServer.Request> requests = server.getRequests();
+    assertEquals(2, requests.size());
+    assertEquals("bytes=" + offset + "-", requests.get(1).range);
+    assertEquals("\"v1\"", requests.get(1).ifRange);
+    assertEquals(HttpURLConnection.HTTP_OK, requests.get(1).status);
+    assertEquals(SIZE, requests.get(1).bytesSent);
+  }
+
+  @Test
+  public void newGenerationIgnoresTheCheckpoint() throws IOException {
+    server.dropAfter(SIZE / 2);
+    download();
+
+    byte[] replaced = payload(SIZE, 2);
+    server.setObject(replaced, "\"v2\"");
+
+    Listener restarted = new Listener();
+    new RNFirebaseStorageResumableDownload(server.getUrl(), localPath, "1600000000000000", SIZE, RNFirebaseStorageFileWriter.DEFAULT_BUFFER_SIZE, restarted).run();
+
+    assertNull(restarted.failure);
+    assertArrayEquals(replaced, Files.readAllBytes(new File(localPath).toPath()));
+
+    List<RNFirebaseStorageRangeServer.Request> requests = server.getRequests();
+    assertEquals(2, requests.size());
+    assertNull(requests.get(1).range);
+    assertEquals(HttpURLConnection.HTTP_OK, requests.get(1).status);
+  }
+
+  private Listener download() {
+    Listener listener = new Listener();
+    new RNFirebaseStorageResumableDownload(server.getUrl(), localPath, GENERATION, SIZE, RNFirebaseStorageFileWriter.DEFAULT_BUFFER_SIZE, listener).run();
+    return listener;
+  }
+
+  private static byte[] payload(int size, long seed) {
+    byte[] payload = new byte[size];
+    new Random(seed).nextBytes(payload);
+    return payload;
+  }
+
+  private static List<String> sortedNames(File directory) {
+    String[] names = directory.list();
+    Arrays.sort(names);
+    return Arrays.asList(names);
+  }
+
+  /**
+   * Records the callbacks, downloads run on the calling thread.
+   */
+  private static class Listener implements RNFirebaseStorageDownloadListener {
+    private long bytesTransferred;
+    private long totalBytes = -1;
+    private Exception failure;
+
+    @Override
+    public void onProgress(long bytesTransferred, long totalBytes) {
+      this.bytesTransferred = bytesTransferred;
+    }
+
+    @Override
+    public void onSuccess(long totalBytes) {
+      this.totalBytes = totalBytes;
+    }
+
+    @Override
+    public void onFailure(Exception exception) {
+      failure = exception;
+    }
+  }
+}
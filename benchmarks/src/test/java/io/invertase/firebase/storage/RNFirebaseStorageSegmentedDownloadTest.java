@@ -0,0 +1,200 @@
+package io.invertase.firebase.storage;
+
+import android.util.Base64;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Segmented downloads against an in-process range server, verifying the result and
+ * failing fast when a segment fails.
+ */
+public class RNFirebaseStorageSegmentedDownloadTest {
+  private static final int SIZE = 4 * 1024 * 1024 + 123;
+  private static final int SEGMENTS = 4;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private byte[] payload;
+  private RNFirebaseStorageRangeServer server;
+  private ExecutorService segmentExecutor;
+  private File target;
+
+  @Before
+  public void setUp() throws IOException {
+    payload = payload(SIZE, 1);
+    server = new RNFirebaseStorageRangeServer(payload, "\"v1\"");
+    segmentExecutor = Executors.newFixedThreadPool(RNFirebaseStorageSegmentedDownload.MAX_SEGMENTS);
+    target = new File(folder.getRoot(), "downloads/video.mp4");
+  }
+
+  @After
+  public void tearDown() {
+    segmentExecutor.shutdownNow();
+    server.stop();
+  }
+
+  @Test
+  public void downloadsAndVerifiesAllSegments() throws Exception {
+    Listener listener = download(SIZE, md5(payload), RNFirebaseStorageFileWriter.DEFAULT_BUFFER_SIZE);
+
+    assertNull(listener.failure);
+    assertEquals(SIZE, listener.totalBytes);
+    assertEquals(SIZE, listener.bytesTransferred);
+    assertArrayEquals(payload, Files.readAllBytes(target.toPath()));
+    assertEquals(Arrays.asList("video.mp4"), sortedNames(target.getParentFile()));
+
+    List<RNFirebaseStorageRangeServer.Request> requests = server.getRequests();
+    assertEquals(SEGMENTS, requests.size());
+    for (RNFirebaseStorageRangeServer.Request request : requests) {
+      assertEquals(HttpURLConnection.HTTP_PARTIAL, request.status);
+    }
+  }
+
+  @Test
+  public void sizeMismatchFailsAndLeavesTheTargetUntouched() throws Exception {
+    byte[] previous = existingTarget();
+
+    // the metadata says the object is larger than the server has
+    Listener listener = download(SIZE + 512 * 1024, null, RNFirebaseStorageFileWriter.DEFAULT_BUFFER_SIZE);
+
+    assertTrue(listener.failure instanceof IOException);
+    assertTrue(listener.failure.getMessage(), listener.failure.getMessage().contains("ended after"));
+    assertEquals(-1, listener.totalBytes);
+    assertArrayEquals(previous, Files.readAllBytes(target.toPath()));
+    assertEquals(Arrays.asList("video.mp4"), sortedNames(target.getParentFile()));
+  }
+
+  @Test
+  public void md5MismatchFailsAndLeavesTheTargetUntouched() throws Exception {
+    byte[] previous = existingTarget();
+
+    Listener listener = download(SIZE, md5(payload(SIZE, 2)), RNFirebaseStorageFileWriter.DEFAULT_BUFFER_SIZE);
+
+    assertTrue(listener.failure instanceof RNFirebaseStorageSegmentedDownload.ChecksumException);
+    assertEquals(-1, listener.totalBytes);
+    assertArrayEquals(previous, Files.readAllBytes(target.toPath()));
+    assertEquals(Arrays.asList("video.mp4"), sortedNames(target.getParentFile()));
+  }
+
+  @Test
+  public void firstFailureCancelsTheOtherSegments() throws Exception {
+    // about 6 seconds per segment, the last segment fails straight away
+    long segmentSize = (SIZE + SEGMENTS - 1) / SEGMENTS;
+    server.throttle(8 * 1024, 50);
+    server.failRange((SEGMENTS - 1) * segmentSize, 503);
+
+    long started = System.nanoTime();
+    Listener listener = download(SIZE, md5(payload), RNFirebaseStorageFileWriter.MIN_BUFFER_SIZE);
+    long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+
+    assertTrue(listener.failure instanceof RNFirebaseStorageRangeRequest.HttpStatusException);
+    assertEquals(503, ((RNFirebaseStorageRangeRequest.HttpStatusException) listener.failure).status);
+    assertTrue("failure took " + elapsed + "ms", elapsed < 2000);
+
+    // the cancelled segments stop at their next read
+    segmentExecutor.shutdown();
+    assertTrue(segmentExecutor.awaitTermination(2, TimeUnit.SECONDS));
+    assertTrue(listener.bytesTransferred < segmentSize);
+    assertEquals(Arrays.asList(), sortedNames(target.getParentFile()));
+
+    List<RNFirebaseStorageRangeServer.Request> requests = awaitRequests(SEGMENTS);
+    for (RNFirebaseStorageRangeServer.Request request : requests) {
+      assertTrue(request.bytesSent < segmentSize);
+    }
+  }
+
+  private Listener download(long totalBytes, String md5Hash, int bufferSize) {
+    Listener listener = new Listener();
+    new RNFirebaseStorageSegmentedDownload(server.getUrl(), target.getPath(), totalBytes, md5Hash, SEGMENTS, bufferSize, segmentExecutor, listener).run();
+    return listener;
+  }
+
+  private byte[] existingTarget() throws IOException {
+    byte[] previous = payload(100, 3);
+    // noinspection ResultOfMethodCallIgnored
+    target.getParentFile().mkdirs();
+    Files.write(target.toPath(), previous);
+    return previous;
+  }
+
+  /**
+   * Wait for the server to have answered this many requests, it only sees a
+   * cancelled segment once it next writes to its connection.
+   *
+   * @param count
+   * @return
+   */
+  private List<RNFirebaseStorageRangeServer.Request> awaitRequests(int count) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    List<RNFirebaseStorageRangeServer.Request> requests = server.getRequests();
+    while (requests.size() < count && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+      requests = server.getRequests();
+    }
+    assertEquals(count, requests.size());
+    return requests;
+  }
+
+  private static byte[] payload(int size, long seed) {
+    byte[] payload = new byte[size];
+    new Random(seed).nextBytes(payload);
+    return payload;
+  }
+
+  private static String md5(byte[] data) throws NoSuchAlgorithmException {
+    return Base64.encodeToString(MessageDigest.getInstance("MD5").digest(data), Base64.NO_WRAP);
+  }
+
+  private static List<String> sortedNames(File directory) {
+    String[] names = directory.list();
+    Arrays.sort(names);
+    return Arrays.asList(names);
+  }
+
+  /**
+   * Records the callbacks, progress is reported from the segment threads.
+   */
+  private static class Listener implements RNFirebaseStorageDownloadListener {
+    private volatile long bytesTransferred;
+    private volatile long totalBytes = -1;
+    private volatile Exception failure;
+
+    @Override
+    public void onProgress(long bytesTransferred, long totalBytes) {
+      this.bytesTransferred = Math.max(this.bytesTransferred, bytesTransferred);
+    }
+
+    @Override
+    public void onSuccess(long totalBytes) {
+      this.totalBytes = totalBytes;
+    }
+
+    @Override
+    public void onFailure(Exception exception) {
+      failure = exception;
+    }
+  }
+}
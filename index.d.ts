@@ -143,32 +143,103 @@ declare module "react-native-firebase" {
            error: (error: RnError) => any,
            complete: (complete: any) => any): any
         /**
-         * is not currently supported by react-native-firebase
+         * Android only - id of the task in the native task scheduler
          */
-        pause(): void
+        taskId: string | null
         /**
-         * is not currently supported by react-native-firebase
+         * Android only, resolves false if the task can not be paused
          */
-        resume(): void
+        pause(): Promise<boolean>
         /**
-         * is not currently supported by react-native-firebase
+         * Android only, resolves false if the task is not paused
          */
-        cancel(): void
+        resume(): Promise<boolean>
+        /**
+         * Android only, resolves false if the task has already finished
+         */
+        cancel(): Promise<boolean>
+
+      }
+
+      interface DownloadOptions {
+        /**
+         * Android only - continue an interrupted download of the same object to the same path
+         */
+        resumable?: boolean;
+        /**
+         * Android only - fetch the object as this many concurrent byte ranges (at most 8, none under 1MB)
+         */
+        segments?: number;
+        /**
+         * Android only - id of the scheduled task, generated if not set
+         */
+        taskId?: string;
+        /**
+         * Android only - 'high', 'normal' (default) or 'low'
+         */
+        priority?: TaskPriority;
+      }
 
+      type TaskPriority = 'high' | 'normal' | 'low';
+
+      interface ScheduleOptions {
+        taskId?: string;
+        priority?: TaskPriority;
+      }
+
+      interface ProgressPolicy {
+        /**
+         * Minimum ms between progress events, every event is sent by default
+         */
+        interval?: number;
+        /**
+         * Minimum bytes transferred between progress events
+         */
+        minBytes?: number;
+        /**
+         * Minimum percent of the total transferred between progress events
+         */
+        percentStep?: number;
+      }
+
+      interface TaskSchedulerConfig {
+        maxConcurrentUploads?: number;
+        maxConcurrentDownloads?: number;
+      }
+
+      interface TaskSchedulerQueueState {
+        running: number;
+        queued: number;
+        maxConcurrent: number;
+      }
+
+      interface TaskSchedulerState {
+        uploads: TaskSchedulerQueueState;
+        downloads: TaskSchedulerQueueState;
+        tasks: Array<{
+          id: string;
+          type: 'upload' | 'download';
+          priority: TaskPriority;
+          state: 'queued' | 'running' | 'paused';
+          appName: string;
+          path: string;
+          queuedAt: number;
+        }>;
       }
 
       interface RNStorage extends Reference {
         /**
          *  Downloads a reference to the device
          *  @param {String} filePath Where to store the file
+         *  @param {DownloadOptions} options
          *  @return {Promise}
          * */
-        downloadFile(filePath: string): StorageTask<any>;
+        downloadFile(filePath: string, options?: DownloadOptions): StorageTask<any>;
         /**
          * Upload a file path
          * @returns {Promise}
          */
-        putFile(filePath: string, metadata?: any): StorageTask<any>;
+        putFile(filePath: string, metadata?: any, options?: ScheduleOptions): StorageTask<any>;
         setMaxDownloadRetryTime(time: number): void
         [key: string]: any;
       }
@@ -180,6 +251,30 @@ declare module "react-native-firebase" {
         refFromURL(url: string): storage.RNStorage;
         setMaxOperationRetryTime(time: number): any;
         setMaxUploadRetryTime(time: number): any;
+        /**
+         * Android only - size in bytes of the buffer downloadFile writes to disk through
+         */
+        setDownloadBufferSize(bytes: number): void;
+        /**
+         * Android only - limit the progress events of tasks started afterwards
+         */
+        setProgressPolicy(policy: ProgressPolicy): void;
+        /**
+         * Android only, resolves null on other platforms
+         */
+        getProgressStats(): Promise<{ emitted: number, suppressed: number } | null>;
+        resetProgressStats(): void;
+        /**
+         * Android only - limit how many uploads and downloads run at once, across all apps
+         */
+        configureTaskScheduler(config: TaskSchedulerConfig): void;
+        /**
+         * Android only, resolves null on other platforms
+         */
+        getTaskSchedulerState(): Promise<TaskSchedulerState | null>;
+        pauseTask(taskId: string): Promise<boolean>;
+        resumeTask(taskId: string): Promise<boolean>;
+        cancelTask(taskId: string): Promise<boolean>;
       }
 
       interface Reference {
@@ -298,9 +393,59 @@ declare module "react-native-firebase" {
          * disconnect to firebase backend
          */
         goOffline(): void
+        /**
+         * Apply an ordered list of writes in as few native writes as possible,
+         * resolves with null or an error for each operation
+         */
+        writeBatch(ops: Array<WriteBatchOperation>): Promise<Array<Error | null>>
+        /**
+         * Keep the data at many paths synced, or stop, in a single call
+         */
+        keepSynced(paths: Array<string>, bool: boolean): void
+        /**
+         * Android only, resolves with the queries kept synced and the approximate size of their data
+         */
+        getKeepSyncedReport(): Promise<Array<{ path: string, queryKey: string, bytes: number | null }> | null>
+        /**
+         * Android only, resolves with latency percentiles, connection transitions and
+         * per registration event rates recorded since the last reset
+         */
+        getMetrics(): Promise<DatabaseMetrics | null>
+        /**
+         * Android only, reset the metrics returned by getMetrics
+         */
+        resetMetrics(): void
         [key: string]: any;
       }
 
+      type WriteBatchOperation = {
+        type: "set" | "update" | "remove" | "setPriority",
+        path: string,
+        value?: any,
+      };
+
+      type LatencyMetrics = {
+        count: number,
+        mean: number | null,
+        p50: number | null,
+        p95: number | null,
+        p99: number | null,
+        max: number | null,
+      };
+
+      type DatabaseMetrics = {
+        duration: number,
+        writeAck: LatencyMetrics,
+        attachToFirstEvent: LatencyMetrics,
+        connection: { connected: boolean | null, lastChange?: number, reconnects: number, disconnects: number },
+        registrations: { [registrationKey: string]: { events: number, eventsPerSecond: number } },
+      };
+
+      type TransactionOperation = {
+        type: "increment" | "appendUnique" | "setIfAbsent" | "max" | "min" | "removeIfEquals",
+        value?: any,
+      };
+
       interface RnReference extends Reference {
         keepSynced(bool: boolean): any
         filter(name: string, value: any, key?: string): any;
@@ -310,6 +455,26 @@ declare module "react-native-firebase" {
       type QueryEventType = "value" | "child_added" | "child_removed" | "child_changed" | "child_moved";
       type QuerySuccessCallback = (snapshot: DataSnapshot, previousChildId?: string | null) => void;
       type QueryErrorCallback = (e: Error) => void;
+      type QueryListenerOptions = {
+        batch?: { interval?: number, size?: number },
+        diff?: boolean,
+        stream?: boolean | QueryStreamOptions,
+        backpressure?: QueryBackPressureOptions,
+      };
+      type QueryBackPressureOptions = {
+        policy: "throttle" | "drop-oldest" | "sample",
+        interval?: number,
+        maxQueue?: number,
+        inFlight?: number,
+        every?: number,
+      };
+      type QueryStreamOptions = {
+        size?: number,
+        bytes?: number,
+      };
+      type QueryOnceOptions = {
+        stream?: boolean | QueryStreamOptions,
+      };
 
       interface Query {
         endAt(value: number | string | boolean | null, key?: string): database.Query;
@@ -323,11 +488,13 @@ declare module "react-native-firebase" {
         on(eventType: QueryEventType,
           callback: QuerySuccessCallback,
           cancelCallbackOrContext?: QueryErrorCallback,
-          context?: Object): (a: database.DataSnapshot | null, b?: string) => QuerySuccessCallback;
+          context?: Object,
+          options?: QueryListenerOptions): (a: database.DataSnapshot | null, b?: string) => QuerySuccessCallback;
         once(eventType: QueryEventType,
           successCallback?: QuerySuccessCallback,
           failureCallbackOrContext?: QueryErrorCallback,
-          context?: Object): Promise<DataSnapshot>;
+          context?: Object,
+          options?: QueryOnceOptions): Promise<DataSnapshot>;
         orderByChild(path: string): database.Query;
         orderByKey(): database.Query;
         orderByPriority(): database.Query;
@@ -373,6 +540,8 @@ declare module "react-native-firebase" {
                     onComplete?: (a: RnError | null, b: boolean,
                                   c: database.DataSnapshot | null) => any,
                     applyLocally?: boolean): Promise<any>;
+        transactionApply(op: TransactionOperation,
+                         applyLocally?: boolean): Promise<{ committed: boolean, snapshot: database.DataSnapshot }>;
         update(values: Object, onComplete?: (a: RnError | null) => any): Promise<any>;
       }
     }
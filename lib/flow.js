@@ -29,6 +29,7 @@ declare type DatabaseModifier = {
   limit?: number;
   value?: any;
   valueType?: string;
+  signature?: string;
 };
 
 declare type GoogleApiAvailabilityType = {
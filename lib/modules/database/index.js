@@ -7,6 +7,7 @@ import { NativeModules } from 'react-native';
 import Reference from './reference';
 import TransactionHandler from './transaction';
 import ModuleBase from './../../utils/ModuleBase';
+import { setPackedArraysEnabled } from './packed';
 
 /**
  * @class Database
@@ -19,10 +20,37 @@ export default class Database extends ModuleBase {
     super(firebaseApp, options, true);
     this._transactionHandler = new TransactionHandler(this);
 
+    // android only - must be set before persistence is enabled
+    if (this._options.persistenceCacheSizeBytes && this._native.setPersistenceCacheSizeBytes) {
+      this._native.setPersistenceCacheSizeBytes(this._options.persistenceCacheSizeBytes);
+    }
+
     if (this._options.persistence) {
       this._native.setPersistence(this._options.persistence);
     }
 
+    // android only
+    if (this._options.transactionTimeout && this._native.setTransactionTimeout) {
+      this._native.setTransactionTimeout(this._options.transactionTimeout);
+    }
+
+    // android only
+    if (this._options.maxDepth && this._native.setMaxDepth) {
+      this._native.setMaxDepth(this._options.maxDepth);
+    }
+
+    // android only
+    if (this._options.packedArrays && this._native.setPackedArrayMinLength) {
+      const minLength = this._options.packedArrays === true ? 256 : this._options.packedArrays;
+      this._native.setPackedArrayMinLength(minLength);
+      setPackedArraysEnabled(true);
+    }
+
+    // android only - the once('value') snapshot cache is shared by all apps
+    if (this._options.snapshotCache && NativeModules.RNFirebaseDatabase.configureSnapshotCache) {
+      NativeModules.RNFirebaseDatabase.configureSnapshotCache(this._options.snapshotCache);
+    }
+
     // todo serverTimeOffset event/listener - make ref natively and switch to events
     this._serverTimeOffset = 0; // TODO ----^
   }
@@ -49,6 +77,95 @@ export default class Database extends ModuleBase {
     this._native.goOffline();
   }
 
+  /**
+   * Keep the data at many paths synced (or stop) in a single call.
+   *
+   * @param paths
+   * @param bool
+   */
+  keepSynced(paths: Array<string>, bool: boolean) {
+    // not supported natively on this platform, keep each path synced individually
+    if (!this._native.keepSyncedPaths) {
+      paths.forEach(path => this.ref(path).keepSynced(bool));
+      return;
+    }
+
+    this._native.keepSyncedPaths(paths.map(path => this.ref(path).path), bool);
+  }
+
+  /**
+   * Android only - resolves with an array of `{ path, queryKey, bytes }` for every
+   * query kept synced, bytes being the approximate size of its data, null on other platforms.
+   * Sizes are measured with a single read of each query, which fetches data not synced yet,
+   * bytes is null for a query that could not be read within 5s.
+   *
+   * @return {Promise}
+   */
+  getKeepSyncedReport(): Promise<Array<Object> | null> {
+    if (!this._native.getKeepSyncedReport) return Promise.resolve(null);
+    return this._native.getKeepSyncedReport();
+  }
+
+  /**
+   * Android only - resolves with database metrics recorded since the last reset, null on other platforms:
+   *
+   * - writeAck / attachToFirstEvent: `{ count, mean, p50, p95, p99, max }` latencies in ms
+   * - connection: `{ connected, lastChange, reconnects, disconnects }`
+   * - registrations: `{ [registrationKey]: { events, eventsPerSecond } }`
+   *
+   * @return {Promise}
+   */
+  getMetrics(): Promise<Object | null> {
+    if (!this._native.getMetrics) return Promise.resolve(null);
+    return this._native.getMetrics();
+  }
+
+  /**
+   * Android only - reset the metrics returned by getMetrics.
+   */
+  resetMetrics() {
+    if (this._native.resetMetrics) this._native.resetMetrics();
+  }
+
+  /**
+   * Apply an ordered list of write operations in as few native writes as possible.
+   * Each operation is one of:
+   *
+   * - { type: 'set', path, value }
+   * - { type: 'update', path, value }
+   * - { type: 'remove', path }
+   * - { type: 'setPriority', path, value }
+   *
+   * Resolves with an array containing null or an error for each operation.
+   *
+   * @param ops
+   * @return {Promise}
+   */
+  writeBatch(ops: Array<Object>): Promise<Array<Object | null>> {
+    const refs = ops.map(op => this.ref(op.path));
+
+    // not supported natively on this platform, apply each op individually
+    if (!this._native.writeBatch) {
+      return Promise.all(ops.map((op, i) => {
+        const ref = refs[i];
+        let write;
+        if (op.type === 'set') write = ref.set(op.value);
+        else if (op.type === 'update') write = ref.update(op.value);
+        else if (op.type === 'remove') write = ref.remove();
+        else if (op.type === 'setPriority') write = ref.setPriority(op.value);
+        else write = Promise.reject(new Error(`Unknown write batch operation type '${op.type}'.`));
+        return write.then(() => null, error => error);
+      }));
+    }
+
+    return this._native.writeBatch(ops.map((op, i) => {
+      const ref = refs[i];
+      if (op.type === 'update') return { type: op.type, path: ref.path, value: ref._serializeObject(op.value) };
+      if (op.type === 'remove') return { type: op.type, path: ref.path };
+      return { type: op.type, path: ref.path, value: ref._serializeAnyType(op.value) };
+    }));
+  }
+
   /**
    * Returns a new firebase reference instance
    * @param path
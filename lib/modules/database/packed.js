@@ -0,0 +1,109 @@
+/**
+ * @flow
+ * Decoding of dense number/boolean arrays packed natively into base64 (Android only)
+ */
+/* eslint-disable no-bitwise, no-param-reassign */
+
+const BASE64_CHARS = 'ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/';
+const BASE64_LOOKUP = new Uint8Array(256);
+
+for (let i = 0; i < BASE64_CHARS.length; i++) {
+  BASE64_LOOKUP[BASE64_CHARS.charCodeAt(i)] = i;
+}
+
+let enabled = false;
+
+/**
+ * Packed arrays are only sent once enabled natively, until then values are not walked.
+ *
+ * @param value
+ */
+export function setPackedArraysEnabled(value: boolean) {
+  enabled = value;
+}
+
+/**
+ * @param data
+ * @return {Uint8Array}
+ */
+function decodeBase64(data: string): Uint8Array {
+  const len = data.length;
+  let padding = 0;
+  if (data[len - 1] === '=') padding++;
+  if (data[len - 2] === '=') padding++;
+
+  const bytes = new Uint8Array(((len * 3) / 4) - padding);
+  let p = 0;
+
+  for (let i = 0; i < len; i += 4) {
+    const a = BASE64_LOOKUP[data.charCodeAt(i)];
+    const b = BASE64_LOOKUP[data.charCodeAt(i + 1)];
+    const c = BASE64_LOOKUP[data.charCodeAt(i + 2)];
+    const d = BASE64_LOOKUP[data.charCodeAt(i + 3)];
+
+    bytes[p++] = (a << 2) | (b >> 4);
+    if (p < bytes.length) bytes[p++] = ((b & 15) << 4) | (c >> 2);
+    if (p < bytes.length) bytes[p++] = ((c & 3) << 6) | d;
+  }
+
+  return bytes;
+}
+
+/**
+ * @param packed { '.packed': 'f64' | 'bool', data: string }
+ * @return {Array}
+ */
+function unpackArray(packed: Object): Array<number | boolean> {
+  const bytes = decodeBase64(packed.data);
+  const out = [];
+
+  if (packed['.packed'] === 'bool') {
+    for (let i = 0, len = bytes.length; i < len; i++) out[i] = bytes[i] === 1;
+    return out;
+  }
+
+  const view = new DataView(bytes.buffer);
+  for (let i = 0, len = bytes.length / 8; i < len; i++) out[i] = view.getFloat64(i * 8, true);
+  return out;
+}
+
+/**
+ * @param value
+ * @return {*}
+ */
+function unpack(value: any): any {
+  if (value === null || typeof value !== 'object') return value;
+
+  if (Array.isArray(value)) {
+    for (let i = 0, len = value.length; i < len; i++) value[i] = unpack(value[i]);
+    return value;
+  }
+
+  if (typeof value['.packed'] === 'string') return unpackArray(value);
+
+  const keys = Object.keys(value);
+  for (let i = 0, len = keys.length; i < len; i++) value[keys[i]] = unpack(value[keys[i]]);
+  return value;
+}
+
+/**
+ * Replaces any packed arrays in a value received from native, in place.
+ *
+ * @param value
+ * @return {*}
+ */
+export function unpackValue(value: any): any {
+  if (!enabled) return value;
+  return unpack(value);
+}
+
+/**
+ * Replaces any packed arrays in a native snapshot map value, in place.
+ *
+ * @param snapshot
+ * @return {Object}
+ */
+export function unpackSnapshot(snapshot: Object): Object {
+  if (enabled && snapshot) snapshot.value = unpack(snapshot.value);
+  return snapshot;
+}
@@ -7,6 +7,20 @@ import { objectToUniqueId } from './../../utils';
 
 // todo doc methods
 
+/**
+ * Adds a signature identifying the modifier by all of its fields, native
+ * interns compiled query modifiers by it rather than reading every field.
+ *
+ * @param modifier
+ * @return {DatabaseModifier}
+ */
+function withSignature(modifier: DatabaseModifier): DatabaseModifier {
+  const { type, name, key, valueType, value, limit } = modifier;
+  return Object.assign(modifier, {
+    signature: JSON.stringify([type, name, key, valueType, value, limit]),
+  });
+}
+
 /**
  * @class Query
  */
@@ -25,11 +39,11 @@ export default class Query {
    * @return {Reference|*}
    */
   orderBy(name: string, key?: string) {
-    this.modifiers.push({
+    this.modifiers.push(withSignature({
       type: 'orderBy',
       name,
       key,
-    });
+    }));
 
     return this._reference;
   }
@@ -41,11 +55,11 @@ export default class Query {
    * @return {Reference|*}
    */
   limit(name: string, limit: number) {
-    this.modifiers.push({
+    this.modifiers.push(withSignature({
       type: 'limit',
       name,
       limit,
-    });
+    }));
 
     return this._reference;
   }
@@ -58,13 +72,13 @@ export default class Query {
    * @return {Reference|*}
    */
   filter(name: string, value: any, key?: string) {
-    this.modifiers.push({
+    this.modifiers.push(withSignature({
       type: 'filter',
       name,
       value,
       valueType: typeof value,
       key,
-    });
+    }));
 
     return this._reference;
   }
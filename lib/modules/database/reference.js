@@ -5,6 +5,7 @@
 import Query from './query.js';
 import Snapshot from './snapshot';
 import Disconnect from './disconnect';
+import { unpackSnapshot } from './packed';
 import ReferenceBase from './../../utils/ReferenceBase';
 
 import {
@@ -22,6 +23,59 @@ import INTERNALS from './../../internals';
 // track all event registrations by path
 let listeners = 0;
 
+const BackPressurePolicies = ['throttle', 'drop-oldest', 'sample'];
+
+/**
+ * Deep equality of database values.
+ *
+ * @param a
+ * @param b
+ * @return {boolean}
+ */
+function valuesEqual(a: any, b: any): boolean {
+  if (a === b) return true;
+  if (!isObject(a) && !Array.isArray(a)) return false;
+  if (!isObject(b) && !Array.isArray(b)) return false;
+
+  const keysA = Object.keys(a);
+  if (keysA.length !== Object.keys(b).length) return false;
+  return keysA.every(key => Object.hasOwnProperty.call(b, key) && valuesEqual(a[key], b[key]));
+}
+
+/**
+ * JS implementation of the native declarative transaction operations,
+ * returns undefined to abort when nothing would change.
+ *
+ * @param op
+ * @param current
+ * @return {*}
+ */
+function applyTransactionOperation(op: Object, current: any): any {
+  const { type, value } = op;
+
+  switch (type) {
+    case 'increment':
+      if (current !== null && typeof current !== 'number') return undefined;
+      return (current || 0) + value;
+    case 'appendUnique':
+      if (current === null) return [value];
+      if (!Array.isArray(current) || current.some(item => valuesEqual(item, value))) return undefined;
+      return current.concat([value]);
+    case 'setIfAbsent':
+      return current === null ? value : undefined;
+    case 'max':
+      if (current !== null && (typeof current !== 'number' || value <= current)) return undefined;
+      return value;
+    case 'min':
+      if (current !== null && (typeof current !== 'number' || value >= current)) return undefined;
+      return value;
+    case 'removeIfEquals':
+      return current !== null && valuesEqual(current, value) ? null : undefined;
+    default:
+      return undefined;
+  }
+}
+
 /**
  * Enum for event types
  * @readonly
@@ -209,6 +263,36 @@ export default class Reference extends ReferenceBase {
     });
   }
 
+  /**
+   * Run a transaction with a declarative operation instead of an update function.
+   * On Android every attempt is applied natively, without a round trip to JS.
+   *
+   * Operations, the transaction is not committed if the operation would not change anything
+   * or the current value has an incompatible type:
+   *  - `{ type: 'increment', value: number }`
+   *  - `{ type: 'appendUnique', value }` append to an array if not already present
+   *  - `{ type: 'setIfAbsent', value }`
+   *  - `{ type: 'max', value: number }` / `{ type: 'min', value: number }`
+   *  - `{ type: 'removeIfEquals', value }`
+   *
+   * @param op
+   * @param applyLocally
+   * @returns {Promise.<{ committed: boolean, snapshot: Snapshot }>}
+   */
+  transactionApply(op: { type: string, value?: any }, applyLocally: boolean = false): Promise<Object> {
+    if (!isObject(op) || !isString(op.type)) {
+      return Promise.reject(new Error('Missing transaction operation argument.'));
+    }
+
+    // not supported natively on this platform, run the operation as an update function
+    if (!this._database._native.transactionApply) {
+      return this.transaction(current => applyTransactionOperation(op, current), undefined, applyLocally);
+    }
+
+    return this._database._native.transactionApply(this.path, { type: op.type, value: this._serializeObject(op.value) }, applyLocally)
+      .then(({ committed, snapshot }) => ({ committed, snapshot: new Snapshot(this, unpackSnapshot(snapshot)) }));
+  }
+
 
   /**
    *
@@ -216,6 +300,8 @@ export default class Reference extends ReferenceBase {
    * @param successCallback
    * @param cancelOrContext
    * @param context
+   * @param options - Optional (Android only), `{ stream: { size: 500, bytes: 262144 } }`
+   * to send a large 'value' snapshot in chunks
    * @returns {Promise.<any>}
    */
   once(
@@ -223,10 +309,31 @@ export default class Reference extends ReferenceBase {
     successCallback: (snapshot: Object) => void,
     cancelOrContext: (error: FirebaseError) => void,
     context?: Object,
+    options?: Object = {},
   ) {
-    return this._database._native.once(this._getRefKey(), this.path, this._query.getModifiers(), eventName)
+    const _options = isObject(options) ? options : {};
+    let promise;
+
+    if (eventName === 'value' && _options.stream && this._database._native.onceStream) {
+      // android only - the snapshot is sent in chunks and reassembled here
+      listeners += 1;
+      const streamId = `${this._getRegistrationKey(eventName)}$stream`;
+      const stream = this._syncTree.awaitStream(streamId);
+      const streamOptions = isObject(_options.stream) ? _options.stream : {};
+
+      promise = this._database._native.onceStream(this._getRefKey(), this.path, this._query.getModifiers(), streamId, streamOptions)
+        .then(() => stream, (error) => {
+          this._syncTree.cancelStream(streamId);
+          throw error;
+        })
+        .then(snapshot => ({ snapshot }));
+    } else {
+      promise = this._database._native.once(this._getRefKey(), this.path, this._query.getModifiers(), eventName);
+    }
+
+    return promise
       .then(({ snapshot }) => {
-        const _snapshot = new Snapshot(this, snapshot);
+        const _snapshot = new Snapshot(this, unpackSnapshot(snapshot));
 
         if (isFunction(successCallback)) {
           if (isObject(cancelOrContext)) successCallback.bind(cancelOrContext)(_snapshot);
@@ -610,13 +717,18 @@ export default class Reference extends ReferenceBase {
    * @param {cancelCallbackOrContext=} cancelCallbackOrContext - Optional callback that is called
    * if the event subscription fails. {@link cancelCallbackOrContext}
    * @param {*=} context - Optional object to bind the callbacks to when calling them.
+   * @param {Object=} options - Optional native listener options (Android only), e.g.
+   * `{ batch: { interval: 16, size: 100 } }` to deliver child events in batches or
+   * `{ diff: true }` to only send changes for 'value' events after the first one or
+   * `{ stream: { size: 500, bytes: 262144 } }` to send large 'value' events in chunks or
+   * `{ backpressure: { policy: 'throttle', interval: 100 } }` to limit the rate events are sent.
    * @returns {ReferenceEventCallback} callback function, unmodified (unbound), for
    * convenience if you want to pass an inline function to on() and store it later for
    * removing using off().
    *
    * {@link https://firebase.google.com/docs/reference/js/firebase.database.Reference#on}
    */
-  on(eventType: string, callback: () => any, cancelCallbackOrContext?: () => any, context?: Object): Function {
+  on(eventType: string, callback: () => any, cancelCallbackOrContext?: () => any, context?: Object, options?: Object = {}): Function {
     if (!eventType) {
       throw new Error('Query.on failed: Function called with 0 arguments. Expects at least 2.');
     }
@@ -644,7 +756,17 @@ export default class Reference extends ReferenceBase {
     const eventRegistrationKey = this._getRegistrationKey(eventType);
     const registrationCancellationKey = `${eventRegistrationKey}$cancelled`;
     const _context = (cancelCallbackOrContext && !isFunction(cancelCallbackOrContext)) ? cancelCallbackOrContext : context;
+    const _options = isObject(options) ? options : {};
+    const diff = eventType === 'value' && !!_options.diff;
+    let stream = null;
+    if (eventType === 'value' && _options.stream) stream = isObject(_options.stream) ? _options.stream : {};
+    const backpressure = isObject(_options.backpressure) ? _options.backpressure : null;
+
+    if (backpressure && BackPressurePolicies.indexOf(backpressure.policy) === -1) {
+      throw new Error(`Query.on failed: Back-pressure policy must be one of "${BackPressurePolicies.join(', ')}".`);
+    }
     const registrationObj = {
+      diff,
       eventType,
       ref: this,
       path: this.path,
@@ -673,6 +795,16 @@ export default class Reference extends ReferenceBase {
       );
     }
 
+    const nativeRegistration = {
+      eventRegistrationKey,
+      key: registrationObj.key,
+      registrationCancellationKey,
+      backpressure,
+    };
+
+    // native events identify the registration by this id only
+    nativeRegistration.id = this._syncTree.addNativeRegistration(nativeRegistration);
+
     // initialise the native listener if not already listening
     this._database._native.on({
       eventType,
@@ -681,11 +813,10 @@ export default class Reference extends ReferenceBase {
       appName: this._database._appName,
       modifiers: this._query.getModifiers(),
       hasCancellationCallback: isFunction(cancelCallbackOrContext),
-      registration: {
-        eventRegistrationKey,
-        key: registrationObj.key,
-        registrationCancellationKey,
-      },
+      diff,
+      batch: _options.batch || null,
+      stream,
+      registration: nativeRegistration,
     });
 
     // increment number of listeners - just s short way of making
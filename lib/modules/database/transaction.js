@@ -2,6 +2,8 @@
  * @flow
  * Database representation wrapper
  */
+import { unpackSnapshot, unpackValue } from './packed';
+import { applyPatch } from './../../utils/SyncTree';
 
 let transactionId = 0;
 
@@ -82,18 +84,30 @@ export default class TransactionHandler {
    */
   _handleUpdate(event: Object = {}) {
     let newValue;
-    const { id, value } = event;
+    const { id, value, patch, unchanged } = event;
 
     try {
       const transaction = this._transactions[id];
       if (!transaction) return;
 
-      newValue = transaction.transactionUpdater(value);
+      // retries only send what changed since the last value received (Android)
+      if (patch) {
+        transaction.lastValue = applyPatch(transaction.lastValue, patch);
+      } else if (!unchanged) {
+        transaction.lastValue = unpackValue(value);
+      }
+
+      const currentValue = transaction.lastValue === undefined ? null : transaction.lastValue;
+      newValue = transaction.transactionUpdater(currentValue);
     } finally {
       let abort = false;
 
       if (newValue === undefined) {
         abort = true;
+      } else if (this._transactions[id]) {
+        // native diffs the next attempt against the committed value, so the updater
+        // may mutate its argument without it being copied first
+        this._transactions[id].lastValue = newValue;
       }
 
       this._database._native.transactionTryCommit(id, { value: newValue, abort });
@@ -129,7 +143,7 @@ export default class TransactionHandler {
     if (transaction && !transaction.completed) {
       transaction.completed = true;
       try {
-        transaction.onComplete(null, event.committed, Object.assign({}, event.snapshot));
+        transaction.onComplete(null, event.committed, Object.assign({}, unpackSnapshot(event.snapshot)));
       } finally {
         setImmediate(() => {
           delete this._transactions[event.id];
@@ -77,6 +77,92 @@ export default class Storage extends ModuleBase {
     this._native.setMaxDownloadRetryTime(time);
   }
 
+  /**
+   * Android only - size in bytes of the buffer downloadFile writes to disk through,
+   * clamped to 8KB - 8MB. Defaults to 256KB.
+   * @param bytes
+   */
+  setDownloadBufferSize(bytes: number) {
+    if (this._native.setDownloadBufferSize) this._native.setDownloadBufferSize(bytes);
+  }
+
+  /**
+   * Android only - limit the state_changed progress events of tasks started afterwards.
+   * An event is sent when the task state changes, when the transfer completes, or once
+   * 'interval' ms, 'minBytes' bytes and 'percentStep' percent have all passed since the
+   * last event. By default every event is sent.
+   * @param policy { interval, minBytes, percentStep }
+   */
+  setProgressPolicy(policy: Object) {
+    if (this._native.setProgressPolicy) this._native.setProgressPolicy(policy);
+  }
+
+  /**
+   * Android only - resolves with the number of progress events 'emitted' and
+   * 'suppressed' by the progress policy, null on other platforms.
+   * @returns {Promise}
+   */
+  getProgressStats(): Promise<Object | null> {
+    if (!this._native.getProgressStats) return Promise.resolve(null);
+    return this._native.getProgressStats();
+  }
+
+  /**
+   * Android only - reset the counts returned by getProgressStats.
+   */
+  resetProgressStats() {
+    if (this._native.resetProgressStats) this._native.resetProgressStats();
+  }
+
+  /**
+   * Android only - limit how many uploads and downloads run at once, across all apps.
+   * Defaults to 2 uploads and 4 downloads.
+   * @param config { maxConcurrentUploads, maxConcurrentDownloads }
+   */
+  configureTaskScheduler(config: Object) {
+    if (FirebaseStorage.configureTaskScheduler) FirebaseStorage.configureTaskScheduler(config);
+  }
+
+  /**
+   * Android only - resolves with the running / queued counts and the tasks of the
+   * native task scheduler, null on other platforms. Tasks survive JS reloads.
+   * @returns {Promise}
+   */
+  getTaskSchedulerState(): Promise<Object | null> {
+    if (!FirebaseStorage.getTaskSchedulerState) return Promise.resolve(null);
+    return FirebaseStorage.getTaskSchedulerState();
+  }
+
+  /**
+   * Android only - pause a scheduled task by id, e.g. one started before a JS reload.
+   * @param taskId
+   * @returns {Promise.<boolean>}
+   */
+  pauseTask(taskId: string): Promise<boolean> {
+    if (!FirebaseStorage.pauseTask) return Promise.resolve(false);
+    return FirebaseStorage.pauseTask(taskId);
+  }
+
+  /**
+   * Android only - resume a paused scheduled task by id.
+   * @param taskId
+   * @returns {Promise.<boolean>}
+   */
+  resumeTask(taskId: string): Promise<boolean> {
+    if (!FirebaseStorage.resumeTask) return Promise.resolve(false);
+    return FirebaseStorage.resumeTask(taskId);
+  }
+
+  /**
+   * Android only - cancel a scheduled task by id.
+   * @param taskId
+   * @returns {Promise.<boolean>}
+   */
+  cancelTask(taskId: string): Promise<boolean> {
+    if (!FirebaseStorage.cancelTask) return Promise.resolve(false);
+    return FirebaseStorage.cancelTask(taskId);
+  }
+
   /** **********
    * INTERNALS
    ********** **/
@@ -120,6 +206,11 @@ export const statics = {
     CANCELLED: 'cancelled',
     ERROR: 'error',
   },
+  TaskPriority: {
+    HIGH: 'high',
+    NORMAL: 'normal',
+    LOW: 'low',
+  },
   Native: FirebaseStorage ? {
     MAIN_BUNDLE_PATH: FirebaseStorage.MAIN_BUNDLE_PATH,
     CACHES_DIRECTORY_PATH: FirebaseStorage.CACHES_DIRECTORY_PATH,
@@ -1,6 +1,7 @@
 /* @flow */
 
 import ReferenceBase from '../../utils/ReferenceBase';
+import { generatePushID } from '../../utils';
 import StorageTask, { UPLOAD_TASK, DOWNLOAD_TASK } from './task';
 import Storage from './';
 
@@ -67,9 +68,27 @@ export default class StorageReference extends ReferenceBase {
   /**
    * Downloads a reference to the device
    * @param {String} filePath Where to store the file
+   * @param {Object} options android only - { resumable } continue an interrupted download of the same file,
+   * { segments } fetch the file as that many concurrent byte ranges, along with { taskId, priority } of the
+   * scheduled download
    * @return {Promise}
    */
-  downloadFile(filePath: string): Promise<Object> {
+  downloadFile(filePath: string, options: Object = {}): Promise<Object> {
+    if (options.segments > 1 && this._module._native.downloadFileSegmented) {
+      const schedule = this._getScheduleOptions(options);
+      return new StorageTask(DOWNLOAD_TASK, this._module._native.downloadFileSegmented(this.path, filePath, options.segments, schedule), this, schedule.taskId);
+    }
+
+    if (options.resumable && this._module._native.downloadFileResumable) {
+      const schedule = this._getScheduleOptions(options);
+      return new StorageTask(DOWNLOAD_TASK, this._module._native.downloadFileResumable(this.path, filePath, schedule), this, schedule.taskId);
+    }
+
+    if (this._module._native.downloadFileScheduled) {
+      const schedule = this._getScheduleOptions(options);
+      return new StorageTask(DOWNLOAD_TASK, this._module._native.downloadFileScheduled(this.path, filePath, schedule), this, schedule.taskId);
+    }
+
     return new StorageTask(DOWNLOAD_TASK, this._module._native.downloadFile(this.path, filePath), this);
   }
 
@@ -85,10 +104,29 @@ export default class StorageReference extends ReferenceBase {
    * Upload a file path
    * @param  {string} filePath The local path of the file
    * @param  {object} metadata An object containing metadata
+   * @param  {object} options android only - { taskId, priority } of the scheduled upload
    * @return {Promise}
    */
-  putFile(filePath: Object, metadata: Object = {}): Promise<Object> {
+  putFile(filePath: Object, metadata: Object = {}, options: Object = {}): Promise<Object> {
     const _filePath = filePath.replace('file://', '');
+
+    if (this._module._native.putFileScheduled) {
+      const schedule = this._getScheduleOptions(options);
+      return new StorageTask(UPLOAD_TASK, this._module._native.putFileScheduled(this.path, _filePath, metadata, schedule), this, schedule.taskId);
+    }
+
     return new StorageTask(UPLOAD_TASK, this._module._native.putFile(this.path, _filePath, metadata), this);
   }
+
+  /**
+   * @param options
+   * @return {{taskId: string, priority: string}}
+   * @private
+   */
+  _getScheduleOptions(options: Object): Object {
+    return {
+      taskId: options.taskId || generatePushID(),
+      priority: options.priority || 'normal',
+    };
+  }
 }
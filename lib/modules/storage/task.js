@@ -1,4 +1,5 @@
 /* @flow */
+import { NativeModules } from 'react-native';
 import { statics as StorageStatics } from './';
 import { isFunction } from './../../utils';
 import StorageReference from './reference';
@@ -42,11 +43,13 @@ export default class StorageTask {
   ref: StorageReference;
   storage: StorageReference.storage;
   path: StorageReference.path;
+  taskId: ?string;
   then: () => Promise<*>;
   catch: () => Promise<*>;
 
-  constructor(type: typeof UPLOAD_TASK | typeof DOWNLOAD_TASK, promise: Promise<*>, storageRef: StorageReference) {
+  constructor(type: typeof UPLOAD_TASK | typeof DOWNLOAD_TASK, promise: Promise<*>, storageRef: StorageReference, taskId?: string) {
     this.type = type;
+    this.taskId = taskId || null;
     this.ref = storageRef;
     this.storage = storageRef._module;
     this.path = storageRef.path;
@@ -165,17 +168,30 @@ export default class StorageTask {
     return this._subscribe(nextOrObserver, error, complete);
   }
 
-  pause() {
-    throw new Error('.pause() is not currently supported by react-native-firebase');
+  /**
+   * Android only - tasks queued by the native task scheduler
+   * @returns {Promise.<boolean>} false if the task can not be paused
+   */
+  pause(): Promise<boolean> {
+    if (!this.taskId) throw new Error('.pause() is not currently supported by react-native-firebase');
+    return NativeModules.RNFirebaseStorage.pauseTask(this.taskId);
   }
 
-  resume() {
-    // todo
-    throw new Error('.resume() is not currently supported by react-native-firebase');
+  /**
+   * Android only - tasks queued by the native task scheduler
+   * @returns {Promise.<boolean>} false if the task is not paused
+   */
+  resume(): Promise<boolean> {
+    if (!this.taskId) throw new Error('.resume() is not currently supported by react-native-firebase');
+    return NativeModules.RNFirebaseStorage.resumeTask(this.taskId);
   }
 
-  cancel() {
-    // todo
-    throw new Error('.cancel() is not currently supported by react-native-firebase');
+  /**
+   * Android only - tasks queued by the native task scheduler
+   * @returns {Promise.<boolean>} false if the task has already finished
+   */
+  cancel(): Promise<boolean> {
+    if (!this.taskId) throw new Error('.cancel() is not currently supported by react-native-firebase');
+    return NativeModules.RNFirebaseStorage.cancelTask(this.taskId);
   }
 }
@@ -3,18 +3,128 @@ import { NativeEventEmitter } from 'react-native';
 import INTERNALS from './../internals';
 import DatabaseSnapshot from './../modules/database/snapshot';
 import DatabaseReference from './../modules/database/reference';
-import { isString, nativeToJSError } from './../utils';
+import { unpackSnapshot, unpackValue } from './../modules/database/packed';
+import { isObject, isString, nativeToJSError } from './../utils';
 
 type Registration = {
   key: String,
   path: String,
   once?: Boolean,
+  diff?: Boolean,
   appName: String,
   eventType: String,
   eventRegistrationKey: String,
   ref: DatabaseReference,
 }
 
+/**
+ * Returns a copy of value with the value at the path segments replaced,
+ * only objects along the path are copied.
+ *
+ * @param value
+ * @param segments
+ * @param index
+ * @param newValue
+ * @return {*}
+ */
+function setIn(value, segments, index, newValue) {
+  if (index === segments.length) return newValue;
+  const segment = segments[index];
+
+  if (Array.isArray(value)) {
+    const copy = value.slice();
+    for (let i = copy.length; i < segment; i++) copy[i] = null;
+    copy[segment] = setIn(copy[segment], segments, index + 1, newValue);
+    return copy;
+  }
+
+  const copy = Object.assign({}, isObject(value) ? value : {});
+  copy[segment] = setIn(copy[segment], segments, index + 1, newValue);
+  return copy;
+}
+
+/**
+ * Returns a copy of value with the value at the path segments removed,
+ * only objects along the path are copied.
+ *
+ * @param value
+ * @param segments
+ * @param index
+ * @return {*}
+ */
+function removeIn(value, segments, index) {
+  if (!isObject(value) && !Array.isArray(value)) return value;
+  const segment = segments[index];
+  const last = index === segments.length - 1;
+
+  if (Array.isArray(value)) {
+    const copy = value.slice();
+    copy[segment] = last ? null : removeIn(copy[segment], segments, index + 1);
+    // native never sends trailing nulls in arrays
+    while (copy.length && copy[copy.length - 1] === null) copy.pop();
+    return copy;
+  }
+
+  const copy = Object.assign({}, value);
+  if (last) delete copy[segment];
+  else copy[segment] = removeIn(copy[segment], segments, index + 1);
+  return copy;
+}
+
+/**
+ * Applies a native 'diff' mode patch to the previous snapshot value.
+ *
+ * @param value
+ * @param patch
+ * @return {*}
+ */
+export function applyPatch(value: any, patch: Object): any {
+  let patched = value;
+  const { added, changed, removed } = patch;
+  const upserts = changed.concat(added);
+
+  for (let i = 0, len = upserts.length; i < len; i++) {
+    const { path } = upserts[i];
+    const newValue = upserts[i].value === undefined ? null : unpackValue(upserts[i].value);
+    patched = path ? setIn(patched, path.split('/'), 0, newValue) : newValue;
+  }
+
+  for (let i = 0, len = removed.length; i < len; i++) {
+    patched = removeIn(patched, removed[i].split('/'), 0);
+  }
+
+  return patched;
+}
+
+/**
+ * Rebuilds a snapshot value from the children of a native chunked value event.
+ *
+ * @param stream
+ * @param children
+ * @return {Object}
+ */
+function assembleStream(stream, children) {
+  const { snapshot, isArray } = stream;
+  if (!snapshot.hasChildren) return snapshot;
+
+  const { childKeys } = snapshot;
+  const value = isArray ? [] : {};
+
+  for (let i = 0, len = childKeys.length; i < len; i++) {
+    const key = childKeys[i];
+    const childValue = children[key] === undefined ? null : children[key];
+    if (isArray) {
+      const index = parseInt(key, 10);
+      for (let j = value.length; j < index; j++) value[j] = null;
+      value[index] = childValue;
+    } else {
+      value[key] = childValue;
+    }
+  }
+
+  return Object.assign({}, snapshot, { value });
+}
+
 /**
  * Internally used to manage firebase database realtime event
  * subscriptions and keep the listeners in sync in js vs native.
@@ -22,7 +132,13 @@ type Registration = {
 export default class SyncTree {
   constructor(databaseNative) {
     this._tree = {};
+    this._diffValues = {};
+    this._streamBuffers = {};
+    this._streamWaiters = {};
     this._reverseLookup = {};
+    this._nativeRegistrations = {};
+    this._nativeRegistrationIds = {};
+    this._nextNativeRegistrationId = 0;
     this._databaseNative = databaseNative;
     this._nativeEmitter = new NativeEventEmitter(databaseNative);
     this._nativeEmitter.addListener(
@@ -37,13 +153,119 @@ export default class SyncTree {
    * @private
    */
   _handleSyncEvent(event) {
-    if (event.error) {
+    if (event.ids) {
+      // a single native listener shared by multiple registrations, identified by id
+      for (let i = 0, len = event.ids.length; i < len; i++) {
+        this._handleSyncEvent(Object.assign({}, event, { id: event.ids[i], ids: undefined }));
+      }
+    } else if (event.id !== undefined) {
+      // compact event, resolve the registration sent to native from its id
+      const registration = this._nativeRegistrations[event.id];
+
+      // registration previously removed, native has already been told
+      if (!registration) return;
+      this._handleSyncEvent(Object.assign({}, event, { id: undefined, registration }));
+    } else if (event.registrations) {
+      // a single native listener shared by multiple registrations
+      for (let i = 0, len = event.registrations.length; i < len; i++) {
+        this._handleSyncEvent(Object.assign({}, event, {
+          registration: event.registrations[i],
+          registrations: undefined,
+        }));
+      }
+    } else if (event.error) {
       this._handleErrorEvent(event);
+    } else if (event.stream) {
+      this._handleStreamEvent(event);
+    } else if (event.batch) {
+      this._handleBatchEvent(event);
     } else {
       this._handleValueEvent(event);
     }
   }
 
+  /**
+   * Routes a batch of native child events, delivered in order, to their js listeners.
+   *
+   * @param event
+   * @private
+   */
+  _handleBatchEvent(event) {
+    const { batch } = event;
+
+    for (let i = 0, len = batch.length; i < len; i++) {
+      // stop if the registration was revoked by a listener in this batch
+      if (this._handleValueEvent(Object.assign({}, event, { data: batch[i] })) === false) return;
+    }
+  }
+
+  /**
+   * Buffers the chunks of a native streamed value event until the last chunk arrives,
+   * then routes the reassembled snapshot to the registration or once() waiting on it.
+   *
+   * @param event
+   * @private
+   */
+  _handleStreamEvent(event) {
+    const { id, sequence, children, done } = event.stream;
+    let buffer = this._streamBuffers[id];
+
+    // native only converts further chunks once earlier ones are received
+    if (!done && this._databaseNative.ackStreamChunk) {
+      this._databaseNative.ackStreamChunk(id, sequence);
+    }
+
+    // a new value event, or a chunk went missing - start over
+    if (!buffer || sequence === 0 || sequence !== buffer.sequence + 1) {
+      if (sequence !== 0) {
+        delete this._streamBuffers[id];
+        return;
+      }
+      buffer = { children: {}, sequence: -1 };
+      this._streamBuffers[id] = buffer;
+    }
+
+    buffer.sequence = sequence;
+    if (children) Object.assign(buffer.children, children);
+    if (!done) return;
+
+    delete this._streamBuffers[id];
+    const snapshot = assembleStream(event.stream, buffer.children);
+
+    if (event.registration) {
+      this._handleValueEvent(Object.assign({}, event, {
+        stream: undefined,
+        data: { snapshot, previousChildName: null },
+      }));
+    } else if (this._streamWaiters[id]) {
+      const resolve = this._streamWaiters[id];
+      delete this._streamWaiters[id];
+      resolve(snapshot);
+    }
+  }
+
+  /**
+   * Returns a promise resolved with the reassembled snapshot of a native once() stream.
+   *
+   * @param id
+   * @return {Promise}
+   */
+  awaitStream(id: string): Promise<Object> {
+    return new Promise((resolve) => {
+      this._streamWaiters[id] = resolve;
+    });
+  }
+
+  /**
+   * Drops any buffered chunks of a native once() stream that failed.
+   *
+   * @param id
+   */
+  cancelStream(id: string) {
+    delete this._streamBuffers[id];
+    delete this._streamWaiters[id];
+  }
+
   /**
    * Routes native database 'on' events to their js equivalent counterpart.
    * If there is no longer any listeners remaining for this event we internally
@@ -62,17 +284,38 @@ export default class SyncTree {
       // notify native that the registration
       // no longer exists so it can remove
       // the native listeners
-      return this._databaseNative.off(key, eventRegistrationKey);
+      this._databaseNative.off(key, eventRegistrationKey);
+      return false;
     }
 
-    const { snapshot, previousChildName } = event.data;
+    try {
+      const { previousChildName, patch } = event.data;
+      let snapshot = unpackSnapshot(event.data.snapshot);
 
-    // forward on to users .on(successCallback <-- listener
-    return INTERNALS.SharedEventEmitter.emit(
-      eventRegistrationKey,
-      new DatabaseSnapshot(registration.ref, snapshot),
-      previousChildName,
-    );
+      if (registration.diff) {
+        // 'diff' mode events only contain the changes since the previous event
+        if (patch) {
+          snapshot = Object.assign({}, snapshot, {
+            value: applyPatch(this._diffValues[eventRegistrationKey], patch),
+          });
+        }
+
+        this._diffValues[eventRegistrationKey] = snapshot.value;
+      }
+
+      // forward on to users .on(successCallback <-- listener
+      return INTERNALS.SharedEventEmitter.emit(
+        eventRegistrationKey,
+        new DatabaseSnapshot(registration.ref, snapshot),
+        previousChildName,
+      );
+    } finally {
+      // let native send the next queued event, even if the listener threw
+      const { backpressure } = event.registration;
+      if (backpressure && backpressure.policy === 'drop-oldest') {
+        this._databaseNative.ackSyncEvent(eventRegistrationKey);
+      }
+    }
   }
 
 
@@ -198,6 +441,22 @@ export default class SyncTree {
   }
 
 
+  /**
+   * Assigns an id to the registration map sent to native for an .on() listener,
+   * native events then only contain the id instead of the whole map.
+   *
+   * @param nativeRegistration
+   * @return {number}
+   */
+  addNativeRegistration(nativeRegistration: Object): number {
+    this._nextNativeRegistrationId += 1;
+    const id = this._nextNativeRegistrationId;
+
+    this._nativeRegistrations[id] = nativeRegistration;
+    this._nativeRegistrationIds[nativeRegistration.eventRegistrationKey] = id;
+    return id;
+  }
+
   /**
    * Register a new listener.
    *
@@ -237,6 +496,9 @@ export default class SyncTree {
     if (!this._reverseLookup[registration]) return false;
     const { path, eventType, once } = this._reverseLookup[registration];
 
+    delete this._nativeRegistrations[this._nativeRegistrationIds[registration]];
+    delete this._nativeRegistrationIds[registration];
+
     if (!this._tree[path]) {
       delete this._reverseLookup[registration];
       return false;
@@ -255,6 +517,8 @@ export default class SyncTree {
     }
 
     delete this._tree[path][eventType][registration];
+    delete this._diffValues[registration];
+    delete this._streamBuffers[registration];
     delete this._reverseLookup[registration];
 
     return !!registrationObj;
@@ -18,6 +18,7 @@ import transactionTests from './transactionTests';
 import queryTests from './queryTests';
 import issueSpecificTests from './issueSpecificTests';
 import priorityTests from './priorityTests';
+import nestingTests from './nestingTests';
 
 import DatabaseContents from '../../support/DatabaseContents';
 
@@ -25,7 +26,7 @@ const testGroups = [
   issueSpecificTests, factoryTests, keyTests, parentTests, childTests, rootTests,
   pushTests, onTests, onValueTests, onChildAddedTests, onceTests, updateTests,
   removeTests, setTests, transactionTests, queryTests, refTests, isEqualTests,
-  priorityTests,
+  priorityTests, nestingTests,
   offTests,
 ];
 
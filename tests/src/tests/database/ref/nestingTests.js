@@ -0,0 +1,224 @@
+import { Platform } from 'react-native';
+import sinon from 'sinon';
+import 'should-sinon';
+
+function nestedValue(depth, leaf) {
+  let value = leaf;
+  for (let i = 0; i < depth; i++) {
+    value = { [`level${depth - i}`]: value };
+  }
+  return value;
+}
+
+function nestedPath(depth) {
+  const keys = [];
+  for (let i = 1; i <= depth; i++) {
+    keys.push(`level${i}`);
+  }
+  return keys.join('/');
+}
+
+function wideValue(width) {
+  const value = {};
+  for (let i = 0; i < width; i++) {
+    value[`child${i}`] = { index: i, name: `child ${i}` };
+  }
+  return value;
+}
+
+// the realtime database allows 32 levels of nesting, a lower native max depth
+// is set for the tests of values nested deeper than the max depth
+const MAX_DEPTH = 8;
+
+function nestingTests({ describe, it, firebase }) {
+  describe('ref() deep and wide trees', () => {
+    const setMaxDepth = (depth) => {
+      const database = firebase.native.database();
+      if (database._native.setMaxDepth) database._native.setMaxDepth(depth);
+    };
+
+    it('on(\'value\') receives a deeply nested value and its changes', async () => {
+      // Setup
+
+      const ref = firebase.native.database().ref('tests/nesting/deep');
+      await ref.set(nestedValue(30, 'leaf'));
+
+      const callback = sinon.spy();
+      let onValue;
+
+      // Test
+
+      await new Promise((resolve) => {
+        onValue = ref.on('value', (snapshot) => {
+          callback(snapshot.val());
+          resolve();
+        }, undefined, undefined, { diff: true });
+      });
+
+      callback.should.be.calledWith(nestedValue(30, 'leaf'));
+
+      await ref.child(nestedPath(30)).set('changed');
+
+      await new Promise((resolve) => {
+        setTimeout(() => resolve(), 50);
+      });
+
+      // Assertions
+
+      callback.should.be.calledWith(nestedValue(30, 'changed'));
+
+      // Teardown
+
+      ref.off('value', onValue);
+      await ref.remove();
+    });
+
+    it('on(\'value\') is cancelled when a change nests the value deeper than the max depth', async () => {
+      if (Platform.OS !== 'android') return;
+
+      // Setup
+
+      const ref = firebase.native.database().ref('tests/nesting/tooDeep');
+      await ref.set(nestedValue(4, 'leaf'));
+      setMaxDepth(MAX_DEPTH);
+
+      const callback = sinon.spy();
+      let cancelled;
+
+      // Test
+
+      await new Promise((resolve) => {
+        cancelled = new Promise((resolveCancelled) => {
+          ref.on('value', (snapshot) => {
+            callback(snapshot.val());
+            resolve();
+          }, error => resolveCancelled(error), undefined, { diff: true });
+        });
+      });
+
+      await ref.child(nestedPath(4)).set(nestedValue(MAX_DEPTH, 'leaf'));
+      const error = await cancelled;
+
+      // Assertions
+
+      callback.should.be.calledOnce();
+      error.code.should.equal('database/max-depth-exceeded');
+
+      // Teardown
+
+      setMaxDepth(0);
+      ref.off();
+      await ref.remove();
+    });
+
+    it('once(\'value\') rejects values nested deeper than the max depth', async () => {
+      if (Platform.OS !== 'android') return;
+
+      // Setup
+
+      const ref = firebase.native.database().ref('tests/nesting/tooDeep');
+      await ref.set(nestedValue(MAX_DEPTH + 2, 'leaf'));
+      setMaxDepth(MAX_DEPTH);
+
+      // Test
+
+      let error;
+      try {
+        await ref.once('value');
+      } catch (e) {
+        error = e;
+      }
+
+      // Assertions
+
+      error.code.should.equal('database/max-depth-exceeded');
+
+      // Teardown
+
+      setMaxDepth(0);
+      await ref.remove();
+    });
+
+    it('getKeepSyncedReport() reports null bytes for values nested deeper than the max depth', async () => {
+      if (Platform.OS !== 'android') return;
+
+      // Setup
+
+      const database = firebase.native.database();
+      const deepRef = database.ref('tests/nesting/tooDeep');
+      const wideRef = database.ref('tests/nesting/wide');
+      await deepRef.set(nestedValue(MAX_DEPTH + 2, 'leaf'));
+      await wideRef.set(wideValue(200));
+      setMaxDepth(MAX_DEPTH);
+
+      // Test
+
+      deepRef.keepSynced(true);
+      wideRef.keepSynced(true);
+      const report = await database.getKeepSyncedReport();
+
+      // Assertions
+
+      const deep = report.find(item => item.path === 'tests/nesting/tooDeep');
+      const wide = report.find(item => item.path === 'tests/nesting/wide');
+      (deep.bytes === null).should.be.true();
+      wide.bytes.should.be.above(0);
+
+      // Teardown
+
+      setMaxDepth(0);
+      deepRef.keepSynced(false);
+      wideRef.keepSynced(false);
+      await deepRef.remove();
+      await wideRef.remove();
+    });
+
+    it('on(\'value\') applies changes to a wide value', async () => {
+      // Setup
+
+      const ref = firebase.native.database().ref('tests/nesting/wide');
+      const value = wideValue(2000);
+      await ref.set(value);
+
+      const callback = sinon.spy();
+      let onValue;
+
+      // Test
+
+      await new Promise((resolve) => {
+        onValue = ref.on('value', (snapshot) => {
+          callback(snapshot.val());
+          resolve();
+        }, undefined, undefined, { diff: true });
+      });
+
+      callback.should.be.calledWith(value);
+
+      await ref.update({
+        'child5/name': 'changed',
+        child10: null,
+        child2000: { index: 2000, name: 'added' },
+      });
+
+      await new Promise((resolve) => {
+        setTimeout(() => resolve(), 50);
+      });
+
+      // Assertions
+
+      const expected = Object.assign({}, value, {
+        child5: { index: 5, name: 'changed' },
+        child2000: { index: 2000, name: 'added' },
+      });
+      delete expected.child10;
+      callback.should.be.calledWith(expected);
+
+      // Teardown
+
+      ref.off('value', onValue);
+      await ref.remove();
+    });
+  });
+}
+
+export default nestingTests;
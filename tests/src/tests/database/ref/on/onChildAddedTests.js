@@ -32,5 +32,35 @@ export default function onChildAddedTests({ describe, beforeEach, afterEach, it,
         (childVal).should.equal('bar');
       });
     });
+
+    it('calls a callback added to an already listened ref with the current children', async () => {
+      // Setup
+
+      const ref = firebase.native.database().ref('tests/types/array');
+      const firstKeys = [];
+      const secondKeys = [];
+      const onFirst = snapshot => firstKeys.push(snapshot.key);
+      const onSecond = snapshot => secondKeys.push(snapshot.key);
+
+      // Test
+
+      ref.on('child_added', onFirst);
+      await ref.once('value');
+
+      // the second registration shares the native listener of the first
+      ref.on('child_added', onSecond);
+      await new Promise((resolve) => {
+        setTimeout(() => resolve(), 50);
+      });
+
+      // Assertions
+
+      secondKeys.should.eql(firstKeys);
+
+      // Tear down
+
+      ref.off('child_added', onFirst);
+      ref.off('child_added', onSecond);
+    });
   });
 }
@@ -329,6 +329,57 @@ function onTests({ describe, context, it, firebase, tryCatch }) {
       });
     });
 
+    it('calls a callback added to an already listened ref with the current value', async () => {
+      // Setup
+
+      const ref = firebase.native.database().ref('tests/types/object');
+      const currentDataValue = DatabaseContents.DEFAULT.object;
+
+      const firstCallback = sinon.spy();
+      const secondCallback = sinon.spy();
+      let onFirst;
+      let onSecond;
+
+      // Test
+
+      await new Promise((resolve) => {
+        onFirst = ref.on('value', (snapshot) => {
+          firstCallback(snapshot.val());
+          resolve();
+        });
+      });
+
+      // the second registration shares the native listener of the first
+      await new Promise((resolve) => {
+        onSecond = ref.on('value', (snapshot) => {
+          secondCallback(snapshot.val());
+          resolve();
+        });
+      });
+
+      // Assertions
+
+      secondCallback.should.be.calledOnce();
+      secondCallback.should.be.calledWith(currentDataValue);
+
+      await ref.child('foo').set('changed');
+
+      await new Promise((resolve) => {
+        setTimeout(() => resolve(), 15);
+      });
+
+      const changedDataValue = Object.assign({}, currentDataValue, { foo: 'changed' });
+      firstCallback.should.be.calledWith(changedDataValue);
+      secondCallback.should.be.calledTwice();
+      secondCallback.should.be.calledWith(changedDataValue);
+
+      // Tear down
+
+      ref.off('value', onFirst);
+      ref.off('value', onSecond);
+      await ref.set(currentDataValue);
+    });
+
     // Observed Web API Behaviour
     context('when a failure callback is provided', () => {
       it('then calls only the failure callback for a ref to un-permitted location', () => {
@@ -1,4 +1,5 @@
 import Promise from 'bluebird';
+import { Platform } from 'react-native';
 
 function onTests({ describe, it, firebase, tryCatch }) {
   describe('ref.transaction()', () => {
@@ -29,6 +30,62 @@ function onTests({ describe, it, firebase, tryCatch }) {
       });
     });
 
+    it('retries with the current value when the updater mutates its argument', async () => {
+      // Setup
+
+      const path = 'tests/transaction/mutate';
+      await firebase.web.database().ref(path).set({ count: 5, tags: { a: true }, list: [1, 2] });
+
+      // Test
+
+      const calls = [];
+      const { committed, snapshot } = await firebase.native.database()
+        .ref(path).transaction((currentData) => {
+          calls.push(currentData === null ? null : JSON.parse(JSON.stringify(currentData)));
+
+          // no local value yet, commit a value the server will reject
+          if (currentData === null) return { count: 0, tags: {}, list: [0] };
+
+          currentData.count += 1;
+          currentData.tags.updated = true;
+          currentData.list.push(3);
+          return currentData;
+        }, undefined, true);
+
+      // Assertions
+
+      committed.should.be.true();
+      calls[calls.length - 1].should.eql({ count: 5, tags: { a: true }, list: [1, 2] });
+      snapshot.val().should.eql({ count: 6, tags: { a: true, updated: true }, list: [1, 2, 3] });
+
+      // Teardown
+
+      await firebase.web.database().ref(path).remove();
+    });
+
+    it('commits every transaction when many are started at once', async () => {
+      // Setup
+
+      const path = 'tests/transaction/concurrent';
+      const count = 20;
+      await firebase.web.database().ref(path).set(0);
+
+      // Test
+
+      const results = await Promise.all(Array.from({ length: count }, () => firebase.native.database()
+        .ref(path).transaction(currentData => (currentData || 0) + 1, undefined, true)));
+
+      // Assertions
+
+      results.forEach(({ committed }) => committed.should.be.true());
+      const snapshot = await firebase.web.database().ref(path).once('value');
+      snapshot.val().should.equal(count);
+
+      // Teardown
+
+      await firebase.web.database().ref(path).remove();
+    });
+
     it('aborts if undefined returned', () => {
       return new Promise((resolve, reject) => {
         firebase.native.database()
@@ -48,6 +105,133 @@ function onTests({ describe, it, firebase, tryCatch }) {
       });
     });
   });
+
+  describe('ref.transactionApply()', () => {
+    it('increments a value', async () => {
+      // Setup
+
+      const ref = firebase.native.database().ref('tests/transactionApply/increment');
+      await firebase.web.database().ref('tests/transactionApply/increment').set(5);
+
+      // Test
+
+      const { committed, snapshot } = await ref.transactionApply({ type: 'increment', value: 2 });
+
+      // Assertions
+
+      committed.should.be.true();
+      snapshot.val().should.equal(7);
+
+      // Teardown
+
+      await ref.remove();
+    });
+
+    it('applies each operation type', async () => {
+      // Setup
+
+      const ref = firebase.native.database().ref('tests/transactionApply/operations');
+      await ref.set({ list: [1, 2], high: 10, low: 10, flag: 'on' });
+
+      // Test
+
+      const results = [];
+      const apply = async (child, op) => {
+        const { committed, snapshot } = await ref.child(child).transactionApply(op);
+        results.push([child, op.type, committed, snapshot.val()]);
+      };
+
+      await apply('list', { type: 'appendUnique', value: 3 });
+      await apply('list', { type: 'appendUnique', value: 3 });
+      await apply('missing', { type: 'setIfAbsent', value: 'first' });
+      await apply('missing', { type: 'setIfAbsent', value: 'second' });
+      await apply('high', { type: 'max', value: 12 });
+      await apply('high', { type: 'max', value: 11 });
+      await apply('low', { type: 'min', value: 3 });
+      await apply('low', { type: 'min', value: 4 });
+      await apply('flag', { type: 'removeIfEquals', value: 'off' });
+      await apply('flag', { type: 'removeIfEquals', value: 'on' });
+
+      // Assertions
+
+      results.should.eql([
+        ['list', 'appendUnique', true, [1, 2, 3]],
+        ['list', 'appendUnique', false, [1, 2, 3]],
+        ['missing', 'setIfAbsent', true, 'first'],
+        ['missing', 'setIfAbsent', false, 'first'],
+        ['high', 'max', true, 12],
+        ['high', 'max', false, 12],
+        ['low', 'min', true, 3],
+        ['low', 'min', false, 3],
+        ['flag', 'removeIfEquals', false, 'on'],
+        ['flag', 'removeIfEquals', true, null],
+      ]);
+
+      // Teardown
+
+      await ref.remove();
+    });
+
+    it('does not commit when the current value has an incompatible type', async () => {
+      // Setup
+
+      const ref = firebase.native.database().ref('tests/transactionApply/incompatible');
+      await ref.set('not a number');
+
+      // Test
+
+      const { committed, snapshot } = await ref.transactionApply({ type: 'increment', value: 1 });
+
+      // Assertions
+
+      committed.should.be.false();
+      snapshot.val().should.equal('not a number');
+
+      // Teardown
+
+      await ref.remove();
+    });
+
+    it('commits every increment when many are started at once', async () => {
+      // Setup
+
+      const path = 'tests/transactionApply/concurrent';
+      const count = 20;
+      await firebase.web.database().ref(path).set(0);
+
+      // Test
+
+      const results = await Promise.all(Array.from({ length: count }, () => firebase.native.database()
+        .ref(path).transactionApply({ type: 'increment', value: 1 })));
+
+      // Assertions
+
+      results.forEach(({ committed }) => committed.should.be.true());
+      const snapshot = await firebase.web.database().ref(path).once('value');
+      snapshot.val().should.equal(count);
+
+      // Teardown
+
+      await firebase.web.database().ref(path).remove();
+    });
+
+    it('rejects an unknown operation type', async () => {
+      if (Platform.OS !== 'android') return;
+
+      // Test
+
+      let error;
+      try {
+        await firebase.native.database().ref('tests/transactionApply/unknown').transactionApply({ type: 'multiply', value: 2 });
+      } catch (e) {
+        error = e;
+      }
+
+      // Assertions
+
+      error.code.should.equal('database/invalid-transaction-operation');
+    });
+  });
 }
 
 export default onTests;
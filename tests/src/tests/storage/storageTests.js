@@ -1,3 +1,4 @@
+import { Platform } from 'react-native';
 import RNfirebase from './../../../firebase/firebase';
 
 function storageTests({ describe, it, firebase, tryCatch }) {
@@ -46,6 +47,51 @@ function storageTests({ describe, it, firebase, tryCatch }) {
         firebase.native.storage().ref('/ok.jpeg').downloadFile(`${firebase.native.storage.Native.DOCUMENT_DIRECTORY_PATH}/ok.jpeg`).then(successCb).catch(failureCb);
       });
     });
+
+    it('it should download a file through the smallest and largest buffers', async () => {
+      if (Platform.OS !== 'android') return;
+
+      // Setup
+
+      const storage = firebase.native.storage();
+      const path = `${firebase.native.storage.Native.DOCUMENT_DIRECTORY_PATH}/buffered.jpeg`;
+
+      // Test
+
+      // clamped to 8KB and 8MB
+      storage.setDownloadBufferSize(1024);
+      const small = await storage.ref('/ok.jpeg').downloadFile(path);
+      storage.setDownloadBufferSize(16 * 1024 * 1024);
+      const large = await storage.ref('/ok.jpeg').downloadFile(path);
+
+      // Assertions
+
+      [small, large].forEach((meta) => {
+        meta.state.should.eql(firebase.native.storage.TaskState.SUCCESS);
+        meta.bytesTransferred.should.eql(meta.totalBytes);
+      });
+      small.totalBytes.should.eql(large.totalBytes);
+
+      // Teardown
+
+      storage.setDownloadBufferSize(256 * 1024);
+    });
+
+    it('it should replace a file downloaded to the same path before', async () => {
+      // Setup
+
+      const path = `${firebase.native.storage.Native.DOCUMENT_DIRECTORY_PATH}/replaced.jpeg`;
+      await firebase.native.storage().ref('/ok.jpeg').downloadFile(path);
+
+      // Test
+
+      const meta = await firebase.native.storage().ref('/ok.jpeg').downloadFile(path);
+
+      // Assertions
+
+      meta.state.should.eql(firebase.native.storage.TaskState.SUCCESS);
+      meta.bytesTransferred.should.eql(meta.totalBytes);
+    });
   });
 
   describe('putFile()', () => {
@@ -100,6 +146,113 @@ function storageTests({ describe, it, firebase, tryCatch }) {
       });
     });
   });
+
+  describe('setProgressPolicy()', () => {
+    // resolves with the state_changed snapshots of an upload, up to and including success
+    const uploadWithSnapshots = () => {
+      return new Promise((resolve, reject) => {
+        const snapshots = [];
+        const path = `${firebase.native.storage.Native.DOCUMENT_DIRECTORY_PATH}/ok.jpeg`;
+        const ref = firebase.native.storage().ref('/uploadOk.jpeg');
+        const unsubscribe = ref.putFile(path).on(firebase.native.storage.TaskEvent.STATE_CHANGED, (snapshot) => {
+          snapshots.push(snapshot);
+          if (snapshot.state === firebase.native.storage.TaskState.SUCCESS) {
+            unsubscribe();
+            resolve(snapshots);
+          }
+        }, (error) => {
+          unsubscribe();
+          reject(error);
+        });
+      });
+    };
+
+    it('it should send every progress event by default', async () => {
+      if (Platform.OS !== 'android') return;
+
+      // Setup
+
+      const storage = firebase.native.storage();
+      storage.resetProgressStats();
+
+      // Test
+
+      const snapshots = await uploadWithSnapshots();
+      const stats = await storage.getProgressStats();
+
+      // Assertions
+
+      stats.suppressed.should.equal(0);
+      stats.emitted.should.be.greaterThan(0);
+      snapshots[snapshots.length - 1].bytesTransferred.should.eql(snapshots[snapshots.length - 1].totalBytes);
+    });
+
+    it('it should only send state changes and completion within the interval', async () => {
+      if (Platform.OS !== 'android') return;
+
+      // Setup
+
+      const storage = firebase.native.storage();
+      storage.setProgressPolicy({ interval: 60000, minBytes: 1024 * 1024, percentStep: 50 });
+      storage.resetProgressStats();
+
+      // Test
+
+      const snapshots = await uploadWithSnapshots();
+      const stats = await storage.getProgressStats();
+
+      // Assertions
+
+      // running, the completed transfer and success
+      const progress = snapshots.filter(snapshot => snapshot.state !== firebase.native.storage.TaskState.SUCCESS);
+      progress.length.should.be.within(1, 2);
+      progress[0].state.should.equal(firebase.native.storage.TaskState.RUNNING);
+      stats.emitted.should.be.within(progress.length, 3);
+      snapshots[snapshots.length - 1].bytesTransferred.should.eql(snapshots[snapshots.length - 1].totalBytes);
+
+      // Teardown
+
+      storage.setProgressPolicy({});
+    });
+
+    it('it should count suppressed events until reset', async () => {
+      if (Platform.OS !== 'android') return;
+
+      // Setup
+
+      const storage = firebase.native.storage();
+      storage.setProgressPolicy({ interval: 60000 });
+      storage.resetProgressStats();
+      await uploadWithSnapshots();
+      const before = await storage.getProgressStats();
+
+      // Test
+
+      storage.resetProgressStats();
+      const after = await storage.getProgressStats();
+
+      // Assertions
+
+      (before.emitted + before.suppressed).should.be.greaterThan(0);
+      after.should.eql({ emitted: 0, suppressed: 0 });
+
+      // Teardown
+
+      storage.setProgressPolicy({});
+    });
+
+    it('getProgressStats() should resolve null on other platforms', async () => {
+      if (Platform.OS === 'android') return;
+
+      // Test
+
+      const stats = await firebase.native.storage().getProgressStats();
+
+      // Assertions
+
+      (stats === null).should.be.true();
+    });
+  });
 }
 
 export default storageTests;